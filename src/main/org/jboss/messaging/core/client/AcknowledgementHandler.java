@@ -22,6 +22,8 @@
 
 package org.jboss.messaging.core.client;
 
+import org.jboss.messaging.core.exception.MessagingException;
+
 /**
  * 
  * A AcknowledgementHandler
@@ -32,4 +34,9 @@ package org.jboss.messaging.core.client;
 public interface AcknowledgementHandler
 {
    void onAcknowledgement(long id);
+
+   /**
+    * Called instead of onAcknowledgement when the send could not be persisted
+    */
+   void onFailure(long id, MessagingException exception);
 }
@@ -22,6 +22,8 @@
 
 package org.jboss.messaging.core.client;
 
+import java.util.Collection;
+
 import org.jboss.messaging.core.exception.MessagingException;
 import org.jboss.messaging.util.SimpleString;
 
@@ -41,6 +43,15 @@ public interface ClientProducer
 
    void send(final SimpleString address, final ClientMessage msg, long scheduleDeliveryTime) throws MessagingException;
 
+   /**
+    * Sends the messages to the producer's address in one packet. The server stores them together, with one sync, and
+    * answers with one response.
+    * An anonymous producer sends each message to the destination set on it.
+    * Each message counts as one send for the acknowledgement handlers, a batch larger than the confirmation window is
+    * sent in several packets.
+    */
+   void send(Collection<ClientMessage> msgs) throws MessagingException;
+
    void sendManagement(ClientMessage mngmntMessage) throws MessagingException;
 
    void registerAcknowledgementHandler(AcknowledgementHandler handler);
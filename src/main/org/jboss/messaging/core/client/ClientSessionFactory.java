@@ -44,6 +44,15 @@ public interface ClientSessionFactory
    ClientSession createSession(String username, String password, boolean xa, boolean autoCommitSends, boolean autoCommitAcks,
                                boolean cacheProducers)
       throws MessagingException;
+
+   /**
+    * Acknowledgements made on a session with an ackBatchSize greater than 1 are held on the client, and sent as one
+    * cumulative acknowledgement per consumer once ackBatchSize of them have been made, when a consumer has no more
+    * messages to deliver, or when the session commits, rolls back or closes.
+    */
+   ClientSession createSession(String username, String password, boolean xa, boolean autoCommitSends, boolean autoCommitAcks,
+                               boolean cacheProducers, int ackBatchSize)
+      throws MessagingException;
         
    void setConsumerWindowSize(int size);
    
@@ -53,6 +62,13 @@ public interface ClientSessionFactory
    
    int getProducerWindowSize();
    
+   /**
+    * The maximum number of sends a producer with an AcknowledgementHandler can have waiting for confirmation
+    */
+   void setProducerConfirmationWindowSize(int size);
+   
+   int getProducerConfirmationWindowSize();
+   
    void setConsumerMaxRate(int rate);
    
    int getConsumerMaxRate();
@@ -125,6 +125,12 @@ public class ClientConsumerImpl implements ClientConsumerInternal
       {
          while (true)
          {
+            if (buffer.isEmpty())
+            {
+               // Nothing more to deliver for now, so don't hold back any acknowledgements
+               session.flushAcks();
+            }
+
             while (!closed && buffer.isEmpty() && toWait > 0)
             {
                try
@@ -425,6 +431,18 @@ public class ClientConsumerImpl implements ClientConsumerInternal
             {
                session.acknowledge(id, message.getMessageID());
             }
+
+            boolean idle;
+
+            synchronized (this)
+            {
+               idle = buffer.isEmpty();
+            }
+
+            if (idle)
+            {
+               session.flushAcks();
+            }
          }
       }
       catch (MessagingException e)
@@ -466,6 +484,9 @@ public class ClientConsumerImpl implements ClientConsumerInternal
 
          if (sendCloseMessage)
          {
+            // Otherwise the server would cancel the messages back to the queue
+            session.flushAcks();
+
             channel.sendBlocking(new SessionConsumerCloseMessage(id));
          }
       }
@@ -53,6 +53,16 @@ public class ClientMessageImpl extends MessageImpl implements ClientMessage
       this.deliveryCount = deliveryCount;
    }
    
+   /*
+    * Constructor for when a message is handed over by a connection in the same VM
+    */
+   public ClientMessageImpl(final MessageImpl other, final int deliveryCount)
+   {
+      super(other);
+      
+      this.deliveryCount = deliveryCount;
+   }
+   
    /*
     * Construct messages before sending
     */
@@ -20,11 +20,18 @@ import org.jboss.messaging.core.message.impl.MessageImpl;
 import org.jboss.messaging.core.remoting.Channel;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionProducerCloseMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionScheduledSendMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendBatchMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendManagementMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendMessage;
+import org.jboss.messaging.util.ConcurrentHashSet;
 import org.jboss.messaging.util.SimpleString;
 import org.jboss.messaging.util.TokenBucketLimiter;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Semaphore;
 
 /**
@@ -57,7 +64,10 @@ public class ClientProducerImpl implements ClientProducerInternal
 
    // For limit throttling
 
-   private final Semaphore availableCredits;
+   private final Object creditsLock = new Object();
+
+   // Goes below zero when a message bigger than the remaining credits is sent
+   private int availableCredits;
 
    // For rate throttling
 
@@ -73,6 +83,18 @@ public class ClientProducerImpl implements ClientProducerInternal
 
    private final SimpleString autoGroupId;
 
+   // For send confirmations
+
+   private final List<AcknowledgementHandler> acknowledgementHandlers = new CopyOnWriteArrayList<AcknowledgementHandler>();
+
+   private final Semaphore confirmationWindow;
+
+   private final int confirmationWindowSize;
+
+   private final Set<Long> unconfirmedSends = new ConcurrentHashSet<Long>();
+
+   private long sendCount;
+
    // Static ---------------------------------------------------------------------------------------
 
    // Constructors ---------------------------------------------------------------------------------
@@ -85,6 +107,7 @@ public class ClientProducerImpl implements ClientProducerInternal
                              final boolean blockOnPersistentSend,
                              final SimpleString autoGroupId,
                              final int initialCredits,
+                             final int confirmationWindowSize,
                              final Channel channel)
    {
       this.channel = channel;
@@ -103,11 +126,15 @@ public class ClientProducerImpl implements ClientProducerInternal
 
       this.autoGroupId = autoGroupId;
 
-      availableCredits = new Semaphore(initialCredits);
+      availableCredits = initialCredits;
 
       creditFlowControl = initialCredits != -1;
 
       initialWindowSize = initialCredits;
+
+      confirmationWindow = new Semaphore(confirmationWindowSize);
+
+      this.confirmationWindowSize = confirmationWindowSize;
    }
 
    // ClientProducer implementation ----------------------------------------------------------------
@@ -145,6 +172,13 @@ public class ClientProducerImpl implements ClientProducerInternal
       doSend(address, msg, scheduleDeliveryTime);
    }
 
+   public void send(final Collection<ClientMessage> msgs) throws MessagingException
+   {
+      checkClosed();
+
+      doSend(msgs);
+   }
+
    // use a special wireformat packet to sendScheduled management message (on the server-side they are
    // handled by the server session differently from regular Client Message)
    public void sendManagement(final ClientMessage msg) throws MessagingException
@@ -179,28 +213,21 @@ public class ClientProducerImpl implements ClientProducerInternal
       {
          channel.send(message);
       }      
-      
-//      //We only flow control with non-anonymous producers
-//      if (address == null && creditFlowControl)
-//      {
-//         try
-//         {
-//            availableCredits.acquire(message.getClientMessage().getEncodeSize());
-//         }
-//         catch (InterruptedException e)
-//         {           
-//         }         
-//      }
    }
 
+   /**
+    * While a handler is registered, sends don't block. Instead the handler is called with the ID of each send once
+    * the server has persisted its message. The ID of a send is its position among all the sends of this producer,
+    * starting at 0.
+    */
    public void registerAcknowledgementHandler(final AcknowledgementHandler handler)
    {
-      // TODO
+      acknowledgementHandlers.add(handler);
    }
 
    public void unregisterAcknowledgementHandler(final AcknowledgementHandler handler)
    {
-      // TODO
+      acknowledgementHandlers.remove(handler);
    }
 
    public synchronized void close() throws MessagingException
@@ -264,12 +291,65 @@ public class ClientProducerImpl implements ClientProducerInternal
 
    public void receiveCredits(final int credits)
    {
-      availableCredits.release(credits);
+      synchronized (creditsLock)
+      {
+         availableCredits += credits;
+
+         creditsLock.notifyAll();
+      }
    }
 
    public int getAvailableCredits()
    {
-      return availableCredits.availablePermits();
+      synchronized (creditsLock)
+      {
+         return availableCredits;
+      }
+   }
+
+   public void receiveConfirmations(final long[] confirmationIDs)
+   {
+      for (long confirmationID : confirmationIDs)
+      {
+         // A send can be confirmed twice if it's replayed on failover
+         if (unconfirmedSends.remove(confirmationID))
+         {
+            confirmationWindow.release();
+
+            for (AcknowledgementHandler handler : acknowledgementHandlers)
+            {
+               try
+               {
+                  handler.onAcknowledgement(confirmationID);
+               }
+               catch (Throwable t)
+               {
+                  log.warn("Failed to call acknowledgement handler", t);
+               }
+            }
+         }
+      }
+   }
+
+   public void receiveFailure(final long confirmationID, final MessagingException exception)
+   {
+      // The send won't be confirmed, its place in the window is given back all the same
+      if (unconfirmedSends.remove(confirmationID))
+      {
+         confirmationWindow.release();
+
+         for (AcknowledgementHandler handler : acknowledgementHandlers)
+         {
+            try
+            {
+               handler.onFailure(confirmationID, exception);
+            }
+            catch (Throwable t)
+            {
+               log.warn("Failed to call acknowledgement handler", t);
+            }
+         }
+      }
    }
 
    // Public ---------------------------------------------------------------------------------------
@@ -285,9 +365,41 @@ public class ClientProducerImpl implements ClientProducerInternal
       session.removeProducer(this);
 
       closed = true;
+
+      synchronized (creditsLock)
+      {
+         creditsLock.notifyAll();
+      }
    }
 
-   private void doSend(final SimpleString address, final ClientMessage msg, long scheduledDeliveryTime) throws MessagingException
+   /**
+    * Waits until there are credits, and takes the credits for a message of the given size.
+    * Credit flow control only applies to producers with an address, the server sends them the credits back.
+    */
+   private void acquireCredits(final int credits) throws MessagingException
+   {
+      synchronized (creditsLock)
+      {
+         // A message bigger than the credits left is still sent, or a message bigger than the window never would be
+         while (availableCredits <= 0)
+         {
+            checkClosed();
+
+            try
+            {
+               creditsLock.wait();
+            }
+            catch (InterruptedException e)
+            {
+               throw new MessagingException(MessagingException.INTERNAL_ERROR, "Interrupted waiting for credits");
+            }
+         }
+
+         availableCredits -= credits;
+      }
+   }
+
+   private void prepareMessage(final SimpleString address, final ClientMessage msg)
    {
       if (address != null)
       {
@@ -309,8 +421,22 @@ public class ClientProducerImpl implements ClientProducerInternal
       {
          msg.putStringProperty(MessageImpl.GROUP_ID, autoGroupId);
       }
+   }
 
-      boolean sendBlocking = msg.isDurable() ? blockOnPersistentSend : blockOnNonPersistentSend;
+   private void doSend(final SimpleString address, final ClientMessage msg, long scheduledDeliveryTime) throws MessagingException
+   {
+      prepareMessage(address, msg);
+
+      if (creditFlowControl)
+      {
+         acquireCredits(msg.getEncodeSize());
+      }
+
+      long sendID = sendCount++;
+
+      boolean confirm = !acknowledgementHandlers.isEmpty();
+
+      boolean sendBlocking = !confirm && (msg.isDurable() ? blockOnPersistentSend : blockOnNonPersistentSend);
 
       SessionSendMessage message;
       //check to see if this message need to be scheduled.
@@ -323,6 +449,23 @@ public class ClientProducerImpl implements ClientProducerInternal
          message = new SessionScheduledSendMessage(id, msg, sendBlocking, scheduledDeliveryTime);
       }
 
+      if (confirm)
+      {
+         try
+         {
+            confirmationWindow.acquire();
+         }
+         catch (InterruptedException e)
+         {
+            throw new MessagingException(MessagingException.INTERNAL_ERROR,
+                                         "Interrupted waiting for send confirmations");
+         }
+
+         unconfirmedSends.add(sendID);
+
+         message.setConfirmationID(sendID);
+      }
+
 
       if (sendBlocking)
       {
@@ -332,18 +475,94 @@ public class ClientProducerImpl implements ClientProducerInternal
       {
          channel.send(message);
       }
+   }
+
+   private void doSend(final Collection<ClientMessage> msgs) throws MessagingException
+   {
+      boolean confirm = !acknowledgementHandlers.isEmpty();
+
+      // Each message of a batch takes a place in the confirmation window, a batch can't wait for its own confirmations
+      int maxBatchSize = confirm ? confirmationWindowSize : Integer.MAX_VALUE;
+
+      List<ClientMessage> batch = new ArrayList<ClientMessage>(Math.min(msgs.size(), maxBatchSize));
+
+      for (ClientMessage msg : msgs)
+      {
+         // An anonymous producer sends each message to the destination it already has
+         prepareMessage(address == null ? msg.getDestination() : null, msg);
+
+         batch.add(msg);
+
+         if (batch.size() == maxBatchSize)
+         {
+            sendBatch(batch, confirm);
+
+            batch = new ArrayList<ClientMessage>();
+         }
+      }
+
+      if (!batch.isEmpty())
+      {
+         sendBatch(batch, confirm);
+      }
+   }
+
+   private void sendBatch(final List<ClientMessage> batch, final boolean confirm) throws MessagingException
+   {
+      int size = 0;
+
+      boolean durable = false;
+
+      for (ClientMessage msg : batch)
+      {
+         size += msg.getEncodeSize();
+
+         durable |= msg.isDurable();
+      }
+
+      if (creditFlowControl)
+      {
+         // Taken at once, waiting for credits between messages would wait for the messages held in the batch
+         acquireCredits(size);
+      }
+
+      // Each message is a send of its own, with the following send ID
+      long firstSendID = sendCount;
+
+      sendCount += batch.size();
+
+      boolean sendBlocking = !confirm && (durable ? blockOnPersistentSend : blockOnNonPersistentSend);
+
+      SessionSendBatchMessage message = new SessionSendBatchMessage(id, batch, sendBlocking);
 
-//      // We only flow control with non-anonymous producers
-//      if (address == null && creditFlowControl)
-//      {
-//         try
-//         {
-//            availableCredits.acquire(message.getClientMessage().getEncodeSize());
-//         }
-//         catch (InterruptedException e)
-//         {
-//         }
-//      }
+      if (confirm)
+      {
+         try
+         {
+            confirmationWindow.acquire(batch.size());
+         }
+         catch (InterruptedException e)
+         {
+            throw new MessagingException(MessagingException.INTERNAL_ERROR,
+                                         "Interrupted waiting for send confirmations");
+         }
+
+         for (long sendID = firstSendID; sendID < sendCount; sendID++)
+         {
+            unconfirmedSends.add(sendID);
+         }
+
+         message.setConfirmationID(firstSendID);
+      }
+
+      if (sendBlocking)
+      {
+         channel.sendBlocking(message);
+      }
+      else
+      {
+         channel.send(message);
+      }
    }
 
    private void checkClosed() throws MessagingException
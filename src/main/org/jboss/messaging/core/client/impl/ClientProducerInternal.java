@@ -23,6 +23,7 @@
 package org.jboss.messaging.core.client.impl;
 
 import org.jboss.messaging.core.client.ClientProducer;
+import org.jboss.messaging.core.exception.MessagingException;
 
 /**
  * 
@@ -39,5 +40,9 @@ public interface ClientProducerInternal extends ClientProducer
 	
 	int getAvailableCredits();
 	
+   void receiveConfirmations(long[] confirmationIDs);
+
+   void receiveFailure(long confirmationID, MessagingException exception);
+	
    void cleanUp();
 }
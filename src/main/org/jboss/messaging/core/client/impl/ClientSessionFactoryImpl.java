@@ -59,6 +59,10 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal
 
    public static final int DEFAULT_PRODUCER_MAX_RATE = -1;
 
+   public static final int DEFAULT_PRODUCER_CONFIRMATION_WINDOW_SIZE = 1000;
+
+   public static final int DEFAULT_ACK_BATCH_SIZE = 1;
+
    public static final boolean DEFAULT_BLOCK_ON_ACKNOWLEDGE = false;
 
    public static final boolean DEFAULT_BLOCK_ON_PERSISTENT_SEND = false;
@@ -95,6 +99,8 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal
 
    private volatile int producerMaxRate;
 
+   private volatile int producerConfirmationWindowSize;
+
    private volatile boolean blockOnAcknowledge;
 
    private volatile boolean blockOnPersistentSend;
@@ -142,6 +148,7 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal
       this.consumerMaxRate = consumerMaxRate;
       this.producerWindowSize = producerWindowSize;
       this.producerMaxRate = producerMaxRate;
+      producerConfirmationWindowSize = DEFAULT_PRODUCER_CONFIRMATION_WINDOW_SIZE;
       this.blockOnAcknowledge = blockOnAcknowledge;
       this.blockOnNonPersistentSend = blockOnNonPersistentSend;
       this.blockOnPersistentSend = blockOnPersistentSend;
@@ -165,6 +172,7 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal
       consumerMaxRate = DEFAULT_CONSUMER_MAX_RATE;
       producerWindowSize = DEFAULT_PRODUCER_WINDOW_SIZE;
       producerMaxRate = DEFAULT_PRODUCER_MAX_RATE;
+      producerConfirmationWindowSize = DEFAULT_PRODUCER_CONFIRMATION_WINDOW_SIZE;
       blockOnAcknowledge = DEFAULT_BLOCK_ON_ACKNOWLEDGE;
       blockOnPersistentSend = DEFAULT_BLOCK_ON_PERSISTENT_SEND;
       blockOnNonPersistentSend = DEFAULT_BLOCK_ON_NON_PERSISTENT_SEND;
@@ -185,6 +193,7 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal
       consumerMaxRate = DEFAULT_CONSUMER_MAX_RATE;
       producerWindowSize = DEFAULT_PRODUCER_WINDOW_SIZE;
       producerMaxRate = DEFAULT_PRODUCER_MAX_RATE;
+      producerConfirmationWindowSize = DEFAULT_PRODUCER_CONFIRMATION_WINDOW_SIZE;
       blockOnAcknowledge = DEFAULT_BLOCK_ON_ACKNOWLEDGE;
       blockOnPersistentSend = DEFAULT_BLOCK_ON_PERSISTENT_SEND;
       blockOnNonPersistentSend = DEFAULT_BLOCK_ON_NON_PERSISTENT_SEND;
@@ -207,7 +216,19 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal
                                    xa,
                                    autoCommitSends,
                                    autoCommitAcks,                                   
-                                   cacheProducers);
+                                   cacheProducers,
+                                   DEFAULT_ACK_BATCH_SIZE);
+   }
+
+   public ClientSession createSession(final String username,
+                                      final String password,
+                                      final boolean xa,
+                                      final boolean autoCommitSends,
+                                      final boolean autoCommitAcks,
+                                      final boolean cacheProducers,
+                                      final int ackBatchSize) throws MessagingException
+   {
+      return createSessionInternal(username, password, xa, autoCommitSends, autoCommitAcks, cacheProducers, ackBatchSize);
    }
 
    public ClientSession createSession(final boolean xa,
@@ -215,7 +236,13 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal
                                       final boolean autoCommitAcks,                                   
                                       final boolean cacheProducers) throws MessagingException
    {
-      return createSessionInternal(null, null, xa, autoCommitSends, autoCommitAcks, cacheProducers);
+      return createSessionInternal(null,
+                                   null,
+                                   xa,
+                                   autoCommitSends,
+                                   autoCommitAcks,
+                                   cacheProducers,
+                                   DEFAULT_ACK_BATCH_SIZE);
    }
 
    public int getConsumerWindowSize()
@@ -238,6 +265,16 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal
       producerWindowSize = size;
    }
 
+   public int getProducerConfirmationWindowSize()
+   {
+      return producerConfirmationWindowSize;
+   }
+
+   public void setProducerConfirmationWindowSize(final int size)
+   {
+      producerConfirmationWindowSize = size;
+   }
+
    public int getProducerMaxRate()
    {
       return producerMaxRate;
@@ -472,7 +509,8 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal
                                                             final boolean xa,
                                                             final boolean autoCommitSends,
                                                             final boolean autoCommitAcks,                                                            
-                                                            final boolean cacheProducers) throws MessagingException
+                                                            final boolean cacheProducers,
+                                                            final int ackBatchSize) throws MessagingException
    {
       Version clientVersion = VersionLoader.getVersion();
 
@@ -536,6 +574,7 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal
                                                                autoCommitSends,
                                                                autoCommitAcks,
                                                                blockOnAcknowledge,
+                                                               ackBatchSize,
                                                                autoGroupId,
                                                                connection,
                                                                this,
@@ -80,6 +80,7 @@ import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -145,6 +146,13 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
 
    private final boolean blockOnAcknowledge;
 
+   private final int ackBatchSize;
+
+   // consumer id -> id of the last message acknowledged on the consumer, for acknowledgements not sent yet
+   private final Map<Long, Long> pendingAcks = new LinkedHashMap<Long, Long>();
+
+   private int pendingAckCount;
+
    private final boolean autoGroupId;
 
    private final Channel channel;
@@ -171,6 +179,7 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
                             final boolean autoCommitSends,
                             final boolean autoCommitAcks,
                             final boolean blockOnAcknowledge,
+                            final int ackBatchSize,
                             final boolean autoGroupId,
                             final RemotingConnection remotingConnection,
                             final ClientSessionFactory connectionFactory,
@@ -206,6 +215,8 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
 
       this.blockOnAcknowledge = blockOnAcknowledge;
 
+      this.ackBatchSize = ackBatchSize;
+
       this.autoGroupId = autoGroupId;
 
       this.channel = channel;
@@ -447,6 +458,7 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
                                            autoCommitSends && blockOnPersistentSend,
                                            response.getAutoGroupId(),
                                            response.getInitialCredits(),
+                                           connectionFactory.getProducerConfirmationWindowSize(),
                                            channel);
       }
 
@@ -464,6 +476,8 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
    {
       checkClosed();
 
+      flushAcks();
+
       channel.sendBlocking(new PacketImpl(PacketImpl.SESS_COMMIT));
    }
 
@@ -476,6 +490,8 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
       //This ensures messages are received in the same order after rollback w.r.t. to messages in the buffer
       //For core we could just do a straight rollback, it really depends if we want JMS style semantics or not...
 
+      flushAcks();
+
       boolean wasStarted = started;
 
       if (wasStarted)
@@ -613,15 +629,42 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
    {
       checkClosed();
 
-      SessionAcknowledgeMessage message = new SessionAcknowledgeMessage(consumerID, messageID, blockOnAcknowledge);
-
-      if (blockOnAcknowledge)
+      if (ackBatchSize > 1)
       {
-         channel.sendBlocking(message);
+         synchronized (pendingAcks)
+         {
+            pendingAcks.put(consumerID, messageID);
+
+            if (++pendingAckCount >= ackBatchSize)
+            {
+               flushAcks();
+            }
+         }
       }
       else
       {
-         channel.send(message);
+         sendAcknowledge(consumerID, messageID);
+      }
+   }
+
+   public void flushAcks() throws MessagingException
+   {
+      if (ackBatchSize <= 1)
+      {
+         return;
+      }
+
+      // The lock is held while sending so acknowledgements for the same consumer can't overtake each other
+      synchronized (pendingAcks)
+      {
+         for (Map.Entry<Long, Long> entry : pendingAcks.entrySet())
+         {
+            sendAcknowledge(entry.getKey(), entry.getValue());
+         }
+
+         pendingAcks.clear();
+
+         pendingAckCount = 0;
       }
    }
 
@@ -685,6 +728,28 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
       }
    }
 
+   public void receiveSendConfirmations(final long producerID, final long[] confirmationIDs) throws Exception
+   {
+      ClientProducerInternal producer = producers.get(producerID);
+
+      if (producer != null)
+      {
+         producer.receiveConfirmations(confirmationIDs);
+      }
+   }
+
+   public void receiveSendFailure(final long producerID,
+                                  final long confirmationID,
+                                  final MessagingException exception) throws Exception
+   {
+      ClientProducerInternal producer = producers.get(producerID);
+
+      if (producer != null)
+      {
+         producer.receiveFailure(confirmationID, exception);
+      }
+   }
+
    public void close() throws MessagingException
    {
       if (closed)
@@ -694,6 +759,8 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
 
       try
       {
+         flushAcks();
+
          closeChildren();
 
          channel.sendBlocking(new SessionCloseMessage());
@@ -806,6 +873,8 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
       checkXA();
       try
       {
+         flushAcks();
+
          Packet packet;
 
          if (flags == XAResource.TMSUSPEND)
@@ -1102,6 +1171,20 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
       }
    }
 
+   private void sendAcknowledge(final long consumerID, final long messageID) throws MessagingException
+   {
+      SessionAcknowledgeMessage message = new SessionAcknowledgeMessage(consumerID, messageID, blockOnAcknowledge);
+
+      if (blockOnAcknowledge)
+      {
+         channel.sendBlocking(message);
+      }
+      else
+      {
+         channel.send(message);
+      }
+   }
+
    private void doCleanup()
    {
       if (cacheProducers)
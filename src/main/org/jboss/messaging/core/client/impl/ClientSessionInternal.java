@@ -32,6 +32,11 @@ public interface ClientSessionInternal extends ClientSession
 
    void acknowledge(long consumerID, long messageID) throws MessagingException;
 
+   /**
+    * Sends any acknowledgements held back by ack batching
+    */
+   void flushAcks() throws MessagingException;
+
    void addConsumer(ClientConsumerInternal consumer);
 
    void addProducer(ClientProducerInternal producer);
@@ -50,6 +55,10 @@ public interface ClientSessionInternal extends ClientSession
 
    void receiveProducerCredits(long producerID, int credits) throws Exception;
 
+   void receiveSendConfirmations(long producerID, long[] confirmationIDs) throws Exception;
+
+   void receiveSendFailure(long producerID, long confirmationID, MessagingException exception) throws Exception;
+
    void handleReceiveMessage(long consumerID, ClientMessage message) throws Exception;
 
    boolean handleFailover(final RemotingConnection backupConnection);
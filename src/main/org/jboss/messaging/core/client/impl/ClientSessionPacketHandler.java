@@ -25,14 +25,21 @@ package org.jboss.messaging.core.client.impl;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.EXCEPTION;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_RECEIVETOKENS;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_RECEIVE_MSG;
+import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_RECEIVE_MSG_BATCH;
+import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_SEND_CONFIRMATION;
+import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_SEND_FAILED;
 
+import org.jboss.messaging.core.client.ClientMessage;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.remoting.ChannelHandler;
 import org.jboss.messaging.core.remoting.Packet;
 import org.jboss.messaging.core.remoting.impl.wireformat.MessagingExceptionMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionProducerFlowCreditMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionReceiveBatchMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionReceiveMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendConfirmationMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendFailedMessage;
 
 /**
  *
@@ -68,6 +75,24 @@ public class ClientSessionPacketHandler implements ChannelHandler
                
                break;
             }
+            case SESS_SEND_CONFIRMATION:
+            {
+               SessionSendConfirmationMessage message = (SessionSendConfirmationMessage) packet;
+   
+               clientSession.receiveSendConfirmations(message.getProducerID(), message.getConfirmationIDs());
+               
+               break;
+            }
+            case SESS_SEND_FAILED:
+            {
+               SessionSendFailedMessage message = (SessionSendFailedMessage) packet;
+   
+               clientSession.receiveSendFailure(message.getProducerID(),
+                                                message.getConfirmationID(),
+                                                message.getException());
+               
+               break;
+            }
             case SESS_RECEIVE_MSG:
             {
                SessionReceiveMessage message = (SessionReceiveMessage) packet;
@@ -76,6 +101,17 @@ public class ClientSessionPacketHandler implements ChannelHandler
                
                break;
             }
+            case SESS_RECEIVE_MSG_BATCH:
+            {
+               SessionReceiveBatchMessage message = (SessionReceiveBatchMessage) packet;
+               
+               for (ClientMessage clientMessage : message.getClientMessages())
+               {
+                  clientSession.handleReceiveMessage(message.getConsumerID(), clientMessage);
+               }
+               
+               break;
+            }
             case EXCEPTION:
             {
                //TODO - we can provide a means for async exceptions to get back to to client
@@ -84,6 +84,34 @@ public interface Configuration extends Serializable
 
    void setConnectionScanPeriod(long scanPeriod);
 
+   long getMessageExpiryScanPeriod();
+
+   void setMessageExpiryScanPeriod(long scanPeriod);
+
+   int getMessageExpiryBatchSize();
+
+   void setMessageExpiryBatchSize(int batchSize);
+
+   int getMessageExpiryMaxRate();
+
+   void setMessageExpiryMaxRate(int maxRate);
+
+   int getSessionDispatchMaxPoolSize();
+
+   void setSessionDispatchMaxPoolSize(int maxSize);
+
+   int getSessionDispatchMaxPendingPackets();
+
+   void setSessionDispatchMaxPendingPackets(int maxPending);
+
+   int getConsumerDeliveryBatchSize();
+
+   void setConsumerDeliveryBatchSize(int batchSize);
+
+   int getConsumerDeliveryBatchBytes();
+
+   void setConsumerDeliveryBatchBytes(int batchBytes);
+
    Set<TransportConfiguration> getAcceptorConfigurations();
 
    void setAcceptorConfigurations(Set<TransportConfiguration> infos);
@@ -135,6 +163,22 @@ public interface Configuration extends Serializable
 
    int getJournalBufferReuseSize();
 
+   int getJournalGroupCommitMaxBatchBytes();
+
+   void setJournalGroupCommitMaxBatchBytes(int maxBatchBytes);
+
+   long getJournalGroupCommitMaxWaitMicros();
+
+   void setJournalGroupCommitMaxWaitMicros(long maxWaitMicros);
+
+   int getJournalCompactMinFiles();
+
+   void setJournalCompactMinFiles(int minFiles);
+
+   int getJournalCompactPercentage();
+
+   void setJournalCompactPercentage(int percentage);
+
    boolean isCreateBindingsDir();
 
    void setCreateBindingsDir(boolean create);
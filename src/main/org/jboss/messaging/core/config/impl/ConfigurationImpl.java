@@ -51,6 +51,20 @@ public class ConfigurationImpl implements Configuration
 
    public static final long DEFAULT_CONNECTION_SCAN_PERIOD = 1000;
 
+   public static final long DEFAULT_MESSAGE_EXPIRY_SCAN_PERIOD = 30000;
+
+   public static final int DEFAULT_MESSAGE_EXPIRY_BATCH_SIZE = 100;
+
+   public static final int DEFAULT_MESSAGE_EXPIRY_MAX_RATE = -1;
+
+   public static final int DEFAULT_SESSION_DISPATCH_MAX_POOL_SIZE = 30;
+
+   public static final int DEFAULT_SESSION_DISPATCH_MAX_PENDING_PACKETS = 1000;
+
+   public static final int DEFAULT_CONSUMER_DELIVERY_BATCH_SIZE = 100;
+
+   public static final int DEFAULT_CONSUMER_DELIVERY_BATCH_BYTES = 64 * 1024;
+
    public static final String DEFAULT_BINDINGS_DIRECTORY = "data/bindings";
 
    public static final boolean DEFAULT_CREATE_BINDINGS_DIR = true;
@@ -75,6 +89,14 @@ public class ConfigurationImpl implements Configuration
 
    public static final int DEFAULT_JOURNAL_REUSE_BUFFER_SIZE = -1;
 
+   public static final int DEFAULT_JOURNAL_GROUP_COMMIT_MAX_BATCH_BYTES = -1;
+
+   public static final long DEFAULT_JOURNAL_GROUP_COMMIT_MAX_WAIT_MICROS = 1000;
+
+   public static final int DEFAULT_JOURNAL_COMPACT_MIN_FILES = 10;
+
+   public static final int DEFAULT_JOURNAL_COMPACT_PERCENTAGE = 30;
+
    public static final boolean DEFAULT_WILDCARD_ROUTING_ENABLED = false;
 
    // Attributes -----------------------------------------------------------------------------
@@ -99,6 +121,20 @@ public class ConfigurationImpl implements Configuration
 
    protected long connectionScanPeriod = DEFAULT_CONNECTION_SCAN_PERIOD;
 
+   protected long messageExpiryScanPeriod = DEFAULT_MESSAGE_EXPIRY_SCAN_PERIOD;
+
+   protected int messageExpiryBatchSize = DEFAULT_MESSAGE_EXPIRY_BATCH_SIZE;
+
+   protected int messageExpiryMaxRate = DEFAULT_MESSAGE_EXPIRY_MAX_RATE;
+
+   protected int sessionDispatchMaxPoolSize = DEFAULT_SESSION_DISPATCH_MAX_POOL_SIZE;
+
+   protected int sessionDispatchMaxPendingPackets = DEFAULT_SESSION_DISPATCH_MAX_PENDING_PACKETS;
+
+   protected int consumerDeliveryBatchSize = DEFAULT_CONSUMER_DELIVERY_BATCH_SIZE;
+
+   protected int consumerDeliveryBatchBytes = DEFAULT_CONSUMER_DELIVERY_BATCH_BYTES;
+
    protected List<String> interceptorClassNames = new ArrayList<String>();
 
    protected Set<TransportConfiguration> acceptorConfigs = new HashSet<TransportConfiguration>();
@@ -135,6 +171,14 @@ public class ConfigurationImpl implements Configuration
 
    protected int journalBufferReuseSize = DEFAULT_JOURNAL_REUSE_BUFFER_SIZE;
 
+   protected int journalGroupCommitMaxBatchBytes = DEFAULT_JOURNAL_GROUP_COMMIT_MAX_BATCH_BYTES;
+
+   protected long journalGroupCommitMaxWaitMicros = DEFAULT_JOURNAL_GROUP_COMMIT_MAX_WAIT_MICROS;
+
+   protected int journalCompactMinFiles = DEFAULT_JOURNAL_COMPACT_MIN_FILES;
+
+   protected int journalCompactPercentage = DEFAULT_JOURNAL_COMPACT_PERCENTAGE;
+
    protected boolean wildcardRoutingEnabled = DEFAULT_WILDCARD_ROUTING_ENABLED;
 
    public boolean isClustered()
@@ -217,6 +261,76 @@ public class ConfigurationImpl implements Configuration
       connectionScanPeriod = scanPeriod;
    }
 
+   public long getMessageExpiryScanPeriod()
+   {
+      return messageExpiryScanPeriod;
+   }
+
+   public void setMessageExpiryScanPeriod(final long scanPeriod)
+   {
+      messageExpiryScanPeriod = scanPeriod;
+   }
+
+   public int getMessageExpiryBatchSize()
+   {
+      return messageExpiryBatchSize;
+   }
+
+   public void setMessageExpiryBatchSize(final int batchSize)
+   {
+      messageExpiryBatchSize = batchSize;
+   }
+
+   public int getMessageExpiryMaxRate()
+   {
+      return messageExpiryMaxRate;
+   }
+
+   public void setMessageExpiryMaxRate(final int maxRate)
+   {
+      messageExpiryMaxRate = maxRate;
+   }
+
+   public int getSessionDispatchMaxPoolSize()
+   {
+      return sessionDispatchMaxPoolSize;
+   }
+
+   public void setSessionDispatchMaxPoolSize(final int maxSize)
+   {
+      sessionDispatchMaxPoolSize = maxSize;
+   }
+
+   public int getSessionDispatchMaxPendingPackets()
+   {
+      return sessionDispatchMaxPendingPackets;
+   }
+
+   public void setSessionDispatchMaxPendingPackets(final int maxPending)
+   {
+      sessionDispatchMaxPendingPackets = maxPending;
+   }
+
+   public int getConsumerDeliveryBatchSize()
+   {
+      return consumerDeliveryBatchSize;
+   }
+
+   public void setConsumerDeliveryBatchSize(final int batchSize)
+   {
+      consumerDeliveryBatchSize = batchSize;
+   }
+
+   public int getConsumerDeliveryBatchBytes()
+   {
+      return consumerDeliveryBatchBytes;
+   }
+
+   public void setConsumerDeliveryBatchBytes(final int batchBytes)
+   {
+      consumerDeliveryBatchBytes = batchBytes;
+   }
+
    public List<String> getInterceptorClassNames()
    {
       return interceptorClassNames;
@@ -392,6 +506,46 @@ public class ConfigurationImpl implements Configuration
       return journalBufferReuseSize;
    }
 
+   public int getJournalGroupCommitMaxBatchBytes()
+   {
+      return journalGroupCommitMaxBatchBytes;
+   }
+
+   public void setJournalGroupCommitMaxBatchBytes(final int maxBatchBytes)
+   {
+      journalGroupCommitMaxBatchBytes = maxBatchBytes;
+   }
+
+   public long getJournalGroupCommitMaxWaitMicros()
+   {
+      return journalGroupCommitMaxWaitMicros;
+   }
+
+   public void setJournalGroupCommitMaxWaitMicros(final long maxWaitMicros)
+   {
+      journalGroupCommitMaxWaitMicros = maxWaitMicros;
+   }
+
+   public int getJournalCompactMinFiles()
+   {
+      return journalCompactMinFiles;
+   }
+
+   public void setJournalCompactMinFiles(final int minFiles)
+   {
+      journalCompactMinFiles = minFiles;
+   }
+
+   public int getJournalCompactPercentage()
+   {
+      return journalCompactPercentage;
+   }
+
+   public void setJournalCompactPercentage(final int percentage)
+   {
+      journalCompactPercentage = percentage;
+   }
+
    public long getPagingMaxGlobalSizeBytes()
    {
       return pagingMaxGlobalSize;
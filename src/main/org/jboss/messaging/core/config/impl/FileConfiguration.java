@@ -89,6 +89,20 @@ public class FileConfiguration extends ConfigurationImpl
       packetConfirmationBatchSize = getInteger(e, "packet-confirmation-batch-size", packetConfirmationBatchSize);
       
       connectionScanPeriod = getLong(e, "connection-scan-period", connectionScanPeriod);
+      
+      messageExpiryScanPeriod = getLong(e, "message-expiry-scan-period", messageExpiryScanPeriod);
+      
+      messageExpiryBatchSize = getInteger(e, "message-expiry-batch-size", messageExpiryBatchSize);
+      
+      messageExpiryMaxRate = getInteger(e, "message-expiry-max-rate", messageExpiryMaxRate);
+      
+      sessionDispatchMaxPoolSize = getInteger(e, "session-dispatch-max-pool-size", sessionDispatchMaxPoolSize);
+      
+      sessionDispatchMaxPendingPackets = getInteger(e, "session-dispatch-max-pending-packets", sessionDispatchMaxPendingPackets);
+      
+      consumerDeliveryBatchSize = getInteger(e, "consumer-delivery-batch-size", consumerDeliveryBatchSize);
+      
+      consumerDeliveryBatchBytes = getInteger(e, "consumer-delivery-batch-bytes", consumerDeliveryBatchBytes);
             
       NodeList interceptorNodes = e.getElementsByTagName("remoting-interceptors");
 
@@ -320,7 +334,7 @@ public class FileConfiguration extends ConfigurationImpl
 
       String s = getString(e, "journal-type", journalType.toString());
 
-      if (s == null || (!s.equals(JournalType.NIO.toString()) && !s.equals(JournalType.ASYNCIO.toString()) && !s.equals(JournalType.JDBC.toString())))
+      if (s == null || (!s.equals(JournalType.NIO.toString()) && !s.equals(JournalType.ASYNCIO.toString()) && !s.equals(JournalType.MAPPED.toString()) && !s.equals(JournalType.JDBC.toString())))
       {
          throw new IllegalArgumentException("Invalid journal type " + s);
       }
@@ -333,6 +347,10 @@ public class FileConfiguration extends ConfigurationImpl
       {
          journalType = JournalType.ASYNCIO;
       }
+      else if (s.equals(JournalType.MAPPED.toString()))
+      {
+         journalType = JournalType.MAPPED;
+      }
       else if (s.equals(JournalType.JDBC.toString()))
       {
          journalType = JournalType.JDBC;
@@ -346,6 +364,14 @@ public class FileConfiguration extends ConfigurationImpl
       
       journalBufferReuseSize = getInteger(e, "journal-buffer-reuse-size", journalBufferReuseSize);
 
+      journalGroupCommitMaxBatchBytes = getInteger(e, "journal-group-commit-max-batch-bytes", journalGroupCommitMaxBatchBytes);
+
+      journalGroupCommitMaxWaitMicros = getLong(e, "journal-group-commit-max-wait-micros", journalGroupCommitMaxWaitMicros);
+
+      journalCompactMinFiles = getInteger(e, "journal-compact-min-files", journalCompactMinFiles);
+
+      journalCompactPercentage = getInteger(e, "journal-compact-percentage", journalCompactPercentage);
+
       journalMinFiles = getInteger(e, "journal-min-files", journalMinFiles);
 
       journalMaxAIO = getInteger(e, "journal-max-aio", journalMaxAIO);
@@ -49,6 +49,10 @@ public class QueueSettingsDeployer extends XmlDeployer
    
    private static final String PAGE_SIZE_BYTES_NODE_NAME = "page-size-bytes";
    
+   private static final String DEPAGE_IN_PLACE_NODE_NAME = "depage-in-place";
+
+   private static final String BLOCK_PRODUCERS_WHEN_FULL_NODE_NAME = "block-producers-when-full";
+   
    private static final String DISTRIBUTION_POLICY_CLASS_NODE_NAME = "distribution-policy-class";
    
    private static final String MESSAGE_COUNTER_HISTORY_DAY_LIMIT_NODE_NAME = "message-counter-history-day-limit";
@@ -125,6 +129,14 @@ public class QueueSettingsDeployer extends XmlDeployer
          {
             queueSettings.setDropMessagesWhenFull(Boolean.valueOf(child.getTextContent().trim()));
          }
+         else if (DEPAGE_IN_PLACE_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            queueSettings.setDepageInPlace(Boolean.valueOf(child.getTextContent().trim()));
+         }
+         else if (BLOCK_PRODUCERS_WHEN_FULL_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            queueSettings.setBlockProducersWhenFull(Boolean.valueOf(child.getTextContent().trim()));
+         }
       }
       
       queueSettingsRepository.addMatch(match, queueSettings);
@@ -0,0 +1,958 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.filter.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jboss.messaging.core.server.ServerMessage;
+import org.jboss.messaging.util.Pair;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * A FilterCompiler
+ *
+ * Compiles the Operator tree built by the FilterParser into a tree of immutable Expressions.
+ *
+ * The compiled tree holds no per evaluation state, so the same filter can be evaluated by several threads at once.
+ * Identifiers are resolved once: header fields are read straight from the message and property keys are
+ * pre-built SimpleStrings. String literals become SimpleStrings so they compare directly against property values,
+ * and numeric values are compared as primitives.
+ *
+ * The null (unknown) semantics are the same as the interpreted Operator.
+ *
+ */
+class FilterCompiler
+{
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString DURABLE = new SimpleString("DURABLE");
+
+   private static final SimpleString NON_DURABLE = new SimpleString("NON_DURABLE");
+
+   private static final int MESSAGE_ID = 0;
+
+   private static final int TIMESTAMP = 1;
+
+   private static final int EXPIRATION = 2;
+
+   // Static --------------------------------------------------------
+
+   static Expression compile(final Object node) throws Exception
+   {
+      if (node instanceof Operator)
+      {
+         return compileOperator((Operator)node);
+      }
+      else if (node instanceof Identifier)
+      {
+         return compileIdentifier(((Identifier)node).getName());
+      }
+      else if (node instanceof String)
+      {
+         return new Constant(new SimpleString((String)node));
+      }
+      else if (node instanceof Long || node instanceof Double || node instanceof Boolean)
+      {
+         return new Constant(node);
+      }
+      else
+      {
+         throw new Exception("Cannot compile " + node);
+      }
+   }
+
+   /**
+    * Finds a property that a message must have, with one of a set of string values, for the filter to match.
+    *
+    * Recognises equality and IN tests of a property against string literals, the conjunction of a term with
+    * anything else, and the disjunction of two terms on the same property.
+    *
+    * @return Pair&lt;property, values&gt;, or null if the filter has no such term
+    */
+   static Pair<SimpleString, Set<SimpleString>> findIndexTerm(final Object node)
+   {
+      if (!(node instanceof Operator))
+      {
+         return null;
+      }
+
+      Operator operator = (Operator)node;
+
+      switch (operator.operation)
+      {
+         case Operator.EQUAL:
+            if (isProperty(operator.oper1) && operator.oper2 instanceof String)
+            {
+               return newIndexTerm((Identifier)operator.oper1, (String)operator.oper2);
+            }
+            else if (operator.oper1 instanceof String && isProperty(operator.oper2))
+            {
+               return newIndexTerm((Identifier)operator.oper2, (String)operator.oper1);
+            }
+            return null;
+         case Operator.IN:
+            if (isProperty(operator.oper1))
+            {
+               return new Pair<SimpleString, Set<SimpleString>>(new SimpleString(((Identifier)operator.oper1).getName()),
+                                                              toSimpleStrings((Set<?>)operator.oper2));
+            }
+            return null;
+         case Operator.AND:
+         {
+            Pair<SimpleString, Set<SimpleString>> term = findIndexTerm(operator.oper1);
+
+            return term != null ? term : findIndexTerm(operator.oper2);
+         }
+         case Operator.OR:
+         {
+            Pair<SimpleString, Set<SimpleString>> left = findIndexTerm(operator.oper1);
+
+            Pair<SimpleString, Set<SimpleString>> right = findIndexTerm(operator.oper2);
+
+            if (left == null || right == null || !left.a.equals(right.a))
+            {
+               return null;
+            }
+
+            left.b.addAll(right.b);
+
+            return left;
+         }
+         default:
+            return null;
+      }
+   }
+
+   // Package protected ---------------------------------------------
+
+   /**
+    * Returns the selector type of a value, one of Operator.STRING, Operator.LONG, Operator.DOUBLE or Operator.BOOLEAN
+    */
+   static int typeOf(final Object value) throws Exception
+   {
+      Class<?> clazz = value.getClass();
+
+      if (clazz == SimpleString.class)
+      {
+         return Operator.STRING;
+      }
+      else if (clazz == Long.class || clazz == Integer.class || clazz == Short.class || clazz == Byte.class)
+      {
+         return Operator.LONG;
+      }
+      else if (clazz == Double.class || clazz == Float.class)
+      {
+         return Operator.DOUBLE;
+      }
+      else if (clazz == Boolean.class)
+      {
+         return Operator.BOOLEAN;
+      }
+      else
+      {
+         throw new Exception("Bad Object: '" + clazz.getName() + "'");
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private static Expression compileIdentifier(final String name)
+   {
+      if ("JBMMessageID".equals(name))
+      {
+         return new LongHeader(MESSAGE_ID);
+      }
+      else if ("JBMTimestamp".equals(name))
+      {
+         return new LongHeader(TIMESTAMP);
+      }
+      else if ("JBMExpiration".equals(name))
+      {
+         return new LongHeader(EXPIRATION);
+      }
+      else if ("JBMPriority".equals(name))
+      {
+         return new PriorityHeader();
+      }
+      else if ("JBMDurable".equals(name))
+      {
+         return new DurableHeader();
+      }
+      else
+      {
+         return new Property(new SimpleString(name));
+      }
+   }
+
+   private static Expression compileOperator(final Operator operator) throws Exception
+   {
+      final int operation = operator.operation;
+
+      switch (operation)
+      {
+         case Operator.AND:
+            return new And(compile(operator.oper1), compile(operator.oper2));
+         case Operator.OR:
+            return new Or(compile(operator.oper1), compile(operator.oper2));
+         case Operator.NOT:
+            return new Not(compile(operator.oper1));
+         case Operator.EQUAL:
+         case Operator.DIFFERENT:
+         case Operator.GT:
+         case Operator.GE:
+         case Operator.LT:
+         case Operator.LE:
+            return compileComparison(operation, compile(operator.oper1), compile(operator.oper2));
+         case Operator.ADD:
+         case Operator.SUB:
+         case Operator.MUL:
+         case Operator.DIV:
+            return new Arithmetic(operation, compile(operator.oper1), compile(operator.oper2));
+         case Operator.NEG:
+            return new Negate(compile(operator.oper1));
+         case Operator.BETWEEN:
+            return new Between(false, compile(operator.oper1), compile(operator.oper2), compile(operator.oper3));
+         case Operator.NOT_BETWEEN:
+            return new Between(true, compile(operator.oper1), compile(operator.oper2), compile(operator.oper3));
+         case Operator.LIKE:
+         case Operator.NOT_LIKE:
+         case Operator.LIKE_ESCAPE:
+         case Operator.NOT_LIKE_ESCAPE:
+            return compileLike(operator);
+         case Operator.IS_NULL:
+            return new IsNull(false, compile(operator.oper1));
+         case Operator.IS_NOT_NULL:
+            return new IsNull(true, compile(operator.oper1));
+         case Operator.IN:
+            return new In(false, compile(operator.oper1), toSimpleStrings((Set<?>)operator.oper2));
+         case Operator.NOT_IN:
+            return new In(true, compile(operator.oper1), toSimpleStrings((Set<?>)operator.oper2));
+         default:
+            throw new Exception("Unknown operation: " + operator);
+      }
+   }
+
+   private static Expression compileComparison(final int operation, final Expression left, final Expression right)
+   {
+      // The common case of a long header field compared against a literal doesn't need to box the header
+      if (left instanceof LongHeader && right instanceof Constant)
+      {
+         Object value = ((Constant)right).value;
+
+         if (value instanceof Long)
+         {
+            return new LongHeaderComparison(operation, (LongHeader)left, ((Long)value).longValue());
+         }
+      }
+
+      if (operation == Operator.EQUAL || operation == Operator.DIFFERENT)
+      {
+         return new Equality(operation == Operator.DIFFERENT, left, right);
+      }
+      else
+      {
+         return new Relational(operation, left, right);
+      }
+   }
+
+   private static Expression compileLike(final Operator operator) throws Exception
+   {
+      boolean not = operator.operation == Operator.NOT_LIKE || operator.operation == Operator.NOT_LIKE_ESCAPE;
+
+      boolean escape = operator.operation == Operator.LIKE_ESCAPE || operator.operation == Operator.NOT_LIKE_ESCAPE;
+
+      if (!(operator.oper2 instanceof String))
+      {
+         throw new Exception("LIKE: pattern must be a string literal " + operator);
+      }
+
+      Character escapeChar = null;
+
+      if (escape)
+      {
+         if (!(operator.oper3 instanceof String) || ((String)operator.oper3).length() != 1)
+         {
+            throw new Exception("LIKE ESCAPE: Bad escape character " + operator.oper3);
+         }
+
+         escapeChar = Character.valueOf(((String)operator.oper3).charAt(0));
+      }
+
+      return new Like(not, compile(operator.oper1), new RegExp((String)operator.oper2, escapeChar));
+   }
+
+   private static boolean isProperty(final Object node)
+   {
+      return node instanceof Identifier && compileIdentifier(((Identifier)node).getName()) instanceof Property;
+   }
+
+   private static Pair<SimpleString, Set<SimpleString>> newIndexTerm(final Identifier identifier, final String value)
+   {
+      Set<SimpleString> values = new HashSet<SimpleString>();
+
+      values.add(new SimpleString(value));
+
+      return new Pair<SimpleString, Set<SimpleString>>(new SimpleString(identifier.getName()), values);
+   }
+
+   private static Set<SimpleString> toSimpleStrings(final Set<?> strings)
+   {
+      Set<SimpleString> set = new HashSet<SimpleString>();
+
+      for (Object str : strings)
+      {
+         set.add(new SimpleString((String)str));
+      }
+
+      return set;
+   }
+
+   private static boolean isNumeric(final int type)
+   {
+      return type == Operator.LONG || type == Operator.DOUBLE;
+   }
+
+   private static Boolean toBoolean(final Object value) throws Exception
+   {
+      if (value == null)
+      {
+         return null;
+      }
+
+      if (value.getClass() != Boolean.class)
+      {
+         throw new Exception("Bad Object: expected Boolean got '" + value.getClass().getName() + "'");
+      }
+
+      return (Boolean)value;
+   }
+
+   private static boolean compare(final int operation, final long left, final long right)
+   {
+      switch (operation)
+      {
+         case Operator.EQUAL:
+            return left == right;
+         case Operator.DIFFERENT:
+            return left != right;
+         case Operator.GT:
+            return left > right;
+         case Operator.GE:
+            return left >= right;
+         case Operator.LT:
+            return left < right;
+         default:
+            return left <= right;
+      }
+   }
+
+   private static boolean compare(final int operation, final double left, final double right)
+   {
+      switch (operation)
+      {
+         case Operator.EQUAL:
+            return left == right;
+         case Operator.DIFFERENT:
+            return left != right;
+         case Operator.GT:
+            return left > right;
+         case Operator.GE:
+            return left >= right;
+         case Operator.LT:
+            return left < right;
+         default:
+            return left <= right;
+      }
+   }
+
+   /**
+    * Compares two values already known to be numeric
+    */
+   private static boolean compareNumbers(final int operation,
+                                         final Object left,
+                                         final int leftType,
+                                         final Object right,
+                                         final int rightType)
+   {
+      if (leftType == Operator.LONG && rightType == Operator.LONG)
+      {
+         return compare(operation, ((Number)left).longValue(), ((Number)right).longValue());
+      }
+      else
+      {
+         return compare(operation, ((Number)left).doubleValue(), ((Number)right).doubleValue());
+      }
+   }
+
+   /**
+    * GT, GE, LT and LE of a value against an expression: null if either side is null,
+    * false if either side is not numeric
+    */
+   private static Boolean relational(final int operation,
+                                     final Object left,
+                                     final Expression right,
+                                     final ServerMessage message) throws Exception
+   {
+      if (left == null)
+      {
+         return null;
+      }
+
+      int leftType = typeOf(left);
+
+      if (!isNumeric(leftType))
+      {
+         return Boolean.FALSE;
+      }
+
+      Object rightValue = right.evaluate(message);
+
+      if (rightValue == null)
+      {
+         return null;
+      }
+
+      int rightType = typeOf(rightValue);
+
+      if (!isNumeric(rightType))
+      {
+         return Boolean.FALSE;
+      }
+
+      return Boolean.valueOf(compareNumbers(operation, left, leftType, rightValue, rightType));
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * A compiled selector node. Evaluates to Boolean.TRUE, Boolean.FALSE, null for unknown,
+    * or the value of an identifier, literal or arithmetic expression
+    */
+   interface Expression
+   {
+      Object evaluate(ServerMessage message) throws Exception;
+   }
+
+   private static final class Constant implements Expression
+   {
+      private final Object value;
+
+      Constant(final Object value)
+      {
+         this.value = value;
+      }
+
+      public Object evaluate(final ServerMessage message)
+      {
+         return value;
+      }
+   }
+
+   private static final class Property implements Expression
+   {
+      private final SimpleString key;
+
+      Property(final SimpleString key)
+      {
+         this.key = key;
+      }
+
+      public Object evaluate(final ServerMessage message)
+      {
+         return message.getProperty(key);
+      }
+   }
+
+   private static final class LongHeader implements Expression
+   {
+      private final int field;
+
+      LongHeader(final int field)
+      {
+         this.field = field;
+      }
+
+      long getLong(final ServerMessage message)
+      {
+         switch (field)
+         {
+            case MESSAGE_ID:
+               return message.getMessageID();
+            case TIMESTAMP:
+               return message.getTimestamp();
+            default:
+               return message.getExpiration();
+         }
+      }
+
+      public Object evaluate(final ServerMessage message)
+      {
+         return Long.valueOf(getLong(message));
+      }
+   }
+
+   private static final class PriorityHeader implements Expression
+   {
+      public Object evaluate(final ServerMessage message)
+      {
+         // Priorities are in the Integer cache range
+         return Integer.valueOf(message.getPriority());
+      }
+   }
+
+   private static final class DurableHeader implements Expression
+   {
+      public Object evaluate(final ServerMessage message)
+      {
+         return message.isDurable() ? DURABLE : NON_DURABLE;
+      }
+   }
+
+   private static final class LongHeaderComparison implements Expression
+   {
+      private final int operation;
+
+      private final LongHeader header;
+
+      private final long value;
+
+      LongHeaderComparison(final int operation, final LongHeader header, final long value)
+      {
+         this.operation = operation;
+         this.header = header;
+         this.value = value;
+      }
+
+      public Object evaluate(final ServerMessage message)
+      {
+         return Boolean.valueOf(compare(operation, header.getLong(message), value));
+      }
+   }
+
+   private static final class And implements Expression
+   {
+      private final Expression left;
+
+      private final Expression right;
+
+      And(final Expression left, final Expression right)
+      {
+         this.left = left;
+         this.right = right;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         Boolean leftValue = toBoolean(left.evaluate(message));
+
+         if (leftValue != null && !leftValue.booleanValue())
+         {
+            return Boolean.FALSE;
+         }
+
+         Boolean rightValue = toBoolean(right.evaluate(message));
+
+         if (rightValue == null)
+         {
+            return null;
+         }
+
+         if (leftValue == null)
+         {
+            return rightValue.booleanValue() ? null : Boolean.FALSE;
+         }
+
+         return rightValue;
+      }
+   }
+
+   private static final class Or implements Expression
+   {
+      private final Expression left;
+
+      private final Expression right;
+
+      Or(final Expression left, final Expression right)
+      {
+         this.left = left;
+         this.right = right;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         Boolean leftValue = toBoolean(left.evaluate(message));
+
+         if (leftValue != null && leftValue.booleanValue())
+         {
+            return Boolean.TRUE;
+         }
+
+         Boolean rightValue = toBoolean(right.evaluate(message));
+
+         if (rightValue != null && rightValue.booleanValue())
+         {
+            return Boolean.TRUE;
+         }
+
+         if (leftValue == null || rightValue == null)
+         {
+            return null;
+         }
+
+         return Boolean.FALSE;
+      }
+   }
+
+   private static final class Not implements Expression
+   {
+      private final Expression expression;
+
+      Not(final Expression expression)
+      {
+         this.expression = expression;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         Boolean value = toBoolean(expression.evaluate(message));
+
+         if (value == null)
+         {
+            return null;
+         }
+
+         return value.booleanValue() ? Boolean.FALSE : Boolean.TRUE;
+      }
+   }
+
+   private static final class Equality implements Expression
+   {
+      private final boolean different;
+
+      private final Expression left;
+
+      private final Expression right;
+
+      Equality(final boolean different, final Expression left, final Expression right)
+      {
+         this.different = different;
+         this.left = left;
+         this.right = right;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object leftValue = left.evaluate(message);
+
+         if (leftValue == null)
+         {
+            return Boolean.FALSE;
+         }
+
+         int leftType = typeOf(leftValue);
+
+         Object rightValue = right.evaluate(message);
+
+         if (isNumeric(leftType))
+         {
+            if (rightValue == null)
+            {
+               return null;
+            }
+
+            int rightType = typeOf(rightValue);
+
+            if (!isNumeric(rightType))
+            {
+               return Boolean.FALSE;
+            }
+
+            return Boolean.valueOf(compareNumbers(different ? Operator.DIFFERENT : Operator.EQUAL,
+                                                  leftValue,
+                                                  leftType,
+                                                  rightValue,
+                                                  rightType));
+         }
+
+         if (rightValue == null)
+         {
+            return Boolean.FALSE;
+         }
+
+         if (typeOf(rightValue) != leftType)
+         {
+            throw new Exception("Bad Object: expected '" + Operator.getClassName(leftType) +
+                                "' got '" +
+                                rightValue.getClass().getName() +
+                                "'");
+         }
+
+         return Boolean.valueOf(leftValue.equals(rightValue) != different);
+      }
+   }
+
+   private static final class Relational implements Expression
+   {
+      private final int operation;
+
+      private final Expression left;
+
+      private final Expression right;
+
+      Relational(final int operation, final Expression left, final Expression right)
+      {
+         this.operation = operation;
+         this.left = left;
+         this.right = right;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         return relational(operation, left.evaluate(message), right, message);
+      }
+   }
+
+   private static final class Between implements Expression
+   {
+      private final boolean not;
+
+      private final Expression value;
+
+      private final Expression low;
+
+      private final Expression high;
+
+      Between(final boolean not, final Expression value, final Expression low, final Expression high)
+      {
+         this.not = not;
+         this.value = value;
+         this.low = low;
+         this.high = high;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object v = value.evaluate(message);
+
+         Boolean res = relational(not ? Operator.LT : Operator.GE, v, low, message);
+
+         // NOT BETWEEN is satisfied by the first test, BETWEEN is refuted by it
+         if (res == null || res.booleanValue() == not)
+         {
+            return res;
+         }
+
+         return relational(not ? Operator.GT : Operator.LE, v, high, message);
+      }
+   }
+
+   private static final class Arithmetic implements Expression
+   {
+      private final int operation;
+
+      private final Expression left;
+
+      private final Expression right;
+
+      Arithmetic(final int operation, final Expression left, final Expression right)
+      {
+         this.operation = operation;
+         this.left = left;
+         this.right = right;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object leftValue = left.evaluate(message);
+
+         Object rightValue = right.evaluate(message);
+
+         if (leftValue == null || rightValue == null)
+         {
+            return null;
+         }
+
+         int leftType = typeOf(leftValue);
+
+         int rightType = typeOf(rightValue);
+
+         if (!isNumeric(leftType) || !isNumeric(rightType))
+         {
+            throw new Exception("Bad Object for operation: " + Operator.operationString(operation));
+         }
+
+         if (leftType == Operator.LONG && rightType == Operator.LONG)
+         {
+            long l = ((Number)leftValue).longValue();
+
+            long r = ((Number)rightValue).longValue();
+
+            switch (operation)
+            {
+               case Operator.ADD:
+                  return Long.valueOf(l + r);
+               case Operator.SUB:
+                  return Long.valueOf(l - r);
+               case Operator.MUL:
+                  return Long.valueOf(l * r);
+               default:
+                  return Long.valueOf(l / r);
+            }
+         }
+         else
+         {
+            double l = ((Number)leftValue).doubleValue();
+
+            double r = ((Number)rightValue).doubleValue();
+
+            switch (operation)
+            {
+               case Operator.ADD:
+                  return Double.valueOf(l + r);
+               case Operator.SUB:
+                  return Double.valueOf(l - r);
+               case Operator.MUL:
+                  return Double.valueOf(l * r);
+               default:
+                  return Double.valueOf(l / r);
+            }
+         }
+      }
+   }
+
+   private static final class Negate implements Expression
+   {
+      private final Expression expression;
+
+      Negate(final Expression expression)
+      {
+         this.expression = expression;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = expression.evaluate(message);
+
+         if (value == null)
+         {
+            return null;
+         }
+
+         switch (typeOf(value))
+         {
+            case Operator.LONG:
+               return Long.valueOf(-((Number)value).longValue());
+            case Operator.DOUBLE:
+               return Double.valueOf(-((Number)value).doubleValue());
+            default:
+               throw new Exception("Bad Object for operation: NEG");
+         }
+      }
+   }
+
+   private static final class Like implements Expression
+   {
+      private final boolean not;
+
+      private final Expression expression;
+
+      private final RegExp regExp;
+
+      Like(final boolean not, final Expression expression, final RegExp regExp)
+      {
+         this.not = not;
+         this.expression = expression;
+         this.regExp = regExp;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = expression.evaluate(message);
+
+         if (value == null)
+         {
+            return null;
+         }
+
+         if (typeOf(value) != Operator.STRING)
+         {
+            throw new Exception("Bad Object for operation: LIKE");
+         }
+
+         return Boolean.valueOf(regExp.isMatch((SimpleString)value) != not);
+      }
+   }
+
+   private static final class IsNull implements Expression
+   {
+      private final boolean not;
+
+      private final Expression expression;
+
+      IsNull(final boolean not, final Expression expression)
+      {
+         this.not = not;
+         this.expression = expression;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         return Boolean.valueOf((expression.evaluate(message) == null) != not);
+      }
+   }
+
+   private static final class In implements Expression
+   {
+      private final boolean not;
+
+      private final Expression expression;
+
+      private final Set<SimpleString> set;
+
+      In(final boolean not, final Expression expression, final Set<SimpleString> set)
+      {
+         this.not = not;
+         this.expression = expression;
+         this.set = set;
+      }
+
+      public Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = expression.evaluate(message);
+
+         if (value == null)
+         {
+            return null;
+         }
+
+         if (not && typeOf(value) != Operator.STRING)
+         {
+            throw new Exception("Bad Object for operation: NOT_IN");
+         }
+
+         return Boolean.valueOf(set.contains(value) != not);
+      }
+   }
+}
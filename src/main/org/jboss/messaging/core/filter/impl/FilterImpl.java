@@ -22,13 +22,16 @@
 
 package org.jboss.messaging.core.filter.impl;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.jboss.messaging.core.exception.MessagingException;
 import org.jboss.messaging.core.filter.Filter;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.server.ServerMessage;
+import org.jboss.messaging.util.Pair;
 import org.jboss.messaging.util.SimpleString;
 
 /**
@@ -67,13 +70,14 @@ public class FilterImpl implements Filter
   
   private final String filterString;
 
-  private final Map<String, Identifier> identifiers = new HashMap<String, Identifier>();
+  // The compiled filter is stateless, so match can be called concurrently
+  private final FilterCompiler.Expression expression;
   
-  private final Operator operator;
+  // A property whose value must be one of indexedValues for the filter to match, or null
+  private final SimpleString indexedProperty;
   
-  private final FilterParser parser = new FilterParser();
+  private final Set<SimpleString> indexedValues;
   
-  //TODO - convert to work natively with SimpleString
   public FilterImpl(final SimpleString str) throws MessagingException
   {
      this.filterString = str == null ? null : str.toString();
@@ -81,7 +85,17 @@ public class FilterImpl implements Filter
 
      try
      {
-        operator = (Operator)parser.parse(filterString, identifiers);
+        Map<String, Identifier> identifiers = new HashMap<String, Identifier>();
+        
+        Operator operator = (Operator)new FilterParser().parse(filterString, identifiers);
+        
+        expression = FilterCompiler.compile(operator);
+        
+        Pair<SimpleString, Set<SimpleString>> term = FilterCompiler.findIndexTerm(operator);
+        
+        indexedProperty = term == null ? null : term.a;
+        
+        indexedValues = term == null ? null : Collections.unmodifiableSet(term.b);
      }
      catch (Throwable e)
      {   	  
@@ -89,6 +103,25 @@ public class FilterImpl implements Filter
      }
   }
   
+  // Public --------------------------------------------------------------------------
+  
+  /**
+   * @return the name of a string property the message must have for this filter to match,
+   *         or null if the filter has no such single property test
+   */
+  public SimpleString getIndexedProperty()
+  {
+     return indexedProperty;
+  }
+  
+  /**
+   * @return the values of the indexed property that this filter can match, null if there is no indexed property
+   */
+  public Set<SimpleString> getIndexedValues()
+  {
+     return indexedValues;
+  }
+  
   // Filter implementation ---------------------------------------------------------------------
   
   public SimpleString getFilterString()
@@ -100,44 +133,9 @@ public class FilterImpl implements Filter
   {
      try
      {                 
-        // Set the identifiers values
-                 
-        for (Identifier id : identifiers.values())
-        { 
-           Object val = null;
-           
-           if (id.getName().startsWith("JBM"))
-           {           
-              //Look it up as header fields
-              
-              val = getHeaderFieldValue(message, id.getName());
-           }
-                     
-           if (val == null)
-           {
-              //First look it up in the headers
-              
-              //TODO - speed this up to avoid conversion
-              //Filter should be refactored to deal with SimpleString natively
-              val = message.getProperty(new SimpleString(id.getName()));             
-              
-              if (val instanceof SimpleString)
-              {
-                 val = ((SimpleString)val).toString();
-              }
-           }
-           
-           if (val != null)
-           {
-              id.setValue(val);
-           }
-        }
-        
-        // Compute the result of this operator
-        
-        boolean res = (Boolean)operator.apply();
+        // An unknown (null) result doesn't match
         
-        return res;
+        return Boolean.TRUE.equals(expression.evaluate(message));
      }
      catch (Exception e)
      {
@@ -146,34 +144,4 @@ public class FilterImpl implements Filter
         return false;
      }
   }
-  
-  // Private --------------------------------------------------------------------------
- 
-  private Object getHeaderFieldValue(final ServerMessage msg, final String fieldName)
-  {
-     if ("JBMMessageID".equals(fieldName))
-     {
-        return msg.getMessageID();
-     }
-     else if ("JBMPriority".equals(fieldName))
-     {
-        return new Integer(msg.getPriority());
-     }
-     else if ("JBMTimestamp".equals(fieldName))
-     {
-        return msg.getTimestamp();
-     }
-     else if ("JBMDurable".equals(fieldName))
-     {
-        return msg.isDurable() ? "DURABLE" : "NON_DURABLE";
-     }
-     else if ("JBMExpiration".equals(fieldName))
-     {
-        return msg.getExpiration();
-     }
-     else
-     {
-        return null;
-     }     
-  }
 }
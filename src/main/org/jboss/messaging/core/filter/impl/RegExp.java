@@ -55,6 +55,11 @@ public class RegExp
       
       return re.matcher(str).matches();
    }
+
+   public boolean isMatch(final CharSequence target)
+   {
+      return re.matcher(target).matches();
+   }
     
    protected String adjustPattern(final String pattern, final Character escapeChar) 
       throws Exception 
@@ -40,6 +40,16 @@ public interface Journal extends MessagingComponent
 
    void appendAddRecord(long id, byte recordType, EncodingSupport record) throws Exception;
 
+   /**
+    * <p>Appends the record without waiting for it to reach the disk.</p>
+    * 
+    * <p>The callback is completed once the record was written (and synced if the journal syncs non transactional records).
+    *    The record is visible to updates and deletes as soon as this method returns.</p>
+    * 
+    * @param callback completed from the I/O thread, so it should leave as soon as possible
+    */
+   void appendAddRecord(long id, byte recordType, EncodingSupport record, IOCallback callback) throws Exception;
+
    void appendUpdateRecord(long id, byte recordType, EncodingSupport record) throws Exception;
 
    void appendDeleteRecord(long id) throws Exception;
@@ -58,6 +58,13 @@ public interface SequentialFile
 
    void delete() throws Exception;
 
+   /**
+    * Renames the file on the storage. The file has to be closed.
+    * @param newFileName
+    * @throws Exception
+    */
+   void renameTo(String newFileName) throws Exception;
+
    int write(ByteBuffer bytes, IOCallback callback) throws Exception;
 
    int write(ByteBuffer bytes, boolean sync) throws Exception;
@@ -67,8 +67,20 @@ public interface TestableJournal extends Journal
 
    void forceMoveNextFile() throws Exception;
 
+   void compact() throws Exception;
+
    void setAutoReclaim(boolean autoReclaim);
 
    boolean isAutoReclaim();
 
+   /** Files are read and parsed by this number of threads during load. Use 1 to read them sequentially */
+   void setLoadThreads(int loadThreads);
+
+   int getLoadThreads();
+
+   /** Caps the readers during load so the buffers they read files into fit in this number of bytes */
+   void setLoadBufferSize(long loadBufferSize);
+
+   long getLoadBufferSize();
+
 }
@@ -23,6 +23,7 @@
 package org.jboss.messaging.core.journal.impl;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -51,7 +52,7 @@ public class AIOSequentialFile implements SequentialFile
 
    private final String journalDir;
 
-   private final String fileName;
+   private String fileName;
 
    private boolean opened = false;
 
@@ -118,6 +119,23 @@ public class AIOSequentialFile implements SequentialFile
       file.delete();
    }
 
+   public synchronized void renameTo(final String newFileName) throws Exception
+   {
+      if (opened)
+      {
+         throw new IllegalStateException("File " + fileName + " has to be closed before renamed");
+      }
+
+      File newFile = new File(journalDir + "/" + newFileName);
+
+      if (!new File(journalDir + "/" + fileName).renameTo(newFile))
+      {
+         throw new IOException("Couldn't rename " + fileName + " to " + newFileName);
+      }
+
+      fileName = newFileName;
+   }
+
    public void fill(final int position, final int size, final byte fillCharacter) throws Exception
    {
       checkOpened();
@@ -0,0 +1,520 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.journal.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.messaging.core.exception.MessagingException;
+import org.jboss.messaging.core.journal.BufferCallback;
+import org.jboss.messaging.core.journal.IOCallback;
+import org.jboss.messaging.core.journal.SequentialFile;
+import org.jboss.messaging.core.journal.SequentialFileFactory;
+import org.jboss.messaging.core.logging.Logger;
+
+/**
+ *
+ * <p>A GroupCommitBuffer</p>
+ *
+ * <p>Records appended by concurrent callers are gathered here (in the same order their positions were
+ * calculated on the current file) and written to the file as one single aligned write,
+ * followed by one single sync. Every caller's callback is completed when that sync is done.</p>
+ *
+ * <p>A batch is flushed as soon as it reaches maxBatchBytes, or when the oldest record on the batch
+ * has been waiting for maxWaitMicros.</p>
+ *
+ * <p>On NIO the sync is a FileChannel.force, on AIO the sync is the completion of the write.</p>
+ *
+ */
+public class GroupCommitBuffer
+{
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(GroupCommitBuffer.class);
+
+   // Attributes ----------------------------------------------------
+
+   private final SequentialFileFactory fileFactory;
+
+   private final int maxBatchBytes;
+
+   private final long maxWaitNanos;
+
+   private volatile BufferCallback bufferCallback;
+
+   /** Guards the swap and the write of a batch, so batches are written in the order they were taken */
+   private final Object flushLock = new Object();
+
+   // The following fields are guarded by "this"
+
+   private List<PendingWrite> pendingWrites = new ArrayList<PendingWrite>();
+
+   private SequentialFile pendingFile;
+
+   private int pendingBytes;
+
+   private boolean pendingSync;
+
+   private long firstPendingTime;
+
+   private volatile boolean started;
+
+   private Thread flusherThread;
+
+   // Statistics
+
+   private final AtomicLong batchCount = new AtomicLong(0);
+
+   private final AtomicLong recordCount = new AtomicLong(0);
+
+   private final AtomicLong bytesWritten = new AtomicLong(0);
+
+   private final AtomicLong syncCount = new AtomicLong(0);
+
+   private final AtomicLong syncTimeNanos = new AtomicLong(0);
+
+   private final AtomicLong maxSyncTimeNanos = new AtomicLong(0);
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   public GroupCommitBuffer(final SequentialFileFactory fileFactory, final int maxBatchBytes, final long maxWaitMicros)
+   {
+      if (maxBatchBytes <= 0)
+      {
+         throw new IllegalArgumentException("maxBatchBytes should be a positive number");
+      }
+
+      if (maxWaitMicros < 0)
+      {
+         throw new IllegalArgumentException("maxWaitMicros can't be negative");
+      }
+
+      this.fileFactory = fileFactory;
+
+      this.maxBatchBytes = maxBatchBytes;
+
+      maxWaitNanos = maxWaitMicros * 1000;
+   }
+
+   // Public --------------------------------------------------------
+
+   public synchronized void start()
+   {
+      if (started)
+      {
+         return;
+      }
+
+      started = true;
+
+      flusherThread = new Thread(new FlushRunnable(), "JBM-journal-group-commit");
+
+      flusherThread.setDaemon(true);
+
+      flusherThread.start();
+   }
+
+   public void stop() throws Exception
+   {
+      Thread thread;
+
+      synchronized (this)
+      {
+         if (!started)
+         {
+            return;
+         }
+
+         started = false;
+
+         thread = flusherThread;
+
+         flusherThread = null;
+
+         notifyAll();
+      }
+
+      thread.join();
+
+      // Anything left over after the flusher is gone
+      flush();
+   }
+
+   public boolean isStarted()
+   {
+      return started;
+   }
+
+   public void setBufferCallback(final BufferCallback bufferCallback)
+   {
+      this.bufferCallback = bufferCallback;
+   }
+
+   /**
+    * <p>Add a record to the current batch.</p>
+    *
+    * <p>This has to be called in the same order positions were reserved on the file (JournalImpl calls it while holding positionLock).</p>
+    *
+    * @param file The file where the record belongs
+    * @param bytes The record. The buffer's limit has to be aligned
+    * @param sync If the batch containing this record has to be synced (ignored if the factory supports callbacks)
+    * @param callback Called when the batch containing this record was synced. Could be null
+    */
+   public void addRecord(final SequentialFile file, final ByteBuffer bytes, final boolean sync, final IOCallback callback) throws Exception
+   {
+      boolean fileChanged;
+
+      synchronized (this)
+      {
+         fileChanged = pendingFile != null && pendingFile != file;
+      }
+
+      if (fileChanged)
+      {
+         // Records from a previous file must reach the disk before the new file's records
+         flush();
+      }
+
+      synchronized (this)
+      {
+         if (pendingWrites.isEmpty())
+         {
+            firstPendingTime = System.nanoTime();
+
+            pendingFile = file;
+
+            // wake up the flusher, so it starts counting maxWait
+            notifyAll();
+         }
+
+         pendingWrites.add(new PendingWrite(bytes, callback));
+
+         pendingBytes += bytes.limit();
+
+         pendingSync |= sync;
+
+         if (pendingBytes >= maxBatchBytes)
+         {
+            notifyAll();
+         }
+      }
+   }
+
+   /**
+    * Write everything pending as one single write, and wait until the write (and sync on NIO) is done.
+    * This is used on file switches, on stop and on debugWait.
+    */
+   public void flush() throws Exception
+   {
+      synchronized (flushLock)
+      {
+         List<PendingWrite> writes;
+
+         SequentialFile file;
+
+         int bytes;
+
+         boolean sync;
+
+         synchronized (this)
+         {
+            if (pendingWrites.isEmpty())
+            {
+               return;
+            }
+
+            writes = pendingWrites;
+
+            file = pendingFile;
+
+            bytes = pendingBytes;
+
+            sync = pendingSync;
+
+            pendingWrites = new ArrayList<PendingWrite>();
+
+            pendingFile = null;
+
+            pendingBytes = 0;
+
+            pendingSync = false;
+         }
+
+         ByteBuffer buffer = fileFactory.newBuffer(bytes);
+
+         BufferCallback localBufferCallback = bufferCallback;
+
+         for (PendingWrite write : writes)
+         {
+            write.bytes.rewind();
+
+            buffer.put(write.bytes);
+
+            if (localBufferCallback != null)
+            {
+               // The record was copied, it can be reused by the journal
+               localBufferCallback.bufferDone(write.bytes);
+            }
+         }
+
+         buffer.flip();
+
+         BatchCallback batchCallback = new BatchCallback(writes, bytes);
+
+         try
+         {
+            if (fileFactory.isSupportsCallbacks())
+            {
+               file.write(buffer, batchCallback);
+            }
+            else
+            {
+               file.write(buffer, false);
+
+               if (sync)
+               {
+                  file.sync();
+               }
+
+               batchCallback.done();
+            }
+         }
+         catch (Exception e)
+         {
+            log.warn("Error on writing batch to " + file.getFileName(), e);
+
+            batchCallback.onError(-1, e.getMessage());
+
+            throw e;
+         }
+      }
+   }
+
+   public int getMaxBatchBytes()
+   {
+      return maxBatchBytes;
+   }
+
+   public long getMaxWaitMicros()
+   {
+      return maxWaitNanos / 1000;
+   }
+
+   public long getBatchCount()
+   {
+      return batchCount.get();
+   }
+
+   public long getRecordCount()
+   {
+      return recordCount.get();
+   }
+
+   public long getBytesWritten()
+   {
+      return bytesWritten.get();
+   }
+
+   public double getAverageRecordsPerBatch()
+   {
+      long batches = batchCount.get();
+
+      return batches == 0 ? 0 : (double)recordCount.get() / batches;
+   }
+
+   public double getAverageBatchBytes()
+   {
+      long batches = batchCount.get();
+
+      return batches == 0 ? 0 : (double)bytesWritten.get() / batches;
+   }
+
+   /** Average time between a batch being submitted to the file and its sync (or AIO completion) */
+   public double getAverageSyncLatencyMicros()
+   {
+      long syncs = syncCount.get();
+
+      return syncs == 0 ? 0 : (double)syncTimeNanos.get() / syncs / 1000;
+   }
+
+   public long getMaxSyncLatencyMicros()
+   {
+      return maxSyncTimeNanos.get() / 1000;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /** A callback used to wait the completion of a record, when the caller doesn't have a callback of its own */
+   public static class WaitCompletion implements IOCallback
+   {
+      private final CountDownLatch latch = new CountDownLatch(1);
+
+      private volatile String errorMessage;
+
+      private volatile int errorCode = 0;
+
+      public void done()
+      {
+         latch.countDown();
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         this.errorCode = errorCode;
+
+         this.errorMessage = errorMessage;
+
+         latch.countDown();
+      }
+
+      public void waitCompletion() throws Exception
+      {
+         latch.await();
+
+         if (errorMessage != null)
+         {
+            throw new MessagingException(errorCode, errorMessage);
+         }
+      }
+   }
+
+   private static class PendingWrite
+   {
+      final ByteBuffer bytes;
+
+      final IOCallback callback;
+
+      PendingWrite(final ByteBuffer bytes, final IOCallback callback)
+      {
+         this.bytes = bytes;
+
+         this.callback = callback;
+      }
+   }
+
+   /** Fans out the completion of a batch to every record's callback */
+   private class BatchCallback implements IOCallback
+   {
+      private final List<PendingWrite> writes;
+
+      private final int bytes;
+
+      private final long start = System.nanoTime();
+
+      BatchCallback(final List<PendingWrite> writes, final int bytes)
+      {
+         this.writes = writes;
+
+         this.bytes = bytes;
+      }
+
+      public void done()
+      {
+         long time = System.nanoTime() - start;
+
+         batchCount.incrementAndGet();
+
+         recordCount.addAndGet(writes.size());
+
+         bytesWritten.addAndGet(bytes);
+
+         syncCount.incrementAndGet();
+
+         syncTimeNanos.addAndGet(time);
+
+         long max = maxSyncTimeNanos.get();
+
+         while (time > max && !maxSyncTimeNanos.compareAndSet(max, time))
+         {
+            max = maxSyncTimeNanos.get();
+         }
+
+         for (PendingWrite write : writes)
+         {
+            if (write.callback != null)
+            {
+               write.callback.done();
+            }
+         }
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         for (PendingWrite write : writes)
+         {
+            if (write.callback != null)
+            {
+               write.callback.onError(errorCode, errorMessage);
+            }
+         }
+      }
+   }
+
+   private class FlushRunnable implements Runnable
+   {
+      public void run()
+      {
+         while (started)
+         {
+            try
+            {
+               synchronized (GroupCommitBuffer.this)
+               {
+                  while (started && pendingWrites.isEmpty())
+                  {
+                     GroupCommitBuffer.this.wait();
+                  }
+
+                  // Give other callers a chance to join the batch
+                  while (started && !pendingWrites.isEmpty() && pendingBytes < maxBatchBytes)
+                  {
+                     long remaining = firstPendingTime + maxWaitNanos - System.nanoTime();
+
+                     if (remaining <= 0)
+                     {
+                        break;
+                     }
+
+                     GroupCommitBuffer.this.wait(remaining / 1000000, (int)(remaining % 1000000));
+                  }
+               }
+
+               flush();
+            }
+            catch (InterruptedException e)
+            {
+               // stop will take care of anything pending
+            }
+            catch (Throwable e)
+            {
+               log.warn(e.getMessage(), e);
+            }
+         }
+      }
+   }
+}
@@ -30,23 +30,33 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.jboss.messaging.core.exception.MessagingException;
@@ -158,6 +168,12 @@ public class JournalImpl implements TestableJournal
 
    public static final byte FILL_CHARACTER = (byte)'J';
 
+   /** Extension appended to the files written by the compactor, until the compaction is committed */
+   private static final String COMPACT_FILE_EXTENSION = "cmp";
+
+   /** Extension of the file used to commit a compaction. Look at {@link JournalImpl#compact()} */
+   private static final String COMPACT_CONTROL_EXTENSION = "ctl";
+
    // Attributes ----------------------------------------------------
 
    private boolean autoReclaim = true;
@@ -218,6 +234,31 @@ public class JournalImpl implements TestableJournal
 
    private final Reclaimer reclaimer = new Reclaimer();
 
+   /** If not null, records are gathered and written in batches. Look at {@link GroupCommitBuffer} */
+   private final GroupCommitBuffer groupCommitBuffer;
+
+   /** Compaction is only considered when there are at least this number of data files. Use 0 to disable compacting */
+   private final int compactMinFiles;
+
+   /** Files with a live-record ratio above this percentage are not compacted */
+   private final int compactPercentage;
+
+   /** Compacting happens on its own thread, so appends and file opening never wait for the copy of the live records */
+   private ExecutorService compactorExecutor = null;
+
+   /** Compacting and reclaiming both change dataFiles, so they can't happen at the same time */
+   private final Lock compactorLock = new ReentrantLock();
+
+   private final AtomicBoolean compactorScheduled = new AtomicBoolean(false);
+
+   private final AtomicLong compactCount = new AtomicLong(0);
+
+   /** The number of files read concurrently during load */
+   private volatile int loadThreads = Runtime.getRuntime().availableProcessors();
+
+   /** The most memory used to hold files being read during load, each reader holds a buffer of fileSize */
+   private volatile long loadBufferSize = 64L * 1024 * 1024;
+
    // Constructors --------------------------------------------------
 
    public JournalImpl(final int fileSize,
@@ -229,6 +270,41 @@ public class JournalImpl implements TestableJournal
                       final String fileExtension,
                       final int maxAIO,
                       final int reuseBufferSize)
+   {
+      this(fileSize,
+           minFiles,
+           syncTransactional,
+           syncNonTransactional,
+           fileFactory,
+           filePrefix,
+           fileExtension,
+           maxAIO,
+           reuseBufferSize,
+           -1,
+           0,
+           0,
+           0);
+   }
+
+   /**
+    * @param groupCommitMaxBatchBytes The maximum size of a group-commit batch. Use -1 to write every record individually
+    * @param groupCommitMaxWaitMicros How long the first record of a batch will wait for other records to join the batch
+    * @param compactMinFiles The minimum number of data files before compacting is considered. Use 0 to disable compacting
+    * @param compactPercentage Only files with a live-record ratio up to this percentage are compacted
+    */
+   public JournalImpl(final int fileSize,
+                      final int minFiles,
+                      final boolean syncTransactional,
+                      final boolean syncNonTransactional,
+                      final SequentialFileFactory fileFactory,
+                      final String filePrefix,
+                      final String fileExtension,
+                      final int maxAIO,
+                      final int reuseBufferSize,
+                      final int groupCommitMaxBatchBytes,
+                      final long groupCommitMaxWaitMicros,
+                      final int compactMinFiles,
+                      final int compactPercentage)
    {
       if (fileSize < MIN_FILE_SIZE)
       {
@@ -260,6 +336,10 @@ public class JournalImpl implements TestableJournal
       {
          throw new IllegalStateException("maxAIO should aways be a positive number");
       }
+      if (compactPercentage < 0 || compactPercentage > 100)
+      {
+         throw new IllegalArgumentException("compactPercentage should be between 0 and 100");
+      }
 
       this.reuseBufferSize = fileFactory.calculateBlockSize(reuseBufferSize);
 
@@ -278,6 +358,24 @@ public class JournalImpl implements TestableJournal
       this.fileExtension = fileExtension;
 
       this.maxAIO = maxAIO;
+
+      this.compactMinFiles = compactMinFiles;
+
+      this.compactPercentage = compactPercentage;
+
+      if (groupCommitMaxBatchBytes > 0)
+      {
+         groupCommitBuffer = new GroupCommitBuffer(fileFactory, groupCommitMaxBatchBytes, groupCommitMaxWaitMicros);
+
+         if (this.reuseBufferSize > 0)
+         {
+            groupCommitBuffer.setBufferCallback(buffersControl.callback);
+         }
+      }
+      else
+      {
+         groupCommitBuffer = null;
+      }
    }
 
    // Journal implementation
@@ -290,23 +388,39 @@ public class JournalImpl implements TestableJournal
          throw new IllegalStateException("Journal must be loaded first");
       }
 
-      int recordLength = record.getEncodeSize();
+      ByteBuffer bb = encodeAddRecord(id, recordType, record);
 
-      int size = SIZE_ADD_RECORD + recordLength;
+      try
+      {
+         JournalFile usedFile = appendRecord(bb, syncNonTransactional, null);
 
-      ByteBufferWrapper bb = new ByteBufferWrapper(newBuffer(size));
+         posFilesMap.put(id, new PosFiles(usedFile));
+      }
+      finally
+      {
+         rwlock.readLock().unlock();
+      }
+   }
 
-      bb.putByte(ADD_RECORD);
-      bb.putInt(-1); // skip ID part
-      bb.putLong(id);
-      bb.putInt(recordLength);
-      bb.putByte(recordType);
-      record.encode(bb);
-      bb.putInt(size);
+   public void appendAddRecord(final long id,
+                               final byte recordType,
+                               final EncodingSupport record,
+                               final IOCallback callback) throws Exception
+   {
+      if (state != STATE_LOADED)
+      {
+         throw new IllegalStateException("Journal must be loaded first");
+      }
+
+      ByteBuffer bb = encodeAddRecord(id, recordType, record);
+
+      // Only the group commit buffer and AIO can complete the callback later.
+      // With NIO the write is done (and synced) by this thread
+      boolean asyncCompletion = groupCommitBuffer != null || fileFactory.isSupportsCallbacks();
 
       try
       {
-         JournalFile usedFile = appendRecord(bb.getBuffer(), syncNonTransactional, null);
+         JournalFile usedFile = appendRecord(bb, syncNonTransactional, asyncCompletion ? callback : null);
 
          posFilesMap.put(id, new PosFiles(usedFile));
       }
@@ -314,6 +428,11 @@ public class JournalImpl implements TestableJournal
       {
          rwlock.readLock().unlock();
       }
+
+      if (!asyncCompletion)
+      {
+         callback.done();
+      }
    }
 
    public void appendUpdateRecord(final long id, final byte recordType, final EncodingSupport record) throws Exception
@@ -732,524 +851,369 @@ public class JournalImpl implements TestableJournal
          throw new IllegalStateException("Journal must be in started state");
       }
 
-      Map<Long, TransactionHolder> transactions = new LinkedHashMap<Long, TransactionHolder>();
-
-      List<JournalFile> orderedFiles = orderFiles();
+      recoverCompaction();
 
-      int lastDataPos = SIZE_HEADER;
+      final Map<Long, TransactionHolder> transactions = new LinkedHashMap<Long, TransactionHolder>();
 
-      long maxTransactionID = -1;
+      final List<JournalFile> orderedFiles = orderFiles();
 
-      long maxID = -1;
+      int lastDataPos = SIZE_HEADER;
 
-      for (JournalFile file : orderedFiles)
+      // Applies the records of each file being loaded into the LoadManager and the reclaiming counters
+      class JournalLoader implements JournalReaderCallback
       {
-         file.getFile().open(1);
+         JournalFile file;
 
-         ByteBuffer bb = fileFactory.newBuffer(fileSize);
+         boolean hasData;
 
-         int bytesRead = file.getFile().read(bb);
+         long maxID = -1;
 
-         if (bytesRead != fileSize)
+         public void onReadAddRecord(final RecordInfo info) throws Exception
          {
-            // FIXME - We should extract everything we can from this file
-            // and then we shouldn't ever reuse this file on reclaiming (instead
-            // reclaim on different size files would aways throw the file away)
-            // rather than throw ISE!
-            // We don't want to leave the user with an unusable system
-            throw new IllegalStateException("File is wrong size " + bytesRead +
-                                            " expected " +
-                                            fileSize +
-                                            " : " +
-                                            file.getFile().getFileName());
-         }
+            maxID = Math.max(maxID, info.id);
+
+            loadManager.addRecord(info);
 
-         // First long is the ordering timestamp, we just jump its position
-         bb.position(SIZE_HEADER);
+            posFilesMap.put(info.id, new PosFiles(file));
 
-         boolean hasData = false;
+            hasData = true;
+         }
 
-         while (bb.hasRemaining())
+         public void onReadUpdateRecord(final RecordInfo info) throws Exception
          {
-            final int pos = bb.position();
+            maxID = Math.max(maxID, info.id);
 
-            byte recordType = bb.get();
+            loadManager.updateRecord(info);
 
-            if (recordType < ADD_RECORD || recordType > ROLLBACK_RECORD)
-            {
-               // I - We scan for any valid record on the file. If a hole
-               // happened on the middle of the file we keep looking until all
-               // the possibilities are gone
-               continue;
-            }
+            hasData = true;
 
-            if (bb.position() + SIZE_INT > fileSize)
-            {
-               // II - Ignore this record, lets keep looking
-               continue;
-            }
+            file.incPosCount();
 
-            // III - Every record has the file-id.
-            // This is what supports us from not re-filling the whole file
-            int readFileId = bb.getInt();
+            PosFiles posFiles = posFilesMap.get(info.id);
 
-            // IV - This record is from a previous file-usage. The file was
-            // reused and we need to ignore this record
-            if (readFileId != file.getOrderingID())
+            if (posFiles != null)
             {
-               // If a file has damaged records, we make it a dataFile, and the
-               // next reclaiming will fix it
-               hasData = true;
+               // It's legal for this to be null. The file(s) with the may
+               // have been deleted
+               // just leaving some updates in this file
 
-               bb.position(pos + 1);
-
-               continue;
+               posFiles.addUpdateFile(file);
             }
+         }
 
-            long transactionID = 0;
-
-            if (isTransaction(recordType))
-            {
-               if (bb.position() + SIZE_LONG > fileSize)
-               {
-                  continue;
-               }
+         public void onReadDeleteRecord(final long recordID) throws Exception
+         {
+            maxID = Math.max(maxID, recordID);
 
-               transactionID = bb.getLong();
+            loadManager.deleteRecord(recordID);
 
-               maxTransactionID = Math.max(maxTransactionID, transactionID);
-            }
+            hasData = true;
 
-            long recordID = 0;
+            PosFiles posFiles = posFilesMap.remove(recordID);
 
-            if (!isCompleteTransaction(recordType))
+            if (posFiles != null)
             {
-               if (bb.position() + SIZE_LONG > fileSize)
-               {
-                  continue;
-               }
+               posFiles.addDelete(file);
+            }
+         }
 
-               recordID = bb.getLong();
+         public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
+         {
+            onReadUpdateRecordTX(transactionID, info);
+         }
 
-               maxID = Math.max(maxID, recordID);
-            }
+         public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
+         {
+            maxID = Math.max(maxID, info.id);
 
-            // We use the size of the record to validate the health of the
-            // record.
-            // (V) We verify the size of the record
+            TransactionHolder tx = transactions.get(transactionID);
 
-            // The variable record portion used on Updates and Appends
-            int variableSize = 0;
+            if (tx == null)
+            {
+               tx = new TransactionHolder(transactionID);
 
-            // Used to hold extra data on transaction prepares
-            int preparedTransactionExtraDataSize = 0;
+               transactions.put(transactionID, tx);
+            }
 
-            byte userRecordType = 0;
+            tx.recordInfos.add(info);
 
-            byte record[] = null;
+            JournalTransaction tnp = transactionInfos.get(transactionID);
 
-            if (isContainsBody(recordType))
+            if (tnp == null)
             {
-               if (bb.position() + SIZE_INT > fileSize)
-               {
-                  continue;
-               }
+               tnp = new JournalTransaction();
 
-               variableSize = bb.getInt();
+               transactionInfos.put(transactionID, tnp);
+            }
 
-               if (bb.position() + variableSize > fileSize)
-               {
-                  log.warn("Record at position " + pos +
-                           " file:" +
-                           file.getFile().getFileName() +
-                           " is corrupted and it is being ignored");
-                  continue;
-               }
+            tnp.addPositive(file, info.id);
 
-               if (recordType != DELETE_RECORD_TX)
-               {
-                  userRecordType = bb.get();
-               }
+            hasData = true;
+         }
 
-               record = new byte[variableSize];
+         public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+         {
+            maxID = Math.max(maxID, info.id);
 
-               bb.get(record);
-            }
+            TransactionHolder tx = transactions.get(transactionID);
 
-            if (recordType == PREPARE_RECORD || recordType == COMMIT_RECORD)
+            if (tx == null)
             {
-               if (recordType == PREPARE_RECORD)
-               {
-                  // Add the variable size required for preparedTransactions
-                  preparedTransactionExtraDataSize = bb.getInt();
-               }
-               // Both commit and record contain the recordSummary, and this is
-               // used to calculate the record-size on both record-types
-               variableSize += bb.getInt() * SIZE_INT * 2;
+               tx = new TransactionHolder(transactionID);
+
+               transactions.put(transactionID, tx);
             }
 
-            int recordSize = getRecordSize(recordType);
+            tx.recordsToDelete.add(info);
 
-            // VI - this is completing V, We will validate the size at the end
-            // of the record,
-            // But we avoid buffer overflows by damaged data
-            if (pos + recordSize + variableSize + preparedTransactionExtraDataSize > fileSize)
+            JournalTransaction tnp = transactionInfos.get(transactionID);
+
+            if (tnp == null)
             {
-               // Avoid a buffer overflow caused by damaged data... continue
-               // scanning for more records...
-               log.warn("Record at position " + pos +
-                        " file:" +
-                        file.getFile().getFileName() +
-                        " is corrupted and it is being ignored");
-               // If a file has damaged records, we make it a dataFile, and the
-               // next reclaiming will fix it
-               hasData = true;
+               tnp = new JournalTransaction();
 
-               continue;
+               transactionInfos.put(transactionID, tnp);
             }
 
-            int oldPos = bb.position();
+            tnp.addNegative(file, info.id);
 
-            bb.position(pos + variableSize + recordSize + preparedTransactionExtraDataSize - SIZE_INT);
+            hasData = true;
+         }
 
-            int checkSize = bb.getInt();
+         public void onReadPrepareRecord(final long transactionID,
+                                         final byte[] extraData,
+                                         final Pair<Integer, Integer>[] recordedSummary) throws Exception
+         {
+            TransactionHolder tx = transactions.get(transactionID);
 
-            // VII - The checkSize at the end has to match with the size
-            // informed at the beggining.
-            // This is like testing a hash for the record. (We could replace the
-            // checkSize by some sort of calculated hash)
-            if (checkSize != variableSize + recordSize + preparedTransactionExtraDataSize)
+            if (tx == null)
             {
-               log.warn("Record at position " + pos +
-                        " file:" +
-                        file.getFile().getFileName() +
-                        " is corrupted and it is being ignored");
-
-               // If a file has damaged records, we make it a dataFile, and the
-               // next reclaiming will fix it
-               hasData = true;
-
-               bb.position(pos + SIZE_BYTE);
+               // The user could choose to prepare empty transactions
+               tx = new TransactionHolder(transactionID);
 
-               continue;
+               transactions.put(transactionID, tx);
             }
 
-            bb.position(oldPos);
+            tx.prepared = true;
+
+            tx.extraData = extraData;
 
-            // At this point everything is checked. So we relax and just load
-            // the data now.
+            JournalTransaction journalTransaction = transactionInfos.get(transactionID);
 
-            switch (recordType)
+            if (journalTransaction == null)
             {
-               case ADD_RECORD:
-               {
+               journalTransaction = new JournalTransaction();
 
-                  loadManager.addRecord(new RecordInfo(recordID, userRecordType, record, false));
+               transactionInfos.put(transactionID, journalTransaction);
+            }
 
-                  posFilesMap.put(recordID, new PosFiles(file));
+            boolean healthy = checkTransactionHealth(journalTransaction, orderedFiles, recordedSummary);
 
-                  hasData = true;
+            if (healthy)
+            {
+               journalTransaction.prepare(file);
+            }
+            else
+            {
+               log.warn("Prepared transaction " + healthy + " wasn't considered completed, it will be ignored");
+               tx.invalid = true;
+            }
 
-                  break;
-               }
-               case UPDATE_RECORD:
-               {
-                  loadManager.updateRecord(new RecordInfo(recordID, userRecordType, record, true));
+            hasData = true;
+         }
 
-                  hasData = true;
+         public void onReadCommitRecord(final long transactionID, final Pair<Integer, Integer>[] recordedSummary) throws Exception
+         {
+            TransactionHolder tx = transactions.remove(transactionID);
+
+            // The commit could be alone on its own journal-file and the
+            // whole transaction body was reclaimed but not the
+            // commit-record
+            // So it is completely legal to not find a transaction at this
+            // point
+            // If we can't find it, we assume the TX was reclaimed and we
+            // ignore this
+            if (tx != null)
+            {
+               JournalTransaction journalTransaction = transactionInfos.remove(transactionID);
 
-                  file.incPosCount();
+               if (journalTransaction == null)
+               {
+                  throw new IllegalStateException("Cannot find tx " + transactionID);
+               }
 
-                  PosFiles posFiles = posFilesMap.get(recordID);
+               boolean healthy = checkTransactionHealth(journalTransaction, orderedFiles, recordedSummary);
 
-                  if (posFiles != null)
+               if (healthy)
+               {
+                  for (RecordInfo txRecord : tx.recordInfos)
                   {
-                     // It's legal for this to be null. The file(s) with the may
-                     // have been deleted
-                     // just leaving some updates in this file
-
-                     posFiles.addUpdateFile(file);
+                     if (txRecord.isUpdate)
+                     {
+                        loadManager.updateRecord(txRecord);
+                     }
+                     else
+                     {
+                        loadManager.addRecord(txRecord);
+                     }
                   }
 
-                  break;
-               }
-               case DELETE_RECORD:
-               {
-                  loadManager.deleteRecord(recordID);
-
-                  hasData = true;
-
-                  PosFiles posFiles = posFilesMap.remove(recordID);
-
-                  if (posFiles != null)
+                  for (RecordInfo deleteValue : tx.recordsToDelete)
                   {
-                     posFiles.addDelete(file);
+                     loadManager.deleteRecord(deleteValue.id);
                   }
 
-                  break;
+                  journalTransaction.commit(file);
                }
-               case ADD_RECORD_TX:
-               case UPDATE_RECORD_TX:
+               else
                {
-                  TransactionHolder tx = transactions.get(transactionID);
+                  log.warn("Transaction " + transactionID +
+                           " is missing elements so the transaction is being ignored");
 
-                  if (tx == null)
-                  {
-                     tx = new TransactionHolder(transactionID);
+                  journalTransaction.forget();
+               }
 
-                     transactions.put(transactionID, tx);
-                  }
+               hasData = true;
+            }
+         }
 
-                  tx.recordInfos.add(new RecordInfo(recordID, userRecordType, record, recordType == UPDATE_RECORD_TX));
+         public void onReadRollbackRecord(final long transactionID) throws Exception
+         {
+            TransactionHolder tx = transactions.remove(transactionID);
 
-                  JournalTransaction tnp = transactionInfos.get(transactionID);
+            // The rollback could be alone on its own journal-file and the
+            // whole transaction body was reclaimed but the commit-record
+            // So it is completely legal to not find a transaction at this
+            // point
+            if (tx != null)
+            {
+               JournalTransaction tnp = transactionInfos.remove(transactionID);
 
-                  if (tnp == null)
-                  {
-                     tnp = new JournalTransaction();
+               if (tnp == null)
+               {
+                  throw new IllegalStateException("Cannot find tx " + transactionID);
+               }
 
-                     transactionInfos.put(transactionID, tnp);
-                  }
+               // There is no need to validate summaries/holes on
+               // Rollbacks.. We will ignore the data anyway.
+               tnp.rollback(file);
 
-                  tnp.addPositive(file, recordID);
+               hasData = true;
+            }
+         }
 
-                  hasData = true;
+         public void markAsDataFile(final JournalFile file)
+         {
+            // If a file has damaged records, we make it a dataFile, and the
+            // next reclaiming will fix it
+            hasData = true;
+         }
+      }
 
-                  break;
-               }
-               case DELETE_RECORD_TX:
-               {
-                  TransactionHolder tx = transactions.get(transactionID);
+      JournalLoader loader = new JournalLoader();
 
-                  if (tx == null)
-                  {
-                     tx = new TransactionHolder(transactionID);
+      // Files are read and parsed on the load executor, while the loader applies the ones already read.
+      // They are applied one at a time in their ordering, so the result is the same as reading them sequentially.
+      // At most one file per reader is read ahead, which bounds the memory used by the records waiting to be applied.
+      // Each reader reuses a buffer of fileSize, there are as many readers as fit in loadBufferSize.
+      int readers = (int)Math.min(Math.min(orderedFiles.size(), loadThreads), Math.max(1, loadBufferSize / fileSize));
 
-                     transactions.put(transactionID, tx);
-                  }
+      ExecutorService loadExecutor = readers > 1 ? Executors.newFixedThreadPool(readers) : null;
 
-                  tx.recordsToDelete.add(new RecordInfo(recordID, (byte)0, record, true));
+      BlockingQueue<ByteBuffer> loadBuffers = new ArrayBlockingQueue<ByteBuffer>(Math.max(1, readers));
 
-                  JournalTransaction tnp = transactionInfos.get(transactionID);
+      try
+      {
+         LinkedList<Future<RecordedFile>> readAhead = new LinkedList<Future<RecordedFile>>();
 
-                  if (tnp == null)
-                  {
-                     tnp = new JournalTransaction();
+         Iterator<JournalFile> filesToRead = orderedFiles.iterator();
 
-                     transactionInfos.put(transactionID, tnp);
-                  }
+         for (JournalFile file : orderedFiles)
+         {
+            loader.file = file;
 
-                  tnp.addNegative(file, recordID);
+            loader.hasData = false;
 
-                  hasData = true;
+            int dataPos;
 
-                  break;
-               }
-               case PREPARE_RECORD:
+            if (loadExecutor == null)
+            {
+               dataPos = readJournalFile(file, loader, loadBuffers);
+            }
+            else
+            {
+               while (readAhead.size() < readers && filesToRead.hasNext())
                {
-                  TransactionHolder tx = transactions.get(transactionID);
+                  readAhead.add(loadExecutor.submit(new FileRecorder(filesToRead.next(), loadBuffers)));
+               }
 
-                  if (tx == null)
-                  {
-                     // The user could choose to prepare empty transactions
-                     tx = new TransactionHolder(transactionID);
+               RecordedFile recordedFile = getRecordedFile(readAhead.removeFirst());
 
-                     transactions.put(transactionID, tx);
-                  }
+               recordedFile.replay(loader);
 
-                  byte extraData[] = new byte[preparedTransactionExtraDataSize];
+               dataPos = recordedFile.lastDataPos;
+            }
 
-                  bb.get(extraData);
+            if (dataPos != -1)
+            {
+               lastDataPos = dataPos;
+            }
 
-                  // Pair <FileID, NumberOfElements>
-                  Pair<Integer, Integer>[] recordedSummary = readTransactionalElementsSummary(variableSize, bb);
+            if (loader.hasData)
+            {
+               dataFiles.add(file);
+            }
+            else
+            {
+               // Empty dataFiles with no data
+               freeFiles.add(file);
+            }
+         }
+      }
+      finally
+      {
+         if (loadExecutor != null)
+         {
+            loadExecutor.shutdownNow();
+         }
+      }
 
-                  tx.prepared = true;
+      // Create any more files we need
 
-                  tx.extraData = extraData;
+      // FIXME - size() involves a scan
+      int filesToCreate = minFiles - (dataFiles.size() + freeFiles.size());
 
-                  JournalTransaction journalTransaction = transactionInfos.get(transactionID);
+      if (filesToCreate > 0)
+      {
+         for (int i = 0; i < filesToCreate; i++)
+         {
+            // Keeping all files opened can be very costly (mainly on AIO)
+            freeFiles.add(createFile(false));
+         }
+      }
 
-                  if (journalTransaction == null)
-                  {
-                     journalTransaction = new JournalTransaction();
+      // The current file is the last one
 
-                     transactionInfos.put(transactionID, journalTransaction);
-                  }
+      Iterator<JournalFile> iter = dataFiles.iterator();
 
-                  boolean healthy = checkTransactionHealth(journalTransaction, orderedFiles, recordedSummary);
+      while (iter.hasNext())
+      {
+         currentFile = iter.next();
 
-                  if (healthy)
-                  {
-                     journalTransaction.prepare(file);
-                  }
-                  else
-                  {
-                     log.warn("Prepared transaction " + healthy + " wasn't considered completed, it will be ignored");
-                     tx.invalid = true;
-                  }
+         if (!iter.hasNext())
+         {
+            iter.remove();
+         }
+      }
 
-                  hasData = true;
+      if (currentFile != null)
+      {
+         currentFile.getFile().open();
 
-                  break;
-               }
-               case COMMIT_RECORD:
-               {
-                  TransactionHolder tx = transactions.remove(transactionID);
-
-                  // We need to read it even if transaction was not found, or
-                  // the reading checks would fail
-                  // Pair <OrderId, NumberOfElements>
-                  Pair<Integer, Integer>[] recordedSummary = readTransactionalElementsSummary(variableSize, bb);
-
-                  // The commit could be alone on its own journal-file and the
-                  // whole transaction body was reclaimed but not the
-                  // commit-record
-                  // So it is completely legal to not find a transaction at this
-                  // point
-                  // If we can't find it, we assume the TX was reclaimed and we
-                  // ignore this
-                  if (tx != null)
-                  {
-                     JournalTransaction journalTransaction = transactionInfos.remove(transactionID);
-
-                     if (journalTransaction == null)
-                     {
-                        throw new IllegalStateException("Cannot find tx " + transactionID);
-                     }
-
-                     boolean healthy = checkTransactionHealth(journalTransaction, orderedFiles, recordedSummary);
-
-                     if (healthy)
-                     {
-                        for (RecordInfo txRecord : tx.recordInfos)
-                        {
-                           if (txRecord.isUpdate)
-                           {
-                              loadManager.updateRecord(txRecord);
-                           }
-                           else
-                           {
-                              loadManager.addRecord(txRecord);
-                           }
-                        }
-
-                        for (RecordInfo deleteValue : tx.recordsToDelete)
-                        {
-                           loadManager.deleteRecord(deleteValue.id);
-                        }
-
-                        journalTransaction.commit(file);
-                     }
-                     else
-                     {
-                        log.warn("Transaction " + transactionID +
-                                 " is missing elements so the transaction is being ignored");
-
-                        journalTransaction.forget();
-                     }
-
-                     hasData = true;
-                  }
-
-                  break;
-               }
-               case ROLLBACK_RECORD:
-               {
-                  TransactionHolder tx = transactions.remove(transactionID);
-
-                  // The rollback could be alone on its own journal-file and the
-                  // whole transaction body was reclaimed but the commit-record
-                  // So it is completely legal to not find a transaction at this
-                  // point
-                  if (tx != null)
-                  {
-                     JournalTransaction tnp = transactionInfos.remove(transactionID);
-
-                     if (tnp == null)
-                     {
-                        throw new IllegalStateException("Cannot find tx " + transactionID);
-                     }
-
-                     // There is no need to validate summaries/holes on
-                     // Rollbacks.. We will ignore the data anyway.
-                     tnp.rollback(file);
-
-                     hasData = true;
-                  }
-
-                  break;
-               }
-               default:
-               {
-                  throw new IllegalStateException("Journal " + file.getFile().getFileName() +
-                                                  " is corrupt, invalid record type " +
-                                                  recordType);
-               }
-            }
-
-            checkSize = bb.getInt();
-
-            // This is a sanity check about the loading code itself.
-            // If this checkSize doesn't match, it means the reading method is
-            // not doing what it was supposed to do
-            if (checkSize != variableSize + recordSize + preparedTransactionExtraDataSize)
-            {
-               throw new IllegalStateException("Internal error on loading file. Position doesn't match with checkSize");
-            }
-
-            lastDataPos = bb.position();
-         }
-
-         file.getFile().close();
-
-         if (hasData)
-         {
-            dataFiles.add(file);
-         }
-         else
-         {
-            // Empty dataFiles with no data
-            freeFiles.add(file);
-         }
-      }
-
-      // Create any more files we need
-
-      // FIXME - size() involves a scan
-      int filesToCreate = minFiles - (dataFiles.size() + freeFiles.size());
-
-      if (filesToCreate > 0)
-      {
-         for (int i = 0; i < filesToCreate; i++)
-         {
-            // Keeping all files opened can be very costly (mainly on AIO)
-            freeFiles.add(createFile(false));
-         }
-      }
-
-      // The current file is the last one
-
-      Iterator<JournalFile> iter = dataFiles.iterator();
-
-      while (iter.hasNext())
-      {
-         currentFile = iter.next();
-
-         if (!iter.hasNext())
-         {
-            iter.remove();
-         }
-      }
-
-      if (currentFile != null)
-      {
-         currentFile.getFile().open();
-
-         if (reuseBufferSize > 0)
-         {
-            currentFile.getFile().setBufferCallback(buffersControl.callback);
-         }
+         if (reuseBufferSize > 0)
+         {
+            currentFile.getFile().setBufferCallback(buffersControl.callback);
+         }
 
          currentFile.getFile().position(currentFile.getFile().calculateBlockStart(lastDataPos));
 
@@ -1299,7 +1263,7 @@ public class JournalImpl implements TestableJournal
 
       checkAndReclaimFiles();
 
-      return maxID;
+      return loader.maxID;
    }
 
    public int getAlignment() throws Exception
@@ -1320,6 +1284,26 @@ public class JournalImpl implements TestableJournal
       return autoReclaim;
    }
 
+   public void setLoadThreads(final int loadThreads)
+   {
+      this.loadThreads = loadThreads;
+   }
+
+   public int getLoadThreads()
+   {
+      return loadThreads;
+   }
+
+   public void setLoadBufferSize(final long loadBufferSize)
+   {
+      this.loadBufferSize = loadBufferSize;
+   }
+
+   public long getLoadBufferSize()
+   {
+      return loadBufferSize;
+   }
+
    public String debug() throws Exception
    {
       checkReclaimStatus();
@@ -1369,6 +1353,11 @@ public class JournalImpl implements TestableJournal
     *  It will call waitComplete on every transaction, so any assertions on the file system will be correct after this */
    public void debugWait() throws Exception
    {
+      if (groupCommitBuffer != null)
+      {
+         groupCommitBuffer.flush();
+      }
+
       for (TransactionCallback callback : transactionCallbacks.values())
       {
          callback.waitCompletion();
@@ -1395,38 +1384,245 @@ public class JournalImpl implements TestableJournal
 
    public void checkAndReclaimFiles() throws Exception
    {
-      checkReclaimStatus();
+      if (!compactorLock.tryLock())
+      {
+         // The compactor is changing the data files, the next reclaim will take care of them
+         return;
+      }
 
-      for (JournalFile file : dataFiles)
+      try
       {
-         if (file.isCanReclaim())
+         checkReclaimStatus();
+
+         for (JournalFile file : dataFiles)
          {
-            // File can be reclaimed or deleted
+            if (file.isCanReclaim())
+            {
+               // File can be reclaimed or deleted
 
-            if (trace)
+               if (trace)
+               {
+                  trace("Reclaiming file " + file);
+               }
+
+               dataFiles.remove(file);
+
+               // FIXME - size() involves a scan!!!
+               if (freeFiles.size() + dataFiles.size() + 1 + openedFiles.size() < minFiles)
+               {
+                  // Re-initialise it
+
+                  JournalFile jf = reinitializeFile(file);
+
+                  freeFiles.add(jf);
+               }
+               else
+               {
+                  file.getFile().open(1);
+
+                  file.getFile().delete();
+               }
+            }
+         }
+      }
+      finally
+      {
+         compactorLock.unlock();
+      }
+   }
+
+   /**
+    * <p>Copies the live records of the oldest journal files into fresh files, so a few long-lived records
+    *    don't keep a whole chain of mostly-deleted files from being reclaimed.</p>
+    *    
+    * <p>Only the oldest files, with a live-record ratio up to compactPercentage, are compacted. As no file older than them
+    *    is left after the compaction, their delete records can be discarded together with the records they deleted.
+    *    The compacted files keep the ordering IDs of the newest original files, so the records are loaded in the same order.</p>
+    *    
+    * <p>Files with records of transactions that were not completed on the same files are not compacted (the commit records
+    *    hold a summary of the original files). They will be compacted by a next pass once the transaction is completed.</p>
+    *    
+    * <p>The files are written with a temporary extension. The compaction is committed by a control file listing the files
+    *    to be deleted and renamed, which is replayed by {@link JournalImpl#load(LoadManager)} if the server crashed before finishing it.</p>
+    *    
+    * <p>Appends are not blocked while the records are copied.
+    *    Records deleted or updated meanwhile have their reclaiming counters moved to the compacted files at the end.</p>
+    */
+   public void compact() throws Exception
+   {
+      if (state != STATE_LOADED)
+      {
+         throw new IllegalStateException("Journal must be loaded first");
+      }
+
+      compactorLock.lock();
+
+      try
+      {
+         final List<JournalFile> files = selectCompactFiles();
+
+         if (files.size() < 2)
+         {
+            return;
+         }
+
+         JournalCompactor compactor = new JournalCompactor();
+
+         for (JournalFile file : files)
+         {
+            compactor.file = file;
+
+            readJournalFile(file, compactor);
+         }
+
+         final List<CompactedRecord> records = compactor.getLiveRecords();
+
+         int dataStart = fileFactory.calculateBlockSize(SIZE_HEADER);
+
+         List<List<CompactedRecord>> filesRecords = new ArrayList<List<CompactedRecord>>();
+
+         List<Integer> filesBytes = new ArrayList<Integer>();
+
+         List<CompactedRecord> fileRecords = null;
+
+         int fileBytes = 0;
+
+         for (CompactedRecord record : records)
+         {
+            int size = fileFactory.calculateBlockSize(SIZE_ADD_RECORD + record.info.data.length);
+
+            if (fileRecords == null || dataStart + fileBytes + size > fileSize)
             {
-               trace("Reclaiming file " + file);
+               if (fileRecords != null)
+               {
+                  filesBytes.add(fileBytes);
+               }
+
+               fileRecords = new ArrayList<CompactedRecord>();
+
+               filesRecords.add(fileRecords);
+
+               fileBytes = 0;
             }
 
-            dataFiles.remove(file);
+            fileRecords.add(record);
+
+            fileBytes += size;
+         }
+
+         if (fileRecords != null)
+         {
+            filesBytes.add(fileBytes);
+         }
 
-            // FIXME - size() involves a scan!!!
-            if (freeFiles.size() + dataFiles.size() + 1 + openedFiles.size() < minFiles)
+         if (filesRecords.size() >= files.size())
+         {
+            if (trace)
             {
-               // Re-initialise it
+               trace("Compacting " + files.size() + " files wouldn't release any file");
+            }
+
+            return;
+         }
+
+         final List<JournalFile> newFiles = new ArrayList<JournalFile>();
+
+         final List<String> newFileNames = new ArrayList<String>();
+
+         List<String> renames = new ArrayList<String>();
+
+         for (int i = 0; i < filesRecords.size(); i++)
+         {
+            // The new files take the ordering IDs of the newest compacted files
+            int orderingID = files.get(files.size() - filesRecords.size() + i).getOrderingID();
+
+            String fileName = filePrefix + "-" + generateOrderingID() + "." + fileExtension;
+
+            String tmpFileName = fileName + "." + COMPACT_FILE_EXTENSION;
 
-               JournalFile jf = reinitializeFile(file);
+            JournalFile newFile = writeCompactedFile(tmpFileName, orderingID, filesRecords.get(i), filesBytes.get(i));
 
-               freeFiles.add(jf);
+            for (CompactedRecord record : filesRecords.get(i))
+            {
+               record.newFile = newFile;
             }
-            else
+
+            newFiles.add(newFile);
+
+            newFileNames.add(fileName);
+
+            renames.add(tmpFileName);
+
+            renames.add(fileName);
+         }
+
+         List<String> filesToDelete = new ArrayList<String>();
+
+         for (JournalFile file : files)
+         {
+            filesToDelete.add(file.getFile().getFileName());
+         }
+
+         // This is the commit point of the compaction
+         final SequentialFile controlFile = writeCompactControl(filesToDelete, renames);
+
+         // Changing dataFiles on the filesExecutor, we don't race with the files being closed
+         Future<Object> swap = filesExecutor.submit(new Callable<Object>()
+         {
+            public Object call() throws Exception
             {
-               file.getFile().open(1);
+               for (CompactedRecord record : records)
+               {
+                  record.posFiles.compactFile(record.file, record.newFile);
+               }
 
-               file.getFile().delete();
+               List<JournalFile> newDataFiles = new ArrayList<JournalFile>(newFiles);
+
+               for (JournalFile file : dataFiles)
+               {
+                  if (!files.contains(file))
+                  {
+                     newDataFiles.add(file);
+                  }
+               }
+
+               dataFiles.clear();
+
+               dataFiles.addAll(newDataFiles);
+
+               for (JournalFile file : files)
+               {
+                  file.getFile().open(1);
+
+                  file.getFile().delete();
+               }
+
+               for (int i = 0; i < newFiles.size(); i++)
+               {
+                  newFiles.get(i).getFile().renameTo(newFileNames.get(i));
+               }
+
+               controlFile.open(1);
+
+               controlFile.delete();
+
+               return null;
             }
+         });
+
+         swap.get();
+
+         compactCount.incrementAndGet();
+
+         if (trace)
+         {
+            trace("Compacted " + files.size() + " files into " + newFiles.size() + " with " + records.size() + " records");
          }
       }
+      finally
+      {
+         compactorLock.unlock();
+      }
    }
 
    public int getDataFilesCount()
@@ -1491,6 +1687,43 @@ public class JournalImpl implements TestableJournal
       debugWait();
    }
 
+   public boolean isGroupCommit()
+   {
+      return groupCommitBuffer != null;
+   }
+
+   /** Number of batches written by the group-commit stage */
+   public long getGroupCommitBatchCount()
+   {
+      return groupCommitBuffer == null ? 0 : groupCommitBuffer.getBatchCount();
+   }
+
+   public double getGroupCommitAverageRecordsPerBatch()
+   {
+      return groupCommitBuffer == null ? 0 : groupCommitBuffer.getAverageRecordsPerBatch();
+   }
+
+   public double getGroupCommitAverageBatchBytes()
+   {
+      return groupCommitBuffer == null ? 0 : groupCommitBuffer.getAverageBatchBytes();
+   }
+
+   public double getGroupCommitAverageSyncLatencyMicros()
+   {
+      return groupCommitBuffer == null ? 0 : groupCommitBuffer.getAverageSyncLatencyMicros();
+   }
+
+   public long getGroupCommitMaxSyncLatencyMicros()
+   {
+      return groupCommitBuffer == null ? 0 : groupCommitBuffer.getMaxSyncLatencyMicros();
+   }
+
+   /** Number of compactions that released journal files */
+   public long getCompactCount()
+   {
+      return compactCount.get();
+   }
+
    // MessagingComponent implementation
    // ---------------------------------------------------
 
@@ -1508,6 +1741,13 @@ public class JournalImpl implements TestableJournal
 
       filesExecutor = Executors.newSingleThreadExecutor();
 
+      compactorExecutor = Executors.newSingleThreadExecutor();
+
+      if (groupCommitBuffer != null)
+      {
+         groupCommitBuffer.start();
+      }
+
       state = STATE_STARTED;
    }
 
@@ -1518,6 +1758,19 @@ public class JournalImpl implements TestableJournal
          throw new IllegalStateException("Journal is already stopped");
       }
 
+      if (groupCommitBuffer != null)
+      {
+         groupCommitBuffer.stop();
+      }
+
+      // A running compaction still needs the filesExecutor to finish
+      compactorExecutor.shutdown();
+
+      if (!compactorExecutor.awaitTermination(60, TimeUnit.SECONDS))
+      {
+         log.warn("Couldn't stop journal compactor after 60 seconds");
+      }
+
       if (currentFile != null)
       {
          currentFile.getFile().close();
@@ -1798,11 +2051,642 @@ public class JournalImpl implements TestableJournal
       return recordSize;
    }
 
-   private List<JournalFile> orderFiles() throws Exception
+   /**
+    * <p>Reads every valid record of a journal file, following the layout described on {@link JournalImpl#load(LoadManager)}.</p>
+    * <p>Damaged records are skipped and reported through {@link JournalReaderCallback#markAsDataFile(JournalFile)}.</p>
+    * @return the position right after the last valid record, or -1 if no valid record was found
+    */
+   private int readJournalFile(final JournalFile file, final JournalReaderCallback reader) throws Exception
    {
-      List<String> fileNames = fileFactory.listFiles(fileExtension);
-
-      List<JournalFile> orderedFiles = new ArrayList<JournalFile>(fileNames.size());
+      return readJournalFile(file, reader, fileFactory.newBuffer(fileSize));
+   }
+
+   /**
+    * Reads the file with a buffer taken from the pool, or a new one if the pool is empty. The buffer is then put back
+    * in the pool, the records read are copied out of it.
+    */
+   private int readJournalFile(final JournalFile file,
+                               final JournalReaderCallback reader,
+                               final BlockingQueue<ByteBuffer> buffers) throws Exception
+   {
+      ByteBuffer bb = buffers.poll();
+
+      if (bb == null)
+      {
+         bb = fileFactory.newBuffer(fileSize);
+      }
+      else
+      {
+         bb.clear();
+      }
+
+      try
+      {
+         return readJournalFile(file, reader, bb);
+      }
+      finally
+      {
+         buffers.offer(bb);
+      }
+   }
+
+   private int readJournalFile(final JournalFile file, final JournalReaderCallback reader, final ByteBuffer bb) throws Exception
+   {
+      file.getFile().open(1);
+
+      int bytesRead = file.getFile().read(bb);
+
+      if (bytesRead != fileSize)
+      {
+         // FIXME - We should extract everything we can from this file
+         // and then we shouldn't ever reuse this file on reclaiming (instead
+         // reclaim on different size files would aways throw the file away)
+         // rather than throw ISE!
+         // We don't want to leave the user with an unusable system
+         throw new IllegalStateException("File is wrong size " + bytesRead +
+                                         " expected " +
+                                         fileSize +
+                                         " : " +
+                                         file.getFile().getFileName());
+      }
+
+      // First long is the ordering timestamp, we just jump its position
+      bb.position(SIZE_HEADER);
+
+      int lastDataPos = -1;
+
+      while (bb.hasRemaining())
+      {
+         final int pos = bb.position();
+
+         byte recordType = bb.get();
+
+         if (recordType < ADD_RECORD || recordType > ROLLBACK_RECORD)
+         {
+            // I - We scan for any valid record on the file. If a hole
+            // happened on the middle of the file we keep looking until all
+            // the possibilities are gone
+            continue;
+         }
+
+         if (bb.position() + SIZE_INT > fileSize)
+         {
+            // II - Ignore this record, lets keep looking
+            continue;
+         }
+
+         // III - Every record has the file-id.
+         // This is what supports us from not re-filling the whole file
+         int readFileId = bb.getInt();
+
+         // IV - This record is from a previous file-usage. The file was
+         // reused and we need to ignore this record
+         if (readFileId != file.getOrderingID())
+         {
+            // If a file has damaged records, we make it a dataFile, and the
+            // next reclaiming will fix it
+            reader.markAsDataFile(file);
+
+            bb.position(pos + 1);
+
+            continue;
+         }
+
+         long transactionID = 0;
+
+         if (isTransaction(recordType))
+         {
+            if (bb.position() + SIZE_LONG > fileSize)
+            {
+               continue;
+            }
+
+            transactionID = bb.getLong();
+         }
+
+         long recordID = 0;
+
+         if (!isCompleteTransaction(recordType))
+         {
+            if (bb.position() + SIZE_LONG > fileSize)
+            {
+               continue;
+            }
+
+            recordID = bb.getLong();
+         }
+
+         // We use the size of the record to validate the health of the
+         // record.
+         // (V) We verify the size of the record
+
+         // The variable record portion used on Updates and Appends
+         int variableSize = 0;
+
+         // Used to hold extra data on transaction prepares
+         int preparedTransactionExtraDataSize = 0;
+
+         byte userRecordType = 0;
+
+         byte record[] = null;
+
+         if (isContainsBody(recordType))
+         {
+            if (bb.position() + SIZE_INT > fileSize)
+            {
+               continue;
+            }
+
+            variableSize = bb.getInt();
+
+            if (bb.position() + variableSize > fileSize)
+            {
+               log.warn("Record at position " + pos +
+                        " file:" +
+                        file.getFile().getFileName() +
+                        " is corrupted and it is being ignored");
+               continue;
+            }
+
+            if (recordType != DELETE_RECORD_TX)
+            {
+               userRecordType = bb.get();
+            }
+
+            record = new byte[variableSize];
+
+            bb.get(record);
+         }
+
+         if (recordType == PREPARE_RECORD || recordType == COMMIT_RECORD)
+         {
+            if (recordType == PREPARE_RECORD)
+            {
+               // Add the variable size required for preparedTransactions
+               preparedTransactionExtraDataSize = bb.getInt();
+            }
+            // Both commit and record contain the recordSummary, and this is
+            // used to calculate the record-size on both record-types
+            variableSize += bb.getInt() * SIZE_INT * 2;
+         }
+
+         int recordSize = getRecordSize(recordType);
+
+         // VI - this is completing V, We will validate the size at the end
+         // of the record,
+         // But we avoid buffer overflows by damaged data
+         if (pos + recordSize + variableSize + preparedTransactionExtraDataSize > fileSize)
+         {
+            // Avoid a buffer overflow caused by damaged data... continue
+            // scanning for more records...
+            log.warn("Record at position " + pos +
+                     " file:" +
+                     file.getFile().getFileName() +
+                     " is corrupted and it is being ignored");
+            // If a file has damaged records, we make it a dataFile, and the
+            // next reclaiming will fix it
+            reader.markAsDataFile(file);
+
+            continue;
+         }
+
+         int oldPos = bb.position();
+
+         bb.position(pos + variableSize + recordSize + preparedTransactionExtraDataSize - SIZE_INT);
+
+         int checkSize = bb.getInt();
+
+         // VII - The checkSize at the end has to match with the size
+         // informed at the beggining.
+         // This is like testing a hash for the record. (We could replace the
+         // checkSize by some sort of calculated hash)
+         if (checkSize != variableSize + recordSize + preparedTransactionExtraDataSize)
+         {
+            log.warn("Record at position " + pos +
+                     " file:" +
+                     file.getFile().getFileName() +
+                     " is corrupted and it is being ignored");
+
+            // If a file has damaged records, we make it a dataFile, and the
+            // next reclaiming will fix it
+            reader.markAsDataFile(file);
+
+            bb.position(pos + SIZE_BYTE);
+
+            continue;
+         }
+
+         bb.position(oldPos);
+
+         // At this point everything is checked. So we relax and just load
+         // the data now.
+
+         switch (recordType)
+         {
+            case ADD_RECORD:
+            {
+               reader.onReadAddRecord(new RecordInfo(recordID, userRecordType, record, false));
+               break;
+            }
+            case UPDATE_RECORD:
+            {
+               reader.onReadUpdateRecord(new RecordInfo(recordID, userRecordType, record, true));
+               break;
+            }
+            case DELETE_RECORD:
+            {
+               reader.onReadDeleteRecord(recordID);
+               break;
+            }
+            case ADD_RECORD_TX:
+            {
+               reader.onReadAddRecordTX(transactionID, new RecordInfo(recordID, userRecordType, record, false));
+               break;
+            }
+            case UPDATE_RECORD_TX:
+            {
+               reader.onReadUpdateRecordTX(transactionID, new RecordInfo(recordID, userRecordType, record, true));
+               break;
+            }
+            case DELETE_RECORD_TX:
+            {
+               reader.onReadDeleteRecordTX(transactionID, new RecordInfo(recordID, (byte)0, record, true));
+               break;
+            }
+            case PREPARE_RECORD:
+            {
+               byte extraData[] = new byte[preparedTransactionExtraDataSize];
+
+               bb.get(extraData);
+
+               // Pair <FileID, NumberOfElements>
+               Pair<Integer, Integer>[] recordedSummary = readTransactionalElementsSummary(variableSize, bb);
+
+               reader.onReadPrepareRecord(transactionID, extraData, recordedSummary);
+
+               break;
+            }
+            case COMMIT_RECORD:
+            {
+               // We need to read it even if transaction was not found, or
+               // the reading checks would fail
+               // Pair <OrderId, NumberOfElements>
+               Pair<Integer, Integer>[] recordedSummary = readTransactionalElementsSummary(variableSize, bb);
+
+               reader.onReadCommitRecord(transactionID, recordedSummary);
+
+               break;
+            }
+            case ROLLBACK_RECORD:
+            {
+               reader.onReadRollbackRecord(transactionID);
+               break;
+            }
+            default:
+            {
+               throw new IllegalStateException("Journal " + file.getFile().getFileName() +
+                                               " is corrupt, invalid record type " +
+                                               recordType);
+            }
+         }
+
+         checkSize = bb.getInt();
+
+         // This is a sanity check about the loading code itself.
+         // If this checkSize doesn't match, it means the reading method is
+         // not doing what it was supposed to do
+         if (checkSize != variableSize + recordSize + preparedTransactionExtraDataSize)
+         {
+            throw new IllegalStateException("Internal error on loading file. Position doesn't match with checkSize");
+         }
+
+         lastDataPos = bb.position();
+      }
+
+      file.getFile().close();
+
+      return lastDataPos;
+   }
+
+   private RecordedFile getRecordedFile(final Future<RecordedFile> future) throws Exception
+   {
+      try
+      {
+         return future.get();
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() instanceof Exception)
+         {
+            throw (Exception)e.getCause();
+         }
+
+         throw e;
+      }
+   }
+
+   private void scheduleCompact()
+   {
+      // FIXME - size() involves a scan
+      if (dataFiles.size() < compactMinFiles || !compactorScheduled.compareAndSet(false, true))
+      {
+         return;
+      }
+
+      compactorExecutor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               compact();
+            }
+            catch (Exception e)
+            {
+               log.error(e.getMessage(), e);
+            }
+            finally
+            {
+               compactorScheduled.set(false);
+            }
+         }
+      });
+   }
+
+   /** 
+    * Select the oldest data files with a live-record ratio up to compactPercentage,
+    * stopping before any file with records of a transaction not completed on the selected files 
+    */
+   private List<JournalFile> selectCompactFiles() throws Exception
+   {
+      JournalFile current = currentFile;
+
+      List<JournalFile> files = new ArrayList<JournalFile>(dataFiles);
+
+      Collections.sort(files, new JournalFileComparator());
+
+      List<JournalFile> selected = new ArrayList<JournalFile>();
+
+      for (JournalFile file : files)
+      {
+         if (current == null || file.getOrderingID() >= current.getOrderingID())
+         {
+            break;
+         }
+
+         int posCount = file.getPosCount();
+
+         int negCount = current.getNegCount(file);
+
+         for (JournalFile negFile : files)
+         {
+            negCount += negFile.getNegCount(file);
+         }
+
+         int liveCount = Math.max(0, posCount - negCount);
+
+         if (liveCount * 100 > posCount * compactPercentage)
+         {
+            break;
+         }
+
+         selected.add(file);
+      }
+
+      TransactionScanner scanner = new TransactionScanner();
+
+      int completedFiles = 0;
+
+      for (int i = 0; i < selected.size(); i++)
+      {
+         readJournalFile(selected.get(i), scanner);
+
+         if (scanner.openTransactions.isEmpty())
+         {
+            completedFiles = i + 1;
+         }
+      }
+
+      return selected.subList(0, completedFiles);
+   }
+
+   /** Write the live records on a new file, using the same layout as {@link JournalImpl#appendAddRecord(long, byte, EncodingSupport)} */
+   private JournalFile writeCompactedFile(final String fileName,
+                                          final int orderingID,
+                                          final List<CompactedRecord> records,
+                                          final int bytes) throws Exception
+   {
+      SequentialFile sequentialFile = fileFactory.createSequentialFile(fileName, maxAIO);
+
+      sequentialFile.open();
+
+      sequentialFile.fill(0, fileSize, FILL_CHARACTER);
+
+      ByteBuffer header = fileFactory.newBuffer(SIZE_INT);
+
+      header.putInt(orderingID);
+
+      header.rewind();
+
+      sequentialFile.write(header, true);
+
+      ByteBuffer bb = fileFactory.newBuffer(bytes);
+
+      for (CompactedRecord record : records)
+      {
+         int start = bb.position();
+
+         int size = SIZE_ADD_RECORD + record.info.data.length;
+
+         bb.put(record.info.isUpdate ? UPDATE_RECORD : ADD_RECORD);
+         bb.putInt(orderingID);
+         bb.putLong(record.info.id);
+         bb.putInt(record.info.data.length);
+         bb.put(record.info.userRecordType);
+         bb.put(record.info.data);
+         bb.putInt(size);
+
+         bb.position(start + fileFactory.calculateBlockSize(size));
+      }
+
+      bb.rewind();
+
+      sequentialFile.position(sequentialFile.calculateBlockStart(SIZE_HEADER));
+
+      sequentialFile.write(bb, true);
+
+      sequentialFile.close();
+
+      return new JournalFileImpl(sequentialFile, orderingID);
+   }
+
+   private String getCompactControlFileName()
+   {
+      return filePrefix + "-compact." + fileExtension + "." + COMPACT_CONTROL_EXTENSION;
+   }
+
+   /**
+    * <p>Compact control file layout:</p>
+    * <table border=1>
+    *   <tr><td><b>Field Name</b></td><td><b>Size</b></td></tr>
+    *   <tr><td>Size</td><td>Integer (4 bytes)</td></tr>
+    *   <tr><td>Number of files to delete (N)</td><td>Integer (4 bytes)</td></tr>
+    *   <tr><td>* FileName(n)</td><td>Integer (4 bytes) + Chars</td></tr>
+    *   <tr><td>Number of file names (M)</td><td>Integer (4 bytes)</td></tr>
+    *   <tr><td>* TemporaryFileName(m), FileName(m)</td><td>Integer (4 bytes) + Chars</td></tr>
+    *   <tr><td>CheckSize</td><td>Integer (4 bytes)</td></tr>
+    * </table>
+    */
+   private SequentialFile writeCompactControl(final List<String> filesToDelete, final List<String> renames) throws Exception
+   {
+      int size = SIZE_INT * 4;
+
+      for (String fileName : filesToDelete)
+      {
+         size += SIZE_INT + fileName.length() * 2;
+      }
+
+      for (String fileName : renames)
+      {
+         size += SIZE_INT + fileName.length() * 2;
+      }
+
+      ByteBuffer bb = fileFactory.newBuffer(fileFactory.calculateBlockSize(size));
+
+      bb.putInt(size);
+
+      bb.putInt(filesToDelete.size());
+
+      for (String fileName : filesToDelete)
+      {
+         putString(bb, fileName);
+      }
+
+      bb.putInt(renames.size());
+
+      for (String fileName : renames)
+      {
+         putString(bb, fileName);
+      }
+
+      bb.putInt(size);
+
+      bb.rewind();
+
+      SequentialFile controlFile = fileFactory.createSequentialFile(getCompactControlFileName(), 1);
+
+      controlFile.open(1);
+
+      controlFile.write(bb, true);
+
+      controlFile.close();
+
+      return controlFile;
+   }
+
+   /** Finish a compaction interrupted by a crash, or discard it if the control file wasn't completely written */
+   private void recoverCompaction() throws Exception
+   {
+      String controlFileName = getCompactControlFileName();
+
+      if (fileFactory.listFiles(fileExtension + "." + COMPACT_CONTROL_EXTENSION).contains(controlFileName))
+      {
+         SequentialFile controlFile = fileFactory.createSequentialFile(controlFileName, 1);
+
+         controlFile.open(1);
+
+         ByteBuffer bb = fileFactory.newBuffer((int)controlFile.size());
+
+         controlFile.read(bb);
+
+         bb.rewind();
+
+         int size = bb.getInt();
+
+         if (size >= SIZE_INT * 4 && size <= bb.limit() && bb.getInt(size - SIZE_INT) == size)
+         {
+            log.info("Finishing journal compaction interrupted on " + filePrefix);
+
+            List<String> dataFileNames = fileFactory.listFiles(fileExtension);
+
+            int filesToDelete = bb.getInt();
+
+            for (int i = 0; i < filesToDelete; i++)
+            {
+               String fileName = getString(bb);
+
+               if (dataFileNames.contains(fileName))
+               {
+                  SequentialFile file = fileFactory.createSequentialFile(fileName, 1);
+
+                  file.open(1);
+
+                  file.delete();
+               }
+            }
+
+            List<String> tmpFileNames = fileFactory.listFiles(fileExtension + "." + COMPACT_FILE_EXTENSION);
+
+            int renames = bb.getInt() / 2;
+
+            for (int i = 0; i < renames; i++)
+            {
+               String tmpFileName = getString(bb);
+
+               String fileName = getString(bb);
+
+               if (tmpFileNames.contains(tmpFileName))
+               {
+                  fileFactory.createSequentialFile(tmpFileName, 1).renameTo(fileName);
+               }
+            }
+         }
+         else
+         {
+            log.warn("Journal compaction on " + filePrefix + " wasn't completed and it is being ignored");
+         }
+
+         controlFile.delete();
+      }
+
+      // Files from a compaction that never reached its control file
+      for (String tmpFileName : fileFactory.listFiles(fileExtension + "." + COMPACT_FILE_EXTENSION))
+      {
+         SequentialFile file = fileFactory.createSequentialFile(tmpFileName, 1);
+
+         file.open(1);
+
+         file.delete();
+      }
+   }
+
+   private void putString(final ByteBuffer bb, final String value)
+   {
+      bb.putInt(value.length());
+
+      for (int i = 0; i < value.length(); i++)
+      {
+         bb.putChar(value.charAt(i));
+      }
+   }
+
+   private String getString(final ByteBuffer bb)
+   {
+      char chars[] = new char[bb.getInt()];
+
+      for (int i = 0; i < chars.length; i++)
+      {
+         chars[i] = bb.getChar();
+      }
+
+      return new String(chars);
+   }
+
+   private List<JournalFile> orderFiles() throws Exception
+   {
+      List<String> fileNames = fileFactory.listFiles(fileExtension);
+
+      List<JournalFile> orderedFiles = new ArrayList<JournalFile>(fileNames.size());
 
       for (String fileName : fileNames)
       {
@@ -1829,17 +2713,6 @@ public class JournalImpl implements TestableJournal
       // Now order them by ordering id - we can't use the file name for ordering
       // since we can re-use dataFiles
 
-      class JournalFileComparator implements Comparator<JournalFile>
-      {
-         public int compare(final JournalFile f1, final JournalFile f2)
-         {
-            int id1 = f1.getOrderingID();
-            int id2 = f2.getOrderingID();
-
-            return id1 < id2 ? -1 : id1 == id2 ? 0 : 1;
-         }
-      }
-
       Collections.sort(orderedFiles, new JournalFileComparator());
 
       return orderedFiles;
@@ -1849,8 +2722,10 @@ public class JournalImpl implements TestableJournal
     * Note: This method will perform rwlock.readLock.lock(); 
     *       The method caller should aways unlock that readLock
     * */
-   private JournalFile appendRecord(final ByteBuffer bb, final boolean sync, final TransactionCallback callback) throws Exception
+   private JournalFile appendRecord(final ByteBuffer bb, final boolean sync, final IOCallback callback) throws Exception
    {
+      GroupCommitBuffer.WaitCompletion waitCompletion = null;
+
       positionLock.acquire();
 
       try
@@ -1886,12 +2761,44 @@ public class JournalImpl implements TestableJournal
          // another write as soon as we leave this block
          rwlock.readLock().lock();
 
+         if (groupCommitBuffer != null)
+         {
+            // The record has to join the batch before positionLock is released,
+            // so records are written in the same order their positions were reserved
+            bb.position(SIZE_BYTE);
+
+            bb.putInt(currentFile.getOrderingID());
+
+            bb.rewind();
+
+            IOCallback recordCallback = callback;
+
+            if (recordCallback == null && sync)
+            {
+               waitCompletion = new GroupCommitBuffer.WaitCompletion();
+
+               recordCallback = waitCompletion;
+            }
+
+            groupCommitBuffer.addRecord(currentFile.getFile(), bb, sync, recordCallback);
+         }
       }
       finally
       {
          positionLock.release();
       }
 
+      if (groupCommitBuffer != null)
+      {
+         // Other callers can join the batch while we wait
+         if (waitCompletion != null)
+         {
+            waitCompletion.waitCompletion();
+         }
+
+         return currentFile;
+      }
+
       bb.position(SIZE_BYTE);
 
       bb.putInt(currentFile.getOrderingID());
@@ -1913,7 +2820,26 @@ public class JournalImpl implements TestableJournal
          currentFile.getFile().write(bb, sync);
       }
 
-      return currentFile;
+      return currentFile;
+   }
+
+   private ByteBuffer encodeAddRecord(final long id, final byte recordType, final EncodingSupport record)
+   {
+      int recordLength = record.getEncodeSize();
+
+      int size = SIZE_ADD_RECORD + recordLength;
+
+      ByteBufferWrapper bb = new ByteBufferWrapper(newBuffer(size));
+
+      bb.putByte(ADD_RECORD);
+      bb.putInt(-1); // skip ID part
+      bb.putLong(id);
+      bb.putInt(recordLength);
+      bb.putByte(recordType);
+      record.encode(bb);
+      bb.putInt(size);
+
+      return bb.getBuffer();
    }
 
    /**
@@ -1979,11 +2905,17 @@ public class JournalImpl implements TestableJournal
    }
 
    // You need to guarantee lock.acquire() before calling this method
-   private void moveNextFile() throws InterruptedException
+   private void moveNextFile() throws Exception
    {
       rwlock.writeLock().lock();
       try
       {
+         if (groupCommitBuffer != null)
+         {
+            // Anything batched for the current file needs to be written before the file is closed
+            groupCommitBuffer.flush();
+         }
+
          closeFile(currentFile);
 
          currentFile = enqueueOpenFile();
@@ -2039,6 +2971,11 @@ public class JournalImpl implements TestableJournal
          });
       }
 
+      if (compactMinFiles > 0)
+      {
+         scheduleCompact();
+      }
+
       JournalFile nextFile = null;
 
       while (nextFile == null)
@@ -2203,10 +3140,13 @@ public class JournalImpl implements TestableJournal
    /** Used on the ref-count for reclaiming */
    private static class PosFiles
    {
-      private final JournalFile addFile;
+      private JournalFile addFile;
 
       private List<JournalFile> updateFiles;
 
+      /** Used by the compactor, in case the record is deleted while it is being copied */
+      private JournalFile deleteFile;
+
       PosFiles(final JournalFile addFile)
       {
          this.addFile = addFile;
@@ -2214,7 +3154,7 @@ public class JournalImpl implements TestableJournal
          addFile.incPosCount();
       }
 
-      void addUpdateFile(final JournalFile updateFile)
+      synchronized void addUpdateFile(final JournalFile updateFile)
       {
          if (updateFiles == null)
          {
@@ -2226,8 +3166,10 @@ public class JournalImpl implements TestableJournal
          updateFile.incPosCount();
       }
 
-      void addDelete(final JournalFile file)
+      synchronized void addDelete(final JournalFile file)
       {
+         deleteFile = file;
+
          file.incNegCount(addFile);
 
          if (updateFiles != null)
@@ -2238,6 +3180,430 @@ public class JournalImpl implements TestableJournal
             }
          }
       }
+
+      synchronized boolean containsFile(final JournalFile file)
+      {
+         return addFile == file || updateFiles != null && updateFiles.contains(file);
+      }
+
+      /** The compactor copied one record of this ID from oldFile into newFile */
+      synchronized void compactFile(final JournalFile oldFile, final JournalFile newFile)
+      {
+         newFile.incPosCount();
+
+         if (deleteFile != null)
+         {
+            // Deleted while the compactor was copying it. The neg was added against oldFile
+            deleteFile.incNegCount(newFile);
+         }
+         else if (updateFiles != null && updateFiles.contains(oldFile))
+         {
+            updateFiles.set(updateFiles.indexOf(oldFile), newFile);
+         }
+         else if (addFile == oldFile)
+         {
+            addFile = newFile;
+         }
+      }
+   }
+
+   private static class JournalFileComparator implements Comparator<JournalFile>
+   {
+      public int compare(final JournalFile f1, final JournalFile f2)
+      {
+         int id1 = f1.getOrderingID();
+         int id2 = f2.getOrderingID();
+
+         return id1 < id2 ? -1 : id1 == id2 ? 0 : 1;
+      }
+   }
+
+   /** A live record being copied by the compactor */
+   private static class CompactedRecord
+   {
+      final RecordInfo info;
+
+      final JournalFile file;
+
+      PosFiles posFiles;
+
+      JournalFile newFile;
+
+      boolean deleted;
+
+      CompactedRecord(final RecordInfo info, final JournalFile file)
+      {
+         this.info = info;
+
+         this.file = file;
+      }
+   }
+
+   /** Replays the compacted files the same way the load would do, keeping only the records that would still be loaded */
+   private class JournalCompactor implements JournalReaderCallback
+   {
+      JournalFile file;
+
+      private final List<CompactedRecord> records = new ArrayList<CompactedRecord>();
+
+      private final Map<Long, List<CompactedRecord>> recordsByID = new HashMap<Long, List<CompactedRecord>>();
+
+      private final Map<Long, List<CompactedRecord>> pendingRecords = new HashMap<Long, List<CompactedRecord>>();
+
+      private final Map<Long, List<Long>> pendingDeletes = new HashMap<Long, List<Long>>();
+
+      public void onReadAddRecord(final RecordInfo info) throws Exception
+      {
+         addRecord(new CompactedRecord(info, file));
+      }
+
+      public void onReadUpdateRecord(final RecordInfo info) throws Exception
+      {
+         addRecord(new CompactedRecord(info, file));
+      }
+
+      public void onReadDeleteRecord(final long recordID) throws Exception
+      {
+         deleteRecord(recordID);
+      }
+
+      public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         onReadUpdateRecordTX(transactionID, info);
+      }
+
+      public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         List<CompactedRecord> txRecords = pendingRecords.get(transactionID);
+
+         if (txRecords == null)
+         {
+            txRecords = new ArrayList<CompactedRecord>();
+
+            pendingRecords.put(transactionID, txRecords);
+         }
+
+         txRecords.add(new CompactedRecord(info, file));
+      }
+
+      public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         List<Long> txDeletes = pendingDeletes.get(transactionID);
+
+         if (txDeletes == null)
+         {
+            txDeletes = new ArrayList<Long>();
+
+            pendingDeletes.put(transactionID, txDeletes);
+         }
+
+         txDeletes.add(info.id);
+      }
+
+      public void onReadPrepareRecord(final long transactionID,
+                                      final byte[] extraData,
+                                      final Pair<Integer, Integer>[] summary) throws Exception
+      {
+         // Nothing to be done. Every transaction on the compacted files is completed on the same files
+      }
+
+      public void onReadCommitRecord(final long transactionID, final Pair<Integer, Integer>[] summary) throws Exception
+      {
+         List<CompactedRecord> txRecords = pendingRecords.remove(transactionID);
+
+         if (txRecords != null)
+         {
+            for (CompactedRecord record : txRecords)
+            {
+               addRecord(record);
+            }
+         }
+
+         List<Long> txDeletes = pendingDeletes.remove(transactionID);
+
+         if (txDeletes != null)
+         {
+            for (Long id : txDeletes)
+            {
+               deleteRecord(id);
+            }
+         }
+      }
+
+      public void onReadRollbackRecord(final long transactionID) throws Exception
+      {
+         pendingRecords.remove(transactionID);
+
+         pendingDeletes.remove(transactionID);
+      }
+
+      public void markAsDataFile(final JournalFile file)
+      {
+      }
+
+      List<CompactedRecord> getLiveRecords()
+      {
+         List<CompactedRecord> liveRecords = new ArrayList<CompactedRecord>();
+
+         for (CompactedRecord record : records)
+         {
+            // A record deleted and added again after it was read belongs to a different PosFiles
+            if (!record.deleted && posFilesMap.get(record.info.id) == record.posFiles)
+            {
+               liveRecords.add(record);
+            }
+         }
+
+         return liveRecords;
+      }
+
+      private void addRecord(final CompactedRecord record)
+      {
+         PosFiles posFiles = posFilesMap.get(record.info.id);
+
+         // Records not referenced by the reclaiming counters are not live any more
+         if (posFiles != null && posFiles.containsFile(record.file))
+         {
+            record.posFiles = posFiles;
+
+            records.add(record);
+
+            List<CompactedRecord> idRecords = recordsByID.get(record.info.id);
+
+            if (idRecords == null)
+            {
+               idRecords = new ArrayList<CompactedRecord>();
+
+               recordsByID.put(record.info.id, idRecords);
+            }
+
+            idRecords.add(record);
+         }
+      }
+
+      private void deleteRecord(final long id)
+      {
+         List<CompactedRecord> idRecords = recordsByID.remove(id);
+
+         if (idRecords != null)
+         {
+            for (CompactedRecord record : idRecords)
+            {
+               record.deleted = true;
+            }
+         }
+      }
+   }
+
+   /** Finds the transactions not yet completed on the files read so far */
+   private static class TransactionScanner implements JournalReaderCallback
+   {
+      final Set<Long> openTransactions = new HashSet<Long>();
+
+      public void onReadAddRecord(final RecordInfo info)
+      {
+      }
+
+      public void onReadUpdateRecord(final RecordInfo info)
+      {
+      }
+
+      public void onReadDeleteRecord(final long recordID)
+      {
+      }
+
+      public void onReadAddRecordTX(final long transactionID, final RecordInfo info)
+      {
+         openTransactions.add(transactionID);
+      }
+
+      public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info)
+      {
+         openTransactions.add(transactionID);
+      }
+
+      public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info)
+      {
+         openTransactions.add(transactionID);
+      }
+
+      public void onReadPrepareRecord(final long transactionID,
+                                      final byte[] extraData,
+                                      final Pair<Integer, Integer>[] summary)
+      {
+         openTransactions.add(transactionID);
+      }
+
+      public void onReadCommitRecord(final long transactionID, final Pair<Integer, Integer>[] summary)
+      {
+         openTransactions.remove(transactionID);
+      }
+
+      public void onReadRollbackRecord(final long transactionID)
+      {
+         openTransactions.remove(transactionID);
+      }
+
+      public void markAsDataFile(final JournalFile file)
+      {
+      }
+   }
+
+   /** Reads a journal file during load, ahead of it being applied */
+   private class FileRecorder implements Callable<RecordedFile>
+   {
+      private final JournalFile file;
+
+      private final BlockingQueue<ByteBuffer> buffers;
+
+      FileRecorder(final JournalFile file, final BlockingQueue<ByteBuffer> buffers)
+      {
+         this.file = file;
+
+         this.buffers = buffers;
+      }
+
+      public RecordedFile call() throws Exception
+      {
+         RecordedFile recordedFile = new RecordedFile();
+
+         recordedFile.lastDataPos = readJournalFile(file, recordedFile, buffers);
+
+         return recordedFile;
+      }
+   }
+
+   /** The records read from a journal file, kept in order to be replayed into another JournalReaderCallback */
+   private static class RecordedFile implements JournalReaderCallback
+   {
+      private final List<ReadRecord> records = new ArrayList<ReadRecord>();
+
+      int lastDataPos;
+
+      void replay(final JournalReaderCallback reader) throws Exception
+      {
+         for (ReadRecord record : records)
+         {
+            record.replay(reader);
+         }
+      }
+
+      public void onReadAddRecord(final RecordInfo info)
+      {
+         records.add(new ReadRecord()
+         {
+            void replay(final JournalReaderCallback reader) throws Exception
+            {
+               reader.onReadAddRecord(info);
+            }
+         });
+      }
+
+      public void onReadUpdateRecord(final RecordInfo info)
+      {
+         records.add(new ReadRecord()
+         {
+            void replay(final JournalReaderCallback reader) throws Exception
+            {
+               reader.onReadUpdateRecord(info);
+            }
+         });
+      }
+
+      public void onReadDeleteRecord(final long recordID)
+      {
+         records.add(new ReadRecord()
+         {
+            void replay(final JournalReaderCallback reader) throws Exception
+            {
+               reader.onReadDeleteRecord(recordID);
+            }
+         });
+      }
+
+      public void onReadAddRecordTX(final long transactionID, final RecordInfo info)
+      {
+         records.add(new ReadRecord()
+         {
+            void replay(final JournalReaderCallback reader) throws Exception
+            {
+               reader.onReadAddRecordTX(transactionID, info);
+            }
+         });
+      }
+
+      public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info)
+      {
+         records.add(new ReadRecord()
+         {
+            void replay(final JournalReaderCallback reader) throws Exception
+            {
+               reader.onReadUpdateRecordTX(transactionID, info);
+            }
+         });
+      }
+
+      public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info)
+      {
+         records.add(new ReadRecord()
+         {
+            void replay(final JournalReaderCallback reader) throws Exception
+            {
+               reader.onReadDeleteRecordTX(transactionID, info);
+            }
+         });
+      }
+
+      public void onReadPrepareRecord(final long transactionID,
+                                      final byte[] extraData,
+                                      final Pair<Integer, Integer>[] summary)
+      {
+         records.add(new ReadRecord()
+         {
+            void replay(final JournalReaderCallback reader) throws Exception
+            {
+               reader.onReadPrepareRecord(transactionID, extraData, summary);
+            }
+         });
+      }
+
+      public void onReadCommitRecord(final long transactionID, final Pair<Integer, Integer>[] summary)
+      {
+         records.add(new ReadRecord()
+         {
+            void replay(final JournalReaderCallback reader) throws Exception
+            {
+               reader.onReadCommitRecord(transactionID, summary);
+            }
+         });
+      }
+
+      public void onReadRollbackRecord(final long transactionID)
+      {
+         records.add(new ReadRecord()
+         {
+            void replay(final JournalReaderCallback reader) throws Exception
+            {
+               reader.onReadRollbackRecord(transactionID);
+            }
+         });
+      }
+
+      public void markAsDataFile(final JournalFile file)
+      {
+         records.add(new ReadRecord()
+         {
+            void replay(final JournalReaderCallback reader) throws Exception
+            {
+               reader.markAsDataFile(file);
+            }
+         });
+      }
+   }
+
+   private static abstract class ReadRecord
+   {
+      abstract void replay(JournalReaderCallback reader) throws Exception;
    }
 
    /** Class that will control buffer-reuse */
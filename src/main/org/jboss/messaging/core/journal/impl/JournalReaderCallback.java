@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source Copyright 2005-2008, Red Hat
+ * Middleware LLC, and individual contributors by the @authors tag. See the
+ * copyright.txt in the distribution for a full listing of individual
+ * contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA, or see the FSF
+ * site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.journal.impl;
+
+import org.jboss.messaging.core.journal.RecordInfo;
+import org.jboss.messaging.util.Pair;
+
+/**
+ *
+ * <p>A JournalReaderCallback</p>
+ *
+ * <p>Receives the records of a journal file, in the order they were written.
+ *    Used by the journal load and by the compactor to read files through the same parsing code.</p>
+ *
+ */
+interface JournalReaderCallback
+{
+   void onReadAddRecord(RecordInfo info) throws Exception;
+
+   void onReadUpdateRecord(RecordInfo recordInfo) throws Exception;
+
+   void onReadDeleteRecord(long recordID) throws Exception;
+
+   void onReadAddRecordTX(long transactionID, RecordInfo recordInfo) throws Exception;
+
+   void onReadUpdateRecordTX(long transactionID, RecordInfo recordInfo) throws Exception;
+
+   void onReadDeleteRecordTX(long transactionID, RecordInfo recordInfo) throws Exception;
+
+   /** @param summary Pair&lt;FileID, NumberOfElements&gt; as recorded by the prepare */
+   void onReadPrepareRecord(long transactionID, byte[] extraData, Pair<Integer, Integer>[] summary) throws Exception;
+
+   /** @param summary Pair&lt;FileID, NumberOfElements&gt; as recorded by the commit */
+   void onReadCommitRecord(long transactionID, Pair<Integer, Integer>[] summary) throws Exception;
+
+   void onReadRollbackRecord(long transactionID) throws Exception;
+
+   /** The file had damaged records, and it needs to be kept as a data file until the next reclaim fixes it */
+   void markAsDataFile(JournalFile file);
+}
@@ -0,0 +1,370 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.journal.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.jboss.messaging.core.journal.BufferCallback;
+import org.jboss.messaging.core.journal.IOCallback;
+import org.jboss.messaging.core.journal.SequentialFile;
+
+/**
+ * 
+ * A MappedSequentialFile
+ * 
+ * A SequentialFile accessed through a memory mapping of the whole file.
+ * 
+ * Writes are copied straight into the mapping, and sync forces the mapping to disk (msync).
+ * Reads are copied straight out of it.
+ * 
+ * A write past the end of the mapping remaps the file with a larger size, which extends the file on disk.
+ * The file is truncated back to the bytes actually written when it is closed.
+ * 
+ */
+public class MappedSequentialFile implements SequentialFile
+{
+   // Constants -----------------------------------------------------
+
+   private static final int MIN_MAPPED_SIZE = 64 * 1024;
+
+   /** Files are filled with bulk puts of a chunk of this size */
+   private static final int FILL_CHUNK_SIZE = 64 * 1024;
+
+   // Attributes ----------------------------------------------------
+
+   private final String journalDir;
+
+   private String fileName;
+
+   private File file;
+
+   private RandomAccessFile rfile;
+
+   private FileChannel channel;
+
+   private MappedByteBuffer mapped;
+
+   private int position;
+
+   /** The bytes in use, as opposed to the size of the mapping */
+   private int size;
+
+   private BufferCallback bufferCallback;
+
+   /** The chunk last filled with, reused while the fill character is the same */
+   private byte[] fillChunk;
+
+   // Constructors --------------------------------------------------
+
+   public MappedSequentialFile(final String journalDir, final String fileName)
+   {
+      this.journalDir = journalDir;
+
+      this.fileName = fileName;
+   }
+
+   // SequentialFile implementation ---------------------------------
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockStart(final int position) throws Exception
+   {
+      return position;
+   }
+
+   public String getFileName()
+   {
+      return fileName;
+   }
+
+   public synchronized void open() throws Exception
+   {
+      file = new File(journalDir + "/" + fileName);
+
+      rfile = new RandomAccessFile(file, "rw");
+
+      channel = rfile.getChannel();
+
+      size = (int)channel.size();
+
+      position = 0;
+
+      if (size > 0)
+      {
+         mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      }
+   }
+
+   public void open(final int currentMaxIO) throws Exception
+   {
+      open();
+   }
+
+   public void setBufferCallback(final BufferCallback callback)
+   {
+      bufferCallback = callback;
+   }
+
+   public synchronized void fill(final int position, final int size, final byte fillCharacter) throws Exception
+   {
+      checkOpen();
+
+      ensureMapped(position + size);
+
+      if (fillChunk == null || fillChunk[0] != fillCharacter)
+      {
+         fillChunk = new byte[FILL_CHUNK_SIZE];
+
+         Arrays.fill(fillChunk, fillCharacter);
+      }
+
+      ByteBuffer bb = mapped.duplicate();
+
+      bb.position(position);
+
+      for (int remaining = size; remaining > 0; remaining -= FILL_CHUNK_SIZE)
+      {
+         bb.put(fillChunk, 0, Math.min(remaining, FILL_CHUNK_SIZE));
+      }
+
+      mapped.force();
+
+      this.size = Math.max(this.size, position + size);
+
+      this.position = 0;
+   }
+
+   public synchronized void close() throws Exception
+   {
+      if (channel == null)
+      {
+         return;
+      }
+
+      // The mapping can't be released explicitly, it goes when it's garbage collected
+      mapped = null;
+
+      if (channel.size() > size)
+      {
+         channel.truncate(size);
+      }
+
+      channel.close();
+
+      rfile.close();
+
+      channel = null;
+
+      rfile = null;
+   }
+
+   public synchronized void delete() throws Exception
+   {
+      close();
+
+      new File(journalDir + "/" + fileName).delete();
+   }
+
+   public synchronized void renameTo(final String newFileName) throws Exception
+   {
+      File newFile = new File(journalDir + "/" + newFileName);
+
+      if (!new File(journalDir + "/" + fileName).renameTo(newFile))
+      {
+         throw new IOException("Couldn't rename " + fileName + " to " + newFileName);
+      }
+
+      fileName = newFileName;
+   }
+
+   public int read(final ByteBuffer bytes) throws Exception
+   {
+      return read(bytes, null);
+   }
+
+   public synchronized int read(final ByteBuffer bytes, final IOCallback callback) throws Exception
+   {
+      try
+      {
+         checkOpen();
+
+         int bytesRead = Math.min(bytes.remaining(), size - position);
+
+         if (bytesRead > 0)
+         {
+            ByteBuffer source = mapped.duplicate();
+
+            source.position(position);
+
+            source.limit(position + bytesRead);
+
+            bytes.put(source);
+
+            position += bytesRead;
+         }
+
+         if (callback != null)
+         {
+            callback.done();
+         }
+
+         bytes.flip();
+
+         return bytesRead;
+      }
+      catch (Exception e)
+      {
+         if (callback != null)
+         {
+            callback.onError(-1, e.getLocalizedMessage());
+         }
+
+         throw e;
+      }
+   }
+
+   public synchronized int write(final ByteBuffer bytes, final boolean sync) throws Exception
+   {
+      int bytesWritten = doWrite(bytes);
+
+      if (sync)
+      {
+         mapped.force();
+      }
+
+      if (bufferCallback != null)
+      {
+         bufferCallback.bufferDone(bytes);
+      }
+
+      return bytesWritten;
+   }
+
+   public synchronized int write(final ByteBuffer bytes, final IOCallback callback) throws Exception
+   {
+      try
+      {
+         int bytesWritten = doWrite(bytes);
+
+         if (callback != null)
+         {
+            callback.done();
+         }
+
+         if (bufferCallback != null)
+         {
+            bufferCallback.bufferDone(bytes);
+         }
+
+         return bytesWritten;
+      }
+      catch (Exception e)
+      {
+         if (callback != null)
+         {
+            callback.onError(-1, e.getMessage());
+         }
+
+         throw e;
+      }
+   }
+
+   public synchronized void sync() throws Exception
+   {
+      checkOpen();
+
+      if (mapped != null)
+      {
+         mapped.force();
+      }
+   }
+
+   public synchronized long size() throws Exception
+   {
+      checkOpen();
+
+      return size;
+   }
+
+   public synchronized void position(final int pos) throws Exception
+   {
+      checkOpen();
+
+      position = pos;
+   }
+
+   public synchronized int position() throws Exception
+   {
+      return position;
+   }
+
+   // Private -------------------------------------------------------
+
+   private void checkOpen() throws IOException
+   {
+      if (channel == null)
+      {
+         throw new IOException("File " + fileName + " is not open");
+      }
+   }
+
+   private int doWrite(final ByteBuffer bytes) throws Exception
+   {
+      checkOpen();
+
+      int bytesWritten = bytes.remaining();
+
+      ensureMapped(position + bytesWritten);
+
+      mapped.position(position);
+
+      mapped.put(bytes);
+
+      position += bytesWritten;
+
+      size = Math.max(size, position);
+
+      return bytesWritten;
+   }
+
+   private void ensureMapped(final int required) throws IOException
+   {
+      int mappedSize = mapped == null ? 0 : mapped.capacity();
+
+      if (required > mappedSize)
+      {
+         int newSize = Math.max(required, Math.max(mappedSize * 2, MIN_MAPPED_SIZE));
+
+         mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+      }
+   }
+}
@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.journal.impl;
+
+import java.nio.ByteBuffer;
+
+import org.jboss.messaging.core.journal.SequentialFile;
+import org.jboss.messaging.core.journal.SequentialFileFactory;
+
+/**
+ * 
+ * A MappedSequentialFileFactory
+ * 
+ * Creates MappedSequentialFiles. It doesn't need any native library.
+ * 
+ */
+public class MappedSequentialFileFactory extends AbstractSequentialFactory implements SequentialFileFactory
+{
+   public MappedSequentialFileFactory(final String journalDir)
+   {
+      super(journalDir);
+   }
+
+   // maxIO is ignored, writes complete as soon as they are copied to the mapping
+   public SequentialFile createSequentialFile(final String fileName, final int maxIO)
+   {
+      return new MappedSequentialFile(journalDir, fileName);
+   }
+
+   public boolean isSupportsCallbacks()
+   {
+      return false;
+   }
+
+   public ByteBuffer newBuffer(final int size)
+   {
+      return ByteBuffer.allocate(size);
+   }
+
+   public void clearBuffer(final ByteBuffer buffer)
+   {
+      final int limit = buffer.limit();
+      buffer.rewind();
+
+      for (int i = 0; i < limit; i++)
+      {
+         buffer.put((byte)0);
+      }
+
+      buffer.rewind();
+   }
+
+   public ByteBuffer wrapBuffer(final byte[] bytes)
+   {
+      return ByteBuffer.wrap(bytes);
+   }
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockSize(final int bytes)
+   {
+      return bytes;
+   }
+
+}
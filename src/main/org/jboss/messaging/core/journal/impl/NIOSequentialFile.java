@@ -23,6 +23,7 @@
 package org.jboss.messaging.core.journal.impl;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -46,7 +47,7 @@ public class NIOSequentialFile implements SequentialFile
 
    private final String journalDir;
 
-   private final String fileName;
+   private String fileName;
 
    private File file;
 
@@ -137,6 +138,18 @@ public class NIOSequentialFile implements SequentialFile
       close();
    }
 
+   public synchronized void renameTo(final String newFileName) throws Exception
+   {
+      File newFile = new File(journalDir + "/" + newFileName);
+
+      if (!new File(journalDir + "/" + fileName).renameTo(newFile))
+      {
+         throw new IOException("Couldn't rename " + fileName + " to " + newFileName);
+      }
+
+      fileName = newFileName;
+   }
+
    public int read(final ByteBuffer bytes) throws Exception
    {
       return read(bytes, null);
@@ -36,14 +36,29 @@ import java.util.List;
  */
 public interface PriorityLinkedList<T> extends Iterable<T>
 {
-   void addFirst(T t, int priority);
+   /**
+    * Returns the node holding the element, which can be passed to {@link #remove(Node)}
+    */
+   Node<T> addFirst(T t, int priority);
    
-   void addLast(T t, int priority);
+   Node<T> addLast(T t, int priority);
    
    T removeFirst();
    
+   /**
+    * Unlinks the node in constant time
+    * @return false if the element was already removed from the list
+    */
+   boolean remove(Node<T> node);
+   
    T peekFirst();
    
+   /**
+    * Returns the node of the first element, so the element that was looked at can then be removed with
+    * {@link #remove(Node)}, whatever was added meanwhile
+    */
+   Node<T> peekFirstNode();
+   
    List<T> getAll();
    
    void clear();   
@@ -53,4 +68,20 @@ public interface PriorityLinkedList<T> extends Iterable<T>
    Iterator<T> iterator();
    
    boolean isEmpty();
+   
+   /**
+    * A handle to an element of the list
+    */
+   interface Node<T>
+   {
+      /**
+       * @return the element. It may be null once the element was removed, a list can let go of it
+       */
+      T getValue();
+      
+      /**
+       * @return true once the element was removed from the list, by whatever means
+       */
+      boolean isRemoved();
+   }
 }
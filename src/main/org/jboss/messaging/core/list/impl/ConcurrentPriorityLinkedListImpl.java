@@ -0,0 +1,486 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */ 
+
+package org.jboss.messaging.core.list.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.messaging.core.list.PriorityLinkedList;
+
+/**
+ * A priority linked list which can be added to concurrently
+ * 
+ * {@link #addLast(Object, int)} can be called by any number of threads at once, without locking.
+ * All the other methods must be called by one thread at a time, the consumer of the list.
+ * 
+ * Each priority level is a multi producer, single consumer linked queue, and a bitmap records the levels which
+ * may hold elements, so peeking doesn't look at empty levels. Elements added with addFirst, which only the
+ * consumer does, are kept on a separate list in front of each level.
+ * 
+ * Removing an element through its node is constant time. An element added with addLast is only marked as
+ * removed, and its node is unlinked when the consumer gets to it. The node lets go of the element straight away,
+ * so a list nobody consumes doesn't keep the removed elements alive.
+ * 
+ */
+public class ConcurrentPriorityLinkedListImpl<T> implements PriorityLinkedList<T>
+{
+   private final List<Level> levels;
+
+   private final int priorities;
+
+   /** Bit i is set when level i may hold elements */
+   private final AtomicInteger nonEmptyLevels = new AtomicInteger(0);
+
+   private final AtomicInteger size = new AtomicInteger(0);
+
+   public ConcurrentPriorityLinkedListImpl(final int priorities)
+   {
+      if (priorities > Integer.SIZE)
+      {
+         throw new IllegalArgumentException("At most " + Integer.SIZE + " priorities are supported");
+      }
+
+      this.priorities = priorities;
+
+      levels = new ArrayList<Level>(priorities);
+
+      for (int i = 0; i < priorities; i++)
+      {
+         levels.add(new Level());
+      }
+   }
+
+   public Node<T> addFirst(final T t, final int priority)
+   {
+      ConcurrentNode<T> node = new ConcurrentNode<T>(t, priority, true);
+
+      levels.get(priority).linkFirst(node);
+
+      size.incrementAndGet();
+
+      setNonEmpty(priority);
+
+      return node;
+   }
+
+   public Node<T> addLast(final T t, final int priority)
+   {
+      ConcurrentNode<T> node = new ConcurrentNode<T>(t, priority, false);
+
+      levels.get(priority).linkLast(node);
+
+      size.incrementAndGet();
+
+      // Only once the node is linked, so the consumer can't miss it
+      setNonEmpty(priority);
+
+      return node;
+   }
+
+   public T removeFirst()
+   {
+      ConcurrentNode<T> node = first();
+
+      if (node == null)
+      {
+         return null;
+      }
+
+      T value = node.value;
+
+      levels.get(node.priority).unlinkFirst(node);
+
+      size.decrementAndGet();
+
+      return value;
+   }
+
+   public boolean remove(final Node<T> node)
+   {
+      ConcurrentNode<T> concurrentNode = (ConcurrentNode<T>)node;
+
+      if (concurrentNode.removed)
+      {
+         return false;
+      }
+
+      if (concurrentNode.front)
+      {
+         levels.get(concurrentNode.priority).unlinkFront(concurrentNode);
+      }
+      else
+      {
+         concurrentNode.removed = true;
+
+         concurrentNode.value = null;
+      }
+
+      size.decrementAndGet();
+
+      return true;
+   }
+
+   public T peekFirst()
+   {
+      ConcurrentNode<T> node = first();
+
+      return node == null ? null : node.value;
+   }
+
+   public Node<T> peekFirstNode()
+   {
+      return first();
+   }
+
+   public List<T> getAll()
+   {
+      List<T> all = new ArrayList<T>(size());
+
+      for (T t : this)
+      {
+         all.add(t);
+      }
+
+      return all;
+   }
+
+   public void clear()
+   {
+      while (removeFirst() != null)
+      {
+      }
+   }
+
+   public int size()
+   {
+      return size.get();
+   }
+
+   public boolean isEmpty()
+   {
+      return size.get() == 0;
+   }
+
+   public Iterator<T> iterator()
+   {
+      return new ConcurrentPriorityLinkedListIterator();
+   }
+
+   // Private -------------------------------------------------------
+
+   private ConcurrentNode<T> first()
+   {
+      int nonEmpty = nonEmptyLevels.get();
+
+      while (nonEmpty != 0)
+      {
+         int priority = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(nonEmpty);
+
+         Level level = levels.get(priority);
+
+         ConcurrentNode<T> node = level.first();
+
+         if (node == null)
+         {
+            clearNonEmpty(priority);
+
+            // A producer may have added to the level after we looked at it, and before the bit was cleared
+            node = level.first();
+
+            if (node != null)
+            {
+               setNonEmpty(priority);
+            }
+         }
+
+         if (node != null)
+         {
+            return node;
+         }
+
+         nonEmpty &= ~(1 << priority);
+      }
+
+      return null;
+   }
+
+   private void setNonEmpty(final int priority)
+   {
+      int bit = 1 << priority;
+
+      while (true)
+      {
+         int nonEmpty = nonEmptyLevels.get();
+
+         if ((nonEmpty & bit) != 0 || nonEmptyLevels.compareAndSet(nonEmpty, nonEmpty | bit))
+         {
+            return;
+         }
+      }
+   }
+
+   private void clearNonEmpty(final int priority)
+   {
+      int bit = 1 << priority;
+
+      while (true)
+      {
+         int nonEmpty = nonEmptyLevels.get();
+
+         if ((nonEmpty & bit) == 0 || nonEmptyLevels.compareAndSet(nonEmpty, nonEmpty & ~bit))
+         {
+            return;
+         }
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class ConcurrentNode<T> implements Node<T>
+   {
+      /** Null once the node is removed */
+      private T value;
+
+      private final int priority;
+
+      /** Added with addFirst, and linked on the front list of its level */
+      private final boolean front;
+
+      private volatile ConcurrentNode<T> next;
+
+      private ConcurrentNode<T> prev;
+
+      private volatile boolean removed;
+
+      ConcurrentNode(final T value, final int priority, final boolean front)
+      {
+         this.value = value;
+
+         this.priority = priority;
+
+         this.front = front;
+      }
+
+      public T getValue()
+      {
+         return value;
+      }
+
+      public boolean isRemoved()
+      {
+         return removed;
+      }
+   }
+
+   /** The elements of one priority */
+   private final class Level
+   {
+      // Elements added with addFirst, only used by the consumer
+      private ConcurrentNode<T> frontHead;
+
+      private ConcurrentNode<T> frontTail;
+
+      // Elements added with addLast. head is the last node the consumer took, the next one is the first element
+      private ConcurrentNode<T> head = new ConcurrentNode<T>(null, -1, false);
+
+      private final AtomicReference<ConcurrentNode<T>> tail = new AtomicReference<ConcurrentNode<T>>(head);
+
+      void linkFirst(final ConcurrentNode<T> node)
+      {
+         node.next = frontHead;
+
+         if (frontHead == null)
+         {
+            frontTail = node;
+         }
+         else
+         {
+            frontHead.prev = node;
+         }
+
+         frontHead = node;
+      }
+
+      void linkLast(final ConcurrentNode<T> node)
+      {
+         ConcurrentNode<T> prev = tail.getAndSet(node);
+
+         // Until this is done the node is not seen by the consumer
+         prev.next = node;
+      }
+
+      /**
+       * @return the first element of the level, or null. An element being added may not be seen yet
+       */
+      ConcurrentNode<T> first()
+      {
+         if (frontHead != null)
+         {
+            return frontHead;
+         }
+
+         ConcurrentNode<T> next = head.next;
+
+         // Unlink the elements which were removed through their node
+         while (next != null && next.removed)
+         {
+            head = next;
+
+            next = next.next;
+         }
+
+         return next;
+      }
+
+      /** @param node the node returned by {@link #first()} */
+      void unlinkFirst(final ConcurrentNode<T> node)
+      {
+         if (node.front)
+         {
+            unlinkFront(node);
+         }
+         else
+         {
+            node.removed = true;
+
+            // The node stays as head until the next one is taken, it mustn't keep the element alive meanwhile
+            node.value = null;
+
+            head = node;
+         }
+      }
+
+      void unlinkFront(final ConcurrentNode<T> node)
+      {
+         if (node.prev == null)
+         {
+            frontHead = node.next;
+         }
+         else
+         {
+            node.prev.next = node.next;
+         }
+
+         if (node.next == null)
+         {
+            frontTail = node.prev;
+         }
+         else
+         {
+            node.next.prev = node.prev;
+         }
+
+         // next is kept, so an iterator positioned on this node can still move forward
+         node.prev = null;
+
+         node.removed = true;
+
+         node.value = null;
+      }
+   }
+
+   private class ConcurrentPriorityLinkedListIterator implements Iterator<T>
+   {
+      private int index;
+
+      private boolean inFront;
+
+      private ConcurrentNode<T> nextNode;
+
+      private ConcurrentNode<T> lastReturned;
+
+      ConcurrentPriorityLinkedListIterator()
+      {
+         index = priorities;
+
+         nextNode = null;
+      }
+
+      public boolean hasNext()
+      {
+         while (true)
+         {
+            // Nodes removed behind our back are skipped
+            while (nextNode != null && nextNode.removed)
+            {
+               nextNode = nextNode.next;
+            }
+
+            if (nextNode != null)
+            {
+               return true;
+            }
+
+            if (inFront)
+            {
+               // From the front list of the level to its other elements
+               inFront = false;
+
+               nextNode = levels.get(index).head.next;
+            }
+            else if (index > 0)
+            {
+               index--;
+
+               inFront = true;
+
+               nextNode = levels.get(index).frontHead;
+            }
+            else
+            {
+               return false;
+            }
+         }
+      }
+
+      public T next()
+      {
+         if (!hasNext())
+         {
+            throw new NoSuchElementException();
+         }
+
+         lastReturned = nextNode;
+
+         nextNode = nextNode.next;
+
+         return lastReturned.value;
+      }
+
+      public void remove()
+      {
+         if (lastReturned == null)
+         {
+            throw new IllegalStateException();
+         }
+
+         ConcurrentPriorityLinkedListImpl.this.remove(lastReturned);
+
+         lastReturned = null;
+      }
+   }
+}
@@ -24,9 +24,7 @@ package org.jboss.messaging.core.list.impl;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.NoSuchElementException;
 
 import org.jboss.messaging.core.list.PriorityLinkedList;
@@ -34,7 +32,8 @@ import org.jboss.messaging.core.list.PriorityLinkedList;
 /**
  * A priority linked list implementation
  * 
- * It implements this by maintaining an individual LinkedList for each priority level.
+ * It implements this by maintaining an individual doubly linked list for each priority level.
+ * The nodes are returned to the caller when added, so an element can be removed without scanning the list.
  * 
  * @author <a href="mailto:tim.fox@jboss.com>Tim Fox</a>
  * @version <tt>$Revision: 1174 $</tt>
@@ -43,7 +42,7 @@ import org.jboss.messaging.core.list.PriorityLinkedList;
  */
 public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 {      	
-   private final List<LinkedList<T>> linkedLists;
+   private final List<Level> levels;
    
    private final int priorities;
    
@@ -53,26 +52,34 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
    {
       this.priorities = priorities;
        
-      linkedLists = new ArrayList<LinkedList<T>>();
+      levels = new ArrayList<Level>();
       
       for (int i = 0; i < priorities; i++)
       {
-         linkedLists.add(new LinkedList<T>());
+         levels.add(new Level());
       }
    }
    
-   public void addFirst(final T t, final int priority)
+   public Node<T> addFirst(final T t, final int priority)
    {      
-      linkedLists.get(priority).addFirst(t);
+      LinkedNode<T> node = new LinkedNode<T>(t, priority);
       
-      size++; 
+      levels.get(priority).linkFirst(node);
+      
+      size++;
+      
+      return node;
    }
    
-   public void addLast(final T t, final int priority)
+   public Node<T> addLast(final T t, final int priority)
    { 
-      linkedLists.get(priority).addLast(t);
+      LinkedNode<T> node = new LinkedNode<T>(t, priority);
+      
+      levels.get(priority).linkLast(node);
       
       size++;
+      
+      return node;
    }
 
    public T removeFirst()
@@ -87,11 +94,16 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
       
       for (int i = priorities - 1; i >= 0; i--)
       {
-         LinkedList<T> ll = linkedLists.get(i);
+         Level level = levels.get(i);
          
-         if (!ll.isEmpty())
+         if (level.head != null)
          {
-            t = ll.removeFirst();
+            LinkedNode<T> node = level.head;
+            
+            level.unlink(node);
+            
+            t = node.value;
+            
             break;
          }                           
       }
@@ -104,34 +116,62 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
       return t;      
    }
    
-   public T peekFirst()
+   public boolean remove(final Node<T> node)
    {
-      T t = null;
+      LinkedNode<T> linkedNode = (LinkedNode<T>)node;
+      
+      if (!linkedNode.linked)
+      {
+         return false;
+      }
+      
+      levels.get(linkedNode.priority).unlink(linkedNode);
       
+      size--;
+      
+      return true;
+   }
+   
+   public T peekFirst()
+   {
       for (int i = priorities - 1; i >= 0; i--)
       {
-         LinkedList<T> ll = linkedLists.get(i);
-         if (!ll.isEmpty())
+         LinkedNode<T> head = levels.get(i).head;
+         
+         if (head != null)
          {
-            t = ll.getFirst();
+            return head.value;
          }
-         if (t != null)
+      }
+      
+      return null;      
+   }
+   
+   public Node<T> peekFirstNode()
+   {
+      for (int i = priorities - 1; i >= 0; i--)
+      {
+         LinkedNode<T> head = levels.get(i).head;
+         
+         if (head != null)
          {
-            break;
+            return head;
          }
       }
       
-      return t;      
+      return null;
    }
    
    public List<T> getAll()
    {
-      List<T> all = new ArrayList<T>();
+      List<T> all = new ArrayList<T>(size);
       
       for (int i = priorities - 1; i >= 0; i--)
       {
-         LinkedList<T> list = linkedLists.get(i);
-         all.addAll(list);
+         for (LinkedNode<T> node = levels.get(i).head; node != null; node = node.next)
+         {
+            all.add(node.value);
+         }
       }
       
       return all;
@@ -139,9 +179,9 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
    
    public void clear()
    {
-   	for (LinkedList<T> list: linkedLists)
+   	for (Level level: levels)
       {
-         list.clear();
+   	   level.clear();
       }
    	
    	size = 0;
@@ -161,39 +201,150 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
    {
       return new PriorityLinkedListIterator();
    }
+   
+   private static class LinkedNode<T> implements Node<T>
+   {
+      private final T value;
+      
+      private final int priority;
+      
+      private LinkedNode<T> prev;
+      
+      private LinkedNode<T> next;
+      
+      private boolean linked;
+      
+      LinkedNode(final T value, final int priority)
+      {
+         this.value = value;
+         
+         this.priority = priority;
+      }
+      
+      public T getValue()
+      {
+         return value;
+      }
+      
+      public boolean isRemoved()
+      {
+         return !linked;
+      }
+   }
+   
+   /** The elements of one priority */
+   private class Level
+   {
+      private LinkedNode<T> head;
+      
+      private LinkedNode<T> tail;
+      
+      void linkFirst(final LinkedNode<T> node)
+      {
+         node.next = head;
+         
+         if (head == null)
+         {
+            tail = node;
+         }
+         else
+         {
+            head.prev = node;
+         }
+         
+         head = node;
+         
+         node.linked = true;
+      }
+      
+      void linkLast(final LinkedNode<T> node)
+      {
+         node.prev = tail;
+         
+         if (tail == null)
+         {
+            head = node;
+         }
+         else
+         {
+            tail.next = node;
+         }
+         
+         tail = node;
+         
+         node.linked = true;
+      }
+      
+      void unlink(final LinkedNode<T> node)
+      {
+         if (node.prev == null)
+         {
+            head = node.next;
+         }
+         else
+         {
+            node.prev.next = node.next;
+         }
+         
+         if (node.next == null)
+         {
+            tail = node.prev;
+         }
+         else
+         {
+            node.next.prev = node.prev;
+         }
+         
+         // next is kept, so an iterator positioned on this node can still move forward
+         node.prev = null;
+         
+         node.linked = false;
+      }
+      
+      void clear()
+      {
+         for (LinkedNode<T> node = head; node != null; node = node.next)
+         {
+            node.linked = false;
+         }
+         
+         head = null;
+         
+         tail = null;
+      }
+   }
       
    private class PriorityLinkedListIterator implements Iterator<T>
    { 
       private int index;
       
-      private ListIterator<T> currentIter;
+      private LinkedNode<T> nextNode;
+      
+      private LinkedNode<T> lastReturned;
       
       PriorityLinkedListIterator()
       {
-         index = linkedLists.size() - 1;
+         index = levels.size() - 1;
          
-         currentIter = linkedLists.get(index).listIterator();
+         nextNode = levels.get(index).head;
       }
 
       public boolean hasNext()
       {
-         if (currentIter.hasNext())
+         // Nodes removed from the list behind our back are skipped
+         while (nextNode != null && !nextNode.linked)
          {
-            return true;
+            nextNode = nextNode.next;
          }
          
-         while (index >= 0)
-         {                 
-            if (index == 0 || currentIter.hasNext())
-            {
-               break;
-            }                 
-            
+         while (nextNode == null && index > 0)
+         {
             index--;
             
-            currentIter = linkedLists.get(index).listIterator();
+            nextNode = levels.get(index).head;
          }
-         return currentIter.hasNext();      
+         
+         return nextNode != null;      
       }
 
       public T next()
@@ -202,14 +353,24 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
          {
             throw new NoSuchElementException();
          }
-         return currentIter.next();
+         
+         lastReturned = nextNode;
+         
+         nextNode = nextNode.next;
+         
+         return lastReturned.value;
       }
 
       public void remove()
       {
-         currentIter.remove();      
+         if (lastReturned == null)
+         {
+            throw new IllegalStateException();
+         }
          
-         size--;
+         PriorityLinkedListImpl.this.remove(lastReturned);
+         
+         lastReturned = null;
       }
    }   
 }
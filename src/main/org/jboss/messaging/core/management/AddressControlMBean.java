@@ -42,6 +42,12 @@ public interface AddressControlMBean
 
    String[] getQueueNames() throws Exception;
 
+   int getWaitingProducerCount();
+
+   long getGrantedCredits();
+
+   long getCreditGrantRate();
+
    // Operations ----------------------------------------------------
 
    @Operation(desc = "Add a Role to this address")
@@ -104,6 +104,20 @@ public interface MessagingServerControlMBean
 
    public String getPagingDirectory();
 
+   public int getSessionDispatchMaxPoolSize();
+
+   public int getSessionDispatchMaxPendingPackets();
+
+   public long getSessionPacketHandledCount();
+
+   public int getSessionPacketPendingCount();
+
+   /** The number of times the transport stopped reading from a connection until a session handled its pending packets */
+   public long getSessionReadSuspendedCount();
+
+   /** In milliseconds, the time a session packet waited to be handled */
+   public double getSessionPacketAverageQueuedTime();
+
    // Operations ----------------------------------------------------
 
    @Operation(desc = "Create a queue with the specified address", impact = ACTION)
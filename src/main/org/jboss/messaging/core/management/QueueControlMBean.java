@@ -62,6 +62,10 @@ public interface QueueControlMBean
 
    int getMessagesAdded();
    
+   int getMessagesExpired();
+   
+   int getExpiringCount();
+   
    String getExpiryQueue();
    
    String getDLQ();
@@ -34,6 +34,7 @@ import javax.management.openmbean.TabularData;
 import org.jboss.messaging.core.management.AddressControlMBean;
 import org.jboss.messaging.core.management.RoleInfo;
 import org.jboss.messaging.core.postoffice.Binding;
+import org.jboss.messaging.core.postoffice.FlowController;
 import org.jboss.messaging.core.postoffice.PostOffice;
 import org.jboss.messaging.core.security.CheckType;
 import org.jboss.messaging.core.security.Role;
@@ -100,6 +101,27 @@ public class AddressControl extends StandardMBean implements
       }
    }
 
+   public int getWaitingProducerCount()
+   {
+      FlowController flowController = postOffice.getFlowController(address);
+
+      return flowController == null ? 0 : flowController.getWaitingProducerCount();
+   }
+
+   public long getGrantedCredits()
+   {
+      FlowController flowController = postOffice.getFlowController(address);
+
+      return flowController == null ? 0 : flowController.getGrantedCredits();
+   }
+
+   public long getCreditGrantRate()
+   {
+      FlowController flowController = postOffice.getFlowController(address);
+
+      return flowController == null ? 0 : flowController.getCreditGrantRate();
+   }
+
    public TabularData getRoles() throws Exception
    {
       return RoleInfo.toTabularData(getRoleInfos());
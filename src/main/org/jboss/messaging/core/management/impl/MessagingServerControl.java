@@ -50,6 +50,7 @@ import org.jboss.messaging.core.security.Role;
 import org.jboss.messaging.core.server.MessageReference;
 import org.jboss.messaging.core.server.MessagingServer;
 import org.jboss.messaging.core.server.Queue;
+import org.jboss.messaging.core.server.impl.SessionPacketDispatcher;
 import org.jboss.messaging.core.settings.HierarchicalRepository;
 import org.jboss.messaging.core.settings.impl.QueueSettings;
 import org.jboss.messaging.util.SimpleString;
@@ -303,6 +304,44 @@ public class MessagingServerControl extends StandardMBean implements
    {      
       return configuration.getPagingDirectory();
    }
+
+   public int getSessionDispatchMaxPoolSize()
+   {
+      return configuration.getSessionDispatchMaxPoolSize();
+   }
+
+   public int getSessionDispatchMaxPendingPackets()
+   {
+      return configuration.getSessionDispatchMaxPendingPackets();
+   }
+
+   public long getSessionPacketHandledCount()
+   {
+      SessionPacketDispatcher dispatcher = server.getSessionPacketDispatcher();
+
+      return dispatcher == null ? 0 : dispatcher.getHandledCount();
+   }
+
+   public int getSessionPacketPendingCount()
+   {
+      SessionPacketDispatcher dispatcher = server.getSessionPacketDispatcher();
+
+      return dispatcher == null ? 0 : dispatcher.getPendingCount();
+   }
+
+   public long getSessionReadSuspendedCount()
+   {
+      SessionPacketDispatcher dispatcher = server.getSessionPacketDispatcher();
+
+      return dispatcher == null ? 0 : dispatcher.getReadSuspendedCount();
+   }
+
+   public double getSessionPacketAverageQueuedTime()
+   {
+      SessionPacketDispatcher dispatcher = server.getSessionPacketDispatcher();
+
+      return dispatcher == null ? 0 : dispatcher.getAverageQueuedTime();
+   }
    
    public int getScheduledThreadPoolMaxSize()
    {
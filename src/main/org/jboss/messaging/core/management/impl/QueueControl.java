@@ -144,6 +144,16 @@ public class QueueControl extends StandardMBean implements QueueControlMBean
       return queue.getMessagesAdded();
    }
 
+   public int getMessagesExpired()
+   {
+      return queue.getMessagesExpired();
+   }
+
+   public int getExpiringCount()
+   {
+      return queue.getExpiringCount();
+   }
+
    public long getPersistenceID()
    {
       return queue.getPersistenceID();
@@ -142,8 +142,8 @@ public abstract class MessageImpl implements Message
       buff.putLong(timestamp);
       buff.putByte(priority);
       properties.encode(buff);
-      buff.putInt(body.limit());    
-      buff.putBytes(body.array(), 0, body.limit());
+      buff.putInt(body.limit());
+      buff.putBytes(body.toByteBuffer(0, body.limit()));
    }
 
    public int getEncodeSize()
@@ -171,11 +171,13 @@ public abstract class MessageImpl implements Message
       properties.decode(buffer);
       int len = buffer.getInt();
 
-      //TODO - this can be optimised
-      byte[] bytes = new byte[len];
-      buffer.getBytes(bytes);
-      body = buffer.createNewBuffer(len);
-      body.putBytes(bytes);      
+      // The body is a slice of the buffer, rather than a copy, so whoever decodes from a buffer must not reuse it
+      int start = buffer.position();
+      int limit = buffer.limit();
+      buffer.limit(start + len);
+      body = buffer.slice();
+      buffer.limit(limit);
+      buffer.position(start + len);
    }
    
    public long getMessageID()
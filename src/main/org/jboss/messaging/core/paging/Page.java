@@ -39,6 +39,11 @@ public interface Page
 
    PageMessage[] read() throws Exception;
 
+   /**
+    * The page has to be open. The reader starts at the beginning of the page.
+    */
+   PageReader createReader() throws Exception;
+
    int getSize();
 
    int getNumberOfMessages();
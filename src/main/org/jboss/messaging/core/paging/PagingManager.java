@@ -67,10 +67,11 @@ public interface PagingManager extends MessagingComponent
    void setPostOffice(PostOffice postOffice);
 
    /**
+    * Routes the messages of a page, which are read one at a time, in one transaction.
     * @param pagingStoreImpl 
     * @return false if the listener can't handle more pages
     */
-   boolean onDepage(int pageId, SimpleString destination, PagingStore pagingStoreImpl, PageMessage[] data) throws Exception;
+   boolean onDepage(int pageId, SimpleString destination, PagingStore pagingStoreImpl, PageReader reader) throws Exception;
 
    /**
     * To be used by transactions only.
@@ -126,6 +127,12 @@ public interface PagingManager extends MessagingComponent
     */
    void messageDone(ServerMessage message) throws Exception;
 
+   /**
+    * To be called once the message was deleted from the storage.
+    * If the message was depaged in place, its page file is released.
+    */
+   void messageDeleted(ServerMessage message) throws Exception;
+
    /** To be called when an message is being added to the address.
     *  @return the current size of the queue, or -1 if the queue is full and it should drop the message */
    long addSize(ServerMessage message) throws Exception;
@@ -53,6 +53,9 @@ public interface PagingStore extends MessagingComponent
 
    boolean isDropWhenMaxSize();
 
+   /** If true, producers are not given credits while the address is at its max size. See {@link org.jboss.messaging.core.postoffice.FlowController} */
+   boolean isBlockProducersWhenFull();
+
    long getPageSizeBytes();
 
    long getAddressSize();
@@ -86,6 +89,32 @@ public interface PagingStore extends MessagingComponent
     */
    boolean startDepaging();
 
+   /** If true, durable messages are kept on their page file after they are depaged. See {@link #addPageReference(int)} */
+   boolean isDepageInPlace();
+
+   /**
+    * A message kept on the depaged page is still referenced.
+    * The page file is kept until every reference to it is removed.
+    */
+   void addPageReference(int pageId);
+
+   /**
+    * A message kept on the depaged page was deleted. The page file is deleted once it is no longer referenced.
+    */
+   void removePageReference(int pageId) throws Exception;
+
+   /**
+    * Reads a page that was depaged but is still kept, because messages on it are referenced.
+    * Used when loading those messages back.
+    */
+   PageMessage[] readDepagedPage(int pageId) throws Exception;
+
+   /**
+    * Deletes the depaged pages that are no longer referenced.
+    * To be called once the references were loaded, as the server could have stopped before deleting them.
+    */
+   void deleteUnreferencedPages() throws Exception;
+
    LastPageRecord getLastRecord();
 
    void setLastRecord(LastPageRecord record);
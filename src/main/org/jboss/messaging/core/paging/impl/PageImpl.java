@@ -31,6 +31,7 @@ import org.jboss.messaging.core.journal.SequentialFile;
 import org.jboss.messaging.core.journal.SequentialFileFactory;
 import org.jboss.messaging.core.paging.Page;
 import org.jboss.messaging.core.paging.PageMessage;
+import org.jboss.messaging.core.paging.PageReader;
 import org.jboss.messaging.core.remoting.impl.ByteBufferWrapper;
 import org.jboss.messaging.util.VariableLatch;
 
@@ -54,6 +55,9 @@ public class PageImpl implements Page
 
    public static final byte END_BYTE = (byte)'}';
 
+   /** Pages are read in chunks of this size. It's a multiple of the AIO alignment */
+   public static final int READ_CHUNK_SIZE = 64 * 1024;
+
    // Attributes ----------------------------------------------------
 
    private final int pageId;
@@ -98,50 +102,25 @@ public class PageImpl implements Page
 
    public PageMessage[] read() throws Exception
    {
-
       ArrayList<PageMessage> messages = new ArrayList<PageMessage>();
 
-      ByteBuffer buffer = fileFactory.newBuffer((int)file.size());
-      file.position(0);
-      file.read(buffer);
+      PageReader reader = createReader();
 
-      ByteBufferWrapper messageBuffer = new ByteBufferWrapper(buffer);
+      PageMessage msg;
 
-      while (buffer.hasRemaining())
+      while ((msg = reader.next()) != null)
       {
-         final int position = buffer.position();
-
-         byte byteRead = buffer.get();
-
-         if (byteRead == START_BYTE)
-         {
-            if (buffer.position() + SIZE_INTEGER < buffer.limit())
-            {
-               int messageSize = buffer.getInt();
-               int oldPos = buffer.position();
-               if (buffer.position() + messageSize < buffer.limit() && buffer.get(oldPos + messageSize) == END_BYTE)
-               {
-                  PageMessage msg = instantiateObject();
-                  msg.decode(messageBuffer);
-                  messages.add(msg);
-               }
-               else
-               {
-                  buffer.position(position + 1);
-               }
-            }
-         }
-         else
-         {
-            buffer.position(position + 1);
-         }
+         messages.add(msg);
       }
 
-      numberOfMessages.set(messages.size());
-
       return messages.toArray(instantiateArray(messages.size()));
    }
 
+   public PageReader createReader() throws Exception
+   {
+      return new Reader((int)file.size());
+   }
+
    public void write(final PageMessage message) throws Exception
    {
       ByteBuffer buffer = fileFactory.newBuffer(message.getEncodeSize() + SIZE_RECORD);
@@ -223,6 +202,136 @@ public class PageImpl implements Page
 
    // Inner classes -------------------------------------------------
 
+   /**
+    * Reads the file a chunk at a time, and decodes a message only when it's asked for.
+    * A record that doesn't fit in the buffer makes the buffer grow to the size of the record.
+    */
+   private class Reader implements PageReader
+   {
+      private final int fileSize;
+
+      private final ByteBuffer chunk;
+
+      /** Bytes read from the file and not consumed yet, between position and limit */
+      private ByteBuffer buffer;
+
+      private int filePosition;
+
+      private int count;
+
+      Reader(final int fileSize)
+      {
+         this.fileSize = fileSize;
+
+         chunk = fileFactory.newBuffer(READ_CHUNK_SIZE);
+
+         buffer = ByteBuffer.allocate(READ_CHUNK_SIZE);
+
+         buffer.limit(0);
+      }
+
+      public PageMessage next() throws Exception
+      {
+         while (ensure(SIZE_BYTE + SIZE_INTEGER))
+         {
+            final int position = buffer.position();
+
+            if (buffer.get(position) == START_BYTE)
+            {
+               int messageSize = buffer.getInt(position + SIZE_BYTE);
+
+               int recordSize = messageSize + SIZE_RECORD;
+
+               // A corrupted size can't make us read past the end of the file
+               if (messageSize >= 0 && recordSize <= buffer.remaining() + fileSize - filePosition && ensure(recordSize))
+               {
+                  // ensure may have moved the record to the start of the buffer
+                  int recordStart = buffer.position();
+
+                  if (buffer.get(recordStart + recordSize - SIZE_BYTE) == END_BYTE)
+                  {
+                     buffer.position(recordStart + SIZE_BYTE + SIZE_INTEGER);
+
+                     PageMessage msg = instantiateObject();
+
+                     // The message keeps referencing the bytes it was decoded from, and this buffer is reused
+                     byte[] message = new byte[messageSize];
+
+                     buffer.get(message);
+
+                     msg.decode(new ByteBufferWrapper(ByteBuffer.wrap(message)));
+
+                     buffer.position(recordStart + recordSize);
+
+                     numberOfMessages.set(++count);
+
+                     return msg;
+                  }
+               }
+            }
+
+            buffer.position(buffer.position() + 1);
+         }
+
+         numberOfMessages.set(count);
+
+         return null;
+      }
+
+      /**
+       * @return false if there aren't that many bytes left in the file
+       */
+      private boolean ensure(final int bytes) throws Exception
+      {
+         while (buffer.remaining() < bytes)
+         {
+            if (filePosition >= fileSize)
+            {
+               return false;
+            }
+
+            chunk.clear();
+
+            // Don't ask for more than what is left on the file, keeping the read aligned
+            chunk.limit(Math.min(chunk.capacity(), fileFactory.calculateBlockSize(fileSize - filePosition)));
+
+            file.position(filePosition);
+
+            int bytesRead = Math.min(file.read(chunk), fileSize - filePosition);
+
+            if (bytesRead <= 0)
+            {
+               throw new IllegalStateException("Couldn't read page " + pageId + " at position " + filePosition);
+            }
+
+            chunk.position(0);
+
+            chunk.limit(bytesRead);
+
+            filePosition += bytesRead;
+
+            buffer.compact();
+
+            if (buffer.remaining() < bytesRead)
+            {
+               ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytesRead));
+
+               buffer.flip();
+
+               newBuffer.put(buffer);
+
+               buffer = newBuffer;
+            }
+
+            buffer.put(chunk);
+
+            buffer.flip();
+         }
+
+         return true;
+      }
+   }
+
    private static class PagingCallback implements IOCallback
    {
       private final VariableLatch countLatch = new VariableLatch();
@@ -25,6 +25,7 @@ package org.jboss.messaging.core.paging.impl;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.paging.LastPageRecord;
 import org.jboss.messaging.core.paging.PageMessage;
+import org.jboss.messaging.core.paging.PageReader;
 import org.jboss.messaging.core.paging.PageTransactionInfo;
 import org.jboss.messaging.core.paging.PagingManager;
 import org.jboss.messaging.core.paging.PagingStore;
@@ -176,7 +177,7 @@ public class PagingManagerImpl implements PagingManager
    public boolean onDepage(final int pageId,
                            final SimpleString destination,
                            final PagingStore pagingStore,
-                           final PageMessage[] data) throws Exception
+                           final PageReader reader) throws Exception
    {
       trace("Depaging....");
 
@@ -208,7 +209,14 @@ public class PagingManagerImpl implements PagingManager
       final List<MessageReference> refsToAdd = new ArrayList<MessageReference>();
       final List<MessageReference> scheduledRefsToAdd = new ArrayList<MessageReference>();
 
-      for (PageMessage msg : data)
+      int pageReferences = 0;
+
+      // All the messages of the page are held until the commit, as they would be once they are in their queues.
+      // They can't be added to the queues in smaller batches: the LastPageRecord is only stored by the commit,
+      // so after a failure the whole page is depaged again, and anything already delivered would be delivered twice
+      PageMessage msg;
+
+      while ((msg = reader.next()) != null)
       {
          final long transactionIdDuringPaging = msg.getTransactionID();
          if (transactionIdDuringPaging >= 0)
@@ -264,7 +272,19 @@ public class PagingManagerImpl implements PagingManager
 
          if (msg.getMessage().getDurableRefCount() != 0)
          {
-            storageManager.storeMessageTransactional(depageTransactionID, msg.getMessage());
+            if (pagingStore.isDepageInPlace())
+            {
+               // The message stays on the page file, only a reference to it is written to the journal
+               msg.getMessage().setPageId(pageId);
+
+               storageManager.storePagedMessageTransactional(depageTransactionID, msg.getMessage());
+
+               pageReferences++;
+            }
+            else
+            {
+               storageManager.storeMessageTransactional(depageTransactionID, msg.getMessage());
+            }
          }
       }
 
@@ -285,6 +305,12 @@ public class PagingManagerImpl implements PagingManager
 
       storageManager.commit(depageTransactionID);
 
+      // Before the messages can be acknowledged
+      for (int i = 0; i < pageReferences; i++)
+      {
+         pagingStore.addPageReference(pageId);
+      }
+
       for (MessageReference ref : refsToAdd)
       {
          ref.getQueue().addLast(ref);
@@ -324,6 +350,14 @@ public class PagingManagerImpl implements PagingManager
       addSize(message.getDestination(), message.getMemoryEstimate() * -1);
    }
 
+   public void messageDeleted(final ServerMessage message) throws Exception
+   {
+      if (message.getPageId() >= 0)
+      {
+         getPageStore(message.getDestination()).removePageReference(message.getPageId());
+      }
+   }
+
    public long addSize(final ServerMessage message) throws Exception
    {
       return addSize(message.getDestination(), message.getMemoryEstimate());
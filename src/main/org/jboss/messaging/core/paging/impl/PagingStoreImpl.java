@@ -23,7 +23,9 @@
 package org.jboss.messaging.core.paging.impl;
 
 import java.text.DecimalFormat;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -55,6 +57,9 @@ public class PagingStoreImpl implements TestSupportPageStore
    // Constants -----------------------------------------------------
    private static final Logger log = Logger.getLogger(PagingStoreImpl.class);
 
+   /** Extension of the pages already depaged, kept because messages on them are still referenced */
+   private static final String DEPAGED_EXTENSION = "depaged";
+
    // Attributes ----------------------------------------------------
 
    private final DecimalFormat format = new DecimalFormat("000000000");
@@ -71,6 +76,13 @@ public class PagingStoreImpl implements TestSupportPageStore
 
    private final boolean dropMessagesOnSize;
 
+   private final boolean depageInPlace;
+
+   private final boolean blockProducersWhenFull;
+
+   /** pageId -> number of messages kept on the depaged page that are still referenced */
+   private final Map<Integer, Integer> pageReferences = new HashMap<Integer, Integer>();
+
    private boolean droppedMessages;
 
    private final PagingManager pagingManager;
@@ -115,6 +127,8 @@ public class PagingStoreImpl implements TestSupportPageStore
       maxSize = queueSettings.getMaxSizeBytes();
       pageSize = queueSettings.getPageSizeBytes();
       dropMessagesOnSize = queueSettings.isDropMessagesWhenFull();
+      depageInPlace = queueSettings.isDepageInPlace();
+      blockProducersWhenFull = queueSettings.isBlockProducersWhenFull();
       this.executor = executor;
       this.pagingManager = pagingManager;
    }
@@ -200,12 +214,111 @@ public class PagingStoreImpl implements TestSupportPageStore
          return false;
       }
       page.open();
-      PageMessage messages[] = page.read();
-      boolean addressNotFull = pagingManager.onDepage(page.getPageId(), storeName, PagingStoreImpl.this, messages);
-      page.delete();
+
+      if (!depageInPlace)
+      {
+         boolean addressNotFull = pagingManager.onDepage(page.getPageId(), storeName, PagingStoreImpl.this, page.createReader());
+         page.delete();
+
+         return addressNotFull;
+      }
+
+      // The page is referenced while it's depaged, so the messages acknowledged before it is renamed can't delete it
+      addPageReference(page.getPageId());
+
+      boolean addressNotFull = pagingManager.onDepage(page.getPageId(), storeName, PagingStoreImpl.this, page.createReader());
+
+      page.close();
+
+      // Out of the pages to be depaged, the page is kept while its messages are referenced
+      fileFactory.createSequentialFile(createFileName(page.getPageId()), 1).renameTo(createDepagedFileName(page.getPageId()));
+
+      removePageReference(page.getPageId());
 
       return addressNotFull;
+   }
+
+   public boolean isDepageInPlace()
+   {
+      return depageInPlace;
+   }
+
+   public boolean isBlockProducersWhenFull()
+   {
+      return blockProducersWhenFull;
+   }
+
+   public void addPageReference(final int pageId)
+   {
+      synchronized (pageReferences)
+      {
+         Integer references = pageReferences.get(pageId);
+
+         pageReferences.put(pageId, references == null ? 1 : references + 1);
+      }
+   }
+
+   public void removePageReference(final int pageId) throws Exception
+   {
+      synchronized (pageReferences)
+      {
+         Integer references = pageReferences.get(pageId);
+
+         if (references == null)
+         {
+            log.warn("Page " + pageId + " of " + storeName + " is not referenced");
+         }
+         else if (references > 1)
+         {
+            pageReferences.put(pageId, references - 1);
+         }
+         else
+         {
+            pageReferences.remove(pageId);
+
+            deleteFile(createDepagedFileName(pageId));
+         }
+      }
+   }
+
+   public PageMessage[] readDepagedPage(final int pageId) throws Exception
+   {
+      validateInit();
+
+      String fileName = createDepagedFileName(pageId);
+
+      if (!fileFactory.listFiles(DEPAGED_EXTENSION).contains(fileName))
+      {
+         // The server stopped before the page was renamed
+         fileName = createFileName(pageId);
+      }
+
+      Page page = new PageImpl(fileFactory, fileFactory.createSequentialFile(fileName, 1), pageId);
+
+      page.open();
 
+      try
+      {
+         return page.read();
+      }
+      finally
+      {
+         page.close();
+      }
+   }
+
+   public void deleteUnreferencedPages() throws Exception
+   {
+      for (String fileName : fileFactory.listFiles(DEPAGED_EXTENSION))
+      {
+         synchronized (pageReferences)
+         {
+            if (!pageReferences.containsKey(getPageIdFromFileName(fileName)))
+            {
+               deleteFile(fileName);
+            }
+         }
+      }
    }
 
    /** 
@@ -615,14 +728,34 @@ public class PagingStoreImpl implements TestSupportPageStore
 
    /**
     * 
-    * Note: Decimalformat is not thread safe, Use synchronization before calling this method
+    * Note: Decimalformat is not thread safe, so its use is synchronized
     * 
     * @param pageID
     * @return
     */
    private String createFileName(final int pageID)
    {
-      return format.format(pageID) + ".page";
+      synchronized (format)
+      {
+         return format.format(pageID) + ".page";
+      }
+   }
+
+   private String createDepagedFileName(final int pageID)
+   {
+      synchronized (format)
+      {
+         return format.format(pageID) + "." + DEPAGED_EXTENSION;
+      }
+   }
+
+   private void deleteFile(final String fileName) throws Exception
+   {
+      SequentialFile file = fileFactory.createSequentialFile(fileName, 1);
+
+      file.open();
+
+      file.delete();
    }
 
    private static int getPageIdFromFileName(final String fileName)
@@ -22,6 +22,7 @@
 
 package org.jboss.messaging.core.persistence;
 
+import org.jboss.messaging.core.journal.IOCallback;
 import org.jboss.messaging.core.paging.LastPageRecord;
 import org.jboss.messaging.core.paging.PageTransactionInfo;
 import org.jboss.messaging.core.postoffice.Binding;
@@ -54,6 +55,12 @@ public interface StorageManager extends MessagingComponent
 
    void storeMessage(ServerMessage message) throws Exception;
 
+   /**
+    * Stores the message without waiting for the disk.
+    * The callback is completed once the message is persisted (or failed to be).
+    */
+   void storeMessage(ServerMessage message, IOCallback callback) throws Exception;
+
    void storeAcknowledge(long queueID, long messageID) throws Exception;
 
    void storeDelete(long messageID) throws Exception;
@@ -62,6 +69,12 @@ public interface StorageManager extends MessagingComponent
 
    void storeMessageTransactional(long txID, ServerMessage message) throws Exception;
 
+   /**
+    * Stores a reference to a message that is kept on the page file it was depaged from ({@link ServerMessage#getPageId()}),
+    * instead of the message itself. Acknowledgements and deletes use the message ID as usual.
+    */
+   void storePagedMessageTransactional(long txID, ServerMessage message) throws Exception;
+
    void storeAcknowledgeTransactional(long txID, long queueID, long messageiD) throws Exception;
 
    void storeMessageReferenceScheduledTransactional(final long txID, final long queueID, final long messageID, final long scheduledDeliveryTime) throws Exception;
@@ -26,15 +26,18 @@ import org.jboss.messaging.core.config.Configuration;
 import org.jboss.messaging.core.filter.Filter;
 import org.jboss.messaging.core.filter.impl.FilterImpl;
 import org.jboss.messaging.core.journal.EncodingSupport;
+import org.jboss.messaging.core.journal.IOCallback;
 import org.jboss.messaging.core.journal.Journal;
 import org.jboss.messaging.core.journal.PreparedTransactionInfo;
 import org.jboss.messaging.core.journal.RecordInfo;
 import org.jboss.messaging.core.journal.SequentialFileFactory;
 import org.jboss.messaging.core.journal.impl.AIOSequentialFileFactory;
 import org.jboss.messaging.core.journal.impl.JournalImpl;
+import org.jboss.messaging.core.journal.impl.MappedSequentialFileFactory;
 import org.jboss.messaging.core.journal.impl.NIOSequentialFileFactory;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.paging.LastPageRecord;
+import org.jboss.messaging.core.paging.PageMessage;
 import org.jboss.messaging.core.paging.PageTransactionInfo;
 import org.jboss.messaging.core.paging.PagingManager;
 import org.jboss.messaging.core.paging.impl.LastPageRecordImpl;
@@ -56,6 +59,7 @@ import org.jboss.messaging.core.transaction.ResourceManager;
 import org.jboss.messaging.core.transaction.Transaction;
 import org.jboss.messaging.core.transaction.impl.TransactionImpl;
 import org.jboss.messaging.util.IDGenerator;
+import org.jboss.messaging.util.LongHashSet;
 import org.jboss.messaging.util.SimpleString;
 import org.jboss.messaging.util.TimeAndCounterIDGenerator;
 
@@ -63,6 +67,7 @@ import javax.transaction.xa.Xid;
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -109,6 +114,8 @@ public class JournalStorageManager implements StorageManager
 
    public static final byte LAST_PAGE = 35;
 
+   public static final byte PAGED_MESSAGE = 36;
+
    public static final byte SET_SCHEDULED_DELIVERY_TIME = 44;
 
    //This will produce a unique id **for this node only**
@@ -126,9 +133,9 @@ public class JournalStorageManager implements StorageManager
 
    public JournalStorageManager(final Configuration config)
    {
-      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO)
+      if (config.getJournalType() == JournalType.JDBC)
       {
-         throw new IllegalArgumentException("Only NIO and AsyncIO are supported journals");
+         throw new IllegalArgumentException("Only NIO, AsyncIO and Mapped are supported journals");
       }
 
       String bindingsDir = config.getBindingsDirectory();
@@ -174,6 +181,11 @@ public class JournalStorageManager implements StorageManager
          log.info("NIO Journal selected");
          journalFF = new NIOSequentialFileFactory(bindingsDir);
       }
+      else if (config.getJournalType() == JournalType.MAPPED)
+      {
+         log.info("Mapped Journal selected");
+         journalFF = new MappedSequentialFileFactory(journalDir);
+      }
       else if (config.getJournalType() == JournalType.JDBC)
       {
          log.info("JDBC Journal selected");
@@ -189,7 +201,11 @@ public class JournalStorageManager implements StorageManager
                                        "jbm-data",
                                        "jbm",
                                        config.getJournalMaxAIO(),
-                                       config.getJournalBufferReuseSize());
+                                       config.getJournalBufferReuseSize(),
+                                       config.getJournalGroupCommitMaxBatchBytes(),
+                                       config.getJournalGroupCommitMaxWaitMicros(),
+                                       config.getJournalCompactMinFiles(),
+                                       config.getJournalCompactPercentage());
    }
 
    /* This constructor is only used for testing */
@@ -211,6 +227,11 @@ public class JournalStorageManager implements StorageManager
       messageJournal.appendAddRecord(message.getMessageID(), ADD_MESSAGE, message);
    }
 
+   public void storeMessage(final ServerMessage message, final IOCallback callback) throws Exception
+   {
+      messageJournal.appendAddRecord(message.getMessageID(), ADD_MESSAGE, message, callback);
+   }
+
    public void storeAcknowledge(final long queueID, final long messageID) throws Exception
    {
       messageJournal.appendUpdateRecord(messageID, ACKNOWLEDGE_REF, new ACKEncoding(queueID));
@@ -234,6 +255,14 @@ public class JournalStorageManager implements StorageManager
       messageJournal.appendAddRecordTransactional(txID, message.getMessageID(), ADD_MESSAGE, message);
    }
 
+   public void storePagedMessageTransactional(final long txID, final ServerMessage message) throws Exception
+   {
+      messageJournal.appendAddRecordTransactional(txID,
+                                                  message.getMessageID(),
+                                                  PAGED_MESSAGE,
+                                                  new PagedMessageEncoding(message.getDestination(), message.getPageId()));
+   }
+
    public void storePageTransaction(final long txID, final PageTransactionInfo pageTransaction) throws Exception
    {
       if (pageTransaction.getRecordID() != 0)
@@ -320,6 +349,11 @@ public class JournalStorageManager implements StorageManager
       List<PreparedTransactionInfo> preparedTransactions = new ArrayList<PreparedTransactionInfo>();
 
       messageJournal.load(records, preparedTransactions);
+
+      Map<Queue, LongHashSet> ackedMessages = loadAcknowledgements(queues, records);
+
+      PagedMessageLoader pagedMessageLoader = new PagedMessageLoader(postOffice);
+
       for (RecordInfo record : records)
       {
          byte[] data = record.data;
@@ -338,39 +372,31 @@ public class JournalStorageManager implements StorageManager
 
                message.decode(buff);
 
-               List<MessageReference> refs = postOffice.route(message);
-
-               for (MessageReference ref : refs)
-               {
-                  ref.getQueue().addLast(ref);
-               }
+               routeLoadedMessage(postOffice, ackedMessages, message);
 
                break;
             }
-            case ACKNOWLEDGE_REF:
+            case PAGED_MESSAGE:
             {
-               long messageID = record.id;
-
-               ACKEncoding encoding = new ACKEncoding();
+               PagedMessageEncoding encoding = new PagedMessageEncoding();
 
                encoding.decode(buff);
 
-               Queue queue = queues.get(encoding.queueID);
+               ServerMessage message = pagedMessageLoader.load(encoding, record.id);
 
-               if (queue == null)
-               {
-                  throw new IllegalStateException("Cannot find queue with id " + encoding.queueID);
-               }
+               message.setPageId(encoding.pageId);
 
-               MessageReference removed = queue.removeReferenceWithID(messageID);
+               postOffice.getPagingManager().getPageStore(encoding.destination).addPageReference(encoding.pageId);
 
-               if (removed == null)
-               {
-                  throw new IllegalStateException("Failed to remove reference for " + messageID);
-               }
+               routeLoadedMessage(postOffice, ackedMessages, message);
 
                break;
             }
+            case ACKNOWLEDGE_REF:
+            {
+               // Already applied by loadAcknowledgements
+               break;
+            }
             case UPDATE_DELIVERY_COUNT:
             {
                long messageID = record.id;
@@ -386,6 +412,11 @@ public class JournalStorageManager implements StorageManager
                   throw new IllegalStateException("Cannot find queue with id " + deliveryUpdate.queueID);
                }
 
+               if (isAcknowledged(ackedMessages, queue, messageID))
+               {
+                  break;
+               }
+
                MessageReference reference = queue.getReference(messageID);
 
                if (reference == null)
@@ -439,6 +470,12 @@ public class JournalStorageManager implements StorageManager
                   {
                      throw new IllegalStateException("Cannot find queue with id " + encoding.queueID);
                   }
+
+                  if (isAcknowledged(ackedMessages, queue, messageID))
+                  {
+                     break;
+                  }
+
                   //remove the reference and then add it back in with the scheduled time set.
                   MessageReference removed = queue.removeReferenceWithID(messageID);
 
@@ -459,6 +496,78 @@ public class JournalStorageManager implements StorageManager
 
    }
 
+   private void routeLoadedMessage(final PostOffice postOffice,
+                                   final Map<Queue, LongHashSet> ackedMessages,
+                                   final ServerMessage message) throws Exception
+   {
+      List<MessageReference> refs = postOffice.route(message);
+
+      for (MessageReference ref : refs)
+      {
+         Queue queue = ref.getQueue();
+
+         if (isAcknowledged(ackedMessages, queue, message.getMessageID()))
+         {
+            // Only durable messages on durable queues are acknowledged on the journal,
+            // so route counted this reference
+            message.decrementDurableRefCount();
+         }
+         else
+         {
+            queue.addLast(ref);
+         }
+      }
+   }
+
+   /**
+    * Collects the IDs of the messages already acknowledged on each queue,
+    * so loadMessages doesn't add references to queues only to remove them again
+    */
+   private Map<Queue, LongHashSet> loadAcknowledgements(final Map<Long, Queue> queues, final List<RecordInfo> records)
+   {
+      Map<Queue, LongHashSet> ackedMessages = new HashMap<Queue, LongHashSet>();
+
+      for (RecordInfo record : records)
+      {
+         if (record.getUserRecordType() == ACKNOWLEDGE_REF)
+         {
+            ACKEncoding encoding = new ACKEncoding();
+
+            encoding.decode(new ByteBufferWrapper(ByteBuffer.wrap(record.data)));
+
+            Queue queue = queues.get(encoding.queueID);
+
+            if (queue == null)
+            {
+               throw new IllegalStateException("Cannot find queue with id " + encoding.queueID);
+            }
+
+            LongHashSet acked = ackedMessages.get(queue);
+
+            if (acked == null)
+            {
+               acked = new LongHashSet();
+
+               ackedMessages.put(queue, acked);
+            }
+
+            if (!acked.add(record.id))
+            {
+               throw new IllegalStateException("Duplicate acknowledgement for " + record.id);
+            }
+         }
+      }
+
+      return ackedMessages;
+   }
+
+   private boolean isAcknowledged(final Map<Queue, LongHashSet> ackedMessages, final Queue queue, final long messageID)
+   {
+      LongHashSet acked = ackedMessages.get(queue);
+
+      return acked != null && acked.contains(messageID);
+   }
+
    // Bindings operations
 
    public void addBinding(final Binding binding) throws Exception
@@ -935,6 +1044,86 @@ public class JournalStorageManager implements StorageManager
 
    }
 
+   private static class PagedMessageEncoding implements EncodingSupport
+   {
+      SimpleString destination;
+
+      int pageId;
+
+      PagedMessageEncoding(final SimpleString destination, final int pageId)
+      {
+         this.destination = destination;
+         this.pageId = pageId;
+      }
+
+      PagedMessageEncoding()
+      {
+      }
+
+      public void decode(final MessagingBuffer buffer)
+      {
+         destination = buffer.getSimpleString();
+         pageId = buffer.getInt();
+      }
+
+      public void encode(final MessagingBuffer buffer)
+      {
+         buffer.putSimpleString(destination);
+         buffer.putInt(pageId);
+      }
+
+      public int getEncodeSize()
+      {
+         return SimpleString.sizeofString(destination) + SIZE_INT;
+      }
+   }
+
+   /**
+    * Reads the messages referenced by PAGED_MESSAGE records from their page files.
+    * The records of one page are written by a single depage transaction, so only the last page read is kept.
+    */
+   private static class PagedMessageLoader
+   {
+      private final PostOffice postOffice;
+
+      private SimpleString destination;
+
+      private int pageId;
+
+      private Map<Long, ServerMessage> messages;
+
+      PagedMessageLoader(final PostOffice postOffice)
+      {
+         this.postOffice = postOffice;
+      }
+
+      ServerMessage load(final PagedMessageEncoding encoding, final long messageID) throws Exception
+      {
+         if (messages == null || pageId != encoding.pageId || !destination.equals(encoding.destination))
+         {
+            destination = encoding.destination;
+
+            pageId = encoding.pageId;
+
+            messages = new HashMap<Long, ServerMessage>();
+
+            for (PageMessage pageMessage : postOffice.getPagingManager().getPageStore(destination).readDepagedPage(pageId))
+            {
+               messages.put(pageMessage.getMessage().getMessageID(), pageMessage.getMessage());
+            }
+         }
+
+         ServerMessage message = messages.remove(messageID);
+
+         if (message == null)
+         {
+            throw new IllegalStateException("Cannot find message " + messageID + " on page " + pageId + " of " + destination);
+         }
+
+         return message;
+      }
+   }
+
    private static class DeliveryCountUpdateEncoding implements EncodingSupport
    {
       long queueID;
@@ -22,6 +22,7 @@
 
 package org.jboss.messaging.core.persistence.impl.nullpm;
 
+import org.jboss.messaging.core.journal.IOCallback;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.paging.LastPageRecord;
 import org.jboss.messaging.core.paging.PageTransactionInfo;
@@ -127,10 +128,19 @@ public class NullStorageManager implements StorageManager
 	{
 	}
 
+	public void storeMessage(ServerMessage message, IOCallback callback) throws Exception
+	{
+	   callback.done();
+	}
+
 	public void storeMessageTransactional(long txID, ServerMessage message) throws Exception
 	{
 	}
 
+   public void storePagedMessageTransactional(long txID, ServerMessage message) throws Exception
+   {
+   }
+
    public void storeMessageReferenceScheduledTransactional(long txID, long queueID, long messageID, long scheduledDeliveryTime) throws Exception
    {
    }
@@ -21,6 +21,7 @@
  */
 package org.jboss.messaging.core.postoffice;
 
+import org.jboss.messaging.core.server.ServerMessage;
 import org.jboss.messaging.util.SimpleString;
 
 import java.util.List;
@@ -40,6 +41,11 @@ public interface AddressManager
 
    List<Binding> getBindings(SimpleString address);
 
+   /**
+    * @return the bindings of the address whose queue filter accepts the message, or null if the address has no bindings
+    */
+   List<Binding> getMatchingBindings(SimpleString address, ServerMessage message);
+
    void clear();
 
    Map<SimpleString, List<Binding>> getMappings();
@@ -29,6 +29,12 @@ import org.jboss.messaging.core.server.ServerProducer;
  * 
  * A FlowController
  * 
+ * Gives credits to the producers of one address. A producer sends as many bytes as it has credits, and the
+ * credits for the bytes it sent are given back to it once they were received.
+ * 
+ * If the address is set to block producers when full, credits are not given back while the address is at
+ * its max size. The producers are then kept waiting until acknowledgements make room on the address.
+ * 
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  *
  */
@@ -36,7 +42,18 @@ public interface FlowController
 {
 	void messageAcknowledged() throws Exception;
 	
-	void requestAndSendCredits(ServerProducer producer, int windowSize) throws Exception;
+	void requestAndSendCredits(ServerProducer producer) throws Exception;
 	
 	int getInitialCredits(int windowSize, ServerProducer producer) throws Exception;
+
+	void producerClosed(ServerProducer producer);
+
+	/** The number of producers waiting for room on the address before they get more credits */
+	int getWaitingProducerCount();
+
+	/** The total credits, in bytes, given to the producers of the address */
+	long getGrantedCredits();
+
+	/** The credits, in bytes, given per second since the rate was last measured. It is measured at most once a second */
+	long getCreditGrantRate();
 }
@@ -0,0 +1,264 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.postoffice.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jboss.messaging.core.filter.Filter;
+import org.jboss.messaging.core.filter.impl.FilterImpl;
+import org.jboss.messaging.core.postoffice.Binding;
+import org.jboss.messaging.core.server.ServerMessage;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * A BindingIndex
+ *
+ * The bindings of one address, indexed by filter so routing doesn't have to evaluate every filter.
+ *
+ * A binding whose filter requires a string property to have one of a set of values is registered under each of
+ * those values, and is only evaluated for messages carrying one of them. Any other binding is evaluated for every message.
+ *
+ * Bindings are indexed when the next message is routed after they were added, so adding a binding doesn't need
+ * to look at its filter. Apart from that, routing is lock free. Adding and removing bindings is serialized.
+ *
+ * Matching bindings are routed to in the order they were added, as the bindings of the address are listed.
+ *
+ */
+public class BindingIndex
+{
+   // Attributes ----------------------------------------------------
+
+   private final List<Binding> unindexed = new CopyOnWriteArrayList<Binding>();
+
+   /** property name -> property value -> bindings */
+   private final ConcurrentMap<SimpleString, ConcurrentMap<SimpleString, List<Binding>>> indexed = new ConcurrentHashMap<SimpleString, ConcurrentMap<SimpleString, List<Binding>>>();
+
+   /** The filter each indexed binding was registered with */
+   private final Map<Binding, FilterImpl> indexedFilters = new HashMap<Binding, FilterImpl>();
+
+   /** Bindings added since the last route, their filters are only looked at when they are needed */
+   private final List<Binding> pending = new ArrayList<Binding>();
+
+   private volatile boolean hasPending;
+
+   /** The order each binding was added in */
+   private final ConcurrentMap<Binding, Long> sequences = new ConcurrentHashMap<Binding, Long>();
+
+   private long sequence;
+
+   private final Comparator<Binding> addedOrder = new Comparator<Binding>()
+   {
+      public int compare(final Binding b1, final Binding b2)
+      {
+         long seq1 = sequenceOf(b1);
+         long seq2 = sequenceOf(b2);
+
+         return seq1 < seq2 ? -1 : (seq1 == seq2 ? 0 : 1);
+      }
+   };
+
+   // Public --------------------------------------------------------
+
+   public synchronized void addBinding(final Binding binding)
+   {
+      sequences.put(binding, sequence++);
+
+      pending.add(binding);
+
+      hasPending = true;
+   }
+
+   public synchronized void removeBinding(final Binding binding)
+   {
+      sequences.remove(binding);
+
+      if (pending.remove(binding))
+      {
+         return;
+      }
+
+      FilterImpl filter = indexedFilters.remove(binding);
+
+      if (filter == null)
+      {
+         unindexed.remove(binding);
+
+         return;
+      }
+
+      ConcurrentMap<SimpleString, List<Binding>> values = indexed.get(filter.getIndexedProperty());
+
+      if (values == null)
+      {
+         return;
+      }
+
+      for (SimpleString value : filter.getIndexedValues())
+      {
+         List<Binding> bindings = values.get(value);
+
+         if (bindings != null)
+         {
+            bindings.remove(binding);
+
+            if (bindings.isEmpty())
+            {
+               values.remove(value);
+            }
+         }
+      }
+
+      if (values.isEmpty())
+      {
+         indexed.remove(filter.getIndexedProperty());
+      }
+   }
+
+   /**
+    * Adds the bindings whose filter matches the message to the list
+    */
+   public void route(final ServerMessage message, final List<Binding> matches)
+   {
+      if (hasPending)
+      {
+         indexPending();
+      }
+
+      int start = matches.size();
+
+      for (Binding binding : unindexed)
+      {
+         Filter filter = binding.getQueue().getFilter();
+
+         if (filter == null || filter.match(message))
+         {
+            matches.add(binding);
+         }
+      }
+
+      if (indexed.isEmpty())
+      {
+         return;
+      }
+
+      int unindexedEnd = matches.size();
+
+      for (Map.Entry<SimpleString, ConcurrentMap<SimpleString, List<Binding>>> entry : indexed.entrySet())
+      {
+         Object value = message.getProperty(entry.getKey());
+
+         if (value instanceof SimpleString)
+         {
+            List<Binding> bindings = entry.getValue().get(value);
+
+            if (bindings != null)
+            {
+               for (Binding binding : bindings)
+               {
+                  // The rest of the filter still has to be evaluated
+                  if (binding.getQueue().getFilter().match(message))
+                  {
+                     matches.add(binding);
+                  }
+               }
+            }
+         }
+      }
+
+      // The unindexed and each indexed list are in added order, they are merged if indexed bindings matched
+      if (matches.size() - start > 1 && matches.size() > unindexedEnd)
+      {
+         Collections.sort(matches.subList(start, matches.size()), addedOrder);
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private long sequenceOf(final Binding binding)
+   {
+      Long seq = sequences.get(binding);
+
+      // Removed while being routed to
+      return seq == null ? Long.MAX_VALUE : seq;
+   }
+
+   private synchronized void indexPending()
+   {
+      for (Binding binding : pending)
+      {
+         index(binding);
+      }
+
+      pending.clear();
+
+      hasPending = false;
+   }
+
+   private void index(final Binding binding)
+   {
+      Filter filter = binding.getQueue().getFilter();
+
+      if (!(filter instanceof FilterImpl) || ((FilterImpl)filter).getIndexedProperty() == null)
+      {
+         unindexed.add(binding);
+
+         return;
+      }
+
+      FilterImpl filterImpl = (FilterImpl)filter;
+
+      indexedFilters.put(binding, filterImpl);
+
+      ConcurrentMap<SimpleString, List<Binding>> values = indexed.get(filterImpl.getIndexedProperty());
+
+      if (values == null)
+      {
+         values = new ConcurrentHashMap<SimpleString, List<Binding>>();
+
+         indexed.put(filterImpl.getIndexedProperty(), values);
+      }
+
+      for (SimpleString value : filterImpl.getIndexedValues())
+      {
+         List<Binding> bindings = values.get(value);
+
+         if (bindings == null)
+         {
+            bindings = new CopyOnWriteArrayList<Binding>();
+
+            values.put(value, bindings);
+         }
+
+         bindings.add(binding);
+      }
+   }
+}
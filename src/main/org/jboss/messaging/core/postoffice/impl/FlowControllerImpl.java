@@ -22,156 +22,193 @@
 
 package org.jboss.messaging.core.postoffice.impl;
 
-import org.jboss.messaging.core.logging.Logger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.messaging.core.paging.PagingManager;
+import org.jboss.messaging.core.paging.PagingStore;
 import org.jboss.messaging.core.postoffice.FlowController;
 import org.jboss.messaging.core.postoffice.PostOffice;
 import org.jboss.messaging.core.server.ServerProducer;
 import org.jboss.messaging.util.SimpleString;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-
 /**
  * 
  * A FlowControllerImpl
  * 
+ * The address is full when its size reaches the max size of its paging store.
+ * 
+ * Every producer is given its whole window when it's created, so a full address can be overshot by up to
+ * one window per producer. Anything over the max size is then paged (or dropped) as usual.
+ * 
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  *
  */
 public class FlowControllerImpl implements FlowController
 {
-	private static final Logger log = Logger.getLogger(FlowControllerImpl.class);
-	
-	private int lastPot;
-		
-	private int creditPot;
-	
-	private final PostOffice postOffice;
-	
-	private final SimpleString address;
-	
-	private final java.util.Queue<ServerProducer> waitingList = new ConcurrentLinkedQueue<ServerProducer>();
-	
-	public FlowControllerImpl(final SimpleString address, final PostOffice postOffice) throws Exception
-	{
-		this.address = address;
-		
-		this.postOffice = postOffice;
-	}
-	
-	public synchronized int getInitialCredits(final int windowSize, final ServerProducer producer) throws Exception
-	{	     
-      fillPot();
-      
-		int num = Math.min(windowSize, creditPot);
-		
-		creditPot -= num;
-		
-		if (num <= 0)
-		{
-			//Register producer as a waiter or will never get any messages
-			
-			producer.setWaiting(true);
-			
-			waitingList.add(producer);
-		}
-		
-		return num;
-	}
-				
-	//FIXME - sort out the synchronization on this - don't want to lock the whole thing
-	//also don't want to execute the whole method if already waiting
-	public synchronized void messageAcknowledged() throws Exception
-	{		
-//	   log.info("acking");
-//	   
-//		fillPot();
-//		
-//		log.info("Filled pot is now " + creditPot);
-//			
-//		while (creditPot > 0)
-//		{
-//			ServerProducer producer = waitingList.poll();
-//			
-//			if (producer == null)
-//			{
-//				break;
-//			}
-//			
-//			producer.setWaiting(false);
-//			
-//			producer.requestAndSendCredits();
-//		}					
-	}
-		
-	public synchronized void requestAndSendCredits(final ServerProducer producer, final int credits) throws Exception
-	{		
-		if (creditPot <= 0)
-		{
-			if (!producer.isWaiting())
-			{
-				producer.setWaiting(true);
-				
-				waitingList.add(producer);
-			}
-		}
-		else
-		{
-		   int creditsToTake = Math.min(credits, creditPot);
-		   
-			//creditPot -= creditsToTake;
-			
-			producer.sendCredits(creditsToTake);
-		}
-	}
-			
-	private void fillPot() throws Exception
-	{
-	 //TODO - for now we don't take max size into account
-	   
-//		List<Binding> bindings = postOffice.getBindingsForAddress(address);
-//		
-//		int minAvailable = Integer.MAX_VALUE;
-//		
-//		for (Binding binding: bindings)
-//		{
-//			Queue queue = binding.getQueue();
-//			
-//			int maxSize = queue.getMaxSizeBytes();
-//			
-//			
-//			//log.info("max size is " + maxSize);
-//			
-//			int available;
-//			
-//			if (maxSize == -1)
-//			{
-//				available = Integer.MAX_VALUE;
-//			}
-//			else
-//			{
-//				available = maxSize - queue.getSizeBytes();
-//				
-//				log.info("Available is " + available);
-//			}
-//			
-//			if (available < 0)
-//			{
-//				available = 0;
-//			}
-//			
-//			minAvailable = Math.min(available, minAvailable);		
-//			
-//			log.info("min available is " + minAvailable);
-//		}
-//						
-//		log.info("lastpot is " + lastPot);
-//		if (minAvailable > lastPot)
-//		{
-//			creditPot += minAvailable - lastPot;
-//			
-//			lastPot = minAvailable;
-//		}
-		
-		creditPot = Integer.MAX_VALUE;
-	}
+   // Constants -----------------------------------------------------
+
+   private static final long RATE_PERIOD = 1000;
+
+   // Attributes ----------------------------------------------------
+
+   private final PostOffice postOffice;
+
+   private final SimpleString address;
+
+   private final java.util.Queue<ServerProducer> waitingList = new ConcurrentLinkedQueue<ServerProducer>();
+
+   private final AtomicLong grantedCredits = new AtomicLong(0);
+
+   private volatile PagingStore pagingStore;
+
+   private long rateTime = System.currentTimeMillis();
+
+   private long rateCredits;
+
+   private long creditGrantRate;
+
+   // Constructors --------------------------------------------------
+
+   public FlowControllerImpl(final SimpleString address, final PostOffice postOffice) throws Exception
+   {
+      this.address = address;
+
+      this.postOffice = postOffice;
+   }
+
+   // FlowController implementation ---------------------------------
+
+   public int getInitialCredits(final int windowSize, final ServerProducer producer) throws Exception
+   {
+      grantedCredits.addAndGet(windowSize);
+
+      return windowSize;
+   }
+
+   public void messageAcknowledged() throws Exception
+   {
+      // Nobody is waiting most of the time, and acknowledgements shouldn't lock then
+      if (waitingList.isEmpty())
+      {
+         return;
+      }
+
+      synchronized (this)
+      {
+         while (!isFull())
+         {
+            ServerProducer producer = waitingList.poll();
+
+            if (producer == null)
+            {
+               break;
+            }
+
+            producer.setWaiting(false);
+
+            sendCredits(producer);
+         }
+      }
+   }
+
+   public synchronized void requestAndSendCredits(final ServerProducer producer) throws Exception
+   {
+      if (isFull())
+      {
+         if (!producer.isWaiting())
+         {
+            producer.setWaiting(true);
+
+            waitingList.add(producer);
+         }
+
+         // An acknowledgement could have made room before the producer was waiting, without seeing it
+         if (isFull())
+         {
+            return;
+         }
+
+         waitingList.remove(producer);
+
+         producer.setWaiting(false);
+      }
+
+      sendCredits(producer);
+   }
+
+   public void producerClosed(final ServerProducer producer)
+   {
+      waitingList.remove(producer);
+   }
+
+   public int getWaitingProducerCount()
+   {
+      return waitingList.size();
+   }
+
+   public long getGrantedCredits()
+   {
+      return grantedCredits.get();
+   }
+
+   public synchronized long getCreditGrantRate()
+   {
+      long now = System.currentTimeMillis();
+
+      if (now - rateTime >= RATE_PERIOD)
+      {
+         long credits = grantedCredits.get();
+
+         creditGrantRate = (credits - rateCredits) * 1000 / (now - rateTime);
+
+         rateCredits = credits;
+
+         rateTime = now;
+      }
+
+      return creditGrantRate;
+   }
+
+   // Private -------------------------------------------------------
+
+   // Credits are only sent while holding the lock, so the producer can't be sent the same credits twice
+   private void sendCredits(final ServerProducer producer) throws Exception
+   {
+      int credits = producer.getCreditsToSend();
+
+      if (credits > 0)
+      {
+         producer.sendCredits(credits);
+
+         grantedCredits.addAndGet(credits);
+      }
+   }
+
+   private boolean isFull() throws Exception
+   {
+      PagingStore store = getPagingStore();
+
+      if (store == null || !store.isBlockProducersWhenFull() || store.getMaxSizeBytes() <= 0)
+      {
+         return false;
+      }
+
+      return store.getAddressSize() >= store.getMaxSizeBytes();
+   }
+
+   private PagingStore getPagingStore() throws Exception
+   {
+      if (pagingStore == null)
+      {
+         PagingManager pagingManager = postOffice.getPagingManager();
+
+         if (pagingManager != null)
+         {
+            pagingStore = pagingManager.getPageStore(address);
+         }
+      }
+
+      return pagingStore;
+   }
 }
@@ -160,7 +160,7 @@ public class PostOfficeImpl implements PostOffice
             storageManager.addDestination(address);
          }
 
-         flowControllers.put(address, new FlowControllerImpl(address, this));
+         flowControllers.putIfAbsent(address, new FlowControllerImpl(address, this));
          managementService.registerAddress(address);
       }
 
@@ -173,7 +173,13 @@ public class PostOfficeImpl implements PostOffice
 
       if (removed)
       {
-         flowControllers.remove(address);
+         List<Binding> bindings = addressManager.getBindings(address);
+
+         // The queues bound to the address still use its flow controller
+         if (bindings == null || bindings.isEmpty())
+         {
+            flowControllers.remove(address);
+         }
 
          if (durable)
          {
@@ -267,7 +273,8 @@ public class PostOfficeImpl implements PostOffice
             }
          }
 
-         List<Binding> bindings = addressManager.getBindings(address);
+         // Only the bindings whose filter matches, found through the address' binding index
+         List<Binding> bindings = addressManager.getMatchingBindings(address, message);
          
          List<MessageReference> refs = new ArrayList<MessageReference>();
 
@@ -275,16 +282,9 @@ public class PostOfficeImpl implements PostOffice
          {
             for (Binding binding : bindings)
             {
-               Queue queue = binding.getQueue();
-
-               Filter filter = queue.getFilter();
-
-               if (filter == null || filter.match(message))
-               {
-                  MessageReference reference = message.createReference(queue);
+               MessageReference reference = message.createReference(binding.getQueue());
 
-                  refs.add(reference);
-               }
+               refs.add(reference);
             }
          }
 
@@ -346,6 +346,9 @@ public class PostOfficeImpl implements PostOffice
       if (!exists)
       {
          managementService.registerAddress(binding.getAddress());
+
+         // Producers are flow controlled on any address with queues, whether it was added as a destination or not
+         flowControllers.putIfAbsent(binding.getAddress(), new FlowControllerImpl(binding.getAddress(), this));
       }
 
       managementService.registerQueue(binding.getQueue(), binding.getAddress(), storageManager);
@@ -366,6 +369,11 @@ public class PostOfficeImpl implements PostOffice
          managementService.unregisterAddress(binding.getAddress());
 
          binding.getQueue().setFlowController(null);
+
+         if (!addressManager.containsDestination(binding.getAddress()))
+         {
+            flowControllers.remove(binding.getAddress());
+         }
       }
 
       return binding;
@@ -399,9 +407,12 @@ public class PostOfficeImpl implements PostOffice
 
       for (SimpleString destination : dests)
       {
+         PagingStore store = pagingManager.getPageStore(destination);
+
+         store.deleteUnreferencedPages();
+
          if (!pagingManager.isGlobalPageMode())
          {
-            PagingStore store = pagingManager.getPageStore(destination);
             store.startDepaging();
          }
       }
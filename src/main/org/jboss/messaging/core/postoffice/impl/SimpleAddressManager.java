@@ -23,10 +23,12 @@ package org.jboss.messaging.core.postoffice.impl;
 
 import org.jboss.messaging.core.postoffice.AddressManager;
 import org.jboss.messaging.core.postoffice.Binding;
+import org.jboss.messaging.core.server.ServerMessage;
 import org.jboss.messaging.util.ConcurrentHashSet;
 import org.jboss.messaging.util.ConcurrentSet;
 import org.jboss.messaging.util.SimpleString;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +50,11 @@ public  class SimpleAddressManager implements AddressManager
 
    private final ConcurrentMap<SimpleString, Binding> nameMap = new ConcurrentHashMap<SimpleString, Binding>();
 
+   private final ConcurrentMap<SimpleString, BindingIndex> indexes = new ConcurrentHashMap<SimpleString, BindingIndex>();
+
+   // Guards adding and removing the mappings of an address together with its index, routing reads them without it
+   private final Object mappingLock = new Object();
+
    public void addBinding(Binding binding)
    {
       if (nameMap.putIfAbsent(binding.getQueue().getName(), binding) != null)
@@ -58,16 +65,30 @@ public  class SimpleAddressManager implements AddressManager
 
    public boolean addMapping(final SimpleString address, final Binding binding)
    {
-      List<Binding> bindings = new CopyOnWriteArrayList<Binding>();
-      List<Binding> prevBindings = mappings.putIfAbsent(address, bindings);
-
-      if (prevBindings != null)
+      synchronized (mappingLock)
       {
-         bindings = prevBindings;
-      }
+         List<Binding> bindings = new CopyOnWriteArrayList<Binding>();
+         List<Binding> prevBindings = mappings.putIfAbsent(address, bindings);
+
+         if (prevBindings != null)
+         {
+            bindings = prevBindings;
+         }
+
+         bindings.add(binding);
 
-      bindings.add(binding);
-      return prevBindings != null;
+         BindingIndex index = new BindingIndex();
+         BindingIndex prevIndex = indexes.putIfAbsent(address, index);
+
+         if (prevIndex != null)
+         {
+            index = prevIndex;
+         }
+
+         index.addBinding(binding);
+
+         return prevBindings != null;
+      }
    }
    
    public List<Binding> getBindings(final SimpleString address)
@@ -75,6 +96,22 @@ public  class SimpleAddressManager implements AddressManager
       return mappings.get(address);
    }
 
+   public List<Binding> getMatchingBindings(final SimpleString address, final ServerMessage message)
+   {
+      BindingIndex index = indexes.get(address);
+
+      if (index == null)
+      {
+         return null;
+      }
+
+      List<Binding> matches = new ArrayList<Binding>();
+
+      index.route(message, matches);
+
+      return matches;
+   }
+
    public boolean addDestination(final SimpleString address)
    {
       return destinations.addIfAbsent(address);
@@ -109,7 +146,12 @@ public  class SimpleAddressManager implements AddressManager
    {
       destinations.clear();
       nameMap.clear();
-      mappings.clear();
+
+      synchronized (mappingLock)
+      {
+         mappings.clear();
+         indexes.clear();
+      }
    }
 
    public Map<SimpleString, List<Binding>> getMappings()
@@ -130,15 +172,29 @@ public  class SimpleAddressManager implements AddressManager
 
    public boolean removeMapping(final SimpleString address, final SimpleString queueName)
    {
-      List<Binding> bindings = mappings.get(address);
-      
-      Binding binding = removeMapping(queueName, bindings);
-
-      if(bindings.isEmpty())
+      synchronized (mappingLock)
       {
-         mappings.remove(binding.getAddress());
+         List<Binding> bindings = mappings.get(address);
+
+         Binding binding = removeMapping(queueName, bindings);
+
+         BindingIndex index = indexes.get(address);
+
+         if (index != null)
+         {
+            index.removeBinding(binding);
+         }
+
+         if (bindings.isEmpty())
+         {
+            mappings.remove(address);
+            indexes.remove(address);
+
+            return true;
+         }
+
+         return false;
       }
-      return bindings.isEmpty();
    }
 
    protected Binding removeMapping(final SimpleString queueName, final List<Binding> bindings)
@@ -39,6 +39,8 @@ public interface Channel
    Channel getReplicatingChannel();
 
    void transferConnection(RemotingConnection newConnection);
+
+   RemotingConnection getConnection();
    
    void replayCommands(int lastReceivedCommandID);
 
@@ -37,6 +37,10 @@ public interface Packet
    
    long getChannelID();
    
+   void setCorrelationID(long correlationID);
+   
+   long getCorrelationID();
+   
    boolean isResponse();
    
    byte getType();
@@ -49,5 +53,11 @@ public interface Packet
    
    boolean isWriteAlways();
    
-   boolean isRequiresGlobalOrdering();      
+   boolean isRequiresGlobalOrdering();
+
+   /**
+    * @return the packet to hand to the other side of a connection that doesn't encode packets, which
+    * must not share anything with this one that either side may change afterwards
+    */
+   Packet copyForReceiver();
 }
@@ -49,4 +49,11 @@ public interface RemotingConnection extends BufferHandler
    long getIDGeneratorSequence();
    
    void activate();
+
+   /**
+    * Stops reading from the transport until resumeRead has been called as many times
+    */
+   void suspendRead();
+
+   void resumeRead();
 }
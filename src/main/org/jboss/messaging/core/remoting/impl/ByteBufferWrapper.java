@@ -60,14 +60,15 @@ public class ByteBufferWrapper implements MessagingBuffer
 	
 	public byte[] array()
    {
-      if(buffer.hasArray())
+      if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.capacity() == buffer.array().length)
       {
          return buffer.array();
       }
       else
       {
+         // A slice or a direct buffer, only its own bytes are copied
          byte[] b = new byte[buffer.limit()];
-         buffer.get(b);
+         toByteBuffer(0, buffer.limit()).get(b);
          return b;
       }
    }
@@ -97,6 +98,19 @@ public class ByteBufferWrapper implements MessagingBuffer
    	return new ByteBufferWrapper(buffer.slice());
    }
 
+   public ByteBuffer toByteBuffer(final int index, final int length)
+   {
+      ByteBuffer bytes = buffer.duplicate();
+
+      bytes.clear();
+
+      bytes.position(index);
+
+      bytes.limit(index + length);
+
+      return bytes;
+   }
+
    public MessagingBuffer createNewBuffer(int len)
    {
       return new ByteBufferWrapper(ByteBuffer.allocate(len));
@@ -155,6 +169,8 @@ public class ByteBufferWrapper implements MessagingBuffer
 
 	public void putNullableString(final String nullableString)
 	{
+		ensureWritable();
+
 		if (nullableString == null)
 		{
 			buffer.put(NULL);
@@ -183,6 +199,8 @@ public class ByteBufferWrapper implements MessagingBuffer
 
 	public void putString(final String nullableString)
 	{
+		ensureWritable();
+
 		//We don't encode
 
 		buffer.putInt(nullableString.length());
@@ -195,6 +213,8 @@ public class ByteBufferWrapper implements MessagingBuffer
 	
 	public void putUTF(final String str) throws Exception
    {
+		ensureWritable();
+
 		//TODO This is quite inefficient - can be improved using a method similar to what MINA IOBuffer does
 		//(putPrefixedString)
 		ByteBuffer bb = utf8.encode(str);
@@ -233,6 +253,8 @@ public class ByteBufferWrapper implements MessagingBuffer
 	
    public void putSimpleString(final SimpleString string)
    {
+   	ensureWritable();
+
    	byte[] data = string.getData();
    	
    	buffer.putInt(data.length);
@@ -254,6 +276,8 @@ public class ByteBufferWrapper implements MessagingBuffer
    
    public void putNullableSimpleString(final SimpleString string)
    {
+   	ensureWritable();
+
    	if (string == null)
    	{
    		buffer.put(NULL);
@@ -297,6 +321,8 @@ public class ByteBufferWrapper implements MessagingBuffer
 
 	public void putBoolean(boolean val)
 	{
+		ensureWritable();
+
 		if (val)
       {
          buffer.put(TRUE);
@@ -309,51 +335,78 @@ public class ByteBufferWrapper implements MessagingBuffer
 
 	public void putByte(byte val)
 	{
+		ensureWritable();
+
 		buffer.put(val);
 	}
 
 	public void putBytes(byte[] bytes)
 	{
+		ensureWritable();
+
 		buffer.put(bytes);
 	}
 	
 	public void putBytes(byte[] bytes, int offset, int len)
 	{
+		ensureWritable();
+
 		buffer.put(bytes, offset, len);
 	}
 
+	public void putBytes(ByteBuffer bytes)
+	{
+	   ensureWritable();
+
+	   buffer.put(bytes);
+	}
+
 	public void putDouble(double val)
 	{
+		ensureWritable();
+
 		buffer.putDouble(val);
 	}
 
 	public void putFloat(float val)
 	{
+		ensureWritable();
+
 		buffer.putFloat(val);
 	}
 
 	public void putInt(int val)
 	{
+		ensureWritable();
+
 		buffer.putInt(val);
 	}
 	
 	public void putInt(int pos, int val)
    {
+      ensureWritable();
+
       buffer.putInt(pos, val);
    }
 
 	public void putLong(long val)
 	{
+		ensureWritable();
+
 		buffer.putLong(val);
 	}
 
 	public void putShort(short val)
 	{
+		ensureWritable();
+
 		buffer.putShort(val);
 	}
 	
 	public void putChar(char chr)
 	{
+		ensureWritable();
+
 		buffer.putChar(chr);
 	}
 	
@@ -367,4 +420,24 @@ public class ByteBufferWrapper implements MessagingBuffer
 	   return buffer;
 	}
 
+	/**
+	 * A read-only buffer is a view shared with its sender: it is copied the
+	 * first time it is written to, so the sender's bytes never change.
+	 */
+	private void ensureWritable()
+	{
+	   if (buffer.isReadOnly())
+	   {
+	      ByteBuffer copy = ByteBuffer.allocate(buffer.capacity());
+
+	      copy.put(toByteBuffer(0, buffer.capacity()));
+
+	      copy.limit(buffer.limit());
+
+	      copy.position(buffer.position());
+
+	      buffer = copy;
+	   }
+	}
+
 }
@@ -30,6 +30,7 @@ import org.jboss.messaging.core.exception.MessagingException;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.remoting.ConnectionRegistry;
 import org.jboss.messaging.core.remoting.RemotingConnection;
+import org.jboss.messaging.core.remoting.Packet;
 import org.jboss.messaging.core.remoting.spi.Connection;
 import org.jboss.messaging.core.remoting.spi.ConnectionLifeCycleListener;
 import org.jboss.messaging.core.remoting.spi.Connector;
@@ -431,5 +432,10 @@ public class ConnectionRegistryImpl implements ConnectionRegistry, ConnectionLif
       {
          conn.bufferReceived(connectionID, buffer);
       }
+
+      public void packetReceived(final Object connectionID, final Packet packet)
+      {
+         conn.packetReceived(connectionID, packet);
+      }
    }
 }
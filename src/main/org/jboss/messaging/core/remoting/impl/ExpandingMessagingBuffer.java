@@ -57,8 +57,9 @@ public class ExpandingMessagingBuffer implements MessagingBuffer
       }
       else
       {
-         byte[] b = new byte[remaining()];
-         getBytes(b);
+         // A slice or a direct buffer, only its own bytes are copied
+         byte[] b = new byte[buf.limit()];
+         toByteBuffer(0, buf.limit()).get(b);
          return b;
       }
    }
@@ -229,6 +230,11 @@ public class ExpandingMessagingBuffer implements MessagingBuffer
       ensureRemaining(length).put(bytes, offset, length);
    }
 
+   public void putBytes(ByteBuffer bytes)
+   {
+      ensureRemaining(bytes.remaining()).put(bytes);
+   }
+
    public void putChar(char val)
    {
       ensureRemaining(2).putChar(val);
@@ -342,6 +348,19 @@ public class ExpandingMessagingBuffer implements MessagingBuffer
    {
       return new ExpandingMessagingBuffer(buf.slice());
    }
+
+   public ByteBuffer toByteBuffer(final int index, final int length)
+   {
+      ByteBuffer bytes = buf.duplicate();
+
+      bytes.clear();
+
+      bytes.position(index);
+
+      bytes.limit(index + length);
+
+      return bytes;
+   }
    
    public Object getUnderlyingBuffer()
    {
@@ -58,11 +58,15 @@ import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_QUEUEQUERY_RESP;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_RECEIVETOKENS;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_RECEIVE_MSG;
+import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_RECEIVE_MSG_BATCH;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_REMOVE_DESTINATION;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_REPLICATE_DELIVERY;
+import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_SEND_CONFIRMATION;
+import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_SEND_FAILED;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_ROLLBACK;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_SCHEDULED_SEND;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_SEND;
+import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_SEND_BATCH;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_START;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_STOP;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_XA_COMMIT;
@@ -105,11 +109,15 @@ import org.jboss.messaging.core.remoting.impl.wireformat.SessionProducerCloseMes
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionProducerFlowCreditMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionQueueQueryMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionQueueQueryResponseMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionReceiveBatchMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionReceiveMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionRemoveDestinationMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionReplicateDeliveryMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionScheduledSendMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendConfirmationMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendFailedMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendManagementMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendBatchMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionXACommitMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionXAEndMessage;
@@ -126,8 +134,10 @@ import org.jboss.messaging.core.remoting.impl.wireformat.SessionXASetTimeoutResp
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionXAStartMessage;
 import org.jboss.messaging.core.remoting.spi.Connection;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
+import org.jboss.messaging.core.remoting.spi.PacketConnection;
 import org.jboss.messaging.util.SimpleIDGenerator;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -166,6 +176,9 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
 
    private final Connection transportConnection;
 
+   /** Set if packets are handed over to the transport connection without being encoded */
+   private final PacketConnection packetConnection;
+
    private final Map<Long, ChannelImpl> channels = new ConcurrentHashMap<Long, ChannelImpl>();
 
    private final List<FailureListener> failureListeners = new CopyOnWriteArrayList<FailureListener>();
@@ -211,6 +224,11 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
 
    private final Object transferLock = new Object();
 
+   // The number of suspendRead calls not resumed yet, guarded by readLock
+   private int readSuspensions;
+
+   private final Object readLock = new Object();
+
    // Constructors
    // ---------------------------------------------------------------------------------
 
@@ -226,6 +244,15 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
    {
       this.transportConnection = transportConnection;
 
+      if (transportConnection instanceof PacketConnection && ((PacketConnection)transportConnection).isPassPackets())
+      {
+         packetConnection = (PacketConnection)transportConnection;
+      }
+      else
+      {
+         packetConnection = null;
+      }
+
       this.blockingCallTimeout = blockingCallTimeout;
 
       this.interceptors = interceptors;
@@ -396,8 +423,11 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
 
    public void bufferReceived(final Object connectionID, final MessagingBuffer buffer)
    {
-      final Packet packet = decode(buffer);
+      packetReceived(connectionID, decode(buffer));
+   }
 
+   public void packetReceived(final Object connectionID, final Packet packet)
+   {
       final long channelID = packet.getChannelID();
 
       //FIXME - need to redo global ordering since this won't work with multiple connections
@@ -451,6 +481,28 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
       active = true;
    }
 
+   public void suspendRead()
+   {
+      synchronized (readLock)
+      {
+         if (readSuspensions++ == 0)
+         {
+            transportConnection.setReadable(false);
+         }
+      }
+   }
+
+   public void resumeRead()
+   {
+      synchronized (readLock)
+      {
+         if (--readSuspensions == 0)
+         {
+            transportConnection.setReadable(true);
+         }
+      }
+   }
+
    // Package protected
    // ----------------------------------------------------------------------------
 
@@ -509,11 +561,50 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
 
    private void doWrite(final Packet packet)
    {
+      doWrite(packet, false);
+   }
+
+   private void doWrite(final Packet packet, final boolean batched)
+   {
+      if (packetConnection != null)
+      {
+         packetConnection.write(packet.copyForReceiver());
+
+         return;
+      }
+
       final MessagingBuffer buffer = transportConnection.createBuffer(PacketImpl.INITIAL_BUFFER_SIZE);
 
       packet.encode(buffer);
 
-      transportConnection.write(buffer);
+      transportConnection.write(buffer, batched);
+   }
+
+   /**
+    * Only one way packets that are sent in streams may be held back by the transport to be sent in a batch,
+    * anything else flushes the batch
+    */
+   private static boolean isBatchable(final byte packetType)
+   {
+      switch (packetType)
+      {
+         case SESS_SEND:
+         case SESS_SEND_BATCH:
+         case SESS_RECEIVE_MSG:
+         case SESS_RECEIVE_MSG_BATCH:
+         case SESS_ACKNOWLEDGE:
+         case SESS_FLOWTOKEN:
+         case SESS_RECEIVETOKENS:
+         case PACKETS_CONFIRMED:
+         case SESS_SEND_CONFIRMATION:
+         {
+            return true;
+         }
+         default:
+         {
+            return false;
+         }
+      }
    }
 
    private Packet decode(final MessagingBuffer in)
@@ -759,6 +850,11 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
             packet = new SessionSendMessage();
             break;
          }
+         case SESS_SEND_BATCH:
+         {
+            packet = new SessionSendBatchMessage();
+            break;
+         }
          case SESS_RECEIVETOKENS:
          {
             packet = new SessionProducerFlowCreditMessage();
@@ -769,6 +865,11 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
             packet = new SessionReceiveMessage();
             break;
          }
+         case SESS_RECEIVE_MSG_BATCH:
+         {
+            packet = new SessionReceiveBatchMessage();
+            break;
+         }
          case SESS_CONSUMER_CLOSE:
          {
             packet = new SessionConsumerCloseMessage();
@@ -799,6 +900,16 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
             packet = new SessionReplicateDeliveryMessage();
             break;
          }
+         case SESS_SEND_CONFIRMATION:
+         {
+            packet = new SessionSendConfirmationMessage();
+            break;
+         }
+         case SESS_SEND_FAILED:
+         {
+            packet = new SessionSendFailedMessage();
+            break;
+         }
          default:
          {
             throw new IllegalArgumentException("Invalid type: " + packetType);
@@ -820,8 +931,6 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
 
       private ChannelHandler handler;
 
-      private Packet response;
-
       private final java.util.Queue<Packet> resendCache;
 
       private final int packetConfirmationBatchSize;
@@ -840,11 +949,12 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
 
       private final boolean interruptBlockOnFailure;
 
-      private Thread blockThread;
-
       private final Lock lock = new ReentrantLock();
 
-      private final Condition sendCondition = lock.newCondition();
+      // The blocking calls waiting for a response, by correlation id - guarded by lock
+      private final Map<Long, BlockingCall> blockingCalls = new HashMap<Long, BlockingCall>();
+
+      private long lastCorrelationID;
 
       private final Condition failoverCondition = lock.newCondition();
 
@@ -910,9 +1020,12 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
 
          try
          {
-            response = new NullResponseMessage();
+            for (BlockingCall call : blockingCalls.values())
+            {
+               call.response = new NullResponseMessage();
 
-            sendCondition.signal();
+               call.responseArrived.signal();
+            }
          }
          finally
          {
@@ -947,7 +1060,7 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
 
                if (connection.active || packet.isWriteAlways())
                {
-                  connection.doWrite(packet);
+                  connection.doWrite(packet, isBatchable(packet.getType()));
                }
             }
             finally
@@ -957,7 +1070,8 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
          }
       }
 
-      // This must never called by more than one thread concurrently
+      // Can be called by more than one thread concurrently - the requests are written in the order the calls are made
+      // but don't wait for each other's responses
       public Packet sendBlocking(final Packet packet) throws MessagingException
       {
          if (closed)
@@ -983,63 +1097,73 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
                }
             }
 
-            addToCache(packet);
+            final long correlationID = ++lastCorrelationID;
 
-            blockThread = Thread.currentThread();
+            packet.setCorrelationID(correlationID);
 
-            response = null;
+            final BlockingCall call = new BlockingCall();
 
-            connection.doWrite(packet);
+            blockingCalls.put(correlationID, call);
 
-            long toWait = connection.blockingCallTimeout;
+            try
+            {
+               addToCache(packet);
 
-            long start = System.currentTimeMillis();
+               connection.doWrite(packet);
 
-            while (response == null && toWait > 0)
-            {
-               try
-               {
-                  sendCondition.await(toWait, TimeUnit.MILLISECONDS);
-               }
-               catch (final InterruptedException e)
+               long toWait = connection.blockingCallTimeout;
+
+               long start = System.currentTimeMillis();
+
+               // Waiting releases the lock so other calls can be sent meanwhile
+               while (call.response == null && toWait > 0)
                {
-                  if (interruptBlockOnFailure)
+                  try
                   {
-                     if (connection.destroyed)
+                     call.responseArrived.await(toWait, TimeUnit.MILLISECONDS);
+                  }
+                  catch (final InterruptedException e)
+                  {
+                     if (interruptBlockOnFailure)
                      {
-                        throw new MessagingException(MessagingException.NOT_CONNECTED, "Connection failed");
+                        if (connection.destroyed)
+                        {
+                           throw new MessagingException(MessagingException.NOT_CONNECTED, "Connection failed");
+                        }
                      }
                   }
-               }
 
-               final long now = System.currentTimeMillis();
+                  final long now = System.currentTimeMillis();
 
-               toWait -= now - start;
+                  toWait -= now - start;
 
-               start = now;
+                  start = now;
+               }
+            }
+            finally
+            {
+               blockingCalls.remove(correlationID);
             }
 
-            if (response == null)
+            if (call.response == null)
             {
                throw new MessagingException(MessagingException.CONNECTION_TIMEDOUT,
                                             "Timed out waiting for response when sending packet " + packet.getType());
             }
 
-            if (response.getType() == PacketImpl.EXCEPTION)
+            if (call.response.getType() == PacketImpl.EXCEPTION)
             {
-               final MessagingExceptionMessage mem = (MessagingExceptionMessage)response;
+               final MessagingExceptionMessage mem = (MessagingExceptionMessage)call.response;
 
                throw mem.getException();
             }
             else
             {
-               return response;
+               return call.response;
             }
          }
          finally
          {
-            blockThread = null;
-
             lock.unlock();
          }
       }
@@ -1134,9 +1258,9 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
             lock.lock();
             try
             {
-               if (blockThread != null)
+               for (BlockingCall call : blockingCalls.values())
                {
-                  blockThread.interrupt();
+                  call.thread.interrupt();
                }
             }
             finally
@@ -1169,6 +1293,11 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
          }
       }
 
+      public RemotingConnection getConnection()
+      {
+         return connection;
+      }
+
       public void replayCommands(final int otherLastReceivedCommandID)
       {
          clearUpTo(otherLastReceivedCommandID);
@@ -1251,15 +1380,21 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
 
             if (packet.isResponse())
             {
-               response = packet;
-
                checkConfirmation(packet);
 
                lock.lock();
 
                try
                {
-                  sendCondition.signal();
+                  final BlockingCall call = blockingCalls.get(packet.getCorrelationID());
+
+                  // If there's no call the response arrived after it timed out
+                  if (call != null)
+                  {
+                     call.response = packet;
+
+                     call.responseArrived.signal();
+                  }
                }
                finally
                {
@@ -1293,7 +1428,7 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
 
                confirmed.setChannelID(id);
 
-               connection.doWrite(confirmed);
+               connection.doWrite(confirmed, true);
             }
          }
       }
@@ -1339,6 +1474,15 @@ public class RemotingConnectionImpl extends AbstractBufferHandler implements Rem
          firstStoredCommandID += numberToClear;
       }
 
+      private final class BlockingCall
+      {
+         private final Thread thread = Thread.currentThread();
+
+         private final Condition responseArrived = lock.newCondition();
+
+         private Packet response;
+      }
+
       private class ReplicatedPacketsConfirmedChannelHandler implements ChannelHandler
       {
          public void handlePacket(final Packet packet)
@@ -30,6 +30,7 @@ import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.remoting.Channel;
 import org.jboss.messaging.core.remoting.ChannelHandler;
 import org.jboss.messaging.core.remoting.Interceptor;
+import org.jboss.messaging.core.remoting.Packet;
 import org.jboss.messaging.core.remoting.RemotingConnection;
 import org.jboss.messaging.core.remoting.RemotingService;
 import org.jboss.messaging.core.remoting.spi.Acceptor;
@@ -328,6 +329,16 @@ public class RemotingServiceImpl implements RemotingService, ConnectionLifeCycle
             conn.bufferReceived(connectionID, buffer);
          }
       }
+
+      public void packetReceived(final Object connectionID, final Packet packet)
+      {
+         RemotingConnection conn = connections.get(connectionID);
+
+         if (conn != null)
+         {
+            conn.packetReceived(connectionID, packet);
+         }
+      }
    }
 
 }
\ No newline at end of file
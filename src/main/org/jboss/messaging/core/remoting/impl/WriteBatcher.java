@@ -0,0 +1,296 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.remoting.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
+
+/**
+ *
+ * A WriteBatcher
+ *
+ * Coalesces the outbound buffers of one transport connection.
+ *
+ * Batched buffers are held until batchSize bytes are pending, or batchDelay milliseconds have passed
+ * since the first of them was written, and are then handed to the transport as a single write.
+ * A buffer that is not batched is written straight away, together with anything still pending in front of it,
+ * so the order of the buffers is always kept.
+ *
+ * The transport write is done outside the lock of the batcher, by one thread at a time: a thread that finds
+ * another one writing leaves its buffers to it. A batch whose delay has expired is written by the executor,
+ * not by the thread of the scheduler, which is shared by all the connections of an acceptor or connector.
+ *
+ * Once the acceptor or connector has shut down the scheduler or the executor, the buffers are written straight
+ * away rather than held.
+ *
+ */
+public class WriteBatcher
+{
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(WriteBatcher.class);
+
+   // Attributes ----------------------------------------------------
+
+   private final BatchWriter writer;
+
+   private final ScheduledExecutorService scheduler;
+
+   private final Executor executor;
+
+   private final long batchDelay;
+
+   private final int batchSize;
+
+   private List<MessagingBuffer> pending = new ArrayList<MessagingBuffer>();
+
+   private int pendingSize;
+
+   private ScheduledFuture<?> scheduledFlush;
+
+   private boolean flushRequested;
+
+   private boolean writing;
+
+   private final Runnable flushRunner = new Runnable()
+   {
+      public void run()
+      {
+         try
+         {
+            requestFlush();
+         }
+         catch (Throwable t)
+         {
+            log.error("Failed to flush batch", t);
+         }
+      }
+   };
+
+   private final Runnable delayExpired = new Runnable()
+   {
+      public void run()
+      {
+         try
+         {
+            executor.execute(flushRunner);
+         }
+         catch (RejectedExecutionException e)
+         {
+            // The executor is shut down, the batch is written from the scheduler thread rather than dropped
+            flushRunner.run();
+         }
+         catch (Throwable t)
+         {
+            log.error("Failed to flush batch", t);
+         }
+      }
+   };
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param scheduler times the batch delays
+    * @param executor writes the batches whose delay has expired
+    * @param batchDelay the maximum time, in milliseconds, a batched buffer is held
+    * @param batchSize the number of pending bytes that causes a batch to be written immediately
+    */
+   public WriteBatcher(final BatchWriter writer,
+                       final ScheduledExecutorService scheduler,
+                       final Executor executor,
+                       final long batchDelay,
+                       final int batchSize)
+   {
+      this.writer = writer;
+
+      this.scheduler = scheduler;
+
+      this.executor = executor;
+
+      this.batchDelay = batchDelay;
+
+      this.batchSize = batchSize;
+   }
+
+   // Public --------------------------------------------------------
+
+   public void write(final MessagingBuffer buffer, final boolean batched)
+   {
+      synchronized (this)
+      {
+         pending.add(buffer);
+
+         pendingSize += buffer.limit();
+
+         if (batched && pendingSize < batchSize)
+         {
+            if (scheduledFlush != null)
+            {
+               return;
+            }
+
+            try
+            {
+               scheduledFlush = scheduler.schedule(delayExpired, batchDelay, TimeUnit.MILLISECONDS);
+
+               return;
+            }
+            catch (RejectedExecutionException e)
+            {
+               // The scheduler is shut down, nothing would ever write the batch
+            }
+         }
+      }
+
+      requestFlush();
+   }
+
+   /**
+    * Writes anything pending, and returns once it has been handed to the transport
+    */
+   public void flush()
+   {
+      requestFlush();
+
+      boolean interrupted = false;
+
+      synchronized (this)
+      {
+         while (writing)
+         {
+            try
+            {
+               wait();
+            }
+            catch (InterruptedException e)
+            {
+               interrupted = true;
+            }
+         }
+      }
+
+      if (interrupted)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private void requestFlush()
+   {
+      synchronized (this)
+      {
+         flushRequested = true;
+
+         if (writing)
+         {
+            // The thread writing picks up the pending buffers once its write is done
+            return;
+         }
+
+         writing = true;
+      }
+
+      boolean done = false;
+
+      try
+      {
+         while (true)
+         {
+            List<MessagingBuffer> buffers;
+
+            int size;
+
+            synchronized (this)
+            {
+               if (!flushRequested || pending.isEmpty())
+               {
+                  flushRequested = false;
+
+                  writing = false;
+
+                  done = true;
+
+                  notifyAll();
+
+                  return;
+               }
+
+               flushRequested = false;
+
+               if (scheduledFlush != null)
+               {
+                  scheduledFlush.cancel(false);
+
+                  scheduledFlush = null;
+               }
+
+               buffers = pending;
+
+               size = pendingSize;
+
+               pending = new ArrayList<MessagingBuffer>();
+
+               pendingSize = 0;
+            }
+
+            writer.write(buffers, size);
+         }
+      }
+      finally
+      {
+         if (!done)
+         {
+            synchronized (this)
+            {
+               writing = false;
+
+               notifyAll();
+            }
+         }
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * Performs the actual transport write
+    */
+   public interface BatchWriter
+   {
+      /**
+       * @param buffers the buffers to be sent, in order, as a single write
+       * @param size the total number of bytes in the buffers
+       */
+      void write(List<MessagingBuffer> buffers, int size);
+   }
+}
@@ -24,6 +24,9 @@ package org.jboss.messaging.core.remoting.impl.invm;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.jboss.messaging.core.exception.MessagingException;
 import org.jboss.messaging.core.remoting.spi.Acceptor;
@@ -31,6 +34,7 @@ import org.jboss.messaging.core.remoting.spi.BufferHandler;
 import org.jboss.messaging.core.remoting.spi.Connection;
 import org.jboss.messaging.core.remoting.spi.ConnectionLifeCycleListener;
 import org.jboss.messaging.util.ConfigurationHelper;
+import org.jboss.messaging.util.JBMThreadFactory;
 
 /**
  * A InVMAcceptor
@@ -50,6 +54,16 @@ public class InVMAcceptor implements Acceptor
    
    private volatile boolean started;
    
+   private final long batchDelay;
+   
+   private final int batchSize;
+   
+   private final boolean encodePackets;
+   
+   private volatile ScheduledExecutorService batchScheduler;
+   
+   private volatile ExecutorService batchExecutor;
+   
    public InVMAcceptor(final Map<String, Object> configuration, final BufferHandler handler,
                        final ConnectionLifeCycleListener listener)
    {
@@ -58,6 +72,16 @@ public class InVMAcceptor implements Acceptor
       this.listener = listener;   
       
       this.id = ConfigurationHelper.getIntProperty(TransportConstants.SERVER_ID_PROP_NAME, 0, configuration);
+      
+      this.batchDelay = ConfigurationHelper.getLongProperty(TransportConstants.BATCH_DELAY_PROPNAME,
+                                                            TransportConstants.DEFAULT_BATCH_DELAY, configuration);
+      
+      this.batchSize = ConfigurationHelper.getIntProperty(TransportConstants.BATCH_SIZE_PROPNAME,
+                                                          TransportConstants.DEFAULT_BATCH_SIZE, configuration);
+      
+      this.encodePackets = ConfigurationHelper.getBooleanProperty(TransportConstants.ENCODE_PACKETS_PROPNAME,
+                                                                  TransportConstants.DEFAULT_ENCODE_PACKETS,
+                                                                  configuration);
    }
    
    public synchronized void start() throws Exception
@@ -71,6 +95,12 @@ public class InVMAcceptor implements Acceptor
       
       registry.registerAcceptor(id, this);
       
+      if (batchDelay > 0)
+      {
+         batchScheduler = Executors.newSingleThreadScheduledExecutor(new JBMThreadFactory("jbm-invm-acceptor-batch-scheduler"));
+         batchExecutor = Executors.newCachedThreadPool(new JBMThreadFactory("jbm-invm-acceptor-batch-writer-threads"));
+      }
+      
       started = true;
    }
 
@@ -88,6 +118,15 @@ public class InVMAcceptor implements Acceptor
       
       connections.clear();
       
+      if (batchScheduler != null)
+      {
+         batchScheduler.shutdown();
+         batchExecutor.shutdown();
+         
+         batchScheduler = null;
+         batchExecutor = null;
+      }
+      
       InVMRegistry.instance.unregisterAcceptor(id);
       
       started = true;
@@ -111,7 +150,8 @@ public class InVMAcceptor implements Acceptor
          throw new IllegalStateException("Acceptor is not started");
       }
       
-      new InVMConnection(connectionID, remoteHandler, new Listener(connector));               
+      new InVMConnection(connectionID, remoteHandler, new Listener(connector), batchDelay, batchSize,
+                         batchScheduler, batchExecutor, encodePackets);
    }
    
    public void disconnect(final String connectionID)
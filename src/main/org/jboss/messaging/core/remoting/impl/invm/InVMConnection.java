@@ -22,15 +22,19 @@
 package org.jboss.messaging.core.remoting.impl.invm;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.remoting.Packet;
 import org.jboss.messaging.core.remoting.impl.ByteBufferWrapper;
+import org.jboss.messaging.core.remoting.impl.WriteBatcher;
 import org.jboss.messaging.core.remoting.spi.BufferHandler;
-import org.jboss.messaging.core.remoting.spi.Connection;
 import org.jboss.messaging.core.remoting.spi.ConnectionLifeCycleListener;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
+import org.jboss.messaging.core.remoting.spi.PacketConnection;
 import org.jboss.messaging.util.ExecutorFactory;
 import org.jboss.messaging.util.Future;
 import org.jboss.messaging.util.JBMThreadFactory;
@@ -43,7 +47,7 @@ import org.jboss.messaging.util.UUIDGenerator;
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  *
  */
-public class InVMConnection implements Connection
+public class InVMConnection implements PacketConnection
 {
    private static final Logger log = Logger.getLogger(InVMConnection.class);
 
@@ -60,12 +64,25 @@ public class InVMConnection implements Connection
 
    private final Executor executor;
 
+   private final WriteBatcher batcher;
+
+   private final boolean encodePackets;
+
    public InVMConnection(final BufferHandler handler, final ConnectionLifeCycleListener listener)
    {
       this(UUIDGenerator.getInstance().generateSimpleStringUUID().toString(), handler, listener);
    }
 
    public InVMConnection(final String id, final BufferHandler handler, final ConnectionLifeCycleListener listener)
+   {
+      this(id, handler, listener, TransportConstants.DEFAULT_BATCH_DELAY, TransportConstants.DEFAULT_BATCH_SIZE,
+           null, null, TransportConstants.DEFAULT_ENCODE_PACKETS);
+   }
+
+   public InVMConnection(final String id, final BufferHandler handler, final ConnectionLifeCycleListener listener,
+                         final long batchDelay, final int batchSize,
+                         final ScheduledExecutorService batchScheduler, final Executor batchExecutor,
+                         final boolean encodePackets)
    {
       this.handler = handler;
 
@@ -73,8 +90,25 @@ public class InVMConnection implements Connection
 
       this.id = id;
 
+      this.encodePackets = encodePackets;
+
       executor = factory.getExecutor();
 
+      if (batchDelay > 0)
+      {
+         batcher = new WriteBatcher(new WriteBatcher.BatchWriter()
+         {
+            public void write(final List<MessagingBuffer> buffers, final int size)
+            {
+               deliver(buffers);
+            }
+         }, batchScheduler, batchExecutor, batchDelay, batchSize);
+      }
+      else
+      {
+         batcher = null;
+      }
+
       listener.connectionCreated(this);
    }
 
@@ -84,6 +118,11 @@ public class InVMConnection implements Connection
       {
          return;
       }
+
+      if (batcher != null)
+      {
+         batcher.flush();
+      }
       
       //We can't wait for the executor to finish processing, since if the connection is closed on failover on the server
       //and there are other replication requests still in progress and blocked because of the failover
@@ -107,6 +146,18 @@ public class InVMConnection implements Connection
 
    public void write(final MessagingBuffer buffer)
    {
+      write(buffer, false);
+   }
+
+   public void write(final MessagingBuffer buffer, final boolean batched)
+   {
+      if (batcher != null)
+      {
+         batcher.write(buffer, batched);
+
+         return;
+      }
+
       executor.execute(new Runnable()
       {
          public void run()
@@ -132,4 +183,80 @@ public class InVMConnection implements Connection
          }
       });
    }
+
+   public void setReadable(final boolean readable)
+   {
+      // Nothing is read, the other side hands its buffers over on an executor of its own
+   }
+
+   public boolean isPassPackets()
+   {
+      return !encodePackets;
+   }
+
+   public void write(final Packet packet)
+   {
+      if (batcher != null)
+      {
+         // Anything batched before this packet must reach the handler first
+         batcher.flush();
+      }
+
+      executor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               if (!closed)
+               {
+                  handler.packetReceived(id, packet);
+               }
+               else
+               {
+                  //Ignore - packet came in after connection is closed
+               }
+            }
+            catch (Exception e)
+            {
+               final String msg = "Failed to write to handler";
+               log.error(msg, e);
+               throw new IllegalStateException(msg, e);
+            }
+         }
+      });
+   }
+
+   /**
+    * Hands a batch to the handler in a single executor task
+    */
+   private void deliver(final List<MessagingBuffer> buffers)
+   {
+      executor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               for (MessagingBuffer buffer : buffers)
+               {
+                  if (closed)
+                  {
+                     //Ignore - buffer came in after connection is closed
+                     return;
+                  }
+
+                  buffer.getInt(); // read and discard
+                  handler.bufferReceived(id, buffer);
+               }
+            }
+            catch (Exception e)
+            {
+               final String msg = "Failed to write to handler";
+               log.error(msg, e);
+               throw new IllegalStateException(msg, e);
+            }
+         }
+      });
+   }
 }
@@ -24,6 +24,9 @@ package org.jboss.messaging.core.remoting.impl.invm;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.jboss.messaging.core.exception.MessagingException;
 import org.jboss.messaging.core.logging.Logger;
@@ -32,6 +35,8 @@ import org.jboss.messaging.core.remoting.spi.Connection;
 import org.jboss.messaging.core.remoting.spi.ConnectionLifeCycleListener;
 import org.jboss.messaging.core.remoting.spi.Connector;
 import org.jboss.messaging.util.ConfigurationHelper;
+import org.jboss.messaging.util.JBMThreadFactory;
+import org.jboss.messaging.util.UUIDGenerator;
 
 /**
  * A InVMConnector
@@ -55,6 +60,16 @@ public class InVMConnector implements Connector
    
    private volatile boolean started;
    
+   private final long batchDelay;
+   
+   private final int batchSize;
+   
+   private final boolean encodePackets;
+   
+   private volatile ScheduledExecutorService batchScheduler;
+   
+   private volatile ExecutorService batchExecutor;
+   
    public InVMConnector(final Map<String, Object> configuration,
                         final BufferHandler handler,
                         final ConnectionLifeCycleListener listener)
@@ -63,6 +78,16 @@ public class InVMConnector implements Connector
       
       this.id = ConfigurationHelper.getIntProperty(TransportConstants.SERVER_ID_PROP_NAME, 0, configuration);
       
+      this.batchDelay = ConfigurationHelper.getLongProperty(TransportConstants.BATCH_DELAY_PROPNAME,
+                                                            TransportConstants.DEFAULT_BATCH_DELAY, configuration);
+      
+      this.batchSize = ConfigurationHelper.getIntProperty(TransportConstants.BATCH_SIZE_PROPNAME,
+                                                          TransportConstants.DEFAULT_BATCH_SIZE, configuration);
+      
+      this.encodePackets = ConfigurationHelper.getBooleanProperty(TransportConstants.ENCODE_PACKETS_PROPNAME,
+                                                                  TransportConstants.DEFAULT_ENCODE_PACKETS,
+                                                                  configuration);
+      
       this.handler = handler;
       
       InVMRegistry registry = InVMRegistry.instance;
@@ -89,12 +114,23 @@ public class InVMConnector implements Connector
       
       connections.clear();
       
+      if (batchScheduler != null)
+      {
+         batchScheduler.shutdown();
+         batchExecutor.shutdown();
+         
+         batchScheduler = null;
+         batchExecutor = null;
+      }
+      
       started = false;
    }
 
    public Connection createConnection()
    {
-      Connection conn = new InVMConnection(acceptor.getHandler(), new Listener());
+      Connection conn = new InVMConnection(UUIDGenerator.getInstance().generateSimpleStringUUID().toString(),
+                                           acceptor.getHandler(), new Listener(), batchDelay, batchSize,
+                                           batchScheduler, batchExecutor, encodePackets);
       
       acceptor.connect((String)conn.getID(), handler, this);
            
@@ -103,6 +139,12 @@ public class InVMConnector implements Connector
 
    public synchronized void start()
    {          
+      if (batchDelay > 0)
+      {
+         batchScheduler = Executors.newSingleThreadScheduledExecutor(new JBMThreadFactory("jbm-invm-connector-batch-scheduler"));
+         batchExecutor = Executors.newCachedThreadPool(new JBMThreadFactory("jbm-invm-connector-batch-writer-threads"));
+      }
+      
       started = true;
    }
    
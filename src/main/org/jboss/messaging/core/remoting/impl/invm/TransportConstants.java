@@ -30,4 +30,18 @@ package org.jboss.messaging.core.remoting.impl.invm;
 public class TransportConstants
 {
    public static final String SERVER_ID_PROP_NAME = "jbm.remoting.invm.serverid";
+   
+   public static final String BATCH_DELAY_PROPNAME = "jbm.remoting.invm.batchdelay";
+   
+   public static final String BATCH_SIZE_PROPNAME = "jbm.remoting.invm.batchsize";
+   
+   public static final String ENCODE_PACKETS_PROPNAME = "jbm.remoting.invm.encodepackets";
+   
+   /** In milliseconds, 0 disables batching of writes */
+   public static final long DEFAULT_BATCH_DELAY = 0;
+   
+   public static final int DEFAULT_BATCH_SIZE = 8192;
+   
+   /** Packets are handed over as they are, encoding them is only useful for debugging the wire format */
+   public static final boolean DEFAULT_ENCODE_PACKETS = false;
 }
@@ -27,6 +27,7 @@ import static org.jboss.messaging.util.DataConstants.NOT_NULL;
 import static org.jboss.messaging.util.DataConstants.NULL;
 import static org.jboss.messaging.util.DataConstants.TRUE;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 import org.apache.mina.core.buffer.IoBuffer;
@@ -73,7 +74,17 @@ public class IoBufferWrapper implements MessagingBuffer
 
    public byte[] array()
    {
-      return buffer.array();
+      if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.capacity() == buffer.array().length)
+      {
+         return buffer.array();
+      }
+      else
+      {
+         // A slice or a direct buffer, only its own bytes are copied
+         byte[] b = new byte[buffer.limit()];
+         toByteBuffer(0, buffer.limit()).get(b);
+         return b;
+      }
    }
 
    public int position()
@@ -111,6 +122,19 @@ public class IoBufferWrapper implements MessagingBuffer
       return new IoBufferWrapper(buffer.slice());
    }
 
+   public ByteBuffer toByteBuffer(final int index, final int length)
+   {
+      ByteBuffer bytes = buffer.buf().duplicate();
+
+      bytes.clear();
+
+      bytes.position(index);
+
+      bytes.limit(index + length);
+
+      return bytes;
+   }
+
    public MessagingBuffer createNewBuffer(int len)
    {
       return new IoBufferWrapper(len);
@@ -141,6 +165,11 @@ public class IoBufferWrapper implements MessagingBuffer
       buffer.put(bytes, offset, length);
    }
 
+   public void putBytes(final ByteBuffer bytes)
+   {
+      buffer.put(bytes);
+   }
+
    public void putInt(final int intValue)
    {
       buffer.putInt(intValue);
@@ -22,6 +22,10 @@
 
 package org.jboss.messaging.core.remoting.impl.mina;
 
+import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.BATCH_DELAY_PROPNAME;
+import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.BATCH_SIZE_PROPNAME;
+import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.DEFAULT_BATCH_DELAY;
+import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.DEFAULT_BATCH_SIZE;
 import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.DEFAULT_HOST;
 import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.DEFAULT_KEYSTORE_PASSWORD;
 import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.DEFAULT_KEYSTORE_PATH;
@@ -45,6 +49,9 @@ import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.TRU
 
 import java.net.InetSocketAddress;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.filterchain.DefaultIoFilterChainBuilder;
@@ -62,6 +69,7 @@ import org.jboss.messaging.core.remoting.spi.BufferHandler;
 import org.jboss.messaging.core.remoting.spi.Connection;
 import org.jboss.messaging.core.remoting.spi.ConnectionLifeCycleListener;
 import org.jboss.messaging.util.ConfigurationHelper;
+import org.jboss.messaging.util.JBMThreadFactory;
 
 
 /**
@@ -105,6 +113,14 @@ public class MinaAcceptor implements Acceptor
    
    private final int tcpReceiveBufferSize;
 
+   private final long batchDelay;
+
+   private final int batchSize;
+
+   private ScheduledExecutorService batchScheduler;
+
+   private ExecutorService batchExecutor;
+
    public MinaAcceptor(final Map<String, Object> configuration, final BufferHandler handler,
                        final ConnectionLifeCycleListener listener)
    {
@@ -143,6 +159,10 @@ public class MinaAcceptor implements Acceptor
          ConfigurationHelper.getIntProperty(TCP_SENDBUFFER_SIZE_PROPNAME, DEFAULT_TCP_SENDBUFFER_SIZE, configuration);
       this.tcpReceiveBufferSize =
          ConfigurationHelper.getIntProperty(TCP_RECEIVEBUFFER_SIZE_PROPNAME, DEFAULT_TCP_RECEIVEBUFFER_SIZE, configuration);
+      this.batchDelay =
+         ConfigurationHelper.getLongProperty(BATCH_DELAY_PROPNAME, DEFAULT_BATCH_DELAY, configuration);
+      this.batchSize =
+         ConfigurationHelper.getIntProperty(BATCH_SIZE_PROPNAME, DEFAULT_BATCH_SIZE, configuration);
      
    }
 
@@ -185,6 +205,12 @@ public class MinaAcceptor implements Acceptor
       acceptor.getSessionConfig().setKeepAlive(true);
       acceptor.setCloseOnDeactivation(false);
 
+      if (batchDelay > 0)
+      {
+         batchScheduler = Executors.newSingleThreadScheduledExecutor(new JBMThreadFactory("jbm-mina-acceptor-batch-scheduler"));
+         batchExecutor = Executors.newCachedThreadPool(new JBMThreadFactory("jbm-mina-acceptor-batch-writer-threads"));
+      }
+
       acceptor.setHandler(new MinaHandler());
       acceptor.bind();
       acceptorListener = new MinaSessionListener();
@@ -204,6 +230,16 @@ public class MinaAcceptor implements Acceptor
       acceptor.unbind();
       acceptor.dispose();
       acceptor = null;
+
+      if (batchScheduler != null)
+      {
+         // Not shutdownNow(), the delayed flushes already scheduled still have to run
+         batchScheduler.shutdown();
+         batchExecutor.shutdown();
+
+         batchScheduler = null;
+         batchExecutor = null;
+      }
    }
 
    public DefaultIoFilterChainBuilder getFilterChain()
@@ -255,7 +291,7 @@ public class MinaAcceptor implements Acceptor
 
       public void sessionCreated(final IoSession session)
       {
-         Connection tc = new MinaConnection(session);
+         Connection tc = new MinaConnection(session, batchDelay, batchSize, batchScheduler, batchExecutor);
 
          listener.connectionCreated(tc);
       }
@@ -22,12 +22,17 @@
 
 package org.jboss.messaging.core.remoting.impl.mina;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.future.IoFutureListener;
 import org.apache.mina.core.service.IoConnector;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.ssl.SslFilter;
 import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.remoting.impl.WriteBatcher;
 import org.jboss.messaging.core.remoting.spi.Connection;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
 
@@ -48,6 +53,8 @@ public class MinaConnection implements Connection
 
    private final IoSession session;
 
+   private final WriteBatcher batcher;
+
    private boolean closed;
 
    // Static --------------------------------------------------------
@@ -55,8 +62,48 @@ public class MinaConnection implements Connection
    // Constructors --------------------------------------------------
 
    public MinaConnection(final IoSession session)
+   {
+      this(session, TransportConstants.DEFAULT_BATCH_DELAY, TransportConstants.DEFAULT_BATCH_SIZE, null, null);
+   }
+
+   public MinaConnection(final IoSession session,
+                         final long batchDelay,
+                         final int batchSize,
+                         final ScheduledExecutorService batchScheduler,
+                         final Executor batchExecutor)
    {
       this.session = session;
+
+      if (batchDelay > 0)
+      {
+         batcher = new WriteBatcher(new WriteBatcher.BatchWriter()
+         {
+            public void write(final List<MessagingBuffer> buffers, final int size)
+            {
+               if (buffers.size() == 1)
+               {
+                  session.write(buffers.get(0).getUnderlyingBuffer());
+               }
+               else
+               {
+                  IoBuffer batch = IoBuffer.allocate(size);
+
+                  for (MessagingBuffer buffer : buffers)
+                  {
+                     batch.put((IoBuffer)buffer.getUnderlyingBuffer());
+                  }
+
+                  batch.flip();
+
+                  session.write(batch);
+               }
+            }
+         }, batchScheduler, batchExecutor, batchDelay, batchSize);
+      }
+      else
+      {
+         batcher = null;
+      }
    }
 
    // Public --------------------------------------------------------
@@ -70,6 +117,11 @@ public class MinaConnection implements Connection
          return;
       }
 
+      if (batcher != null)
+      {
+         batcher.flush();
+      }
+
       SslFilter sslFilter = (SslFilter) session.getFilterChain().get("ssl");
 
       if (session.getService() instanceof IoConnector) {
@@ -118,7 +170,31 @@ public class MinaConnection implements Connection
 
    public void write(final MessagingBuffer buffer)
    {
-      session.write(buffer.getUnderlyingBuffer());
+      write(buffer, false);
+   }
+
+   public void write(final MessagingBuffer buffer, final boolean batched)
+   {
+      if (batcher == null)
+      {
+         session.write(buffer.getUnderlyingBuffer());
+      }
+      else
+      {
+         batcher.write(buffer, batched);
+      }
+   }
+
+   public void setReadable(final boolean readable)
+   {
+      if (readable)
+      {
+         session.resumeRead();
+      }
+      else
+      {
+         session.suspendRead();
+      }
    }
 
    // Public --------------------------------------------------------
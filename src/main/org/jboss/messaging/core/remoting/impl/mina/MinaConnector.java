@@ -21,6 +21,10 @@
  */
 package org.jboss.messaging.core.remoting.impl.mina;
 
+import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.BATCH_DELAY_PROPNAME;
+import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.BATCH_SIZE_PROPNAME;
+import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.DEFAULT_BATCH_DELAY;
+import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.DEFAULT_BATCH_SIZE;
 import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.DEFAULT_HOST;
 import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.DEFAULT_KEYSTORE_PASSWORD;
 import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.DEFAULT_KEYSTORE_PATH;
@@ -40,6 +44,9 @@ import static org.jboss.messaging.core.remoting.impl.mina.TransportConstants.TCP
 
 import java.net.InetSocketAddress;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.filterchain.DefaultIoFilterChainBuilder;
@@ -59,6 +66,7 @@ import org.jboss.messaging.core.remoting.spi.Connection;
 import org.jboss.messaging.core.remoting.spi.ConnectionLifeCycleListener;
 import org.jboss.messaging.core.remoting.spi.Connector;
 import org.jboss.messaging.util.ConfigurationHelper;
+import org.jboss.messaging.util.JBMThreadFactory;
 /**
  *
  * A MinaConnector
@@ -96,6 +104,14 @@ public class MinaConnector implements Connector
    
    private final int tcpReceiveBufferSize;
 
+   private final long batchDelay;
+
+   private final int batchSize;
+
+   private ScheduledExecutorService batchScheduler;
+
+   private ExecutorService batchExecutor;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -145,6 +161,10 @@ public class MinaConnector implements Connector
          ConfigurationHelper.getIntProperty(TCP_SENDBUFFER_SIZE_PROPNAME, DEFAULT_TCP_SENDBUFFER_SIZE, configuration);
       this.tcpReceiveBufferSize =
          ConfigurationHelper.getIntProperty(TCP_RECEIVEBUFFER_SIZE_PROPNAME, DEFAULT_TCP_RECEIVEBUFFER_SIZE, configuration);
+      this.batchDelay =
+         ConfigurationHelper.getLongProperty(BATCH_DELAY_PROPNAME, DEFAULT_BATCH_DELAY, configuration);
+      this.batchSize =
+         ConfigurationHelper.getIntProperty(BATCH_SIZE_PROPNAME, DEFAULT_BATCH_SIZE, configuration);
 
    }
 
@@ -193,6 +213,12 @@ public class MinaConnector implements Connector
       connector.setHandler(new MinaHandler());
 
       connector.addListener(new ServiceListener());
+
+      if (batchDelay > 0)
+      {
+         batchScheduler = Executors.newSingleThreadScheduledExecutor(new JBMThreadFactory("jbm-mina-connector-batch-scheduler"));
+         batchExecutor = Executors.newCachedThreadPool(new JBMThreadFactory("jbm-mina-connector-batch-writer-threads"));
+      }
    }
    
    public synchronized void close()
@@ -201,6 +227,16 @@ public class MinaConnector implements Connector
       {
          connector.dispose();
       }
+
+      if (batchScheduler != null)
+      {
+         // Not shutdownNow(), the delayed flushes already scheduled still have to run
+         batchScheduler.shutdown();
+         batchExecutor.shutdown();
+
+         batchScheduler = null;
+         batchExecutor = null;
+      }
    }
 
    public Connection createConnection()
@@ -215,7 +251,7 @@ public class MinaConnector implements Connector
       {
          IoSession session = future.getSession();
 
-         return new MinaConnection(session);
+         return new MinaConnection(session, batchDelay, batchSize, batchScheduler, batchExecutor);
       }
       else
       {
@@ -98,11 +98,21 @@ public class MinaProtocolCodecFilter extends CumulativeProtocolDecoder
          return false;
       }
 
-      IoBuffer sliced = in.slice();
-      
-      in.position(start + length + SIZE_INT);
+      // Message bodies are slices of the frame, so the frame can't share the cumulated buffer, which is compacted
+      // and reused for the next frames
+      IoBuffer frame = IoBuffer.allocate(length);
 
-      out.write(sliced);
+      int limit = in.limit();
+
+      in.limit(start + SIZE_INT + length);
+
+      frame.put(in);
+
+      in.limit(limit);
+
+      frame.flip();
+
+      out.write(frame);
 
       return true;
    }
@@ -49,6 +49,10 @@ public class TransportConstants
    
    public static final String TCP_RECEIVEBUFFER_SIZE_PROPNAME = "jbm.remoting.mina.tcpreceivebuffersize";
    
+   public static final String BATCH_DELAY_PROPNAME = "jbm.remoting.mina.batchdelay";
+   
+   public static final String BATCH_SIZE_PROPNAME = "jbm.remoting.mina.batchsize";
+   
    public static final boolean DEFAULT_SSL_ENABLED = false;
    
    public static final String DEFAULT_HOST = "localhost";
@@ -68,4 +72,9 @@ public class TransportConstants
    public static final int DEFAULT_TCP_SENDBUFFER_SIZE = 32768;
    
    public static final int DEFAULT_TCP_RECEIVEBUFFER_SIZE = 32768;  
+   
+   /** In milliseconds, 0 disables batching of writes */
+   public static final long DEFAULT_BATCH_DELAY = 0;
+   
+   public static final int DEFAULT_BATCH_SIZE = 8192;
 }
@@ -26,6 +26,7 @@ import static org.jboss.messaging.util.DataConstants.*;
 import static org.jboss.netty.buffer.ChannelBuffers.*;
 
 import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
 import org.jboss.messaging.util.SimpleString;
@@ -73,7 +74,19 @@ public class ChannelBufferWrapper implements MessagingBuffer
 
    public byte[] array()
    {
-      return buffer.toByteBuffer().array();
+      ByteBuffer bytes = buffer.toByteBuffer(0, buffer.capacity());
+
+      if (bytes.hasArray() && bytes.arrayOffset() == 0 && bytes.position() == 0 && bytes.limit() == bytes.array().length)
+      {
+         return bytes.array();
+      }
+      else
+      {
+         // A slice or a direct buffer, only its own bytes are copied
+         byte[] b = new byte[buffer.writerIndex()];
+         buffer.getBytes(0, b);
+         return b;
+      }
    }
 
    public int position()
@@ -113,6 +126,11 @@ public class ChannelBufferWrapper implements MessagingBuffer
       return new ChannelBufferWrapper(buffer.slice());
    }
 
+   public ByteBuffer toByteBuffer(final int index, final int length)
+   {
+      return buffer.toByteBuffer(index, length);
+   }
+
    public MessagingBuffer createNewBuffer(int len)
    {
       return new ChannelBufferWrapper(len);
@@ -150,6 +168,13 @@ public class ChannelBufferWrapper implements MessagingBuffer
       buffer.readerIndex(buffer.writerIndex());
    }
 
+   public void putBytes(final ByteBuffer bytes)
+   {
+      flip();
+      buffer.writeBytes(bytes);
+      buffer.readerIndex(buffer.writerIndex());
+   }
+
    public void putInt(final int intValue)
    {
       flip();
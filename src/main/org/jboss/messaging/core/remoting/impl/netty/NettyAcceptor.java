@@ -22,6 +22,10 @@
 
 package org.jboss.messaging.core.remoting.impl.netty;
 
+import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.BATCH_DELAY_PROPNAME;
+import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.BATCH_SIZE_PROPNAME;
+import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.DEFAULT_BATCH_DELAY;
+import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.DEFAULT_BATCH_SIZE;
 import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.DEFAULT_HOST;
 import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.DEFAULT_KEYSTORE_PASSWORD;
 import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.DEFAULT_KEYSTORE_PATH;
@@ -50,6 +54,7 @@ import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
@@ -91,6 +96,8 @@ public class NettyAcceptor implements Acceptor
    
    private ExecutorService bossExecutor;
    private ExecutorService workerExecutor;
+   private ScheduledExecutorService batchScheduler;
+   private ExecutorService batchExecutor;
    private ChannelFactory channelFactory;
    private Channel serverChannel;
    private ServerBootstrap bootstrap;
@@ -121,6 +128,10 @@ public class NettyAcceptor implements Acceptor
    
    private final int tcpReceiveBufferSize;
 
+   private final long batchDelay;
+
+   private final int batchSize;
+
    public NettyAcceptor(final Map<String, Object> configuration,  final BufferHandler handler,
                        final ConnectionLifeCycleListener listener)
    {   
@@ -161,6 +172,10 @@ public class NettyAcceptor implements Acceptor
          ConfigurationHelper.getIntProperty(TCP_SENDBUFFER_SIZE_PROPNAME, DEFAULT_TCP_SENDBUFFER_SIZE, configuration);
       this.tcpReceiveBufferSize =
          ConfigurationHelper.getIntProperty(TCP_RECEIVEBUFFER_SIZE_PROPNAME, DEFAULT_TCP_RECEIVEBUFFER_SIZE, configuration);
+      this.batchDelay =
+         ConfigurationHelper.getLongProperty(BATCH_DELAY_PROPNAME, DEFAULT_BATCH_DELAY, configuration);
+      this.batchSize =
+         ConfigurationHelper.getIntProperty(BATCH_SIZE_PROPNAME, DEFAULT_BATCH_SIZE, configuration);
     
    }
 
@@ -174,6 +189,11 @@ public class NettyAcceptor implements Acceptor
  
       bossExecutor = Executors.newCachedThreadPool(new JBMThreadFactory("jbm-netty-acceptor-boss-threads"));
       workerExecutor = Executors.newCachedThreadPool(new JBMThreadFactory("jbm-netty-acceptor-worker-threads"));
+      if (batchDelay > 0)
+      {
+         batchScheduler = Executors.newSingleThreadScheduledExecutor(new JBMThreadFactory("jbm-netty-acceptor-batch-scheduler"));
+         batchExecutor = Executors.newCachedThreadPool(new JBMThreadFactory("jbm-netty-acceptor-batch-writer-threads"));
+      }
       if (useNio)
       {
          channelFactory = new NioServerSocketChannelFactory(bossExecutor, workerExecutor);
@@ -251,6 +271,15 @@ public class NettyAcceptor implements Acceptor
       serverChannel.close().awaitUninterruptibly();
       bossExecutor.shutdown();
       workerExecutor.shutdown();
+      if (batchScheduler != null)
+      {
+         // Not shutdownNow(), the delayed flushes already scheduled still have to run
+         batchScheduler.shutdown();
+         batchExecutor.shutdown();
+
+         batchScheduler = null;
+         batchExecutor = null;
+      }
       for (;;)
       {
          try
@@ -281,7 +310,7 @@ public class NettyAcceptor implements Acceptor
       @Override
       public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception
       {
-         final Connection tc = new NettyConnection(e.getChannel());
+         final Connection tc = new NettyConnection(e.getChannel(), batchDelay, batchSize, batchScheduler, batchExecutor);
 
          SslHandler sslHandler = ctx.getPipeline().get(SslHandler.class);
          if (sslHandler != null)
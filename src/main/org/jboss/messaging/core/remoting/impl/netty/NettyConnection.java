@@ -22,8 +22,15 @@
 
 package org.jboss.messaging.core.remoting.impl.netty;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jboss.messaging.core.remoting.impl.WriteBatcher;
 import org.jboss.messaging.core.remoting.spi.Connection;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.handler.ssl.SslHandler;
@@ -43,6 +50,8 @@ public class NettyConnection implements Connection
 
    private final Channel channel;
 
+   private final WriteBatcher batcher;
+
    private boolean closed;
 
    // Static --------------------------------------------------------
@@ -50,8 +59,46 @@ public class NettyConnection implements Connection
    // Constructors --------------------------------------------------
 
    public NettyConnection(final Channel channel)
+   {
+      this(channel, TransportConstants.DEFAULT_BATCH_DELAY, TransportConstants.DEFAULT_BATCH_SIZE, null, null);
+   }
+
+   public NettyConnection(final Channel channel,
+                          final long batchDelay,
+                          final int batchSize,
+                          final ScheduledExecutorService batchScheduler,
+                          final Executor batchExecutor)
    {
       this.channel = channel;
+
+      if (batchDelay > 0)
+      {
+         batcher = new WriteBatcher(new WriteBatcher.BatchWriter()
+         {
+            public void write(final List<MessagingBuffer> buffers, final int size)
+            {
+               if (buffers.size() == 1)
+               {
+                  channel.write(buffers.get(0).getUnderlyingBuffer());
+               }
+               else
+               {
+                  ChannelBuffer[] underlying = new ChannelBuffer[buffers.size()];
+
+                  for (int i = 0; i < underlying.length; i++)
+                  {
+                     underlying[i] = (ChannelBuffer)buffers.get(i).getUnderlyingBuffer();
+                  }
+
+                  channel.write(ChannelBuffers.wrappedBuffer(underlying));
+               }
+            }
+         }, batchScheduler, batchExecutor, batchDelay, batchSize);
+      }
+      else
+      {
+         batcher = null;
+      }
    }
 
    // Public --------------------------------------------------------
@@ -65,6 +112,11 @@ public class NettyConnection implements Connection
          return;
       }
 
+      if (batcher != null)
+      {
+         batcher.flush();
+      }
+
       SslHandler sslHandler = (SslHandler) channel.getPipeline().get("ssl");
       if (sslHandler != null)
       {
@@ -109,7 +161,24 @@ public class NettyConnection implements Connection
 
    public void write(final MessagingBuffer buffer)
    {
-      channel.write(buffer.getUnderlyingBuffer());
+      write(buffer, false);
+   }
+
+   public void write(final MessagingBuffer buffer, final boolean batched)
+   {
+      if (batcher == null)
+      {
+         channel.write(buffer.getUnderlyingBuffer());
+      }
+      else
+      {
+         batcher.write(buffer, batched);
+      }
+   }
+
+   public void setReadable(final boolean readable)
+   {
+      channel.setReadable(readable);
    }
 
    // Public --------------------------------------------------------
@@ -21,6 +21,10 @@
  */
 package org.jboss.messaging.core.remoting.impl.netty;
 
+import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.BATCH_DELAY_PROPNAME;
+import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.BATCH_SIZE_PROPNAME;
+import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.DEFAULT_BATCH_DELAY;
+import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.DEFAULT_BATCH_SIZE;
 import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.DEFAULT_HOST;
 import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.DEFAULT_KEYSTORE_PASSWORD;
 import static org.jboss.messaging.core.remoting.impl.netty.TransportConstants.DEFAULT_KEYSTORE_PATH;
@@ -45,6 +49,7 @@ import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
@@ -86,6 +91,8 @@ public class NettyConnector implements Connector
 
    private ExecutorService bossExecutor;
    private ExecutorService workerExecutor;
+   private ScheduledExecutorService batchScheduler;
+   private ExecutorService batchExecutor;
    private ChannelFactory  channelFactory;
    private ClientBootstrap bootstrap;
 
@@ -111,6 +118,10 @@ public class NettyConnector implements Connector
    
    private final int tcpReceiveBufferSize;
 
+   private final long batchDelay;
+
+   private final int batchSize;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -162,6 +173,10 @@ public class NettyConnector implements Connector
          ConfigurationHelper.getIntProperty(TCP_SENDBUFFER_SIZE_PROPNAME, DEFAULT_TCP_SENDBUFFER_SIZE, configuration);
       this.tcpReceiveBufferSize =
          ConfigurationHelper.getIntProperty(TCP_RECEIVEBUFFER_SIZE_PROPNAME, DEFAULT_TCP_RECEIVEBUFFER_SIZE, configuration);
+      this.batchDelay =
+         ConfigurationHelper.getLongProperty(BATCH_DELAY_PROPNAME, DEFAULT_BATCH_DELAY, configuration);
+      this.batchSize =
+         ConfigurationHelper.getIntProperty(BATCH_SIZE_PROPNAME, DEFAULT_BATCH_SIZE, configuration);
 
    }
 
@@ -173,6 +188,11 @@ public class NettyConnector implements Connector
       }
 
       workerExecutor = Executors.newCachedThreadPool(new JBMThreadFactory("jbm-netty-connector-worker-threads"));
+      if (batchDelay > 0)
+      {
+         batchScheduler = Executors.newSingleThreadScheduledExecutor(new JBMThreadFactory("jbm-netty-connector-batch-scheduler"));
+         batchExecutor = Executors.newCachedThreadPool(new JBMThreadFactory("jbm-netty-connector-batch-writer-threads"));
+      }
       if (useNio)
       {
          bossExecutor = Executors.newCachedThreadPool(new JBMThreadFactory("jbm-netty-connector-boss-threads"));      
@@ -246,6 +266,15 @@ public class NettyConnector implements Connector
          bossExecutor.shutdown();        
       }
       workerExecutor.shutdown();
+      if (batchScheduler != null)
+      {
+         // Not shutdownNow(), the delayed flushes already scheduled still have to run
+         batchScheduler.shutdown();
+         batchExecutor.shutdown();
+
+         batchScheduler = null;
+         batchExecutor = null;
+      }
       if (bossExecutor != null)
       {
          for (;;)
@@ -303,7 +332,7 @@ public class NettyConnector implements Connector
             ch.getPipeline().get(MessagingChannelHandler.class).active = true;
          }
 
-         return new NettyConnection(ch);
+         return new NettyConnection(ch, batchDelay, batchSize, batchScheduler, batchExecutor);
       }
       else
       {
@@ -51,6 +51,10 @@ public class TransportConstants
    
    public static final String TCP_RECEIVEBUFFER_SIZE_PROPNAME = "jbm.remoting.netty.tcpreceivebuffersize";
    
+   public static final String BATCH_DELAY_PROPNAME = "jbm.remoting.netty.batchdelay";
+   
+   public static final String BATCH_SIZE_PROPNAME = "jbm.remoting.netty.batchsize";
+   
    public static final boolean DEFAULT_SSL_ENABLED = false;
    
    public static final boolean DEFAULT_USE_NIO = true;
@@ -72,4 +76,9 @@ public class TransportConstants
    public static final int DEFAULT_TCP_SENDBUFFER_SIZE = 32768;
    
    public static final int DEFAULT_TCP_RECEIVEBUFFER_SIZE = 32768;  
+   
+   /** In milliseconds, 0 disables batching of writes */
+   public static final long DEFAULT_BATCH_DELAY = 0;
+   
+   public static final int DEFAULT_BATCH_SIZE = 8192;
 }
@@ -12,8 +12,11 @@
 
 package org.jboss.messaging.core.remoting.impl.wireformat;
 
+import java.nio.ByteBuffer;
+
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.remoting.Packet;
+import org.jboss.messaging.core.remoting.impl.ByteBufferWrapper;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
 import org.jboss.messaging.util.DataConstants;
 
@@ -32,6 +35,9 @@ public class PacketImpl implements Packet
 
    private long channelID;
 
+   // Matches a response to the blocking request it answers, 0 if the packet isn't part of a blocking call
+   private long correlationID;
+
    private final byte type;
 
    // The packet types
@@ -151,6 +157,14 @@ public class PacketImpl implements Packet
 
    public static final byte SESS_REPLICATE_DELIVERY = 91;
 
+   public static final byte SESS_SEND_CONFIRMATION = 92;
+
+   public static final byte SESS_SEND_FAILED = 93;
+
+   public static final byte SESS_RECEIVE_MSG_BATCH = 94;
+
+   public static final byte SESS_SEND_BATCH = 95;
+
    // Static --------------------------------------------------------
 
    public PacketImpl(final byte type)
@@ -175,12 +189,23 @@ public class PacketImpl implements Packet
       this.channelID = channelID;
    }
 
+   public long getCorrelationID()
+   {
+      return correlationID;
+   }
+
+   public void setCorrelationID(final long correlationID)
+   {
+      this.correlationID = correlationID;
+   }
+
    public void encode(final MessagingBuffer buffer)
    {
       // The standard header fields
       buffer.putInt(0); // The length gets filled in at the end
       buffer.putByte(type);
       buffer.putLong(channelID);
+      buffer.putLong(correlationID);
 
       encodeBody(buffer);
 
@@ -196,6 +221,8 @@ public class PacketImpl implements Packet
    {
       channelID = buffer.getLong();
       
+      correlationID = buffer.getLong();
+      
       decodeBody(buffer);
    }
 
@@ -227,6 +254,14 @@ public class PacketImpl implements Packet
       return false;
    }
 
+   /**
+    * Packets are not changed once sent, so by default the receiver gets the packet itself
+    */
+   public Packet copyForReceiver()
+   {
+      return this;
+   }
+
    @Override
    public String toString()
    {
@@ -255,6 +290,35 @@ public class PacketImpl implements Packet
 
    // Protected -----------------------------------------------------
 
+   protected void copyHeader(final PacketImpl copy)
+   {
+      copy.channelID = channelID;
+
+      copy.correlationID = correlationID;
+   }
+
+   /**
+    * @return a buffer with its own copy of the body
+    */
+   protected static MessagingBuffer copyBody(final MessagingBuffer body)
+   {
+      ByteBuffer bytes = ByteBuffer.allocate(body.limit());
+
+      bytes.put(body.toByteBuffer(0, body.limit()));
+
+      bytes.flip();
+
+      return new ByteBufferWrapper(bytes);
+   }
+
+   /**
+    * @return a read-only view of the body, with its own position and limit, copied the first time it is written to
+    */
+   protected static MessagingBuffer viewBody(final MessagingBuffer body)
+   {
+      return new ByteBufferWrapper(body.toByteBuffer(0, body.limit()).slice().asReadOnlyBuffer());
+   }
+
    // Private -------------------------------------------------------
 
    // Inner classes -------------------------------------------------
@@ -22,6 +22,7 @@
 
 package org.jboss.messaging.core.remoting.impl.wireformat;
 
+import org.jboss.messaging.core.remoting.Packet;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
 
 /**
@@ -83,6 +84,16 @@ public class Pong extends PacketImpl
       return true;
    }
 
+   public Packet copyForReceiver()
+   {
+      // The receiving side decodes a pong as a plain packet
+      PacketImpl copy = new PacketImpl(PONG);
+
+      copyHeader(copy);
+
+      return copy;
+   }
+
    @Override
    public String toString()
    {
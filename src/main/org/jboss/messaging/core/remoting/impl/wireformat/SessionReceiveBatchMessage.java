@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.remoting.impl.wireformat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.messaging.core.client.ClientMessage;
+import org.jboss.messaging.core.client.impl.ClientMessageImpl;
+import org.jboss.messaging.core.message.impl.MessageImpl;
+import org.jboss.messaging.core.remoting.Packet;
+import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
+import org.jboss.messaging.core.server.ServerMessage;
+
+/**
+ *
+ * A SessionReceiveBatchMessage
+ *
+ * Delivers several messages to a consumer in one packet, in the order they were delivered
+ *
+ */
+public class SessionReceiveBatchMessage extends PacketImpl
+{
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private long consumerID;
+
+   private List<ServerMessage> serverMessages;
+
+   private List<ClientMessage> clientMessages;
+
+   private int[] deliveryCounts;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   public SessionReceiveBatchMessage(final long consumerID,
+                                     final List<ServerMessage> messages,
+                                     final int[] deliveryCounts)
+   {
+      super(SESS_RECEIVE_MSG_BATCH);
+
+      this.consumerID = consumerID;
+
+      this.serverMessages = messages;
+
+      this.deliveryCounts = deliveryCounts;
+   }
+
+   public SessionReceiveBatchMessage()
+   {
+      super(SESS_RECEIVE_MSG_BATCH);
+   }
+
+   // Public --------------------------------------------------------
+
+   public long getConsumerID()
+   {
+      return consumerID;
+   }
+
+   public List<ClientMessage> getClientMessages()
+   {
+      return clientMessages;
+   }
+
+   public List<ServerMessage> getServerMessages()
+   {
+      return serverMessages;
+   }
+
+   public int[] getDeliveryCounts()
+   {
+      return deliveryCounts;
+   }
+
+   public void encodeBody(final MessagingBuffer buffer)
+   {
+      buffer.putLong(consumerID);
+      buffer.putInt(serverMessages.size());
+      for (int i = 0; i < deliveryCounts.length; i++)
+      {
+         buffer.putInt(deliveryCounts[i]);
+         serverMessages.get(i).encode(buffer);
+      }
+   }
+
+   public void decodeBody(final MessagingBuffer buffer)
+   {
+      consumerID = buffer.getLong();
+      int count = buffer.getInt();
+      deliveryCounts = new int[count];
+      clientMessages = new ArrayList<ClientMessage>(count);
+      for (int i = 0; i < count; i++)
+      {
+         deliveryCounts[i] = buffer.getInt();
+         ClientMessage message = new ClientMessageImpl(deliveryCounts[i]);
+         message.decode(buffer);
+         clientMessages.add(message);
+      }
+   }
+
+   public Packet copyForReceiver()
+   {
+      SessionReceiveBatchMessage copy = new SessionReceiveBatchMessage();
+
+      copyHeader(copy);
+
+      copy.consumerID = consumerID;
+
+      copy.deliveryCounts = deliveryCounts;
+
+      copy.clientMessages = new ArrayList<ClientMessage>(serverMessages.size());
+
+      for (int i = 0; i < deliveryCounts.length; i++)
+      {
+         ServerMessage message = serverMessages.get(i);
+
+         ClientMessage clientMessage = new ClientMessageImpl((MessageImpl)message, deliveryCounts[i]);
+
+         // As for a single delivery, the body can be shared
+         clientMessage.setBody(viewBody(message.getBody()));
+
+         copy.clientMessages.add(clientMessage);
+      }
+
+      return copy;
+   }
+
+   @Override
+   public String toString()
+   {
+      StringBuffer buf = new StringBuffer(getParentString());
+      buf.append(", consumerID=" + consumerID + ", messages=" + deliveryCounts.length);
+      buf.append("]");
+      return buf.toString();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+}
@@ -25,6 +25,8 @@ package org.jboss.messaging.core.remoting.impl.wireformat;
 import org.jboss.messaging.core.client.ClientMessage;
 import org.jboss.messaging.core.client.impl.ClientMessageImpl;
 import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.message.impl.MessageImpl;
+import org.jboss.messaging.core.remoting.Packet;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
 import org.jboss.messaging.core.server.ServerMessage;
 
@@ -104,8 +106,6 @@ public class SessionReceiveMessage extends PacketImpl
 
    public void decodeBody(final MessagingBuffer buffer)
    {
-      // TODO can be optimised
-
       consumerID = buffer.getLong();
 
       deliveryCount = buffer.getInt();
@@ -113,8 +113,25 @@ public class SessionReceiveMessage extends PacketImpl
       clientMessage = new ClientMessageImpl(deliveryCount);
 
       clientMessage.decode(buffer);
+   }
+
+   public Packet copyForReceiver()
+   {
+      SessionReceiveMessage copy = new SessionReceiveMessage();
+
+      copyHeader(copy);
+
+      copy.consumerID = consumerID;
+
+      copy.deliveryCount = deliveryCount;
+
+      copy.clientMessage = new ClientMessageImpl((MessageImpl)serverMessage, deliveryCount);
+
+      // The server doesn't change the body once the message has arrived, so its content can be shared,
+      // the client gets its own copy if it writes to it
+      copy.clientMessage.setBody(viewBody(serverMessage.getBody()));
 
-      clientMessage.getBody().flip();
+      return copy;
    }
 
    // Package protected ---------------------------------------------
@@ -22,6 +22,7 @@
 package org.jboss.messaging.core.remoting.impl.wireformat;
 
 import org.jboss.messaging.core.client.ClientMessage;
+import org.jboss.messaging.core.remoting.Packet;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
 
 /**
@@ -54,6 +55,17 @@ public class SessionScheduledSendMessage extends SessionSendMessage
       scheduledDeliveryTime = buffer.getLong();
    }
 
+   public Packet copyForReceiver()
+   {
+      SessionScheduledSendMessage copy = new SessionScheduledSendMessage();
+
+      copyTo(copy);
+
+      copy.scheduledDeliveryTime = scheduledDeliveryTime;
+
+      return copy;
+   }
+
    public long getScheduledDeliveryTime()
    {
       return scheduledDeliveryTime;
@@ -0,0 +1,228 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.remoting.impl.wireformat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.messaging.core.client.ClientMessage;
+import org.jboss.messaging.core.message.Message;
+import org.jboss.messaging.core.message.impl.MessageImpl;
+import org.jboss.messaging.core.remoting.Packet;
+import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
+import org.jboss.messaging.core.server.ServerMessage;
+import org.jboss.messaging.core.server.impl.ServerMessageImpl;
+
+/**
+ *
+ * A SessionSendBatchMessage
+ *
+ * Sends several messages from a producer in one packet. They are stored together and answered with one response
+ *
+ */
+public class SessionSendBatchMessage extends PacketImpl
+{
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private long producerID;
+
+   private List<ClientMessage> clientMessages;
+
+   private List<ServerMessage> serverMessages;
+
+   private boolean requiresResponse;
+
+   // The confirmation ID of the first message, the others follow it. -1 if the producer doesn't want confirmations
+   private long confirmationID = -1;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   public SessionSendBatchMessage(final long producerID,
+                                  final List<ClientMessage> messages,
+                                  final boolean requiresResponse)
+   {
+      super(SESS_SEND_BATCH);
+
+      this.producerID = producerID;
+
+      this.clientMessages = messages;
+
+      this.requiresResponse = requiresResponse;
+   }
+
+   public SessionSendBatchMessage()
+   {
+      super(SESS_SEND_BATCH);
+   }
+
+   // Public --------------------------------------------------------
+
+   public long getProducerID()
+   {
+      return producerID;
+   }
+
+   public List<ClientMessage> getClientMessages()
+   {
+      return clientMessages;
+   }
+
+   public List<ServerMessage> getServerMessages()
+   {
+      return serverMessages;
+   }
+
+   public boolean isRequiresResponse()
+   {
+      return requiresResponse;
+   }
+
+   public boolean isRequiresConfirmation()
+   {
+      return confirmationID != -1;
+   }
+
+   public long getConfirmationID()
+   {
+      return confirmationID;
+   }
+
+   public void setConfirmationID(final long confirmationID)
+   {
+      this.confirmationID = confirmationID;
+   }
+
+   public void encodeBody(final MessagingBuffer buffer)
+   {
+      buffer.putLong(producerID);
+
+      if (clientMessages != null)
+      {
+         buffer.putInt(clientMessages.size());
+
+         for (ClientMessage message : clientMessages)
+         {
+            message.encode(buffer);
+         }
+      }
+      else
+      {
+         // If we're replicating a buffer to a backup node then we encode the serverMessages not the clientMessages
+         buffer.putInt(serverMessages.size());
+
+         for (ServerMessage message : serverMessages)
+         {
+            message.encode(buffer);
+         }
+      }
+
+      buffer.putBoolean(requiresResponse);
+
+      buffer.putLong(confirmationID);
+   }
+
+   public void decodeBody(final MessagingBuffer buffer)
+   {
+      producerID = buffer.getLong();
+
+      int count = buffer.getInt();
+
+      serverMessages = new ArrayList<ServerMessage>(count);
+
+      for (int i = 0; i < count; i++)
+      {
+         ServerMessage message = new ServerMessageImpl();
+
+         message.decode(buffer);
+
+         serverMessages.add(message);
+      }
+
+      requiresResponse = buffer.getBoolean();
+
+      confirmationID = buffer.getLong();
+   }
+
+   public Packet copyForReceiver()
+   {
+      SessionSendBatchMessage copy = new SessionSendBatchMessage();
+
+      copyHeader(copy);
+
+      copy.producerID = producerID;
+
+      List<? extends Message> messages;
+
+      if (clientMessages != null)
+      {
+         messages = clientMessages;
+      }
+      else
+      {
+         messages = serverMessages;
+      }
+
+      copy.serverMessages = new ArrayList<ServerMessage>(messages.size());
+
+      for (Message msg : messages)
+      {
+         MessageImpl message = (MessageImpl)msg;
+
+         ServerMessage serverMessage = new ServerMessageImpl(message);
+
+         // The sender may change the body and send the message again
+         serverMessage.setBody(copyBody(message.getBody()));
+
+         copy.serverMessages.add(serverMessage);
+      }
+
+      copy.requiresResponse = requiresResponse;
+
+      copy.confirmationID = confirmationID;
+
+      return copy;
+   }
+
+   @Override
+   public String toString()
+   {
+      StringBuffer buf = new StringBuffer(getParentString());
+      buf.append(", producerID=" + producerID);
+      buf.append(", messages=" + (clientMessages != null ? clientMessages.size() : serverMessages.size()));
+      buf.append(", requiresResponse=" + requiresResponse);
+      buf.append("]");
+      return buf.toString();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */ 
+
+package org.jboss.messaging.core.remoting.impl.wireformat;
+
+import java.util.Arrays;
+
+import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
+
+/**
+ * 
+ * A SessionSendConfirmationMessage
+ * 
+ * Tells a producer which of its sends have been persisted
+ * 
+ */
+public class SessionSendConfirmationMessage extends PacketImpl
+{
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private long producerID;
+   
+   private long[] confirmationIDs;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   public SessionSendConfirmationMessage(final long producerID, final long[] confirmationIDs)
+   {
+      super(SESS_SEND_CONFIRMATION);
+
+      this.producerID = producerID;
+      
+      this.confirmationIDs = confirmationIDs;
+   }
+   
+   public SessionSendConfirmationMessage()
+   {
+      super(SESS_SEND_CONFIRMATION);
+   }
+
+   // Public --------------------------------------------------------
+
+   public long getProducerID()
+   {
+      return producerID;
+   }
+   
+   public long[] getConfirmationIDs()
+   {
+      return confirmationIDs;
+   }
+   
+   public void encodeBody(final MessagingBuffer buffer)
+   {
+      buffer.putLong(producerID);
+      buffer.putInt(confirmationIDs.length);
+      for (long confirmationID : confirmationIDs)
+      {
+         buffer.putLong(confirmationID);
+      }
+   }
+   
+   public void decodeBody(final MessagingBuffer buffer)
+   {
+      producerID = buffer.getLong();
+      int count = buffer.getInt();
+      confirmationIDs = new long[count];
+      for (int i = 0; i < count; i++)
+      {
+         confirmationIDs[i] = buffer.getLong();
+      }
+   }
+   
+   @Override
+   public String toString()
+   {
+      StringBuffer buf = new StringBuffer(getParentString());
+      buf.append(", producerID=" + producerID + ", confirmationIDs=" + Arrays.toString(confirmationIDs));
+      buf.append("]");
+      return buf.toString();
+   }
+   
+   public boolean equals(Object other)
+   {
+      if (other instanceof SessionSendConfirmationMessage == false)
+      {
+         return false;
+      }
+            
+      SessionSendConfirmationMessage r = (SessionSendConfirmationMessage)other;
+      
+      return super.equals(other) && this.producerID == r.producerID &&
+             Arrays.equals(this.confirmationIDs, r.confirmationIDs);
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */ 
+
+package org.jboss.messaging.core.remoting.impl.wireformat;
+
+import org.jboss.messaging.core.exception.MessagingException;
+import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
+
+/**
+ * 
+ * A SessionSendFailedMessage
+ * 
+ * Tells a producer that one of its sends could not be persisted, so it will never be confirmed
+ * 
+ */
+public class SessionSendFailedMessage extends PacketImpl
+{
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private long producerID;
+   
+   private long confirmationID;
+
+   private MessagingException exception;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   public SessionSendFailedMessage(final long producerID, final long confirmationID, final MessagingException exception)
+   {
+      super(SESS_SEND_FAILED);
+
+      this.producerID = producerID;
+      
+      this.confirmationID = confirmationID;
+
+      this.exception = exception;
+   }
+   
+   public SessionSendFailedMessage()
+   {
+      super(SESS_SEND_FAILED);
+   }
+
+   // Public --------------------------------------------------------
+
+   public long getProducerID()
+   {
+      return producerID;
+   }
+   
+   public long getConfirmationID()
+   {
+      return confirmationID;
+   }
+
+   public MessagingException getException()
+   {
+      return exception;
+   }
+   
+   public void encodeBody(final MessagingBuffer buffer)
+   {
+      buffer.putLong(producerID);
+      buffer.putLong(confirmationID);
+      buffer.putInt(exception.getCode());
+      buffer.putNullableString(exception.getMessage());
+   }
+   
+   public void decodeBody(final MessagingBuffer buffer)
+   {
+      producerID = buffer.getLong();
+      confirmationID = buffer.getLong();
+      int code = buffer.getInt();
+      String msg = buffer.getNullableString();
+      exception = new MessagingException(code, msg);
+   }
+   
+   @Override
+   public String toString()
+   {
+      StringBuffer buf = new StringBuffer(getParentString());
+      buf.append(", producerID=" + producerID + ", confirmationID=" + confirmationID + ", exception=" + exception);
+      buf.append("]");
+      return buf.toString();
+   }
+   
+   public boolean equals(Object other)
+   {
+      if (other instanceof SessionSendFailedMessage == false)
+      {
+         return false;
+      }
+            
+      SessionSendFailedMessage r = (SessionSendFailedMessage)other;
+      
+      return super.equals(other) && this.producerID == r.producerID &&
+             this.confirmationID == r.confirmationID &&
+             this.exception.getCode() == r.exception.getCode();
+   }
+   
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+}
@@ -24,6 +24,8 @@ package org.jboss.messaging.core.remoting.impl.wireformat;
 
 import org.jboss.messaging.core.client.ClientMessage;
 import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.message.impl.MessageImpl;
+import org.jboss.messaging.core.remoting.Packet;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
 import org.jboss.messaging.core.server.ServerMessage;
 import org.jboss.messaging.core.server.impl.ServerMessageImpl;
@@ -110,19 +112,35 @@ public class SessionSendManagementMessage extends PacketImpl
    
    public void decodeBody(final MessagingBuffer buffer)
    {
-      //TODO can be optimised
-      
       producerID = buffer.getLong();
                   
       serverMessage = new ServerMessageImpl();
       
       serverMessage.decode(buffer);
       
-      serverMessage.getBody().flip();
-      
       requiresResponse = buffer.getBoolean();
    }
 
+   public Packet copyForReceiver()
+   {
+      SessionSendManagementMessage copy = new SessionSendManagementMessage();
+
+      copyHeader(copy);
+
+      copy.producerID = producerID;
+
+      MessageImpl message = (MessageImpl)(clientMessage != null ? clientMessage : serverMessage);
+
+      copy.serverMessage = new ServerMessageImpl(message);
+
+      // The sender may change the body and send the message again
+      copy.serverMessage.setBody(copyBody(message.getBody()));
+
+      copy.requiresResponse = requiresResponse;
+
+      return copy;
+   }
+
 
    // Package protected ---------------------------------------------
 
@@ -24,6 +24,8 @@ package org.jboss.messaging.core.remoting.impl.wireformat;
 
 import org.jboss.messaging.core.client.ClientMessage;
 import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.message.impl.MessageImpl;
+import org.jboss.messaging.core.remoting.Packet;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
 import org.jboss.messaging.core.server.ServerMessage;
 import org.jboss.messaging.core.server.impl.ServerMessageImpl;
@@ -49,6 +51,9 @@ public class SessionSendMessage extends PacketImpl
    private ServerMessage serverMessage;
    
    private boolean requiresResponse;
+   
+   // -1 if the producer doesn't want a confirmation when the message is persisted
+   private long confirmationID = -1;
 
    // Static --------------------------------------------------------
 
@@ -108,6 +113,21 @@ public class SessionSendMessage extends PacketImpl
       return requiresResponse;
    }
    
+   public boolean isRequiresConfirmation()
+   {
+      return confirmationID != -1;
+   }
+   
+   public long getConfirmationID()
+   {
+      return confirmationID;
+   }
+   
+   public void setConfirmationID(final long confirmationID)
+   {
+      this.confirmationID = confirmationID;
+   }
+   
    public void encodeBody(final MessagingBuffer buffer)
    {
       buffer.putLong(producerID);      
@@ -123,28 +143,54 @@ public class SessionSendMessage extends PacketImpl
       }
       
       buffer.putBoolean(requiresResponse);
+      
+      buffer.putLong(confirmationID);
    }
    
    public void decodeBody(final MessagingBuffer buffer)
    {
-      //TODO can be optimised
-      
       producerID = buffer.getLong();
                   
       serverMessage = new ServerMessageImpl();
       
       serverMessage.decode(buffer);
       
-      serverMessage.getBody().flip();
-      
       requiresResponse = buffer.getBoolean();
+      
+      confirmationID = buffer.getLong();
    }
 
+   public Packet copyForReceiver()
+   {
+      SessionSendMessage copy = new SessionSendMessage();
+
+      copyTo(copy);
+
+      return copy;
+   }
 
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
 
+   protected void copyTo(final SessionSendMessage copy)
+   {
+      copyHeader(copy);
+
+      copy.producerID = producerID;
+
+      MessageImpl message = (MessageImpl)(clientMessage != null ? clientMessage : serverMessage);
+
+      copy.serverMessage = new ServerMessageImpl(message);
+
+      // The sender may change the body and send the message again
+      copy.serverMessage.setBody(copyBody(message.getBody()));
+
+      copy.requiresResponse = requiresResponse;
+
+      copy.confirmationID = confirmationID;
+   }
+
    // Private -------------------------------------------------------
 
    // Inner classes -------------------------------------------------
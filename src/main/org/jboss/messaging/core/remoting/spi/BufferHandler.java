@@ -21,6 +21,8 @@
   */
 package org.jboss.messaging.core.remoting.spi;
 
+import org.jboss.messaging.core.remoting.Packet;
+
 /**
  * A BufferHandler
  * 
@@ -30,6 +32,11 @@ package org.jboss.messaging.core.remoting.spi;
 public interface BufferHandler
 {
    void bufferReceived(Object connectionID, MessagingBuffer buffer);
+
+   /**
+    * Receives a packet handed over as it is, by a PacketConnection
+    */
+   void packetReceived(Object connectionID, Packet packet);
    
    int isReadyToHandle(MessagingBuffer buffer);
 }
@@ -37,7 +37,21 @@ public interface Connection
 
    Object getID();
 
+   /**
+    * Writes the buffer immediately, together with any batched buffers written before it
+    */
    void write(MessagingBuffer buffer);
 
+   /**
+    * @param batched if true the buffer may be held back for a short while, so it can be sent
+    * in the same transport write as buffers that follow it
+    */
+   void write(MessagingBuffer buffer, boolean batched);
+
+   /**
+    * Stops or restarts reading from the transport, buffers already read are still handed over
+    */
+   void setReadable(boolean readable);
+
    void close();
 }
\ No newline at end of file
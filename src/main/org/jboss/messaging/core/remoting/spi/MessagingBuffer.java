@@ -22,6 +22,8 @@
 
 package org.jboss.messaging.core.remoting.spi;
 
+import java.nio.ByteBuffer;
+
 import org.jboss.messaging.util.SimpleString;
 
 /**
@@ -39,6 +41,11 @@ public interface MessagingBuffer
 
    void putBytes(byte[] bytes, int offset, int length);
 
+   /**
+    * Writes the remaining bytes of the ByteBuffer
+    */
+   void putBytes(ByteBuffer bytes);
+
    void putInt(int val);
 
    void putInt(int pos, int val);
@@ -119,6 +126,11 @@ public interface MessagingBuffer
 
    MessagingBuffer slice();
 
+   /**
+    * @return the bytes between index and index + length, sharing the content of this buffer rather than copying it
+    */
+   ByteBuffer toByteBuffer(int index, int length);
+
    MessagingBuffer createNewBuffer(int len);
 
    Object getUnderlyingBuffer();
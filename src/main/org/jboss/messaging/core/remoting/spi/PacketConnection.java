@@ -0,0 +1,46 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */ 
+
+package org.jboss.messaging.core.remoting.spi;
+
+import org.jboss.messaging.core.remoting.Packet;
+
+/**
+ *
+ * A PacketConnection
+ *
+ * A connection whose other side is in the same VM, so packets can be handed over as they are,
+ * rather than being encoded into a buffer and decoded again.
+ *
+ */
+public interface PacketConnection extends Connection
+{
+   /**
+    * @return false if packets must still be encoded before they are written to this connection
+    */
+   boolean isPassPackets();
+
+   /**
+    * Hands the packet to the BufferHandler on the other side of the connection, after anything written before it
+    */
+   void write(Packet packet);
+}
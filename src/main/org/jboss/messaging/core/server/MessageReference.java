@@ -27,6 +27,7 @@ import org.jboss.messaging.core.postoffice.Binding;
 import org.jboss.messaging.core.postoffice.PostOffice;
 import org.jboss.messaging.core.settings.HierarchicalRepository;
 import org.jboss.messaging.core.settings.impl.QueueSettings;
+import org.jboss.messaging.core.transaction.Transaction;
 
 /**
  * A reference to a message.
@@ -72,6 +73,12 @@ public interface MessageReference
    void expire(StorageManager storageManager, PostOffice postOffice,
          HierarchicalRepository<QueueSettings> queueSettingsRepository) throws Exception;
    
+   /**
+    * Expires the reference as part of the given transaction, so several can be expired at once
+    */
+   void expire(Transaction tx, StorageManager storageManager, PostOffice postOffice,
+         HierarchicalRepository<QueueSettings> queueSettingsRepository) throws Exception;
+   
    void move(Binding otherBinding, StorageManager persistenceManager, PostOffice postOffice) throws Exception;
 
 
@@ -25,6 +25,7 @@ import org.jboss.messaging.core.remoting.impl.wireformat.CreateSessionResponseMe
 import org.jboss.messaging.core.remoting.impl.wireformat.ReattachSessionResponseMessage;
 import org.jboss.messaging.core.security.JBMSecurityManager;
 import org.jboss.messaging.core.security.Role;
+import org.jboss.messaging.core.server.impl.SessionPacketDispatcher;
 import org.jboss.messaging.core.settings.HierarchicalRepository;
 import org.jboss.messaging.core.settings.impl.QueueSettings;
 import org.jboss.messaging.core.version.Version;
@@ -83,6 +84,11 @@ public interface MessagingServer extends MessagingComponent
 
    HierarchicalRepository<QueueSettings> getQueueSettingsRepository();
 
+   /**
+    * @return the dispatcher handling the session packets, null if they are handled on the transport threads
+    */
+   SessionPacketDispatcher getSessionPacketDispatcher();
+
    int getConnectionCount();
 
    PostOffice getPostOffice();
@@ -84,6 +84,18 @@ public interface Queue
   
    void referenceCancelled();
    
+   void referenceExpired();
+   
+   /**
+    * @return the number of messages expired from the queue
+    */
+   int getMessagesExpired();
+   
+   /**
+    * @return the number of references in the queue waiting for the expiry reaper
+    */
+   int getExpiringCount();
+   
    int getScheduledCount();
    
    List<MessageReference> getScheduledMessages();
@@ -46,7 +46,11 @@ public interface ServerConsumer extends Consumer
 	
 	Queue getQueue();
 
-	MessageReference getReference(long messageID) throws Exception;
+	/**
+	 * Removes the refs delivered by this consumer up to and including the one for the message, and returns them
+	 * in delivery order
+	 */
+	List<MessageReference> getReferences(long messageID) throws Exception;
 	
 	void failedOver();
 	
@@ -52,5 +52,13 @@ public interface ServerMessage extends Message, EncodingSupport
    ServerMessage copy();
    
    int getMemoryEstimate();
+
+   /**
+    * @return the id of the page file the message is kept on after being depaged in place, or -1 if the message
+    * itself is stored on the journal
+    */
+   int getPageId();
+
+   void setPageId(int pageId);
 }
 
@@ -22,6 +22,9 @@
 
 package org.jboss.messaging.core.server;
 
+import java.util.List;
+
+import org.jboss.messaging.core.journal.IOCallback;
 
 /**
  * 
@@ -39,9 +42,20 @@ public interface ServerProducer
 	
 	void send(ServerMessage msg) throws Exception;
 
+   /** The callback is completed once the message is persisted, see {@link ServerSession#send(ServerMessage, IOCallback)} */
+   void send(ServerMessage msg, IOCallback callback) throws Exception;
+
    void sendScheduled(ServerMessage message, long scheduledDeliveryTime) throws Exception;
+
+   /** See {@link ServerSession#send(List)} */
+   void send(List<ServerMessage> messages) throws Exception;
 	
 	void sendCredits(int credits) throws Exception;
+
+	/** The credits for the bytes received since credits were last sent */
+	int getCreditsToSend();
+
+	void requestAndSendCredits() throws Exception;
 	
 	void setWaiting(boolean waiting);
 	
@@ -22,6 +22,7 @@
 
 package org.jboss.messaging.core.server;
 
+import org.jboss.messaging.core.journal.IOCallback;
 import org.jboss.messaging.core.remoting.RemotingConnection;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionBindingQueryResponseMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionCreateConsumerResponseMessage;
@@ -62,8 +63,20 @@ public interface ServerSession
 
    void send(ServerMessage msg) throws Exception;
 
+   /**
+    * Sends the message without waiting for it to be persisted.
+    * The callback is completed once the message is stored, or straight away if there is nothing to store.
+    */
+   void send(ServerMessage msg, IOCallback callback) throws Exception;
+
    void sendScheduled(ServerMessage serverMessage, long scheduledDeliveryTime) throws Exception;
 
+   /**
+    * Sends the messages together. Outside of a transaction they are routed and stored in one transaction of their own,
+    * so they reach the disk with a single sync, and are all sent or none of them are.
+    */
+   void send(List<ServerMessage> msgs) throws Exception;
+
    void acknowledge(final long consumerID, final long messageID) throws Exception;
 
    void rollback() throws Exception;
@@ -135,6 +148,10 @@ public interface ServerSession
 
    void sendProducerMessage(long producerID, ServerMessage message) throws Exception;
 
+   void sendProducerMessage(long producerID, ServerMessage message, IOCallback callback) throws Exception;
+
+   void sendProducerMessages(long producerID, List<ServerMessage> messages) throws Exception;
+
    void sendScheduledProducerMessage(long producerID, ServerMessage serverMessage, long scheduledDeliveryTime) throws Exception;
 
    int transferConnection(RemotingConnection newConnection, int lastReceivedCommandID);
@@ -0,0 +1,299 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.persistence.StorageManager;
+import org.jboss.messaging.core.server.MessageReference;
+import org.jboss.messaging.core.settings.HierarchicalRepository;
+import org.jboss.messaging.core.settings.impl.QueueSettings;
+
+/**
+ *
+ * An ExpiryReaper
+ *
+ * Expires the references of all the queues of a server in the background, so expired messages don't wait for a
+ * consumer to reach them.
+ *
+ * The queues index their references which have an expiration here, in the order they expire. While the index is not
+ * empty a task on the scheduled executor looks at it every scanPeriod milliseconds and hands the references which
+ * expired back to their queues, batchSize at a time. Each batch is expired in a single transaction.
+ *
+ * At most maxRate references are expired per second, the others wait for the next scans.
+ *
+ */
+public class ExpiryReaper
+{
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(ExpiryReaper.class);
+
+   // Attributes ----------------------------------------------------
+
+   private final ScheduledExecutorService scheduledExecutor;
+
+   private final StorageManager storageManager;
+
+   private final HierarchicalRepository<QueueSettings> queueSettingsRepository;
+
+   private final long scanPeriod;
+
+   private final int batchSize;
+
+   /** How many references a scan may expire, -1 if there's no limit */
+   private final int maxPerScan;
+
+   private final TreeSet<Entry> index = new TreeSet<Entry>();
+
+   /** Orders the entries which expire at the same time */
+   private long sequence;
+
+   private ScheduledFuture<?> scanner;
+
+   private final Runnable scanRunner = new Runnable()
+   {
+      public void run()
+      {
+         try
+         {
+            scan(System.currentTimeMillis());
+         }
+         catch (Throwable t)
+         {
+            log.error("Failed to expire messages", t);
+         }
+      }
+   };
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param scanPeriod how often the index is looked at, in milliseconds
+    * @param batchSize the maximum number of references expired in one transaction
+    * @param maxRate the maximum number of references expired per second, -1 if there's no limit
+    */
+   public ExpiryReaper(final ScheduledExecutorService scheduledExecutor,
+                       final StorageManager storageManager,
+                       final HierarchicalRepository<QueueSettings> queueSettingsRepository,
+                       final long scanPeriod,
+                       final int batchSize,
+                       final int maxRate)
+   {
+      if (scanPeriod <= 0)
+      {
+         throw new IllegalArgumentException("Invalid scan period " + scanPeriod);
+      }
+
+      if (batchSize <= 0)
+      {
+         throw new IllegalArgumentException("Invalid batch size " + batchSize);
+      }
+
+      this.scheduledExecutor = scheduledExecutor;
+
+      this.storageManager = storageManager;
+
+      this.queueSettingsRepository = queueSettingsRepository;
+
+      this.scanPeriod = scanPeriod;
+
+      this.batchSize = batchSize;
+
+      if (maxRate > 0)
+      {
+         maxPerScan = (int)Math.max(1, Math.min(Integer.MAX_VALUE, maxRate * scanPeriod / 1000));
+      }
+      else
+      {
+         maxPerScan = -1;
+      }
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Indexes the entry, to be expired once its reference's message expires
+    */
+   public synchronized void add(final Entry entry)
+   {
+      if (entry.indexed)
+      {
+         return;
+      }
+
+      entry.sequence = sequence++;
+
+      index.add(entry);
+
+      entry.indexed = true;
+
+      if (scanner == null)
+      {
+         scanner = scheduledExecutor.scheduleWithFixedDelay(scanRunner, scanPeriod, scanPeriod, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   /**
+    * Takes the entry out of the index, if it hasn't been expired yet
+    */
+   public synchronized void cancel(final Entry entry)
+   {
+      if (entry.indexed)
+      {
+         index.remove(entry);
+
+         entry.indexed = false;
+      }
+   }
+
+   public synchronized int size()
+   {
+      return index.size();
+   }
+
+   /**
+    * Expires the references whose messages expired at the given time, within the rate limit
+    */
+   public void scan(final long now) throws Exception
+   {
+      Map<QueueImpl, List<Entry>> expired = null;
+
+      synchronized (this)
+      {
+         int count = 0;
+
+         while (!index.isEmpty() && (maxPerScan == -1 || count < maxPerScan))
+         {
+            Entry entry = index.first();
+
+            if (entry.expiration > now)
+            {
+               break;
+            }
+
+            index.remove(entry);
+
+            entry.indexed = false;
+
+            if (expired == null)
+            {
+               expired = new LinkedHashMap<QueueImpl, List<Entry>>();
+            }
+
+            List<Entry> entries = expired.get(entry.queue);
+
+            if (entries == null)
+            {
+               entries = new ArrayList<Entry>();
+
+               expired.put(entry.queue, entries);
+            }
+
+            entries.add(entry);
+
+            count++;
+         }
+
+         if (index.isEmpty() && scanner != null)
+         {
+            scanner.cancel(false);
+
+            scanner = null;
+         }
+      }
+
+      if (expired != null)
+      {
+         for (Map.Entry<QueueImpl, List<Entry>> entries : expired.entrySet())
+         {
+            List<Entry> list = entries.getValue();
+
+            for (int i = 0; i < list.size(); i += batchSize)
+            {
+               // A batch that fails to expire goes back on its queue and the reaper, the others carry on
+               try
+               {
+                  entries.getKey().expireReferences(list.subList(i, Math.min(i + batchSize, list.size())),
+                                                    storageManager,
+                                                    queueSettingsRepository);
+               }
+               catch (Exception e)
+               {
+                  log.error("Failed to expire messages on " + entries.getKey().getName(), e);
+               }
+            }
+         }
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * A reference waiting to expire, guarded by the reaper
+    */
+   public static class Entry implements Comparable<Entry>
+   {
+      private final QueueImpl queue;
+
+      private final MessageReference ref;
+
+      private final long expiration;
+
+      private long sequence;
+
+      private boolean indexed;
+
+      public Entry(final QueueImpl queue, final MessageReference ref)
+      {
+         this.queue = queue;
+
+         this.ref = ref;
+
+         expiration = ref.getMessage().getExpiration();
+      }
+
+      public MessageReference getReference()
+      {
+         return ref;
+      }
+
+      public int compareTo(final Entry other)
+      {
+         if (expiration != other.expiration)
+         {
+            return expiration < other.expiration ? -1 : 1;
+         }
+
+         return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+      }
+   }
+}
@@ -180,6 +180,23 @@ public class MessageReferenceImpl implements MessageReference
    public void expire(final StorageManager persistenceManager,
                       final PostOffice postOffice,
                       final HierarchicalRepository<QueueSettings> queueSettingsRepository) throws Exception
+   {
+      if (queueSettingsRepository.getMatch(queue.getName().toString()).getExpiryQueue() == null)
+      {
+         log.warn("Message has expired, no expiry queue is configured so dropping it");
+      }
+
+      Transaction tx = new TransactionImpl(persistenceManager, postOffice);
+
+      expire(tx, persistenceManager, postOffice, queueSettingsRepository);
+
+      tx.commit();
+   }
+
+   public void expire(final Transaction tx,
+                      final StorageManager persistenceManager,
+                      final PostOffice postOffice,
+                      final HierarchicalRepository<QueueSettings> queueSettingsRepository) throws Exception
    {
       SimpleString expiryQueue = queueSettingsRepository.getMatch(queue.getName().toString()).getExpiryQueue();
 
@@ -192,17 +209,13 @@ public class MessageReferenceImpl implements MessageReference
             expiryBinding = postOffice.addBinding(expiryQueue, expiryQueue, null, true, false);
          }
 
-         move(expiryBinding, persistenceManager, postOffice, true);
-      }
-      else
-      {
-         log.warn("Message has expired, no expiry queue is configured so dropping it");
+         ServerMessage copyMessage = makeCopy(true, persistenceManager);
+         copyMessage.setDestination(expiryBinding.getAddress());
 
-         Transaction tx = new TransactionImpl(persistenceManager, postOffice);
-         tx.addAcknowledgement(this);
-         tx.commit();
+         tx.addMessage(copyMessage);
       }
 
+      tx.addAcknowledgement(this);
    }
 
    public void move(final Binding otherBinding, final StorageManager persistenceManager, final PostOffice postOffice) throws Exception
@@ -31,6 +31,7 @@ import org.jboss.messaging.core.management.ManagementService;
 import org.jboss.messaging.core.management.MessagingServerControlMBean;
 import org.jboss.messaging.core.paging.PagingManager;
 import org.jboss.messaging.core.paging.PagingStoreFactory;
+import org.jboss.messaging.core.paging.impl.PagingManagerFactoryMapped;
 import org.jboss.messaging.core.paging.impl.PagingManagerFactoryNIO;
 import org.jboss.messaging.core.paging.impl.PagingManagerImpl;
 import org.jboss.messaging.core.persistence.StorageManager;
@@ -48,6 +49,7 @@ import org.jboss.messaging.core.security.JBMSecurityManager;
 import org.jboss.messaging.core.security.Role;
 import org.jboss.messaging.core.security.SecurityStore;
 import org.jboss.messaging.core.security.impl.SecurityStoreImpl;
+import org.jboss.messaging.core.server.JournalType;
 import org.jboss.messaging.core.server.MessagingServer;
 import org.jboss.messaging.core.server.QueueFactory;
 import org.jboss.messaging.core.server.ServerSession;
@@ -107,6 +109,9 @@ public class MessagingServerImpl implements MessagingServer
 
    private final ExecutorFactory executorFactory = new OrderedExecutorFactory(asyncDeliveryPool);
 
+   // Null if the session packets are handled on the transport threads
+   private SessionPacketDispatcher sessionPacketDispatcher;
+
    private HierarchicalRepository<Set<Role>> securityRepository;
 
    private ResourceManager resourceManager;
@@ -204,9 +209,33 @@ public class MessagingServerImpl implements MessagingServer
       queueSettingsRepository.setDefault(new QueueSettings());
       scheduledExecutor = new ScheduledThreadPoolExecutor(configuration.getScheduledThreadPoolMaxSize(),
                                                           new JBMThreadFactory("JBM-scheduled-threads"));
-      queueFactory = new QueueFactoryImpl(scheduledExecutor, queueSettingsRepository);
+      ExpiryReaper expiryReaper = null;
+      if (configuration.getMessageExpiryScanPeriod() > 0)
+      {
+         expiryReaper = new ExpiryReaper(scheduledExecutor,
+                                         storageManager,
+                                         queueSettingsRepository,
+                                         configuration.getMessageExpiryScanPeriod(),
+                                         configuration.getMessageExpiryBatchSize(),
+                                         configuration.getMessageExpiryMaxRate());
+      }
+      queueFactory = new QueueFactoryImpl(scheduledExecutor, queueSettingsRepository, expiryReaper);
+      if (configuration.getSessionDispatchMaxPoolSize() != 0)
+      {
+         sessionPacketDispatcher = new SessionPacketDispatcher(configuration.getSessionDispatchMaxPoolSize(),
+                                                               configuration.getSessionDispatchMaxPendingPackets());
+      }
 
-      PagingStoreFactory storeFactory = new PagingManagerFactoryNIO(configuration.getPagingDirectory());
+      PagingStoreFactory storeFactory;
+
+      if (configuration.getJournalType() == JournalType.MAPPED)
+      {
+         storeFactory = new PagingManagerFactoryMapped(configuration.getPagingDirectory());
+      }
+      else
+      {
+         storeFactory = new PagingManagerFactoryNIO(configuration.getPagingDirectory());
+      }
 
       pagingManager = new PagingManagerImpl(storeFactory,
                                             storageManager,
@@ -279,6 +308,13 @@ public class MessagingServerImpl implements MessagingServer
       resourceManager = null;
       serverManagement = null;
 
+      if (sessionPacketDispatcher != null)
+      {
+         sessionPacketDispatcher.stop();
+
+         sessionPacketDispatcher = null;
+      }
+
       asyncDeliveryPool.shutdown();
 
       try
@@ -483,7 +519,17 @@ public class MessagingServerImpl implements MessagingServer
       // to the backup, so we need to work in both cases
       if (sessions.putIfAbsent(name, session) == null)
       {
-         ChannelHandler handler = new ServerSessionPacketHandler(session, channel, storageManager);
+         ChannelHandler handler = new ServerSessionPacketHandler(session,
+                                                                 channel,
+                                                                 storageManager,
+                                                                 executorFactory.getExecutor());
+
+         // Replication relies on the live and the backup handling the packets of all the sessions in the order they
+         // arrived, which only the transport threads guarantee
+         if (sessionPacketDispatcher != null && channel.getReplicatingChannel() == null && !configuration.isBackup())
+         {
+            handler = sessionPacketDispatcher.createInbox(handler, channel);
+         }
 
          channel.setHandler(handler);
 
@@ -527,6 +573,11 @@ public class MessagingServerImpl implements MessagingServer
       return serverManagement;
    }
 
+   public SessionPacketDispatcher getSessionPacketDispatcher()
+   {
+      return sessionPacketDispatcher;
+   }
+
    public int getConnectionCount()
    {
       return remotingService.getConnections().size();
@@ -119,6 +119,8 @@ public class MessagingServerPacketHandler implements ChannelHandler
       
       if (response != null)
       {
+         response.setCorrelationID(packet.getCorrelationID());
+         
          if (result == null)
          {
             channel1.send(response);
@@ -44,17 +44,30 @@ public class QueueFactoryImpl implements QueueFactory
 {
    private final HierarchicalRepository<QueueSettings> queueSettingsRepository;
 
-   private final ScheduledExecutorService scheduledExecutor;
+   /** Shared by all the queues, so the server has a single timer for scheduled deliveries */
+   private final ScheduledDeliveryWheel scheduledDeliveryWheel;
+   
+   /** Shared by all the queues too, null if messages are only expired when consumers get to them */
+   private final ExpiryReaper expiryReaper;
    
    /** This is required for delete-all-reference to work correctly with paging, and controlling global-size */
    private PostOffice postOffice;
    
    public QueueFactoryImpl(final ScheduledExecutorService scheduledExecutor,
    	                   	final HierarchicalRepository<QueueSettings> queueSettingsRepository)
+   {
+      this(scheduledExecutor, queueSettingsRepository, null);
+   }
+   
+   public QueueFactoryImpl(final ScheduledExecutorService scheduledExecutor,
+                           final HierarchicalRepository<QueueSettings> queueSettingsRepository,
+                           final ExpiryReaper expiryReaper)
    {
       this.queueSettingsRepository = queueSettingsRepository;
       
-      this.scheduledExecutor = scheduledExecutor;
+      scheduledDeliveryWheel = new ScheduledDeliveryWheel(scheduledExecutor);
+      
+      this.expiryReaper = expiryReaper;
    }
    
    public void setPostOffice(PostOffice postOffice)
@@ -68,7 +81,7 @@ public class QueueFactoryImpl implements QueueFactory
       QueueSettings queueSettings = queueSettingsRepository.getMatch(name.toString());
             
       Queue queue = new QueueImpl(persistenceID, name, filter, queueSettings.isClustered(), durable,
-      		temporary, scheduledExecutor, postOffice);
+      		temporary, scheduledDeliveryWheel, expiryReaper, postOffice);
 
       queue.setDistributionPolicy(queueSettings.getDistributionPolicy());
 
@@ -14,21 +14,20 @@ package org.jboss.messaging.core.server.impl;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.messaging.core.filter.Filter;
 import org.jboss.messaging.core.list.PriorityLinkedList;
-import org.jboss.messaging.core.list.impl.PriorityLinkedListImpl;
+import org.jboss.messaging.core.list.impl.ConcurrentPriorityLinkedListImpl;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.persistence.StorageManager;
 import org.jboss.messaging.core.postoffice.Binding;
@@ -47,7 +46,9 @@ import org.jboss.messaging.core.transaction.impl.TransactionImpl;
 import org.jboss.messaging.util.SimpleString;
 
 /**
- * Implementation of a Queue TODO use Java 5 concurrent queue
+ * Implementation of a Queue
+ * 
+ * References are added to the end of the queue without taking its lock, everything else is done holding it.
  *
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  * @author <a href="ataylor@redhat.com">Andy Taylor</a>
@@ -74,13 +75,23 @@ public class QueueImpl implements Queue
 
    private final boolean temporary;
 
-   private final ScheduledExecutorService scheduledExecutor;
+   private final ScheduledDeliveryWheel scheduledDeliveryWheel;
+
+   private final ExpiryReaper expiryReaper;
 
    private final PostOffice postOffice;
 
-   private final PriorityLinkedList<MessageReference> messageReferences = new PriorityLinkedListImpl<MessageReference>(NUM_PRIORITIES);
+   // Added to by producers without holding the queue lock, everything else is done holding it
+   private final PriorityLinkedList<MessageReference> messageReferences = new ConcurrentPriorityLinkedListImpl<MessageReference>(NUM_PRIORITIES);
+
+   // The nodes of messageReferences by message ID, so a reference can be found and removed without scanning the queue
+   private final ConcurrentMap<Long, PriorityLinkedList.Node<MessageReference>> referenceNodes = new ConcurrentHashMap<Long, PriorityLinkedList.Node<MessageReference>>();
 
-   private final Set<ScheduledDeliveryRunnable> scheduledRunnables = new LinkedHashSet<ScheduledDeliveryRunnable>();
+   // The references waiting on the wheel for their scheduled delivery time, by message ID
+   private final Map<Long, ScheduledDeliveryWheel.Entry> scheduledDeliveries = new LinkedHashMap<Long, ScheduledDeliveryWheel.Entry>();
+
+   // The references of messageReferences with an expiration, indexed by the reaper, by message ID
+   private final ConcurrentMap<Long, ExpiryReaper.Entry> expiringReferences = new ConcurrentHashMap<Long, ExpiryReaper.Entry>();
 
    private volatile DistributionPolicy distributionPolicy = new RoundRobinDistributionPolicy();
 
@@ -94,10 +105,15 @@ public class QueueImpl implements Queue
 
    private AtomicInteger deliveringCount = new AtomicInteger(0);
 
+   private AtomicInteger messagesExpired = new AtomicInteger(0);
+
    private volatile FlowController flowController;
 
    private AtomicBoolean waitingToDeliver = new AtomicBoolean(false);
 
+   // The number of times producers asked for delivery since the thread delivering for them started
+   private final AtomicInteger deliveryRequests = new AtomicInteger(0);
+
    private final Runnable deliverRunner = new DeliverRunner();
 
    private volatile boolean backup;
@@ -110,7 +126,24 @@ public class QueueImpl implements Queue
                     final boolean clustered,
                     final boolean durable,
                     final boolean temporary,
-                    final ScheduledExecutorService scheduledExecutor,
+                    final ScheduledDeliveryWheel scheduledDeliveryWheel,
+                    final PostOffice postOffice)
+   {
+      this(persistenceID, name, filter, clustered, durable, temporary, scheduledDeliveryWheel, null, postOffice);
+   }
+
+   /**
+    * @param expiryReaper expires the references in the background, if null they are only expired when a consumer
+    * gets to them
+    */
+   public QueueImpl(final long persistenceID,
+                    final SimpleString name,
+                    final Filter filter,
+                    final boolean clustered,
+                    final boolean durable,
+                    final boolean temporary,
+                    final ScheduledDeliveryWheel scheduledDeliveryWheel,
+                    final ExpiryReaper expiryReaper,
                     final PostOffice postOffice)
    {
       this.persistenceID = persistenceID;
@@ -125,7 +158,9 @@ public class QueueImpl implements Queue
 
       this.temporary = temporary;
 
-      this.scheduledExecutor = scheduledExecutor;
+      this.scheduledDeliveryWheel = scheduledDeliveryWheel;
+
+      this.expiryReaper = expiryReaper;
 
       this.postOffice = postOffice;
 
@@ -155,16 +190,90 @@ public class QueueImpl implements Queue
       return name;
    }
 
+   /*
+    * Producers add without taking the queue lock. Only one of them delivers at a time, the others leave their
+    * references for it to deliver.
+    */
    public HandleStatus addLast(final MessageReference ref)
    {
-      HandleStatus status = add(ref, false);
+      messagesAdded.incrementAndGet();
 
-      return status;
+      sizeBytes.addAndGet(ref.getMessage().getEncodeSize());
+
+      if (checkAndSchedule(ref))
+      {
+         return HandleStatus.HANDLED;
+      }
+
+      addToList(ref, false);
+
+      if (deliveryRequests.getAndIncrement() == 0)
+      {
+         int requests = 1;
+
+         do
+         {
+            synchronized (this)
+            {
+               // If not direct, the consumers are busy (and will ask for delivery when they're not) or don't match
+               if (direct || promptDelivery)
+               {
+                  deliver();
+               }
+            }
+
+            requests = deliveryRequests.addAndGet(-requests);
+         }
+         while (requests > 0);
+      }
+
+      return HandleStatus.HANDLED;
    }
 
-   public HandleStatus addFirst(final MessageReference ref)
+   public synchronized HandleStatus addFirst(final MessageReference ref)
    {
-      return add(ref, true);
+      if (checkAndSchedule(ref))
+      {
+         return HandleStatus.HANDLED;
+      }
+
+      boolean add = false;
+
+      if (direct && !backup)
+      {
+         // Deliver directly
+
+         HandleStatus status = deliver(ref);
+
+         if (status != HandleStatus.HANDLED)
+         {
+            add = true;
+
+            direct = false;
+         }
+      }
+      else
+      {
+         add = true;
+      }
+
+      if (add)
+      {
+         addToList(ref, true);
+
+         if (!direct && promptDelivery)
+         {
+            // We have consumers with filters which don't match, so we need
+            // to prompt delivery every time
+            // a new message arrives - this is why you really shouldn't use
+            // filters with queues - in most cases
+            // it's an ant-pattern since it would cause a queue scan on each
+            // message
+            deliver();
+         }
+      }
+
+      return HandleStatus.HANDLED;
    }
 
    public synchronized void addListFirst(final LinkedList<MessageReference> list)
@@ -179,7 +288,7 @@ public class QueueImpl implements Queue
 
          if (!checkAndSchedule(ref))
          {
-            messageReferences.addFirst(ref, msg.getPriority());
+            addToList(ref, true);
          }
       }
 
@@ -213,13 +322,18 @@ public class QueueImpl implements Queue
 
       MessageReference reference;
 
+      // The node of the reference peeked at, references may be added in front of it while it's being delivered
+      PriorityLinkedList.Node<MessageReference> node = null;
+
       Iterator<MessageReference> iterator = null;
 
       while (true)
       {
          if (iterator == null)
          {
-            reference = messageReferences.peekFirst();
+            node = messageReferences.peekFirstNode();
+
+            reference = node == null ? null : node.getValue();
          }
          else
          {
@@ -242,6 +356,10 @@ public class QueueImpl implements Queue
 
                promptDelivery = false;
             }
+            else
+            {
+               direct = false;
+            }
             return;
          }
 
@@ -251,16 +369,20 @@ public class QueueImpl implements Queue
          {
             if (iterator == null)
             {
-               messageReferences.removeFirst();
+               messageReferences.remove(node);
             }
             else
             {
                iterator.remove();
             }
+
+            removeNode(reference);
          }
          else if (status == HandleStatus.BUSY)
          {
             // All consumers busy - give up
+            direct = false;
+
             break;
          }
          else if (status == HandleStatus.NO_MATCH && iterator == null)
@@ -324,42 +446,34 @@ public class QueueImpl implements Queue
 
    public synchronized MessageReference removeReferenceWithID(final long id)
    {
-      Iterator<MessageReference> iterator = messageReferences.iterator();
+      MessageReference ref = removeListedReference(id);
 
-      MessageReference removed = null;
+      if (ref != null)
+      {
+         return ref;
+      }
 
-      while (iterator.hasNext())
+      // It may be waiting for its scheduled delivery time
+      synchronized (scheduledDeliveries)
       {
-         MessageReference ref = iterator.next();
+         ScheduledDeliveryWheel.Entry entry = scheduledDeliveries.remove(id);
 
-         if (ref.getMessage().getMessageID() == id)
+         if (entry == null)
          {
-            iterator.remove();
+            return null;
+         }
 
-            removed = ref;
+         scheduledDeliveryWheel.cancel(entry);
 
-            break;
-         }
+         return entry.getReference();
       }
-
-      return removed;
    }
 
    public synchronized MessageReference getReference(final long id)
    {
-      Iterator<MessageReference> iterator = messageReferences.iterator();
-
-      while (iterator.hasNext())
-      {
-         MessageReference ref = iterator.next();
-
-         if (ref.getMessage().getMessageID() == id)
-         {
-            return ref;
-         }
-      }
+      PriorityLinkedList.Node<MessageReference> node = referenceNodes.get(id);
 
-      return null;
+      return node == null || node.isRemoved() ? null : node.getValue();
    }
 
    public long getPersistenceID()
@@ -382,19 +496,27 @@ public class QueueImpl implements Queue
       return messageReferences.size() + getScheduledCount() + getDeliveringCount();
    }
 
-   public synchronized int getScheduledCount()
+   public int getScheduledCount()
    {
-      return scheduledRunnables.size();
+      synchronized (scheduledDeliveries)
+      {
+         return scheduledDeliveries.size();
+      }
    }
 
-   public synchronized List<MessageReference> getScheduledMessages()
+   public List<MessageReference> getScheduledMessages()
    {
-      List<MessageReference> refs = new ArrayList<MessageReference>();
-      for (ScheduledDeliveryRunnable runnable : scheduledRunnables)
+      synchronized (scheduledDeliveries)
       {
-         refs.add(runnable.getReference());
+         List<MessageReference> refs = new ArrayList<MessageReference>(scheduledDeliveries.size());
+
+         for (ScheduledDeliveryWheel.Entry entry : scheduledDeliveries.values())
+         {
+            refs.add(entry.getReference());
+         }
+
+         return refs;
       }
-      return refs;
    }
 
    public int getDeliveringCount()
@@ -408,10 +530,10 @@ public class QueueImpl implements Queue
 
       sizeBytes.addAndGet(-ref.getMessage().getEncodeSize());
 
-      // if (flowController != null)
-      // {
-      // flowController.messageAcknowledged();
-      // }
+      if (flowController != null)
+      {
+         flowController.messageAcknowledged();
+      }
    }
 
    public void referenceCancelled()
@@ -419,6 +541,21 @@ public class QueueImpl implements Queue
       deliveringCount.decrementAndGet();
    }
 
+   public void referenceExpired()
+   {
+      messagesExpired.incrementAndGet();
+   }
+
+   public int getMessagesExpired()
+   {
+      return messagesExpired.get();
+   }
+
+   public int getExpiringCount()
+   {
+      return expiringReferences.size();
+   }
+
    public int getSizeBytes()
    {
       return sizeBytes.get();
@@ -464,20 +601,22 @@ public class QueueImpl implements Queue
          tx.addAcknowledgement(ref);
 
          iter.remove();
+
+         removeNode(ref);
       }
 
-      synchronized (scheduledRunnables)
+      synchronized (scheduledDeliveries)
       {
-         for (ScheduledDeliveryRunnable runnable : scheduledRunnables)
+         for (ScheduledDeliveryWheel.Entry entry : scheduledDeliveries.values())
          {
-            runnable.cancel();
+            scheduledDeliveryWheel.cancel(entry);
 
             deliveringCount.incrementAndGet();
 
-            tx.addAcknowledgement(runnable.getReference());
+            tx.addAcknowledgement(entry.getReference());
          }
 
-         scheduledRunnables.clear();
+         scheduledDeliveries.clear();
       }
 
       tx.commit();
@@ -489,19 +628,13 @@ public class QueueImpl implements Queue
 
       Transaction tx = new TransactionImpl(storageManager, postOffice);
 
-      Iterator<MessageReference> iter = messageReferences.iterator();
+      MessageReference ref = removeReferenceWithID(messageID);
 
-      while (iter.hasNext())
+      if (ref != null)
       {
-         MessageReference ref = iter.next();
-         if (ref.getMessage().getMessageID() == messageID)
-         {
-            deliveringCount.incrementAndGet();
-            tx.addAcknowledgement(ref);
-            iter.remove();
-            deleted = true;
-            break;
-         }
+         deliveringCount.incrementAndGet();
+         tx.addAcknowledgement(ref);
+         deleted = true;
       }
 
       tx.commit();
@@ -514,20 +647,27 @@ public class QueueImpl implements Queue
                                 final PostOffice postOffice,
                                 final HierarchicalRepository<QueueSettings> queueSettingsRepository) throws Exception
    {
-      Iterator<MessageReference> iter = messageReferences.iterator();
+      // Taken off the queue first, so the reaper or a delivery can't get it meanwhile
+      MessageReference ref = removeListedReference(messageID);
 
-      while (iter.hasNext())
+      if (ref == null)
       {
-         MessageReference ref = iter.next();
-         if (ref.getMessage().getMessageID() == messageID)
-         {
-            deliveringCount.incrementAndGet();
-            ref.expire(storageManager, postOffice, queueSettingsRepository);
-            iter.remove();
-            return true;
-         }
+         return false;
       }
-      return false;
+
+      deliveringCount.incrementAndGet();
+      try
+      {
+         ref.expire(storageManager, postOffice, queueSettingsRepository);
+      }
+      catch (Exception e)
+      {
+         deliveringCount.decrementAndGet();
+         addFirst(ref);
+         throw e;
+      }
+      referenceExpired();
+      return true;
    }
 
    public boolean sendMessageToDLQ(final long messageID,
@@ -535,20 +675,26 @@ public class QueueImpl implements Queue
                                    final PostOffice postOffice,
                                    final HierarchicalRepository<QueueSettings> queueSettingsRepository) throws Exception
    {
-      Iterator<MessageReference> iter = messageReferences.iterator();
+      // Taken off the queue first, so it can't be delivered or acted on twice meanwhile
+      MessageReference ref = removeListedReference(messageID);
 
-      while (iter.hasNext())
+      if (ref == null)
       {
-         MessageReference ref = iter.next();
-         if (ref.getMessage().getMessageID() == messageID)
-         {
-            deliveringCount.incrementAndGet();
-            ref.sendToDLQ(storageManager, postOffice, queueSettingsRepository);
-            iter.remove();
-            return true;
-         }
+         return false;
       }
-      return false;
+
+      deliveringCount.incrementAndGet();
+      try
+      {
+         ref.sendToDLQ(storageManager, postOffice, queueSettingsRepository);
+      }
+      catch (Exception e)
+      {
+         deliveringCount.decrementAndGet();
+         addFirst(ref);
+         throw e;
+      }
+      return true;
    }
 
    public boolean moveMessage(final long messageID,
@@ -556,20 +702,26 @@ public class QueueImpl implements Queue
                               final StorageManager storageManager,
                               final PostOffice postOffice) throws Exception
    {
-      Iterator<MessageReference> iter = messageReferences.iterator();
+      // Taken off the queue first, so it can't be delivered or acted on twice meanwhile
+      MessageReference ref = removeListedReference(messageID);
 
-      while (iter.hasNext())
+      if (ref == null)
       {
-         MessageReference ref = iter.next();
-         if (ref.getMessage().getMessageID() == messageID)
-         {
-            deliveringCount.incrementAndGet();
-            ref.move(toBinding, storageManager, postOffice);
-            iter.remove();
-            return true;
-         }
+         return false;
       }
-      return false;
+
+      deliveringCount.incrementAndGet();
+      try
+      {
+         ref.move(toBinding, storageManager, postOffice);
+      }
+      catch (Exception e)
+      {
+         deliveringCount.decrementAndGet();
+         addFirst(ref);
+         throw e;
+      }
+      return true;
    }
 
    public boolean changeMessagePriority(final long messageID,
@@ -578,21 +730,19 @@ public class QueueImpl implements Queue
                                         final PostOffice postOffice,
                                         final HierarchicalRepository<QueueSettings> queueSettingsRepository) throws Exception
    {
-      List<MessageReference> refs = list(null);
-      for (MessageReference ref : refs)
+      MessageReference ref = getReference(messageID);
+
+      if (ref == null)
       {
-         ServerMessage message = ref.getMessage();
-         if (message.getMessageID() == messageID)
-         {
-            message.setPriority(newPriority);
-            // delete and add the reference so that it
-            // goes to the right queues for the new priority
-            deleteReference(messageID, storageManager);
-            addLast(ref);
-            return true;
-         }
+         return false;
       }
-      return false;
+
+      ref.getMessage().setPriority(newPriority);
+      // delete and add the reference so that it
+      // goes to the right queues for the new priority
+      deleteReference(messageID, storageManager);
+      addLast(ref);
+      return true;
    }
 
    public boolean isBackup()
@@ -607,9 +757,16 @@ public class QueueImpl implements Queue
       this.direct = false;
    }
 
-   public MessageReference removeFirst()
+   public synchronized MessageReference removeFirst()
    {
-      return messageReferences.removeFirst();
+      MessageReference ref = messageReferences.removeFirst();
+
+      if (ref != null)
+      {
+         removeNode(ref);
+      }
+
+      return ref;
    }
 
    public synchronized void activate()
@@ -619,6 +776,8 @@ public class QueueImpl implements Queue
       if (consumersToFailover == 0)
       {
          backup = false;
+
+         startTimers();
       }
    }
 
@@ -632,10 +791,7 @@ public class QueueImpl implements Queue
 
          backup = false;
 
-         for (ScheduledDeliveryRunnable runnable : scheduledRunnables)
-         {
-            scheduleDelivery(runnable, runnable.getReference().getScheduledDeliveryTime());
-         }
+         startTimers();
 
          return true;
       }
@@ -648,6 +804,127 @@ public class QueueImpl implements Queue
    // Public
    // -----------------------------------------------------------------------------
 
+   /**
+    * Called by the wheel with the references of this queue that are due, in the order they became due
+    */
+   synchronized void deliverScheduled(final List<ScheduledDeliveryWheel.Entry> entries)
+   {
+      for (ScheduledDeliveryWheel.Entry entry : entries)
+      {
+         MessageReference ref = entry.getReference();
+
+         long id = ref.getMessage().getMessageID();
+
+         synchronized (scheduledDeliveries)
+         {
+            // It may have been removed from the queue since the wheel released it
+            if (scheduledDeliveries.get(id) != entry)
+            {
+               continue;
+            }
+
+            scheduledDeliveries.remove(id);
+         }
+
+         if (trace)
+         {
+            log.trace("Scheduled delivery timeout " + ref);
+         }
+
+         ref.setScheduledDeliveryTime(0);
+
+         HandleStatus status = deliver(ref);
+
+         if (HandleStatus.HANDLED != status)
+         {
+            // Add back to the front of the queue - otherwise if there were many messages in the queue
+            // it may get stranded behind a big backlog
+
+            // TODO - need to replicate this so backup node also adds back to
+            // front of queue
+
+            addFirst(ref);
+         }
+      }
+   }
+
+   /**
+    * Called by the reaper with references of this queue whose messages expired, they are expired in one transaction
+    */
+   void expireReferences(final List<ExpiryReaper.Entry> entries,
+                         final StorageManager storageManager,
+                         final HierarchicalRepository<QueueSettings> queueSettingsRepository) throws Exception
+   {
+      List<MessageReference> refs = new ArrayList<MessageReference>(entries.size());
+
+      synchronized (this)
+      {
+         for (ExpiryReaper.Entry entry : entries)
+         {
+            MessageReference ref = entry.getReference();
+
+            long id = ref.getMessage().getMessageID();
+
+            // It may have been delivered or removed since the reaper took it
+            if (expiringReferences.get(id) != entry)
+            {
+               continue;
+            }
+
+            if (backup)
+            {
+               // Expiring is done by the live node, the entry goes back on the reaper when this queue is activated
+               continue;
+            }
+
+            expiringReferences.remove(id);
+
+            PriorityLinkedList.Node<MessageReference> node = referenceNodes.get(id);
+
+            if (node == null || node.getValue() != ref || !messageReferences.remove(node))
+            {
+               continue;
+            }
+
+            referenceNodes.remove(id, node);
+
+            deliveringCount.incrementAndGet();
+
+            refs.add(ref);
+         }
+      }
+
+      if (refs.isEmpty())
+      {
+         return;
+      }
+
+      if (queueSettingsRepository.getMatch(name.toString()).getExpiryQueue() == null)
+      {
+         log.warn(refs.size() + " messages have expired on " + name + ", no expiry queue is configured so dropping them");
+      }
+
+      Transaction tx = new TransactionImpl(storageManager, postOffice);
+
+      try
+      {
+         for (MessageReference ref : refs)
+         {
+            ref.expire(tx, storageManager, postOffice, queueSettingsRepository);
+         }
+
+         tx.commit();
+      }
+      catch (Exception e)
+      {
+         cancelExpiry(tx, refs, queueSettingsRepository);
+
+         throw e;
+      }
+
+      messagesExpired.addAndGet(refs.size());
+   }
+
    public boolean equals(Object other)
    {
       if (this == other)
@@ -668,95 +945,179 @@ public class QueueImpl implements Queue
    // Private
    // ------------------------------------------------------------------------------
 
-   private synchronized HandleStatus add(final MessageReference ref, final boolean first)
+   private void addToList(final MessageReference ref, final boolean first)
    {
-      if (!first)
-      {
-         messagesAdded.incrementAndGet();
+      PriorityLinkedList.Node<MessageReference> node;
 
-         sizeBytes.addAndGet(ref.getMessage().getEncodeSize());
+      if (first)
+      {
+         node = messageReferences.addFirst(ref, ref.getMessage().getPriority());
       }
-
-      if (checkAndSchedule(ref))
+      else
       {
-         return HandleStatus.HANDLED;
+         node = messageReferences.addLast(ref, ref.getMessage().getPriority());
       }
 
-      boolean add = false;
+      long id = ref.getMessage().getMessageID();
 
-      if (direct && !backup)
+      referenceNodes.put(id, node);
+
+      ExpiryReaper.Entry entry = null;
+
+      if (expiryReaper != null && ref.getMessage().getExpiration() != 0)
       {
-         // Deliver directly
+         entry = new ExpiryReaper.Entry(this, ref);
 
-         HandleStatus status = deliver(ref);
+         expiringReferences.put(id, entry);
 
-         if (status == HandleStatus.HANDLED)
+         // On a backup the reaper is only used once the queue is activated, which adds the entry if we don't
+         if (!backup)
          {
-            // Ok
+            expiryReaper.add(entry);
          }
-         else if (status == HandleStatus.BUSY)
+      }
+
+      // The reference may have been delivered by another thread before its node was recorded
+      if (node.isRemoved())
+      {
+         referenceNodes.remove(id, node);
+
+         if (entry != null && expiringReferences.remove(id, entry))
          {
-            add = true;
+            expiryReaper.cancel(entry);
          }
-         else if (status == HandleStatus.NO_MATCH)
+      }
+   }
+
+   /**
+    * Puts the references kept aside while this queue was a backup on the wheel and the reaper
+    */
+   private void startTimers()
+   {
+      synchronized (scheduledDeliveries)
+      {
+         for (ScheduledDeliveryWheel.Entry entry : scheduledDeliveries.values())
          {
-            add = true;
+            scheduledDeliveryWheel.schedule(entry);
          }
+      }
 
-         if (add)
+      if (expiryReaper != null)
+      {
+         for (ExpiryReaper.Entry entry : expiringReferences.values())
          {
-            direct = false;
+            expiryReaper.add(entry);
          }
       }
-      else
+   }
+
+   /**
+    * Puts references whose expiry failed back at the head of the queue, in their order, and on the reaper again
+    */
+   private void cancelExpiry(final Transaction tx,
+                             final List<MessageReference> refs,
+                             final HierarchicalRepository<QueueSettings> queueSettingsRepository)
+   {
+      // The references acknowledged in the transaction are the first ones, they get their message counts back
+      int acknowledged = tx.getAcknowledgementsCount();
+
+      try
       {
-         add = true;
+         tx.rollback(queueSettingsRepository);
+      }
+      catch (Exception e)
+      {
+         log.warn("Failed to roll back expiry transaction on " + name, e);
       }
 
-      if (add)
+      for (int i = 0; i < acknowledged; i++)
       {
-         if (first)
-         {
-            messageReferences.addFirst(ref, ref.getMessage().getPriority());
-         }
-         else
-         {
-            messageReferences.addLast(ref, ref.getMessage().getPriority());
-         }
+         ServerMessage message = refs.get(i).getMessage();
 
-         if (!direct && promptDelivery)
+         message.incrementReference(message.isDurable() && durable);
+      }
+
+      deliveringCount.addAndGet(-refs.size());
+
+      addListFirst(new LinkedList<MessageReference>(refs));
+   }
+
+   /** Removes the reference from messageReferences, null if it isn't there */
+   private synchronized MessageReference removeListedReference(final long id)
+   {
+      PriorityLinkedList.Node<MessageReference> node = referenceNodes.remove(id);
+
+      if (node == null)
+      {
+         return null;
+      }
+
+      // The node lets go of the reference once it is removed
+      MessageReference ref = node.getValue();
+
+      if (ref != null && messageReferences.remove(node))
+      {
+         cancelExpiry(ref);
+
+         return ref;
+      }
+
+      return null;
+   }
+
+   /** To be called when ref was removed from messageReferences by other means than its node */
+   private void removeNode(final MessageReference ref)
+   {
+      long id = ref.getMessage().getMessageID();
+
+      PriorityLinkedList.Node<MessageReference> node = referenceNodes.get(id);
+
+      // ref was taken off the list, so its node, if still recorded, is removed and no longer holds it
+      if (node != null && node.isRemoved())
+      {
+         referenceNodes.remove(id, node);
+      }
+
+      cancelExpiry(ref);
+   }
+
+   private void cancelExpiry(final MessageReference ref)
+   {
+      if (expiryReaper != null)
+      {
+         long id = ref.getMessage().getMessageID();
+
+         ExpiryReaper.Entry entry = expiringReferences.get(id);
+
+         if (entry != null && entry.getReference() == ref && expiringReferences.remove(id, entry))
          {
-            // We have consumers with filters which don't match, so we need
-            // to prompt delivery every time
-            // a new message arrives - this is why you really shouldn't use
-            // filters with queues - in most cases
-            // it's an ant-pattern since it would cause a queue scan on each
-            // message
-            deliver();
+            expiryReaper.cancel(entry);
          }
       }
-
-      return HandleStatus.HANDLED;
    }
 
    private boolean checkAndSchedule(final MessageReference ref)
    {
       long deliveryTime = ref.getScheduledDeliveryTime();
 
-      if (deliveryTime != 0 && scheduledExecutor != null)
+      if (deliveryTime != 0 && scheduledDeliveryWheel != null)
       {
          if (trace)
          {
             log.trace("Scheduling delivery for " + ref + " to occur at " + deliveryTime);
          }
 
-         ScheduledDeliveryRunnable runnable = new ScheduledDeliveryRunnable(ref);
+         ScheduledDeliveryWheel.Entry entry = new ScheduledDeliveryWheel.Entry(this, ref);
 
-         scheduledRunnables.add(runnable);
-
-         if (!backup)
+         synchronized (scheduledDeliveries)
          {
-            scheduleDelivery(runnable, deliveryTime);
+            scheduledDeliveries.put(ref.getMessage().getMessageID(), entry);
+
+            // On a backup the wheel is only used once the queue is activated
+            if (!backup)
+            {
+               scheduledDeliveryWheel.schedule(entry);
+            }
          }
 
          return true;
@@ -764,17 +1125,6 @@ public class QueueImpl implements Queue
       return false;
    }
 
-   private void scheduleDelivery(final ScheduledDeliveryRunnable runnable, final long deliveryTime)
-   {
-      long now = System.currentTimeMillis();
-
-      long delay = deliveryTime - now;
-
-      Future<?> future = scheduledExecutor.schedule(runnable, delay, TimeUnit.MILLISECONDS);
-
-      runnable.setFuture(future);
-   }
-
    private HandleStatus deliver(final MessageReference reference)
    {
       HandleStatus status = distributionPolicy.distribute(reference);
@@ -806,79 +1156,4 @@ public class QueueImpl implements Queue
          }
       }
    }
-
-   private class ScheduledDeliveryRunnable implements Runnable
-   {
-      private final MessageReference ref;
-
-      private volatile Future<?> future;
-
-      private boolean cancelled;
-
-      public ScheduledDeliveryRunnable(final MessageReference ref)
-      {
-         this.ref = ref;
-      }
-
-      public synchronized void setFuture(final Future<?> future)
-      {
-         if (cancelled)
-         {
-            future.cancel(false);
-         }
-         else
-         {
-            this.future = future;
-         }
-      }
-
-      public synchronized void cancel()
-      {
-         if (future != null)
-         {
-            future.cancel(false);
-         }
-
-         cancelled = true;
-      }
-
-      public MessageReference getReference()
-      {
-         return ref;
-      }
-
-      public void run()
-      {
-         if (trace)
-         {
-            log.trace("Scheduled delivery timeout " + ref);
-         }
-
-         synchronized (scheduledRunnables)
-         {
-            boolean removed = scheduledRunnables.remove(this);
-
-            if (!removed)
-            {
-               log.warn("Failed to remove timeout " + this);
-
-               return;
-            }
-         }
-
-         ref.setScheduledDeliveryTime(0);
-
-         HandleStatus status = deliver(ref);
-
-         if (HandleStatus.HANDLED != status)
-         {
-            // Add back to the front of the queue
-
-            // TODO - need to replicate this so backup node also adds back to
-            // front of queue
-
-            addFirst(ref);
-         }
-      }
-   }
 }
@@ -0,0 +1,469 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */ 
+
+package org.jboss.messaging.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.server.MessageReference;
+
+/**
+ *
+ * A ScheduledDeliveryWheel
+ *
+ * A hierarchical timing wheel holding the scheduled references of all the queues of a server.
+ *
+ * Time is divided in ticks of tickDuration milliseconds, and a reference goes in the bucket of the tick its scheduled
+ * delivery time falls in. The first level has a bucket for each of the next wheelSize ticks. The second level has a bucket for each of the following spans of wheelSize
+ * ticks, whose entries are moved down to the first level when their span starts. Entries due even later wait on an
+ * overflow list, looked at once per turn of the second level.
+ *
+ * Scheduling and cancelling a delivery don't depend on how many are pending, and an entry is only moved a couple of
+ * times before it is released. While there is anything on the wheel a single task on the scheduled executor advances
+ * it at the start of every tick, and otherwise only wakes up at the delivery times found in the bucket of the current
+ * tick. The references that became due are handed back to their queues, all those of a queue at once.
+ *
+ * A reference is never released before its scheduled delivery time, and is released as soon as the task runs after it.
+ *
+ */
+public class ScheduledDeliveryWheel
+{
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(ScheduledDeliveryWheel.class);
+
+   public static final long DEFAULT_TICK_DURATION = 10;
+
+   public static final int DEFAULT_WHEEL_SIZE = 512;
+
+   private static final int TICKS = 0;
+
+   private static final int SPANS = 1;
+
+   private static final int OVERFLOW = 2;
+
+   // Attributes ----------------------------------------------------
+
+   private final ScheduledExecutorService scheduledExecutor;
+
+   private final long tickDuration;
+
+   private final int wheelSize;
+
+   private final int mask;
+
+   /** log2 of wheelSize, the number of bits of a tick within its span */
+   private final int shift;
+
+   /** The first and last entries of each bucket, per level */
+   private final Entry[][] heads;
+
+   private final Entry[][] tails;
+
+   /** The tick whose bucket is being released */
+   private long currentTick;
+
+   private int size;
+
+   private ScheduledFuture<?> ticker;
+
+   /** When the ticker is going to run, Long.MAX_VALUE if it isn't */
+   private long nextRun = Long.MAX_VALUE;
+
+   private final Runnable tickRunner = new Runnable()
+   {
+      public void run()
+      {
+         try
+         {
+            tick(System.currentTimeMillis());
+         }
+         catch (Throwable t)
+         {
+            log.error("Failed to release scheduled deliveries", t);
+         }
+         finally
+         {
+            synchronized (ScheduledDeliveryWheel.this)
+            {
+               ticker = null;
+
+               nextRun = Long.MAX_VALUE;
+
+               if (size > 0)
+               {
+                  plan(nextWakeUp(), System.currentTimeMillis());
+               }
+            }
+         }
+      }
+   };
+
+   // Constructors --------------------------------------------------
+
+   public ScheduledDeliveryWheel(final ScheduledExecutorService scheduledExecutor)
+   {
+      this(scheduledExecutor, DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+   }
+
+   /**
+    * @param tickDuration the length of a tick, in milliseconds
+    * @param wheelSize the number of buckets of each level, must be a power of 2
+    */
+   public ScheduledDeliveryWheel(final ScheduledExecutorService scheduledExecutor,
+                                 final long tickDuration,
+                                 final int wheelSize)
+   {
+      if (tickDuration <= 0)
+      {
+         throw new IllegalArgumentException("Invalid tick duration " + tickDuration);
+      }
+
+      if (wheelSize <= 1 || (wheelSize & (wheelSize - 1)) != 0)
+      {
+         throw new IllegalArgumentException("Wheel size must be a power of 2 " + wheelSize);
+      }
+
+      this.scheduledExecutor = scheduledExecutor;
+
+      this.tickDuration = tickDuration;
+
+      this.wheelSize = wheelSize;
+
+      mask = wheelSize - 1;
+
+      shift = Integer.numberOfTrailingZeros(wheelSize);
+
+      heads = new Entry[][] { new Entry[wheelSize], new Entry[wheelSize], new Entry[1] };
+
+      tails = new Entry[][] { new Entry[wheelSize], new Entry[wheelSize], new Entry[1] };
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Puts the entry on the wheel, to be released at its reference's scheduled delivery time
+    */
+   public synchronized void schedule(final Entry entry)
+   {
+      if (entry.scheduled)
+      {
+         return;
+      }
+
+      long now = System.currentTimeMillis();
+
+      if (size == 0)
+      {
+         // Nothing earlier is pending, so there's nothing to catch up with
+         currentTick = now / tickDuration;
+      }
+
+      entry.deliveryTime = entry.ref.getScheduledDeliveryTime();
+
+      // Anything already due goes in the current bucket, released on the next run
+      entry.tick = Math.max(entry.deliveryTime / tickDuration, currentTick);
+
+      place(entry);
+
+      entry.scheduled = true;
+
+      size++;
+
+      // Entries of later ticks are looked at when their tick starts
+      plan(Math.min(entry.deliveryTime, (currentTick + 1) * tickDuration), now);
+   }
+
+   /**
+    * Takes the entry off the wheel, if it hasn't been released yet
+    */
+   public synchronized void cancel(final Entry entry)
+   {
+      if (entry.scheduled)
+      {
+         unlink(entry);
+
+         entry.scheduled = false;
+
+         size--;
+      }
+   }
+
+   public synchronized int size()
+   {
+      return size;
+   }
+
+   /**
+    * Releases all the references due at the given time
+    */
+   public void tick(final long now)
+   {
+      Map<QueueImpl, List<Entry>> due = null;
+
+      synchronized (this)
+      {
+         long lastTick = now / tickDuration;
+
+         while (size > 0)
+         {
+            // Only the last bucket may hold entries that aren't due yet
+            Entry entry = heads[TICKS][(int)(currentTick & mask)];
+
+            while (entry != null)
+            {
+               Entry next = entry.next;
+
+               if (entry.deliveryTime <= now)
+               {
+                  unlink(entry);
+
+                  entry.scheduled = false;
+
+                  size--;
+
+                  if (due == null)
+                  {
+                     due = new LinkedHashMap<QueueImpl, List<Entry>>();
+                  }
+
+                  List<Entry> entries = due.get(entry.queue);
+
+                  if (entries == null)
+                  {
+                     entries = new ArrayList<Entry>();
+
+                     due.put(entry.queue, entries);
+                  }
+
+                  entries.add(entry);
+               }
+
+               entry = next;
+            }
+
+            if (currentTick >= lastTick)
+            {
+               break;
+            }
+
+            currentTick++;
+
+            if ((currentTick & mask) == 0)
+            {
+               // A new span starts, its entries move down to the first level
+               long span = currentTick >>> shift;
+
+               if ((span & mask) == 0)
+               {
+                  cascade(OVERFLOW, 0);
+               }
+
+               cascade(SPANS, (int)(span & mask));
+            }
+         }
+      }
+
+      if (due != null)
+      {
+         for (Map.Entry<QueueImpl, List<Entry>> entries : due.entrySet())
+         {
+            entries.getKey().deliverScheduled(entries.getValue());
+         }
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * Makes sure the ticker runs at the given time, unless it's already going to run earlier
+    */
+   private void plan(final long time, final long now)
+   {
+      // A run that is due or in progress plans the next one itself once it has released what it can
+      if (time >= nextRun || nextRun <= now)
+      {
+         return;
+      }
+
+      if (ticker != null)
+      {
+         ticker.cancel(false);
+      }
+
+      nextRun = time;
+
+      ticker = scheduledExecutor.schedule(tickRunner, Math.max(0, time - now), TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * The start of the next tick, or the earliest delivery time left in the current bucket if it comes first
+    */
+   private long nextWakeUp()
+   {
+      long time = (currentTick + 1) * tickDuration;
+
+      for (Entry entry = heads[TICKS][(int)(currentTick & mask)]; entry != null; entry = entry.next)
+      {
+         time = Math.min(time, entry.deliveryTime);
+      }
+
+      return time;
+   }
+
+   /**
+    * Links the entry into the bucket its tick belongs to, seen from the current tick
+    */
+   private void place(final Entry entry)
+   {
+      if (entry.tick - currentTick < wheelSize)
+      {
+         entry.level = TICKS;
+
+         entry.index = (int)(entry.tick & mask);
+      }
+      else if ((entry.tick >>> shift) - (currentTick >>> shift) < wheelSize)
+      {
+         entry.level = SPANS;
+
+         entry.index = (int)((entry.tick >>> shift) & mask);
+      }
+      else
+      {
+         entry.level = OVERFLOW;
+
+         entry.index = 0;
+      }
+
+      Entry[] levelTails = tails[entry.level];
+
+      entry.prev = levelTails[entry.index];
+
+      entry.next = null;
+
+      if (entry.prev == null)
+      {
+         heads[entry.level][entry.index] = entry;
+      }
+      else
+      {
+         entry.prev.next = entry;
+      }
+
+      levelTails[entry.index] = entry;
+   }
+
+   /**
+    * Places the entries of the bucket again, from the current tick
+    */
+   private void cascade(final int level, final int index)
+   {
+      Entry entry = heads[level][index];
+
+      heads[level][index] = null;
+
+      tails[level][index] = null;
+
+      while (entry != null)
+      {
+         Entry next = entry.next;
+
+         place(entry);
+
+         entry = next;
+      }
+   }
+
+   private void unlink(final Entry entry)
+   {
+      Entry[] levelHeads = heads[entry.level];
+
+      Entry[] levelTails = tails[entry.level];
+
+      if (entry.prev == null)
+      {
+         levelHeads[entry.index] = entry.next;
+      }
+      else
+      {
+         entry.prev.next = entry.next;
+      }
+
+      if (entry.next == null)
+      {
+         levelTails[entry.index] = entry.prev;
+      }
+      else
+      {
+         entry.next.prev = entry.prev;
+      }
+
+      entry.prev = null;
+
+      entry.next = null;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * The scheduled delivery of one reference, guarded by the wheel
+    */
+   public static class Entry
+   {
+      private final QueueImpl queue;
+
+      private final MessageReference ref;
+
+      private long deliveryTime;
+
+      private long tick;
+
+      private int level;
+
+      private int index;
+
+      private Entry prev;
+
+      private Entry next;
+
+      private boolean scheduled;
+
+      public Entry(final QueueImpl queue, final MessageReference ref)
+      {
+         this.queue = queue;
+
+         this.ref = ref;
+      }
+
+      public MessageReference getReference()
+      {
+         return ref;
+      }
+   }
+}
@@ -28,6 +28,7 @@ import org.jboss.messaging.core.persistence.StorageManager;
 import org.jboss.messaging.core.postoffice.PostOffice;
 import org.jboss.messaging.core.remoting.Channel;
 import org.jboss.messaging.core.remoting.DelayedResult;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionReceiveBatchMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionReceiveMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionReplicateDeliveryMessage;
 import org.jboss.messaging.core.server.HandleStatus;
@@ -39,9 +40,12 @@ import org.jboss.messaging.core.server.ServerSession;
 import org.jboss.messaging.core.settings.HierarchicalRepository;
 import org.jboss.messaging.core.settings.impl.QueueSettings;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -96,6 +100,33 @@ public class ServerConsumerImpl implements ServerConsumer
 
    private final Channel channel;
 
+   // Sends the pending deliveries, null if each delivery is sent on its own
+   private final Executor executor;
+
+   private final int deliveryBatchSize;
+
+   private final int deliveryBatchBytes;
+
+   // The deliveries waiting to be sent in one packet - guarded by startStopLock
+   private final List<SessionReceiveMessage> pendingDeliveries = new ArrayList<SessionReceiveMessage>();
+
+   private int pendingBytes;
+
+   private boolean flushScheduled;
+
+   private final Runnable flusher = new Runnable()
+   {
+      public void run()
+      {
+         synchronized (startStopLock)
+         {
+            flushScheduled = false;
+
+            sendPendingDeliveries();
+         }
+      }
+   };
+
    // Constructors
    // ---------------------------------------------------------------------------------
 
@@ -111,6 +142,46 @@ public class ServerConsumerImpl implements ServerConsumer
                              final HierarchicalRepository<QueueSettings> queueSettingsRepository,
                              final PostOffice postOffice,
                              final Channel channel)
+   {
+      this(id,
+           session,
+           messageQueue,
+           filter,
+           enableFlowControl,
+           maxRate,
+           started,
+           browseOnly,
+           storageManager,
+           queueSettingsRepository,
+           postOffice,
+           channel,
+           null,
+           1,
+           -1);
+   }
+
+   /**
+    * @param executor the executor the deliveries made while the queue delivers are sent from, as one packet. If null
+    * each delivery is sent in its own packet
+    * @param deliveryBatchSize the maximum number of deliveries sent in one packet
+    * @param deliveryBatchBytes the size of the messages, in bytes, from which the pending deliveries are sent without
+    * waiting for more, -1 if there's no limit
+    */
+   public ServerConsumerImpl(final long id,
+                             final ServerSession session,
+                             final Queue messageQueue,
+                             final Filter filter,
+                             final boolean enableFlowControl,
+                             final int maxRate,
+                             final boolean started,
+                             final boolean browseOnly,
+                             final StorageManager storageManager,
+                             final HierarchicalRepository<QueueSettings> queueSettingsRepository,
+                             final PostOffice postOffice,
+                             final Channel channel,
+                             final Executor executor,
+                             final int deliveryBatchSize,
+                             final int deliveryBatchBytes)
    {
       this.id = id;
 
@@ -141,6 +212,12 @@ public class ServerConsumerImpl implements ServerConsumer
 
       this.channel = channel;
 
+      this.executor = deliveryBatchSize > 1 ? executor : null;
+
+      this.deliveryBatchSize = deliveryBatchSize;
+
+      this.deliveryBatchBytes = deliveryBatchBytes;
+
       messageQueue.addConsumer(this);
    }
 
@@ -166,6 +243,8 @@ public class ServerConsumerImpl implements ServerConsumer
          // TODO need to replicate expires
          ref.expire(storageManager, postOffice, queueSettingsRepository);
 
+         messageQueue.referenceExpired();
+
          return HandleStatus.HANDLED;
       }
 
@@ -200,8 +279,15 @@ public class ServerConsumerImpl implements ServerConsumer
 
          if (result == null)
          {
-            // Not replicated - just send now
-            channel.send(packet);
+            if (executor != null && !messageQueue.isBackup())
+            {
+               addPendingDelivery(packet);
+            }
+            else
+            {
+               // Not replicated - just send now
+               channel.send(packet);
+            }
          }
          else
          {
@@ -253,6 +339,14 @@ public class ServerConsumerImpl implements ServerConsumer
    {
       LinkedList<MessageReference> refs = new LinkedList<MessageReference>();
 
+      synchronized (startStopLock)
+      {
+         // The messages which weren't sent yet go back to the queue with the others
+         pendingDeliveries.clear();
+
+         pendingBytes = 0;
+      }
+
       if (!deliveringRefs.isEmpty())
       {
          for (MessageReference ref : deliveringRefs)
@@ -271,6 +365,12 @@ public class ServerConsumerImpl implements ServerConsumer
       synchronized (startStopLock)
       {
          this.started = browseOnly || started;
+
+         if (!this.started)
+         {
+            // What was delivered before stopping is sent before the stop returns
+            sendPendingDeliveries();
+         }
       }
 
       // Outside the lock
@@ -298,11 +398,13 @@ public class ServerConsumerImpl implements ServerConsumer
       return messageQueue;
    }
 
-   public MessageReference getReference(final long messageID) throws Exception
+   public List<MessageReference> getReferences(final long messageID) throws Exception
    {
       // Acknowledge acknowledges all refs delivered by the consumer up to and including the one explicitly
       // acknowledged
 
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
       MessageReference ref;
       do
       {
@@ -314,10 +416,12 @@ public class ServerConsumerImpl implements ServerConsumer
                                             " backup " +
                                             messageQueue.isBackup());
          }
+
+         refs.add(ref);
       }
       while (ref.getMessage().getMessageID() != messageID);
 
-      return ref;
+      return refs;
    }
 
    public void deliverReplicated(final long messageID) throws Exception
@@ -356,6 +460,64 @@ public class ServerConsumerImpl implements ServerConsumer
       session.promptDelivery(messageQueue);
    }
 
+   /**
+    * Holds the delivery back until the executor gets to send the pending ones, which it does once the queue is done
+    * delivering if the queue delivers from the same executor
+    */
+   private void addPendingDelivery(final SessionReceiveMessage packet)
+   {
+      pendingDeliveries.add(packet);
+
+      pendingBytes += packet.getServerMessage().getEncodeSize();
+
+      if (pendingDeliveries.size() >= deliveryBatchSize || (deliveryBatchBytes != -1 && pendingBytes >= deliveryBatchBytes))
+      {
+         sendPendingDeliveries();
+      }
+      else if (!flushScheduled)
+      {
+         flushScheduled = true;
+
+         executor.execute(flusher);
+      }
+   }
+
+   private void sendPendingDeliveries()
+   {
+      int count = pendingDeliveries.size();
+
+      if (count == 0)
+      {
+         return;
+      }
+
+      if (count == 1)
+      {
+         channel.send(pendingDeliveries.get(0));
+      }
+      else
+      {
+         List<ServerMessage> messages = new ArrayList<ServerMessage>(count);
+
+         int[] deliveryCounts = new int[count];
+
+         for (int i = 0; i < count; i++)
+         {
+            SessionReceiveMessage delivery = pendingDeliveries.get(i);
+
+            messages.add(delivery.getServerMessage());
+
+            deliveryCounts[i] = delivery.getDeliveryCount();
+         }
+
+         channel.send(new SessionReceiveBatchMessage(id, messages, deliveryCounts));
+      }
+
+      pendingDeliveries.clear();
+
+      pendingBytes = 0;
+   }
+
    // Inner classes
    // ------------------------------------------------------------------------
 
@@ -46,6 +46,8 @@ public class ServerMessageImpl extends MessageImpl implements ServerMessage
    /** Global reference counts for paging control */
    private final AtomicInteger refCount = new AtomicInteger(0);
 
+   private volatile int pageId = -1;
+
    /*
     * Constructor for when reading from network
     */
@@ -61,7 +63,7 @@ public class ServerMessageImpl extends MessageImpl implements ServerMessage
       super(messageID);
    }
 
-   public ServerMessageImpl(final ServerMessageImpl other)
+   public ServerMessageImpl(final MessageImpl other)
    {
       super(other);
    }
@@ -137,6 +139,16 @@ public class ServerMessageImpl extends MessageImpl implements ServerMessage
 
    }
 
+   public int getPageId()
+   {
+      return pageId;
+   }
+
+   public void setPageId(final int pageId)
+   {
+      this.pageId = pageId;
+   }
+
    public ServerMessage copy()
    {
       return new ServerMessageImpl(this);
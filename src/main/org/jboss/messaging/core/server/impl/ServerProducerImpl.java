@@ -22,8 +22,10 @@
 
 package org.jboss.messaging.core.server.impl;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jboss.messaging.core.journal.IOCallback;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.postoffice.FlowController;
 import org.jboss.messaging.core.remoting.Channel;
@@ -92,6 +94,11 @@ public class ServerProducerImpl implements ServerProducer
 	
 	public void close() throws Exception
 	{	   
+	   if (flowController != null)
+	   {
+	      flowController.producerClosed(this);
+	   }
+
 		session.removeProducer(this);
 	}
 	
@@ -101,6 +108,13 @@ public class ServerProducerImpl implements ServerProducer
 
       session.send(message);  		
 	}
+
+	public void send(final ServerMessage message, final IOCallback callback) throws Exception
+   {
+      doFlowControl(message);
+
+      session.send(message, callback);
+   }
 	
 	public void sendScheduled(final ServerMessage message, final long scheduledDeliveryTime) throws Exception
    {
@@ -108,12 +122,22 @@ public class ServerProducerImpl implements ServerProducer
 
       session.sendScheduled(message, scheduledDeliveryTime);
    }
+
+   public void send(final List<ServerMessage> messages) throws Exception
+   {
+      for (ServerMessage message : messages)
+      {
+         doFlowControl(message);
+      }
+
+      session.send(messages);
+   }
 	
    public void requestAndSendCredits() throws Exception
 	{	 
 	   if (!waiting)
 	   {
-	      flowController.requestAndSendCredits(this, creditsToSend.get());
+	      flowController.requestAndSendCredits(this);
 	   }
 	}
 
@@ -121,9 +145,14 @@ public class ServerProducerImpl implements ServerProducer
 	{
 	   creditsToSend.addAndGet(-credits);
 	   
-//		Packet packet = new SessionProducerFlowCreditMessage(id, credits);
-//		
-//		channel.send(packet);	
+		Packet packet = new SessionProducerFlowCreditMessage(id, credits);
+		
+		channel.send(packet);	
+	}
+
+	public int getCreditsToSend()
+	{
+	   return creditsToSend.get();
 	}
 	
 	public void setWaiting(final boolean waiting)
@@ -16,6 +16,7 @@ import org.jboss.messaging.core.client.management.impl.ManagementHelper;
 import org.jboss.messaging.core.exception.MessagingException;
 import org.jboss.messaging.core.filter.Filter;
 import org.jboss.messaging.core.filter.impl.FilterImpl;
+import org.jboss.messaging.core.journal.IOCallback;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.management.ManagementService;
 import org.jboss.messaging.core.paging.PagingManager;
@@ -139,6 +140,17 @@ public class ServerSessionImpl implements ServerSession, FailureListener, Notifi
 
    private final Object queueCopyLock = new Object();
 
+   // Sends whose references can't be added to their queues yet, in the order they were sent
+   private final LinkedList<PendingRoute> pendingRoutes = new LinkedList<PendingRoute>();
+
+   private final Runnable pendingRoutesRunner = new Runnable()
+   {
+      public void run()
+      {
+         addPendingRoutes();
+      }
+   };
+
    // Constructors ---------------------------------------------------------------------------------
 
    public ServerSessionImpl(final String name,
@@ -288,6 +300,11 @@ public class ServerSessionImpl implements ServerSession, FailureListener, Notifi
    }
 
    public void send(final ServerMessage msg) throws Exception
+   {
+      send(msg, null);
+   }
+
+   public void send(final ServerMessage msg, final IOCallback callback) throws Exception
    {
       // check the user has write access to this address.
       doSecurity(msg);
@@ -300,14 +317,60 @@ public class ServerSessionImpl implements ServerSession, FailureListener, Notifi
             {
                List<MessageReference> refs = postOffice.route(msg);
 
+               if (msg.getDurableRefCount() != 0 && callback != null)
+               {
+                  // We don't hold queueCopyLock (and the session executor) while the disk syncs. The references
+                  // are only added to their queues once the message is stored, so nothing is delivered before
+                  PendingRoute route = new PendingRoute(msg, refs, callback);
+
+                  synchronized (pendingRoutes)
+                  {
+                     pendingRoutes.add(route);
+                  }
+
+                  try
+                  {
+                     storageManager.storeMessage(msg, route);
+                  }
+                  catch (Exception e)
+                  {
+                     synchronized (pendingRoutes)
+                     {
+                        pendingRoutes.remove(route);
+                     }
+
+                     pager.messageDone(msg);
+
+                     addPendingRoutes();
+
+                     throw e;
+                  }
+
+                  return;
+               }
+
                if (msg.getDurableRefCount() != 0)
                {
                   storageManager.storeMessage(msg);
                }
 
-               for (MessageReference ref : refs)
+               synchronized (pendingRoutes)
                {
-                  ref.getQueue().addLast(ref);
+                  if (pendingRoutes.isEmpty())
+                  {
+                     addToQueues(refs);
+                  }
+                  else
+                  {
+                     // Behind the sends still being stored
+                     PendingRoute route = new PendingRoute(msg, refs, callback);
+
+                     route.complete = true;
+
+                     pendingRoutes.add(route);
+
+                     return;
+                  }
                }
             }
          }
@@ -316,6 +379,106 @@ public class ServerSessionImpl implements ServerSession, FailureListener, Notifi
       {
          tx.addMessage(msg);
       }
+
+      if (callback != null)
+      {
+         callback.done();
+      }
+   }
+
+   public void send(final List<ServerMessage> msgs) throws Exception
+   {
+      for (ServerMessage msg : msgs)
+      {
+         // check the user has write access to this address.
+         doSecurity(msg);
+      }
+
+      if (autoCommitSends)
+      {
+         synchronized (queueCopyLock)
+         {
+            List<MessageReference> refs = new ArrayList<MessageReference>();
+
+            List<ServerMessage> routed = new ArrayList<ServerMessage>();
+
+            List<ServerMessage> durable = new ArrayList<ServerMessage>();
+
+            for (ServerMessage msg : msgs)
+            {
+               if (!pager.page(msg))
+               {
+                  refs.addAll(postOffice.route(msg));
+
+                  routed.add(msg);
+
+                  if (msg.getDurableRefCount() != 0)
+                  {
+                     durable.add(msg);
+                  }
+               }
+            }
+
+            if (!durable.isEmpty())
+            {
+               // Stored as one transaction, so only its commit syncs, once for the whole batch
+               long txID = storageManager.generateUniqueID();
+
+               try
+               {
+                  for (ServerMessage msg : durable)
+                  {
+                     storageManager.storeMessageTransactional(txID, msg);
+                  }
+
+                  storageManager.commit(txID);
+               }
+               catch (Exception e)
+               {
+                  try
+                  {
+                     storageManager.rollback(txID);
+                  }
+                  catch (Exception e2)
+                  {
+                     log.warn("Failed to roll back the store of a batch of " + durable.size() + " messages", e2);
+                  }
+
+                  // The references are dropped, and the size they took goes back
+                  for (ServerMessage msg : routed)
+                  {
+                     pager.messageDone(msg);
+                  }
+
+                  throw e;
+               }
+            }
+
+            synchronized (pendingRoutes)
+            {
+               if (pendingRoutes.isEmpty())
+               {
+                  addToQueues(refs);
+               }
+               else
+               {
+                  // Behind the sends still being stored
+                  PendingRoute route = new PendingRoute(null, refs, null);
+
+                  route.complete = true;
+
+                  pendingRoutes.add(route);
+               }
+            }
+         }
+      }
+      else
+      {
+         for (ServerMessage msg : msgs)
+         {
+            tx.addMessage(msg);
+         }
+      }
    }
 
    public void sendScheduled(final ServerMessage msg, final long scheduledDeliveryTime) throws Exception
@@ -354,19 +517,20 @@ public class ServerSessionImpl implements ServerSession, FailureListener, Notifi
 
    public void acknowledge(final long consumerID, final long messageID) throws Exception
    {
-      MessageReference ref = consumers.get(consumerID).getReference(messageID);
-
-      if (autoCommitAcks)
-      {
-         doAck(ref);
-      }
-      else
+      for (MessageReference ref : consumers.get(consumerID).getReferences(messageID))
       {
-         tx.addAcknowledgement(ref);
+         if (autoCommitAcks)
+         {
+            doAck(ref);
+         }
+         else
+         {
+            tx.addAcknowledgement(ref);
 
-         // Del count is not actually updated in storage unless it's
-         // cancelled
-         ref.incrementDeliveryCount();
+            // Del count is not actually updated in storage unless it's
+            // cancelled
+            ref.incrementDeliveryCount();
+         }
       }
    }
 
@@ -924,7 +1088,10 @@ public class ServerSessionImpl implements ServerSession, FailureListener, Notifi
                                                        storageManager,
                                                        queueSettingsRepository,
                                                        postOffice,
-                                                       channel);
+                                                       channel,
+                                                       executor,
+                                                       server.getConfiguration().getConsumerDeliveryBatchSize(),
+                                                       server.getConfiguration().getConsumerDeliveryBatchBytes());
 
       SessionCreateConsumerResponseMessage response = new SessionCreateConsumerResponseMessage(windowSize);
 
@@ -1062,6 +1229,16 @@ public class ServerSessionImpl implements ServerSession, FailureListener, Notifi
       producers.get(producerID).send(message);
    }
 
+   public void sendProducerMessage(final long producerID, final ServerMessage message, final IOCallback callback) throws Exception
+   {
+      producers.get(producerID).send(message, callback);
+   }
+
+   public void sendProducerMessages(final long producerID, final List<ServerMessage> messages) throws Exception
+   {
+      producers.get(producerID).send(messages);
+   }
+
    public void sendScheduledProducerMessage(final long producerID,
                                             final ServerMessage message,
                                             final long scheduledDeliveryTime) throws Exception
@@ -1196,6 +1373,40 @@ public class ServerSessionImpl implements ServerSession, FailureListener, Notifi
    // Private
    // ----------------------------------------------------------------------------
 
+   private void addToQueues(final List<MessageReference> refs)
+   {
+      for (MessageReference ref : refs)
+      {
+         ref.getQueue().addLast(ref);
+      }
+   }
+
+   /**
+    * Adds the references of the sends at the front of pendingRoutes which are complete, in the order they were sent
+    */
+   private void addPendingRoutes()
+   {
+      synchronized (pendingRoutes)
+      {
+         while (!pendingRoutes.isEmpty() && pendingRoutes.getFirst().complete)
+         {
+            PendingRoute route = pendingRoutes.removeFirst();
+
+            if (route.failed)
+            {
+               continue;
+            }
+
+            addToQueues(route.refs);
+
+            if (route.callback != null)
+            {
+               route.callback.done();
+            }
+         }
+      }
+   }
+
    private void doAck(final MessageReference ref) throws Exception
    {
       ServerMessage message = ref.getMessage();
@@ -1214,6 +1425,11 @@ public class ServerSessionImpl implements ServerSession, FailureListener, Notifi
          if (count == 0)
          {
             storageManager.storeDelete(message.getMessageID());
+
+            if (message.getPageId() >= 0)
+            {
+               pager.messageDeleted(message);
+            }
          }
          else
          {
@@ -1239,4 +1455,71 @@ public class ServerSessionImpl implements ServerSession, FailureListener, Notifi
          throw e;
       }
    }
+
+   // Inner classes
+   // ----------------------------------------------------------------------------
+
+   /**
+    * The references of a sent message, which are added to their queues once the message is stored and the
+    * sends before it have been added. If storing the message fails the route is rolled back.
+    * A batch, stored before its route is pending, has no message
+    */
+   private class PendingRoute implements IOCallback
+   {
+      private final ServerMessage message;
+
+      private final List<MessageReference> refs;
+
+      private final IOCallback callback;
+
+      // Guarded by pendingRoutes
+      private boolean complete;
+
+      private boolean failed;
+
+      PendingRoute(final ServerMessage message, final List<MessageReference> refs, final IOCallback callback)
+      {
+         this.message = message;
+
+         this.refs = refs;
+
+         this.callback = callback;
+      }
+
+      public void done()
+      {
+         synchronized (pendingRoutes)
+         {
+            complete = true;
+         }
+
+         // Not from the I/O thread, adding to a queue may deliver
+         executor.execute(pendingRoutesRunner);
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         synchronized (pendingRoutes)
+         {
+            complete = true;
+
+            failed = true;
+         }
+
+         try
+         {
+            // The references are dropped, and the size they took goes back
+            pager.messageDone(message);
+         }
+         catch (Exception e)
+         {
+            log.warn("Failed to release the size of message " + message.getMessageID(), e);
+         }
+
+         callback.onError(errorCode, errorMessage);
+
+         // The sends behind this one can go ahead
+         executor.execute(pendingRoutesRunner);
+      }
+   }
 }
@@ -14,6 +14,7 @@ package org.jboss.messaging.core.server.impl;
 
 
 import org.jboss.messaging.core.exception.MessagingException;
+import org.jboss.messaging.core.journal.IOCallback;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.core.persistence.StorageManager;
 import org.jboss.messaging.core.remoting.Channel;
@@ -43,6 +44,7 @@ import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_ROLLBACK;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_SCHEDULED_SEND;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_SEND;
+import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_SEND_BATCH;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_START;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_STOP;
 import static org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl.SESS_XA_COMMIT;
@@ -72,7 +74,10 @@ import org.jboss.messaging.core.remoting.impl.wireformat.SessionQueueQueryMessag
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionRemoveDestinationMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionReplicateDeliveryMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionScheduledSendMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendConfirmationMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendFailedMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendManagementMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendBatchMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionXACommitMessage;
 import org.jboss.messaging.core.remoting.impl.wireformat.SessionXAEndMessage;
@@ -90,7 +95,12 @@ import org.jboss.messaging.core.server.ServerMessage;
 import org.jboss.messaging.core.server.ServerSession;
 
 import javax.transaction.xa.Xid;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A ServerSessionPacketHandler
@@ -109,9 +119,12 @@ public class ServerSessionPacketHandler implements ChannelHandler
 
    private final StorageManager storageManager;
 
+   private final ConfirmationBatcher confirmationBatcher;
+
    public ServerSessionPacketHandler(final ServerSession session,
                                      final Channel channel,
-                                     final StorageManager storageManager)
+                                     final StorageManager storageManager,
+                                     final Executor executor)
 
    {
       this.session = session;
@@ -119,6 +132,8 @@ public class ServerSessionPacketHandler implements ChannelHandler
       this.channel = channel;
 
       this.storageManager = storageManager;
+
+      confirmationBatcher = new ConfirmationBatcher(executor);
    }
 
    public long getID()
@@ -144,11 +159,23 @@ public class ServerSessionPacketHandler implements ChannelHandler
             send.getServerMessage().setMessageID(id);
          }
       }
+      else if (type == SESS_SEND_BATCH)
+      {
+         for (ServerMessage msg : ((SessionSendBatchMessage)packet).getServerMessages())
+         {
+            if (msg.getMessageID() == 0L)
+            {
+               msg.setMessageID(storageManager.generateUniqueID());
+            }
+         }
+      }
 
       Packet response = null;
 
       DelayedResult result = channel.replicatePacket(packet);
 
+      SendResponseCallback sendCallback = null;
+
       try
       {
          switch (type)
@@ -364,11 +391,43 @@ public class ServerSessionPacketHandler implements ChannelHandler
             case SESS_SEND:
             {
                SessionSendMessage message = (SessionSendMessage)packet;
-               session.sendProducerMessage(message.getProducerID(), message.getServerMessage());
+               if (message.isRequiresResponse())
+               {
+                  // The response is sent when the message is stored, meanwhile we carry on with the next packet
+                  sendCallback = new SendResponseCallback(packet.getCorrelationID(), result);
+                  session.sendProducerMessage(message.getProducerID(), message.getServerMessage(), sendCallback);
+               }
+               else if (message.isRequiresConfirmation())
+               {
+                  session.sendProducerMessage(message.getProducerID(),
+                                              message.getServerMessage(),
+                                              new SendConfirmationCallback(message.getProducerID(),
+                                                                           message.getConfirmationID(),
+                                                                           result));
+               }
+               else
+               {
+                  session.sendProducerMessage(message.getProducerID(), message.getServerMessage());
+               }
+               break;
+            }
+            case SESS_SEND_BATCH:
+            {
+               SessionSendBatchMessage message = (SessionSendBatchMessage)packet;
+               // The messages are stored when this returns, they are answered with one response
+               session.sendProducerMessages(message.getProducerID(), message.getServerMessages());
                if (message.isRequiresResponse())
                {
                   response = new NullResponseMessage();
                }
+               else if (message.isRequiresConfirmation())
+               {
+                  // Gathered by the confirmation batcher into one confirmation message
+                  for (int i = 0; i < message.getServerMessages().size(); i++)
+                  {
+                     new SendConfirmationCallback(message.getProducerID(), message.getConfirmationID() + i, result).done();
+                  }
+               }
                break;
             }
             case SESS_SCHEDULED_SEND:
@@ -381,6 +440,10 @@ public class ServerSessionPacketHandler implements ChannelHandler
                {
                   response = new NullResponseMessage();
                }
+               else if (message.isRequiresConfirmation())
+               {
+                  new SendConfirmationCallback(message.getProducerID(), message.getConfirmationID(), result).done();
+               }
                break;
             }
             case SESS_MANAGEMENT_SEND:
@@ -417,42 +480,249 @@ public class ServerSessionPacketHandler implements ChannelHandler
             me = new MessagingException(MessagingException.INTERNAL_ERROR);
          }
 
-         response = new MessagingExceptionMessage(me);
+         if (!sendFailed(packet, me))
+         {
+            response = new MessagingExceptionMessage(me);
+         }
       }
 
       if (response != null)
       {
-         final boolean closeChannel = type == SESS_CLOSE;
+         if (sendCallback != null)
+         {
+            // The send failed before the message was stored
+            sendCallback.respond(response);
+         }
+         else
+         {
+            sendResponse(response, packet.getCorrelationID(), result, type == SESS_CLOSE);
+         }
+      }
 
-         if (result == null)
+      channel.replicateComplete();
+   }
+
+   /**
+    * A producer waiting for the confirmation of a send does not read a plain exception response, it has to be
+    * told which send failed so it can release its window. A batch is rolled back as a whole, so each of its
+    * sends failed
+    *
+    * @return false if the packet is not a send the producer expects a confirmation for
+    */
+   private boolean sendFailed(final Packet packet, final MessagingException me)
+   {
+      byte type = packet.getType();
+
+      if (type == SESS_SEND || type == SESS_SCHEDULED_SEND)
+      {
+         SessionSendMessage message = (SessionSendMessage)packet;
+
+         if (message.isRequiresConfirmation())
+         {
+            channel.send(new SessionSendFailedMessage(message.getProducerID(), message.getConfirmationID(), me));
+
+            return true;
+         }
+      }
+      else if (type == SESS_SEND_BATCH)
+      {
+         SessionSendBatchMessage message = (SessionSendBatchMessage)packet;
+
+         if (message.isRequiresConfirmation())
          {
-            // Not clustered - just send now
-            channel.send(response);              
-            
-            if (closeChannel)
+            for (int i = 0; i < message.getServerMessages().size(); i++)
             {
-               channel.close();
+               channel.send(new SessionSendFailedMessage(message.getProducerID(), message.getConfirmationID() + i, me));
             }
+
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   private void sendResponse(final Packet response,
+                             final long correlationID,
+                             final DelayedResult result,
+                             final boolean closeChannel)
+   {
+      response.setCorrelationID(correlationID);
+
+      if (result == null)
+      {
+         // Not clustered - just send now
+         channel.send(response);              
+         
+         if (closeChannel)
+         {
+            channel.close();
+         }
+      }
+      else
+      {
+         result.setResultRunner(new Runnable()
+         {
+            public void run()
+            {
+               channel.send(response);
+               
+               if (closeChannel)
+               {
+                  channel.close();
+               }
+            }
+         });
+      }
+   }
+
+   /** Sends the response of a durable send from the I/O completion. Only the first outcome is sent */
+   private class SendResponseCallback implements IOCallback
+   {
+      private final long correlationID;
+
+      private final DelayedResult result;
+
+      private final AtomicBoolean responded = new AtomicBoolean(false);
+
+      SendResponseCallback(final long correlationID, final DelayedResult result)
+      {
+         this.correlationID = correlationID;
+
+         this.result = result;
+      }
+
+      public void done()
+      {
+         respond(new NullResponseMessage());
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         log.warn("Error storing message: " + errorCode + " - " + errorMessage);
+
+         respond(new MessagingExceptionMessage(new MessagingException(MessagingException.INTERNAL_ERROR, errorMessage)));
+      }
+
+      void respond(final Packet response)
+      {
+         if (responded.compareAndSet(false, true))
+         {
+            sendResponse(response, correlationID, result, false);
+         }
+      }
+   }
+
+   /** Confirms a send to the producer once the message has been stored, unless storing it failed */
+   private class SendConfirmationCallback implements IOCallback
+   {
+      private final long producerID;
+
+      private final long confirmationID;
+
+      private final DelayedResult result;
+
+      SendConfirmationCallback(final long producerID, final long confirmationID, final DelayedResult result)
+      {
+         this.producerID = producerID;
+
+         this.confirmationID = confirmationID;
+
+         this.result = result;
+      }
+
+      public void done()
+      {
+         if (result == null)
+         {
+            confirmationBatcher.confirm(producerID, confirmationID);
          }
          else
          {
-            final Packet theResponse = response;
-            
             result.setResultRunner(new Runnable()
             {
                public void run()
                {
-                  channel.send(theResponse);
-                  
-                  if (closeChannel)
-                  {
-                     channel.close();
-                  }
+                  confirmationBatcher.confirm(producerID, confirmationID);
                }
             });
          }
       }
 
-      channel.replicateComplete();
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         log.warn("Error storing message: " + errorCode + " - " + errorMessage);
+
+         channel.send(new SessionSendFailedMessage(producerID,
+                                                   confirmationID,
+                                                   new MessagingException(MessagingException.INTERNAL_ERROR, errorMessage)));
+      }
+   }
+
+   /**
+    * Sends confirmations from the executor, so all the confirmations that complete while a previous batch
+    * is being sent go back in one packet per producer
+    */
+   private class ConfirmationBatcher implements Runnable
+   {
+      private final Executor executor;
+
+      private Map<Long, List<Long>> pending = new LinkedHashMap<Long, List<Long>>();
+
+      private boolean scheduled;
+
+      ConfirmationBatcher(final Executor executor)
+      {
+         this.executor = executor;
+      }
+
+      synchronized void confirm(final long producerID, final long confirmationID)
+      {
+         List<Long> confirmationIDs = pending.get(producerID);
+
+         if (confirmationIDs == null)
+         {
+            confirmationIDs = new ArrayList<Long>();
+
+            pending.put(producerID, confirmationIDs);
+         }
+
+         confirmationIDs.add(confirmationID);
+
+         if (!scheduled)
+         {
+            scheduled = true;
+
+            executor.execute(this);
+         }
+      }
+
+      public void run()
+      {
+         Map<Long, List<Long>> toSend;
+
+         synchronized (this)
+         {
+            toSend = pending;
+
+            pending = new LinkedHashMap<Long, List<Long>>();
+
+            scheduled = false;
+         }
+
+         for (Map.Entry<Long, List<Long>> entry : toSend.entrySet())
+         {
+            List<Long> confirmationIDs = entry.getValue();
+
+            long[] ids = new long[confirmationIDs.size()];
+
+            for (int i = 0; i < ids.length; i++)
+            {
+               ids[i] = confirmationIDs.get(i);
+            }
+
+            channel.send(new SessionSendConfirmationMessage(entry.getKey(), ids));
+         }
+      }
    }
 }
@@ -0,0 +1,249 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.core.server.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.remoting.Channel;
+import org.jboss.messaging.core.remoting.ChannelHandler;
+import org.jboss.messaging.core.remoting.Packet;
+import org.jboss.messaging.core.remoting.RemotingConnection;
+import org.jboss.messaging.util.ExecutorFactory;
+import org.jboss.messaging.util.JBMThreadFactory;
+import org.jboss.messaging.util.OrderedExecutorFactory;
+
+/**
+ *
+ * A SessionPacketDispatcher
+ *
+ * Takes the handling of session packets off the transport threads, so a session waiting on the journal doesn't hold
+ * up the other connections served by the same thread.
+ *
+ * Each session gets an inbox, an ordered executor on the dispatcher's pool, so its packets are still handled one at a
+ * time in the order they arrived. When maxPendingPackets are waiting in an inbox the transport stops reading from the
+ * session's connection until one of them has been handled. The transport thread itself never waits, so the other
+ * connections it serves carry on.
+ *
+ */
+public class SessionPacketDispatcher
+{
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(SessionPacketDispatcher.class);
+
+   // Attributes ----------------------------------------------------
+
+   private final ExecutorService pool;
+
+   private final ExecutorFactory executorFactory;
+
+   private final int maxPendingPackets;
+
+   private final AtomicInteger pendingCount = new AtomicInteger(0);
+
+   private final AtomicLong handledCount = new AtomicLong(0);
+
+   private final AtomicLong readSuspendedCount = new AtomicLong(0);
+
+   private final AtomicLong queuedNanos = new AtomicLong(0);
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param maxPoolSize the maximum number of threads handling packets, -1 if there's no limit
+    * @param maxPendingPackets the number of packets a session can have waiting before the transport stops reading, -1
+    * if there's no limit
+    */
+   public SessionPacketDispatcher(final int maxPoolSize, final int maxPendingPackets)
+   {
+      if (maxPoolSize == 0 || maxPoolSize < -1)
+      {
+         throw new IllegalArgumentException("Invalid max pool size " + maxPoolSize);
+      }
+
+      if (maxPendingPackets == 0 || maxPendingPackets < -1)
+      {
+         throw new IllegalArgumentException("Invalid max pending packets " + maxPendingPackets);
+      }
+
+      JBMThreadFactory threadFactory = new JBMThreadFactory("JBM-session-dispatch-threads");
+
+      if (maxPoolSize == -1)
+      {
+         pool = Executors.newCachedThreadPool(threadFactory);
+      }
+      else
+      {
+         pool = Executors.newFixedThreadPool(maxPoolSize, threadFactory);
+      }
+
+      executorFactory = new OrderedExecutorFactory(pool);
+
+      this.maxPendingPackets = maxPendingPackets;
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * @return a handler handing the packets over to the given one, from a thread of the pool
+    * @param channel the channel of the session, reads are suspended on its current connection
+    */
+   public ChannelHandler createInbox(final ChannelHandler handler, final Channel channel)
+   {
+      return new Inbox(handler, channel, executorFactory.getExecutor());
+   }
+
+   public void stop()
+   {
+      pool.shutdown();
+
+      try
+      {
+         if (!pool.awaitTermination(10000, TimeUnit.MILLISECONDS))
+         {
+            log.warn("Timed out waiting for pool to terminate");
+         }
+      }
+      catch (InterruptedException e)
+      {
+         // Ignore
+      }
+   }
+
+   /**
+    * @return the number of packets handed over and not handled yet, for all the sessions
+    */
+   public int getPendingCount()
+   {
+      return pendingCount.get();
+   }
+
+   public long getHandledCount()
+   {
+      return handledCount.get();
+   }
+
+   /**
+    * @return the number of times reading from a connection was suspended because an inbox was full
+    */
+   public long getReadSuspendedCount()
+   {
+      return readSuspendedCount.get();
+   }
+
+   /**
+    * @return the average time, in milliseconds, a packet waited in its inbox before being handled
+    */
+   public double getAverageQueuedTime()
+   {
+      long count = handledCount.get();
+
+      return count == 0 ? 0 : queuedNanos.get() / 1000000d / count;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private class Inbox implements ChannelHandler
+   {
+      private final ChannelHandler handler;
+
+      private final Channel channel;
+
+      private final Executor executor;
+
+      // Guarded by this
+      private int pending;
+
+      // The connection reads were suspended on, null if they aren't, guarded by this
+      private RemotingConnection suspended;
+
+      Inbox(final ChannelHandler handler, final Channel channel, final Executor executor)
+      {
+         this.handler = handler;
+
+         this.channel = channel;
+
+         this.executor = executor;
+      }
+
+      public void handlePacket(final Packet packet)
+      {
+         if (maxPendingPackets != -1)
+         {
+            packetAdded();
+         }
+
+         final long handedOver = System.nanoTime();
+
+         pendingCount.incrementAndGet();
+
+         executor.execute(new Runnable()
+         {
+            public void run()
+            {
+               queuedNanos.addAndGet(System.nanoTime() - handedOver);
+
+               handledCount.incrementAndGet();
+
+               pendingCount.decrementAndGet();
+
+               if (maxPendingPackets != -1)
+               {
+                  packetRemoved();
+               }
+
+               handler.handlePacket(packet);
+            }
+         });
+      }
+
+      private synchronized void packetAdded()
+      {
+         // The transport may still hand over what it read before it was suspended
+         if (++pending >= maxPendingPackets && suspended == null)
+         {
+            suspended = channel.getConnection();
+
+            suspended.suspendRead();
+
+            readSuspendedCount.incrementAndGet();
+         }
+      }
+
+      private synchronized void packetRemoved()
+      {
+         if (--pending < maxPendingPackets && suspended != null)
+         {
+            suspended.resumeRead();
+
+            suspended = null;
+         }
+      }
+   }
+}
@@ -51,6 +51,10 @@ public class QueueSettings implements Mergeable<QueueSettings>
 
    public static final Integer DEFAULT_PAGE_SIZE_BYTES = 10 * 1024 * 1024; // 10M Bytes
 
+   public static final Boolean DEFAULT_DEPAGE_IN_PLACE = Boolean.FALSE;
+
+   public static final Boolean DEFAULT_BLOCK_PRODUCERS_WHEN_FULL = Boolean.FALSE;
+
    public static final Integer DEFAULT_MAX_DELIVERY_ATTEMPTS = 10;
 
    public static final Integer DEFAULT_MESSAGE_COUNTER_HISTORY_DAY_LIMIT = 0;
@@ -65,6 +69,10 @@ public class QueueSettings implements Mergeable<QueueSettings>
 
    private Boolean dropMessagesWhenFull = null;
 
+   private Boolean depageInPlace = null;
+
+   private Boolean blockProducersWhenFull = null;
+
    private String distributionPolicyClass = null;
 
    private Integer maxDeliveryAttempts = null;
@@ -110,6 +118,34 @@ public class QueueSettings implements Mergeable<QueueSettings>
       this.dropMessagesWhenFull = value;
    }
 
+   /**
+    * If true, durable messages depaged from this address are kept in their page file, and only a reference to them
+    * is stored on the journal
+    */
+   public Boolean isDepageInPlace()
+   {
+      return depageInPlace != null ? depageInPlace : DEFAULT_DEPAGE_IN_PLACE;
+   }
+
+   public void setDepageInPlace(Boolean value)
+   {
+      this.depageInPlace = value;
+   }
+
+   /**
+    * If true, producers to this address stop getting credits while the address is at max-size-bytes,
+    * and get them again as messages are acknowledged
+    */
+   public Boolean isBlockProducersWhenFull()
+   {
+      return blockProducersWhenFull != null ? blockProducersWhenFull : DEFAULT_BLOCK_PRODUCERS_WHEN_FULL;
+   }
+
+   public void setBlockProducersWhenFull(Boolean value)
+   {
+      this.blockProducersWhenFull = value;
+   }
+
    public void setPageSizeBytes(Integer pageSize)
    {
       this.pageSizeBytes = pageSize;
@@ -263,6 +299,14 @@ public class QueueSettings implements Mergeable<QueueSettings>
       {
          dropMessagesWhenFull = merged.dropMessagesWhenFull;
       }
+      if (depageInPlace == null)
+      {
+         depageInPlace = merged.depageInPlace;
+      }
+      if (blockProducersWhenFull == null)
+      {
+         blockProducersWhenFull = merged.blockProducersWhenFull;
+      }
       if (maxSizeBytes == null)
       {
          maxSizeBytes = merged.maxSizeBytes;
@@ -58,6 +58,9 @@ public class TransactionImpl implements Transaction
 
    private final List<ServerMessage> pagedMessages = new ArrayList<ServerMessage>();
 
+   /** Messages depaged in place whose delete is part of this transaction */
+   private final List<ServerMessage> deletedPagedMessages = new ArrayList<ServerMessage>();
+
    private final Map<ServerMessage, Long> scheduledPagedMessages = new HashMap<ServerMessage, Long>();
 
    private final Map<MessageReference, Long> scheduledReferences = new HashMap<MessageReference, Long>();
@@ -221,6 +224,11 @@ public class TransactionImpl implements Transaction
                if (count == 0)
                {
                   storageManager.storeDeleteMessageTransactional(id, queue.getPersistenceID(), message.getMessageID());
+
+                  if (message.getPageId() >= 0)
+                  {
+                     deletedPagedMessages.add(message);
+                  }
                }
                else
                {
@@ -318,6 +326,12 @@ public class TransactionImpl implements Transaction
          reference.getQueue().referenceAcknowledged(reference);
       }
 
+      // Only once the deletes are committed can the pages the messages are kept on be released
+      for (ServerMessage message : deletedPagedMessages)
+      {
+         pagingManager.messageDeleted(message);
+      }
+
       clear();
 
       state = State.COMMITTED;
@@ -562,6 +576,8 @@ public class TransactionImpl implements Transaction
 
       pagedMessages.clear();
 
+      deletedPagedMessages.clear();
+
       scheduledPagedMessages.clear();
 
       scheduledReferences.clear();
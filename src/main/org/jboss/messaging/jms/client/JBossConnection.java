@@ -108,6 +108,8 @@ public class JBossConnection implements
    
    private String clientID;
    
+   private final int dupsOKBatchSize;
+   
    private final ClientSessionFactory sessionFactory;
    
    private final SimpleString uid;
@@ -134,6 +136,8 @@ public class JBossConnection implements
       
       this.clientID = clientID;
       
+      this.dupsOKBatchSize = dupsOKBatchSize;
+      
       this.sessionFactory = sessionFactory;
       
       uid = UUIDGenerator.getInstance().generateSimpleStringUUID();    
@@ -498,7 +502,9 @@ public class JBossConnection implements
          }
          else if (acknowledgeMode == Session.DUPS_OK_ACKNOWLEDGE)
          {
-            session = sessionFactory.createSession(username, password, isXA, true, true, cacheProducers);
+            // Duplicates are allowed so acknowledgements can be sent in batches
+            session =
+               sessionFactory.createSession(username, password, isXA, true, true, cacheProducers, dupsOKBatchSize);
          }
          else if (acknowledgeMode == Session.CLIENT_ACKNOWLEDGE)
          {
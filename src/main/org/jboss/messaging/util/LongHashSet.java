@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.util;
+
+/**
+ * 
+ * A LongHashSet
+ * 
+ * A set of primitive longs using open addressing, so no Long is boxed per element.
+ * Used where millions of IDs have to be held, such as when loading the journal.
+ * 
+ * This class is not thread safe.
+ * 
+ */
+public class LongHashSet
+{
+   // Constants -----------------------------------------------------
+
+   private static final int DEFAULT_CAPACITY = 16;
+
+   // Attributes ----------------------------------------------------
+
+   // Zero marks an empty slot, so zero itself is kept aside
+   private long[] slots;
+
+   private boolean containsZero;
+
+   private int size;
+
+   private int mask;
+
+   private int resizeAt;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   public LongHashSet()
+   {
+      this(DEFAULT_CAPACITY);
+   }
+
+   public LongHashSet(final int expectedSize)
+   {
+      int capacity = DEFAULT_CAPACITY;
+
+      // Kept at most half full
+      while (capacity < expectedSize * 2)
+      {
+         capacity <<= 1;
+      }
+
+      allocate(capacity);
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * @return false if the value was already in the set
+    */
+   public boolean add(final long value)
+   {
+      if (value == 0)
+      {
+         if (containsZero)
+         {
+            return false;
+         }
+
+         containsZero = true;
+
+         size++;
+
+         return true;
+      }
+
+      int index = hash(value) & mask;
+
+      while (slots[index] != 0)
+      {
+         if (slots[index] == value)
+         {
+            return false;
+         }
+
+         index = (index + 1) & mask;
+      }
+
+      slots[index] = value;
+
+      if (++size >= resizeAt)
+      {
+         allocate(slots.length << 1);
+      }
+
+      return true;
+   }
+
+   public boolean contains(final long value)
+   {
+      if (value == 0)
+      {
+         return containsZero;
+      }
+
+      int index = hash(value) & mask;
+
+      while (slots[index] != 0)
+      {
+         if (slots[index] == value)
+         {
+            return true;
+         }
+
+         index = (index + 1) & mask;
+      }
+
+      return false;
+   }
+
+   public int size()
+   {
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      return size == 0;
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private static int hash(final long value)
+   {
+      int h = (int)(value ^ (value >>> 32));
+
+      // IDs are sequential, spread them over the table
+      return h * 0x9E3779B9;
+   }
+
+   private void allocate(final int capacity)
+   {
+      long[] oldSlots = slots;
+
+      slots = new long[capacity];
+
+      mask = capacity - 1;
+
+      resizeAt = capacity >> 1;
+
+      if (oldSlots != null)
+      {
+         for (long value : oldSlots)
+         {
+            if (value != 0)
+            {
+               int index = hash(value) & mask;
+
+               while (slots[index] != 0)
+               {
+                  index = (index + 1) & mask;
+               }
+
+               slots[index] = value;
+            }
+         }
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+}
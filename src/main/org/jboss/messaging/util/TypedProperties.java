@@ -49,6 +49,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.remoting.impl.ByteBufferWrapper;
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
 
 /**
@@ -57,6 +58,9 @@ import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
  * 
  * TODO - should have typed property getters and do conversions herein
  * 
+ * Decoded properties are kept in their encoded form until one of them is accessed, so a message that is only
+ * routed and passed on never creates its property values, and is encoded again with the bytes it was decoded from.
+ * 
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  * @author <a href="mailto:clebert.suconic@jboss.com">Clebert Suconic</a>
  *
@@ -69,13 +73,29 @@ public class TypedProperties
 
    private volatile int size;
 
+   /** The encoded properties, until they are decoded */
+   private volatile MessagingBuffer encoded;
+
+   private int encodedCount;
+
    public TypedProperties()
    {
    }
 
    public TypedProperties(final TypedProperties other)
    {
-      properties = other.properties == null ? null : new HashMap<SimpleString, PropertyValue>(other.properties);
+      MessagingBuffer otherEncoded = other.encoded;
+
+      if (otherEncoded != null)
+      {
+         // The encoded properties are never written to, so they can be shared
+         encodedCount = other.encodedCount;
+         encoded = otherEncoded;
+      }
+      else
+      {
+         properties = other.properties == null ? null : new HashMap<SimpleString, PropertyValue>(other.properties);
+      }
       size = other.size;
    }
 
@@ -151,6 +171,8 @@ public class TypedProperties
 
    public boolean containsProperty(final SimpleString key)
    {
+      checkDecoded();
+
       if (properties != null)
       {
          return properties.containsKey(key);
@@ -163,6 +185,8 @@ public class TypedProperties
 
    public Set<SimpleString> getPropertyNames()
    {
+      checkDecoded();
+
       if (properties != null)
       {
          return properties.keySet();
@@ -180,105 +204,55 @@ public class TypedProperties
       if (b == NULL)
       {
          properties = null;
+         encoded = null;
       }
       else
       {
          int numHeaders = buffer.getInt();
 
-         properties = new HashMap<SimpleString, PropertyValue>(numHeaders);
-         size = 0;
+         // The properties are only skipped here, and decoded when they are first accessed
+         int start = buffer.position();
 
          for (int i = 0; i < numHeaders; i++)
          {
-            int len = buffer.getInt();
-            byte[] data = new byte[len];
-            buffer.getBytes(data);
-            SimpleString key = new SimpleString(data);
+            skipProperty(buffer);
+         }
 
-            byte type = buffer.getByte();
+         int end = buffer.position();
 
-            PropertyValue val;
+         int limit = buffer.limit();
 
-            switch (type)
-            {
-               case NULL:
-               {
-                  val = new NullValue();
-                  doPutValue(key, val);
-                  break;
-               }
-               case CHAR:
-               {
-                  val = new CharValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case BOOLEAN:
-               {
-                  val = new BooleanValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case BYTE:
-               {
-                  val = new ByteValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case BYTES:
-               {
-                  val = new BytesValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case SHORT:
-               {
-                  val = new ShortValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case INT:
-               {
-                  val = new IntValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case LONG:
-               {
-                  val = new LongValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case FLOAT:
-               {
-                  val = new FloatValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case DOUBLE:
-               {
-                  val = new DoubleValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case STRING:
-               {
-                  val = new StringValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               default:
-               {
-                  throw new IllegalArgumentException("Invalid type: " + type);
-               }
-            }
-         }
+         buffer.position(start);
+
+         buffer.limit(end);
+
+         MessagingBuffer slice = buffer.slice();
+
+         buffer.limit(limit);
+
+         buffer.position(end);
+
+         properties = null;
+         size = end - start;
+         encodedCount = numHeaders;
+         encoded = slice;
       }
    }
 
    public void encode(final MessagingBuffer buffer)
    {
-      if (properties == null)
+      MessagingBuffer bytes = encoded;
+
+      if (bytes != null)
+      {
+         // Untouched since they were decoded, so they are written back as they were
+         buffer.putByte(NOT_NULL);
+
+         buffer.putInt(encodedCount);
+
+         buffer.putBytes(bytes.toByteBuffer(0, bytes.limit()));
+      }
+      else if (properties == null)
       {
          buffer.putByte(NULL);
       }
@@ -302,7 +276,7 @@ public class TypedProperties
 
    public int getEncodeSize()
    {
-      if (properties == null)
+      if (encoded == null && properties == null)
       {
          return SIZE_BYTE;
       }
@@ -315,16 +289,210 @@ public class TypedProperties
 
    public void clear()
    {
-      if (properties != null)
+      if (encoded != null)
+      {
+         properties = new HashMap<SimpleString, PropertyValue>();
+
+         encoded = null;
+      }
+      else if (properties != null)
       {
          properties.clear();
       }
+
+      size = 0;
    }
 
    // Private ------------------------------------------------------------------------------------
 
+   private void checkDecoded()
+   {
+      if (encoded != null)
+      {
+         decodeProperties();
+      }
+   }
+
+   private synchronized void decodeProperties()
+   {
+      if (encoded == null)
+      {
+         // Another thread got here first
+         return;
+      }
+
+      MessagingBuffer buffer = new ByteBufferWrapper(encoded.toByteBuffer(0, encoded.limit()));
+
+      Map<SimpleString, PropertyValue> map = new HashMap<SimpleString, PropertyValue>(encodedCount);
+
+      for (int i = 0; i < encodedCount; i++)
+      {
+         int len = buffer.getInt();
+         byte[] data = new byte[len];
+         buffer.getBytes(data);
+         SimpleString key = new SimpleString(data);
+
+         byte type = buffer.getByte();
+
+         PropertyValue val;
+
+         switch (type)
+         {
+            case NULL:
+            {
+               val = new NullValue();
+               map.put(key, val);
+               break;
+            }
+            case CHAR:
+            {
+               val = new CharValue(buffer);
+               map.put(key, val);
+               break;
+            }
+            case BOOLEAN:
+            {
+               val = new BooleanValue(buffer);
+               map.put(key, val);
+               break;
+            }
+            case BYTE:
+            {
+               val = new ByteValue(buffer);
+               map.put(key, val);
+               break;
+            }
+            case BYTES:
+            {
+               val = new BytesValue(buffer);
+               map.put(key, val);
+               break;
+            }
+            case SHORT:
+            {
+               val = new ShortValue(buffer);
+               map.put(key, val);
+               break;
+            }
+            case INT:
+            {
+               val = new IntValue(buffer);
+               map.put(key, val);
+               break;
+            }
+            case LONG:
+            {
+               val = new LongValue(buffer);
+               map.put(key, val);
+               break;
+            }
+            case FLOAT:
+            {
+               val = new FloatValue(buffer);
+               map.put(key, val);
+               break;
+            }
+            case DOUBLE:
+            {
+               val = new DoubleValue(buffer);
+               map.put(key, val);
+               break;
+            }
+            case STRING:
+            {
+               val = new StringValue(buffer);
+               map.put(key, val);
+               break;
+            }
+            default:
+            {
+               throw new IllegalArgumentException("Invalid type: " + type);
+            }
+         }
+      }
+
+      properties = map;
+
+      // Written last, so whoever sees it cleared also sees the properties
+      encoded = null;
+   }
+
+   private static void skipProperty(final MessagingBuffer buffer)
+   {
+      int keyLength = buffer.getInt();
+
+      buffer.position(buffer.position() + keyLength);
+
+      byte type = buffer.getByte();
+
+      int valueLength;
+
+      switch (type)
+      {
+         case NULL:
+         {
+            valueLength = 0;
+            break;
+         }
+         case CHAR:
+         {
+            valueLength = SIZE_CHAR;
+            break;
+         }
+         case BOOLEAN:
+         {
+            valueLength = SIZE_BOOLEAN;
+            break;
+         }
+         case BYTE:
+         {
+            valueLength = SIZE_BYTE;
+            break;
+         }
+         case SHORT:
+         {
+            valueLength = SIZE_SHORT;
+            break;
+         }
+         case INT:
+         {
+            valueLength = SIZE_INT;
+            break;
+         }
+         case LONG:
+         {
+            valueLength = SIZE_LONG;
+            break;
+         }
+         case FLOAT:
+         {
+            valueLength = SIZE_FLOAT;
+            break;
+         }
+         case DOUBLE:
+         {
+            valueLength = SIZE_DOUBLE;
+            break;
+         }
+         case BYTES:
+         case STRING:
+         {
+            valueLength = buffer.getInt();
+            break;
+         }
+         default:
+         {
+            throw new IllegalArgumentException("Invalid type: " + type);
+         }
+      }
+
+      buffer.position(buffer.position() + valueLength);
+   }
+
    private void checkCreateProperties()
    {
+      checkDecoded();
+
       if (properties == null)
       {
          properties = new HashMap<SimpleString, PropertyValue>();
@@ -346,6 +514,8 @@ public class TypedProperties
 
    private Object doRemoveProperty(final SimpleString key)
    {
+      checkDecoded();
+
       if (properties == null)
       {
          return null;
@@ -367,6 +537,8 @@ public class TypedProperties
 
    private Object doGetProperty(final Object key)
    {
+      checkDecoded();
+
       if (properties == null)
       {
          return null;
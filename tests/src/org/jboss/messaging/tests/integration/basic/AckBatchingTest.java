@@ -0,0 +1,203 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.integration.basic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.messaging.core.client.ClientConsumer;
+import org.jboss.messaging.core.client.ClientMessage;
+import org.jboss.messaging.core.client.ClientProducer;
+import org.jboss.messaging.core.client.ClientSession;
+import org.jboss.messaging.core.client.ClientSessionFactory;
+import org.jboss.messaging.core.client.impl.ClientConsumerInternal;
+import org.jboss.messaging.core.client.impl.ClientSessionFactoryImpl;
+import org.jboss.messaging.core.config.Configuration;
+import org.jboss.messaging.core.config.TransportConfiguration;
+import org.jboss.messaging.core.config.impl.ConfigurationImpl;
+import org.jboss.messaging.core.exception.MessagingException;
+import org.jboss.messaging.core.remoting.Interceptor;
+import org.jboss.messaging.core.remoting.Packet;
+import org.jboss.messaging.core.remoting.RemotingConnection;
+import org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl;
+import org.jboss.messaging.core.server.MessagingService;
+import org.jboss.messaging.core.server.Queue;
+import org.jboss.messaging.core.server.impl.MessagingServiceImpl;
+import org.jboss.messaging.jms.client.JBossTextMessage;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * A AckBatchingTest
+ *
+ */
+public class AckBatchingTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString QUEUE = new SimpleString("AckBatchingTestQueue");
+
+   // Attributes ----------------------------------------------------
+
+   private MessagingService messagingService;
+
+   private ClientSession session;
+
+   private Queue queue;
+
+   private final AtomicInteger acks = new AtomicInteger();
+
+   // Public --------------------------------------------------------
+
+   public void testAcksSentWhenBatchFull() throws Exception
+   {
+      ClientConsumer consumer = createConsumerWithMessages(25);
+
+      for (int i = 0; i < 25; i++)
+      {
+         ClientMessage message = consumer.receive(1000);
+
+         assertNotNull(message);
+
+         message.acknowledge();
+      }
+
+      assertEquals(2, acks.get());
+
+      assertEquals(5, queue.getDeliveringCount());
+
+      // The consumer has nothing left to deliver, so the rest is sent
+      assertNull(consumer.receiveImmediate());
+
+      assertEquals(3, acks.get());
+
+      assertEquals(0, queue.getDeliveringCount());
+
+      assertEquals(0, queue.getMessageCount());
+   }
+
+   public void testAcksSentOnConsumerClose() throws Exception
+   {
+      ClientConsumer consumer = createConsumerWithMessages(5);
+
+      for (int i = 0; i < 3; i++)
+      {
+         consumer.receive(1000).acknowledge();
+      }
+
+      assertEquals(0, acks.get());
+
+      consumer.close();
+
+      assertEquals(1, acks.get());
+
+      // Only the messages that weren't acknowledged are returned to the queue
+      assertEquals(2, queue.getMessageCount());
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      Configuration conf = new ConfigurationImpl();
+
+      conf.setSecurityEnabled(false);
+
+      conf.getAcceptorConfigurations().add(new TransportConfiguration("org.jboss.messaging.core.remoting.impl.invm.InVMAcceptorFactory"));
+
+      messagingService = MessagingServiceImpl.newNullStorageMessagingServer(conf);
+
+      messagingService.start();
+
+      messagingService.getServer().getRemotingService().addInterceptor(new Interceptor()
+      {
+         public boolean intercept(final Packet packet, final RemotingConnection connection) throws MessagingException
+         {
+            if (packet.getType() == PacketImpl.SESS_ACKNOWLEDGE)
+            {
+               acks.incrementAndGet();
+            }
+
+            return true;
+         }
+      });
+
+      ClientSessionFactory sf = new ClientSessionFactoryImpl(new TransportConfiguration("org.jboss.messaging.core.remoting.impl.invm.InVMConnectorFactory"));
+
+      // So acknowledgements have reached the server when the calls return
+      sf.setBlockOnAcknowledge(true);
+
+      session = sf.createSession(null, null, false, true, true, false, 10);
+
+      session.createQueue(QUEUE, QUEUE, null, false, false);
+
+      queue = messagingService.getServer().getPostOffice().getBinding(QUEUE).getQueue();
+   }
+
+   protected void tearDown() throws Exception
+   {
+      session.close();
+
+      messagingService.stop();
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * @return a consumer with all the messages already in its buffer, so it doesn't go idle until they are received
+    */
+   private ClientConsumer createConsumerWithMessages(final int numMessages) throws Exception
+   {
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createClientMessage(JBossTextMessage.TYPE, false, 0,
+                                                             System.currentTimeMillis(), (byte)1);
+         message.getBody().putString("message" + i);
+         message.getBody().flip();
+         producer.send(message);
+      }
+
+      ClientConsumerInternal consumer = (ClientConsumerInternal)session.createConsumer(QUEUE);
+
+      session.start();
+
+      long start = System.currentTimeMillis();
+
+      while (consumer.getBufferSize() < numMessages && System.currentTimeMillis() - start < 10000)
+      {
+         Thread.sleep(10);
+      }
+
+      assertEquals(numMessages, consumer.getBufferSize());
+
+      acks.set(0);
+
+      return consumer;
+   }
+}
@@ -0,0 +1,400 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.integration.basic;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.messaging.core.client.AcknowledgementHandler;
+import org.jboss.messaging.core.client.ClientConsumer;
+import org.jboss.messaging.core.client.ClientMessage;
+import org.jboss.messaging.core.client.ClientProducer;
+import org.jboss.messaging.core.client.ClientSession;
+import org.jboss.messaging.core.client.ClientSessionFactory;
+import org.jboss.messaging.core.client.impl.ClientSessionFactoryImpl;
+import org.jboss.messaging.core.config.Configuration;
+import org.jboss.messaging.core.config.TransportConfiguration;
+import org.jboss.messaging.core.config.impl.ConfigurationImpl;
+import org.jboss.messaging.core.exception.MessagingException;
+import org.jboss.messaging.core.remoting.Interceptor;
+import org.jboss.messaging.core.remoting.Packet;
+import org.jboss.messaging.core.remoting.RemotingConnection;
+import org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl;
+import org.jboss.messaging.core.server.MessagingService;
+import org.jboss.messaging.core.server.Queue;
+import org.jboss.messaging.core.server.impl.MessagingServiceImpl;
+import org.jboss.messaging.jms.client.JBossTextMessage;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * A BatchSendTest
+ *
+ */
+public class BatchSendTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString QUEUE = new SimpleString("BatchSendTestQueue");
+
+   private static final String ACCEPTOR_FACTORY = "org.jboss.messaging.core.remoting.impl.invm.InVMAcceptorFactory";
+
+   private static final String CONNECTOR_FACTORY = "org.jboss.messaging.core.remoting.impl.invm.InVMConnectorFactory";
+
+   // Attributes ----------------------------------------------------
+
+   private final String journalDir = System.getProperty("java.io.tmpdir", "/tmp") + "/batch-send-test/journal";
+
+   private final String bindingsDir = System.getProperty("java.io.tmpdir", "/tmp") + "/batch-send-test/bindings";
+
+   private final String pageDir = System.getProperty("java.io.tmpdir", "/tmp") + "/batch-send-test/page";
+
+   private Configuration configuration;
+
+   private MessagingService messagingService;
+
+   private ClientSessionFactory sf;
+
+   private ClientSession session;
+
+   private final AtomicInteger sends = new AtomicInteger();
+
+   private final AtomicInteger batchSends = new AtomicInteger();
+
+   // Public --------------------------------------------------------
+
+   public void testSentInOnePacket() throws Exception
+   {
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      producer.send(createMessages(50, true));
+
+      // The send doesn't wait for the server, the packet has been handled once the messages are there
+      receive(50);
+
+      assertEquals(1, batchSends.get());
+      assertEquals(0, sends.get());
+   }
+
+   public void testBlockingSendReturnsOnceStored() throws Exception
+   {
+      session.close();
+
+      sf.setBlockOnPersistentSend(true);
+
+      session = sf.createSession(false, true, true, false);
+
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      producer.send(createMessages(20, true));
+
+      assertEquals(20, getQueue().getMessageCount());
+   }
+
+   public void testConfirmedPerMessage() throws Exception
+   {
+      session.close();
+
+      sf.setProducerConfirmationWindowSize(10);
+
+      session = sf.createSession(false, true, true, false);
+
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      final List<Long> confirmed = new ArrayList<Long>();
+
+      final CountDownLatch latch = new CountDownLatch(25);
+
+      producer.registerAcknowledgementHandler(new AcknowledgementHandler()
+      {
+         public void onAcknowledgement(final long id)
+         {
+            synchronized (confirmed)
+            {
+               confirmed.add(id);
+            }
+
+            latch.countDown();
+         }
+
+         public void onFailure(final long id, final MessagingException exception)
+         {
+            fail("Send " + id + " failed: " + exception);
+         }
+      });
+
+      // Larger than the window, so sent in batches of the window size
+      producer.send(createMessages(25, true));
+
+      assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+
+      assertEquals(3, batchSends.get());
+
+      for (int i = 0; i < 25; i++)
+      {
+         assertEquals(i, confirmed.get(i).longValue());
+      }
+
+      receive(25);
+   }
+
+   public void testBatchesKeepOrderBehindConfirmedSends() throws Exception
+   {
+      session.close();
+
+      sf.setProducerConfirmationWindowSize(100);
+
+      session = sf.createSession(false, true, true, false);
+
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      final CountDownLatch latch = new CountDownLatch(40);
+
+      producer.registerAcknowledgementHandler(new AcknowledgementHandler()
+      {
+         public void onAcknowledgement(final long id)
+         {
+            latch.countDown();
+         }
+
+         public void onFailure(final long id, final MessagingException exception)
+         {
+            fail("Send " + id + " failed: " + exception);
+         }
+      });
+
+      List<ClientMessage> messages = createMessages(40, true);
+
+      for (int i = 0; i < messages.size(); i += 10)
+      {
+         // Single sends, which may still be waiting on the disk when the batch behind them arrives
+         for (int j = i; j < i + 5; j++)
+         {
+            producer.send(messages.get(j));
+         }
+
+         producer.send(messages.subList(i + 5, i + 10));
+      }
+
+      assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+
+      assertEquals(20, sends.get());
+      assertEquals(4, batchSends.get());
+
+      receive(40);
+   }
+
+   public void testSentInTransaction() throws Exception
+   {
+      session.close();
+
+      session = sf.createSession(false, false, true, false);
+
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      producer.send(createMessages(10, true));
+
+      producer.send(createMessages(10, false));
+
+      assertEquals(0, getQueue().getMessageCount());
+
+      session.commit();
+
+      assertEquals(20, getQueue().getMessageCount());
+   }
+
+   public void testAnonymousProducerSendsToEachDestination() throws Exception
+   {
+      SimpleString otherQueue = new SimpleString("BatchSendTestOtherQueue");
+
+      session.createQueue(otherQueue, otherQueue, null, true, false);
+
+      ClientProducer producer = session.createProducer(null);
+
+      List<ClientMessage> messages = createMessages(20, true);
+
+      for (int i = 0; i < messages.size(); i++)
+      {
+         messages.get(i).setDestination(i % 2 == 0 ? QUEUE : otherQueue);
+      }
+
+      producer.send(messages);
+
+      ClientConsumer consumer = session.createConsumer(otherQueue);
+
+      session.start();
+
+      for (int i = 1; i < 20; i += 2)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         assertNotNull(message);
+
+         assertEquals("message" + i, message.getBody().getString());
+
+         message.acknowledge();
+      }
+
+      assertNull(consumer.receiveImmediate());
+
+      // The packet has been handled once the messages are there
+      assertEquals(1, batchSends.get());
+
+      assertEquals(10, getQueue().getMessageCount());
+   }
+
+   public void testDurableMessagesSurviveRestart() throws Exception
+   {
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      producer.send(createMessages(30, true));
+
+      session.close();
+
+      messagingService.stop();
+
+      messagingService = MessagingServiceImpl.newNioStorageMessagingServer(configuration, journalDir, bindingsDir);
+
+      messagingService.start();
+
+      session = sf.createSession(false, true, true, false);
+
+      receive(30);
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      for (String dir : new String[] { journalDir, bindingsDir, pageDir })
+      {
+         File file = new File(dir);
+
+         deleteDirectory(file);
+
+         file.mkdirs();
+      }
+
+      configuration = new ConfigurationImpl();
+
+      configuration.setSecurityEnabled(false);
+
+      configuration.setJournalMinFiles(2);
+
+      configuration.setPagingDirectory(pageDir);
+
+      configuration.getAcceptorConfigurations().add(new TransportConfiguration(ACCEPTOR_FACTORY));
+
+      messagingService = MessagingServiceImpl.newNioStorageMessagingServer(configuration, journalDir, bindingsDir);
+
+      messagingService.start();
+
+      messagingService.getServer().getRemotingService().addInterceptor(new Interceptor()
+      {
+         public boolean intercept(final Packet packet, final RemotingConnection connection) throws MessagingException
+         {
+            if (packet.getType() == PacketImpl.SESS_SEND)
+            {
+               sends.incrementAndGet();
+            }
+            else if (packet.getType() == PacketImpl.SESS_SEND_BATCH)
+            {
+               batchSends.incrementAndGet();
+            }
+
+            return true;
+         }
+      });
+
+      sf = new ClientSessionFactoryImpl(new TransportConfiguration(CONNECTOR_FACTORY));
+
+      session = sf.createSession(false, true, true, false);
+
+      session.createQueue(QUEUE, QUEUE, null, true, false);
+   }
+
+   protected void tearDown() throws Exception
+   {
+      if (session != null)
+      {
+         session.close();
+      }
+
+      if (messagingService != null && messagingService.isStarted())
+      {
+         messagingService.stop();
+      }
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private Queue getQueue() throws Exception
+   {
+      return messagingService.getServer().getPostOffice().getBinding(QUEUE).getQueue();
+   }
+
+   private List<ClientMessage> createMessages(final int numMessages, final boolean durable)
+   {
+      List<ClientMessage> messages = new ArrayList<ClientMessage>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createClientMessage(JBossTextMessage.TYPE, durable, 0,
+                                                             System.currentTimeMillis(), (byte)1);
+         message.getBody().putString("message" + i);
+         message.getBody().flip();
+         messages.add(message);
+      }
+
+      return messages;
+   }
+
+   private void receive(final int numMessages) throws Exception
+   {
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+
+      session.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         assertNotNull(message);
+
+         assertEquals("message" + i, message.getBody().getString());
+
+         message.acknowledge();
+      }
+
+      assertNull(consumer.receiveImmediate());
+   }
+}
@@ -0,0 +1,220 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.integration.basic;
+
+import org.jboss.messaging.core.client.ClientConsumer;
+import org.jboss.messaging.core.client.ClientMessage;
+import org.jboss.messaging.core.client.ClientProducer;
+import org.jboss.messaging.core.client.ClientSession;
+import org.jboss.messaging.core.client.ClientSessionFactory;
+import org.jboss.messaging.core.client.impl.ClientSessionFactoryImpl;
+import org.jboss.messaging.core.config.Configuration;
+import org.jboss.messaging.core.config.TransportConfiguration;
+import org.jboss.messaging.core.config.impl.ConfigurationImpl;
+import org.jboss.messaging.core.server.MessagingService;
+import org.jboss.messaging.core.server.impl.MessagingServiceImpl;
+import org.jboss.messaging.jms.client.JBossTextMessage;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * A DeliveryBatchingTest
+ *
+ * Over in-vm the batches are handed to the client as they are, over netty they are encoded and decoded.
+ *
+ */
+public class DeliveryBatchingTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString QUEUE = new SimpleString("DeliveryBatchingTestQueue");
+
+   private static final String INVM_ACCEPTOR = "org.jboss.messaging.core.remoting.impl.invm.InVMAcceptorFactory";
+
+   private static final String INVM_CONNECTOR = "org.jboss.messaging.core.remoting.impl.invm.InVMConnectorFactory";
+
+   private static final String NETTY_ACCEPTOR = "org.jboss.messaging.core.remoting.impl.netty.NettyAcceptorFactory";
+
+   private static final String NETTY_CONNECTOR = "org.jboss.messaging.core.remoting.impl.netty.NettyConnectorFactory";
+
+   // Attributes ----------------------------------------------------
+
+   private MessagingService messagingService;
+
+   private ClientSession session;
+
+   // Public --------------------------------------------------------
+
+   public void testDeliveredInOrderInVM() throws Exception
+   {
+      start(INVM_ACCEPTOR, INVM_CONNECTOR, 10, -1);
+
+      sendAndReceive(55);
+   }
+
+   public void testDeliveredInOrderNetty() throws Exception
+   {
+      start(NETTY_ACCEPTOR, NETTY_CONNECTOR, 10, -1);
+
+      sendAndReceive(55);
+   }
+
+   public void testDeliveredInOrderBytesLimit() throws Exception
+   {
+      // Less than the size of two messages, so they are mostly sent one by one
+      start(NETTY_ACCEPTOR, NETTY_CONNECTOR, 10, 100);
+
+      sendAndReceive(20);
+   }
+
+   public void testDeliveredInOrderNotBatched() throws Exception
+   {
+      start(NETTY_ACCEPTOR, NETTY_CONNECTOR, 1, -1);
+
+      sendAndReceive(20);
+   }
+
+   public void testDeliveryCountsKeptNetty() throws Exception
+   {
+      start(NETTY_ACCEPTOR, NETTY_CONNECTOR, 10, -1);
+
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+
+      session.start();
+
+      send(25);
+
+      receive(consumer, 25, 1);
+
+      session.rollback();
+
+      receive(consumer, 25, 2);
+
+      session.commit();
+
+      assertNull(consumer.receiveImmediate());
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void tearDown() throws Exception
+   {
+      if (session != null)
+      {
+         session.close();
+
+         session = null;
+      }
+
+      if (messagingService != null)
+      {
+         messagingService.stop();
+
+         messagingService = null;
+      }
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private void start(final String acceptor,
+                      final String connector,
+                      final int batchSize,
+                      final int batchBytes) throws Exception
+   {
+      Configuration conf = new ConfigurationImpl();
+
+      conf.setSecurityEnabled(false);
+
+      conf.setConsumerDeliveryBatchSize(batchSize);
+
+      conf.setConsumerDeliveryBatchBytes(batchBytes);
+
+      conf.getAcceptorConfigurations().add(new TransportConfiguration(acceptor));
+
+      messagingService = MessagingServiceImpl.newNullStorageMessagingServer(conf);
+
+      messagingService.start();
+
+      ClientSessionFactory sf = new ClientSessionFactoryImpl(new TransportConfiguration(connector));
+
+      session = sf.createSession(false, false, false, false);
+
+      session.createQueue(QUEUE, QUEUE, null, false, false);
+   }
+
+   private void sendAndReceive(final int numMessages) throws Exception
+   {
+      // Sent before the consumer is created, so the queue delivers them in as few goes as it can
+      send(numMessages);
+
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+
+      session.start();
+
+      receive(consumer, numMessages, 1);
+
+      session.commit();
+
+      assertNull(consumer.receiveImmediate());
+
+      assertEquals(0, messagingService.getServer().getPostOffice().getBinding(QUEUE).getQueue().getMessageCount());
+   }
+
+   private void send(final int numMessages) throws Exception
+   {
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createClientMessage(JBossTextMessage.TYPE, false, 0,
+                                                             System.currentTimeMillis(), (byte)1);
+         message.putIntProperty(new SimpleString("count"), i);
+         message.getBody().putString("message" + i);
+         message.getBody().flip();
+         producer.send(message);
+      }
+
+      session.commit();
+   }
+
+   private void receive(final ClientConsumer consumer, final int numMessages, final int deliveryCount) throws Exception
+   {
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         assertNotNull(message);
+
+         assertEquals(i, message.getProperty(new SimpleString("count")));
+
+         assertEquals("message" + i, message.getBody().getString());
+
+         assertEquals(deliveryCount, message.getDeliveryCount());
+
+         message.acknowledge();
+      }
+   }
+}
@@ -0,0 +1,204 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.integration.basic;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.messaging.core.client.ClientConsumer;
+import org.jboss.messaging.core.client.ClientMessage;
+import org.jboss.messaging.core.client.ClientProducer;
+import org.jboss.messaging.core.client.ClientSession;
+import org.jboss.messaging.core.client.ClientSessionFactory;
+import org.jboss.messaging.core.client.impl.ClientSessionFactoryImpl;
+import org.jboss.messaging.core.config.Configuration;
+import org.jboss.messaging.core.config.TransportConfiguration;
+import org.jboss.messaging.core.config.impl.ConfigurationImpl;
+import org.jboss.messaging.core.paging.PagingStore;
+import org.jboss.messaging.core.postoffice.FlowController;
+import org.jboss.messaging.core.server.MessagingService;
+import org.jboss.messaging.core.server.impl.MessagingServiceImpl;
+import org.jboss.messaging.core.settings.impl.QueueSettings;
+import org.jboss.messaging.jms.client.JBossBytesMessage;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * A ProducerFlowControlTest
+ *
+ */
+public class ProducerFlowControlTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString QUEUE = new SimpleString("ProducerFlowControlTestQueue");
+
+   private static final SimpleString ID = new SimpleString("id");
+
+   private static final int MAX_SIZE = 10 * 1024;
+
+   private static final int PAGE_SIZE = 2 * 1024;
+
+   private static final int WINDOW_SIZE = 1024;
+
+   private static final int MESSAGE_SIZE = 512;
+
+   private static final int NUMBER_OF_MESSAGES = 200;
+
+   // Attributes ----------------------------------------------------
+
+   private final String testDir = System.getProperty("java.io.tmpdir", "/tmp") + "/producer-flow-control-test";
+
+   private MessagingService messagingService;
+
+   // Public --------------------------------------------------------
+
+   public void testProducerBlockedWhileAddressFull() throws Exception
+   {
+      ClientSessionFactory sf = new ClientSessionFactoryImpl(new TransportConfiguration("org.jboss.messaging.core.remoting.impl.invm.InVMConnectorFactory"));
+
+      sf.setProducerWindowSize(WINDOW_SIZE);
+
+      final ClientSession session = sf.createSession(false, true, true, false);
+
+      session.createQueue(QUEUE, QUEUE, null, false, false);
+
+      final ClientProducer producer = session.createProducer(QUEUE);
+
+      final AtomicInteger sent = new AtomicInteger(0);
+
+      final Exception[] failure = new Exception[1];
+
+      Thread sender = new Thread()
+      {
+         public void run()
+         {
+            try
+            {
+               for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+               {
+                  ClientMessage message = session.createClientMessage(JBossBytesMessage.TYPE,
+                                                                      false,
+                                                                      0,
+                                                                      System.currentTimeMillis(),
+                                                                      (byte)1);
+                  message.putIntProperty(ID, i);
+                  message.getBody().putBytes(new byte[MESSAGE_SIZE]);
+                  message.getBody().flip();
+                  producer.send(message);
+                  sent.incrementAndGet();
+               }
+            }
+            catch (Exception e)
+            {
+               failure[0] = e;
+            }
+         }
+      };
+
+      sender.start();
+
+      FlowController flowController = messagingService.getServer().getPostOffice().getFlowController(QUEUE);
+
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (flowController.getWaitingProducerCount() == 0 && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      assertEquals(1, flowController.getWaitingProducerCount());
+
+      // Give the producer time to go past its window, if it could
+      Thread.sleep(200);
+
+      assertTrue("Producer should be blocked", sent.get() < NUMBER_OF_MESSAGES);
+
+      PagingStore store = messagingService.getServer().getPostOffice().getPagingManager().getPageStore(QUEUE);
+
+      // The address is only overshot by what the producer could send with the credits it had
+      assertTrue(store.getAddressSize() <= MAX_SIZE + 2 * WINDOW_SIZE);
+
+      session.start();
+
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull("Didn't receive message " + i, message);
+         assertEquals(i, message.getProperty(ID));
+         message.acknowledge();
+      }
+
+      sender.join(5000);
+
+      assertFalse(sender.isAlive());
+
+      assertNull(failure[0]);
+
+      assertEquals(0, flowController.getWaitingProducerCount());
+
+      assertTrue(flowController.getGrantedCredits() >= NUMBER_OF_MESSAGES * MESSAGE_SIZE);
+
+      session.close();
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      deleteDirectory(new File(testDir));
+
+      Configuration conf = new ConfigurationImpl();
+
+      conf.setSecurityEnabled(false);
+
+      conf.setPagingDirectory(testDir + "/page");
+
+      conf.getAcceptorConfigurations().add(new TransportConfiguration("org.jboss.messaging.core.remoting.impl.invm.InVMAcceptorFactory"));
+
+      messagingService = MessagingServiceImpl.newNullStorageMessagingServer(conf);
+
+      QueueSettings settings = new QueueSettings();
+      settings.setMaxSizeBytes(MAX_SIZE);
+      settings.setPageSizeBytes(PAGE_SIZE);
+      settings.setBlockProducersWhenFull(true);
+
+      messagingService.getServer().getQueueSettingsRepository().addMatch(QUEUE.toString(), settings);
+
+      messagingService.start();
+   }
+
+   protected void tearDown() throws Exception
+   {
+      messagingService.stop();
+
+      deleteDirectory(new File(testDir));
+
+      super.tearDown();
+   }
+}
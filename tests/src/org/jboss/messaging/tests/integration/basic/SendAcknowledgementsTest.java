@@ -0,0 +1,288 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.integration.basic;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.messaging.core.client.AcknowledgementHandler;
+import org.jboss.messaging.core.client.ClientConsumer;
+import org.jboss.messaging.core.client.ClientMessage;
+import org.jboss.messaging.core.client.ClientProducer;
+import org.jboss.messaging.core.client.ClientSession;
+import org.jboss.messaging.core.client.ClientSessionFactory;
+import org.jboss.messaging.core.client.impl.ClientSessionFactoryImpl;
+import org.jboss.messaging.core.config.Configuration;
+import org.jboss.messaging.core.config.TransportConfiguration;
+import org.jboss.messaging.core.config.impl.ConfigurationImpl;
+import org.jboss.messaging.core.exception.MessagingException;
+import org.jboss.messaging.core.security.Role;
+import org.jboss.messaging.core.server.MessagingService;
+import org.jboss.messaging.core.server.impl.MessagingServiceImpl;
+import org.jboss.messaging.jms.client.JBossTextMessage;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * A SendAcknowledgementsTest
+ *
+ */
+public class SendAcknowledgementsTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString QUEUE = new SimpleString("SendAcknowledgementsTestQueue");
+
+   private static final SimpleString READ_ONLY_QUEUE = new SimpleString("SendAcknowledgementsTestReadOnlyQueue");
+
+   // Attributes ----------------------------------------------------
+
+   private MessagingService messagingService;
+
+   // Public --------------------------------------------------------
+
+   public void testSendAcknowledgements() throws Exception
+   {
+      ClientSessionFactory sf = new ClientSessionFactoryImpl(new TransportConfiguration("org.jboss.messaging.core.remoting.impl.invm.InVMConnectorFactory"));
+
+      // Smaller than the number of messages so the window has to be refilled by confirmations
+      sf.setProducerConfirmationWindowSize(10);
+
+      ClientSession session = sf.createSession(false, true, true, false);
+
+      session.createQueue(QUEUE, QUEUE, null, false, false);
+
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      final int numMessages = 100;
+
+      final boolean[] confirmed = new boolean[numMessages];
+
+      final CountDownLatch latch = new CountDownLatch(numMessages);
+
+      producer.registerAcknowledgementHandler(new AcknowledgementHandler()
+      {
+         public void onAcknowledgement(final long id)
+         {
+            confirmed[(int)id] = true;
+
+            latch.countDown();
+         }
+
+         public void onFailure(final long id, final MessagingException exception)
+         {
+            fail("Send " + id + " failed: " + exception);
+         }
+      });
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createClientMessage(JBossTextMessage.TYPE, true, 0,
+                                                             System.currentTimeMillis(), (byte)1);
+         message.getBody().putString("message" + i);
+         message.getBody().flip();
+         producer.send(message);
+      }
+
+      assertTrue(latch.await(10000, TimeUnit.MILLISECONDS));
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         assertTrue("Send " + i + " not confirmed", confirmed[i]);
+      }
+
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+
+      session.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(1000);
+
+         assertNotNull(message);
+
+         assertEquals("message" + i, message.getBody().getString());
+
+         message.acknowledge();
+      }
+
+      session.close();
+   }
+
+   public void testSendFailuresWithoutWritePermission() throws Exception
+   {
+      ClientSessionFactory sf = new ClientSessionFactoryImpl(new TransportConfiguration("org.jboss.messaging.core.remoting.impl.invm.InVMConnectorFactory"));
+
+      // Smaller than the number of messages so the window has to be released by the failures
+      sf.setProducerConfirmationWindowSize(10);
+
+      ClientSession session = sf.createSession(false, true, true, false);
+
+      session.createQueue(READ_ONLY_QUEUE, READ_ONLY_QUEUE, null, false, false);
+
+      ClientProducer producer = session.createProducer(READ_ONLY_QUEUE);
+
+      final int numMessages = 100;
+
+      final MessagingException[] failures = new MessagingException[numMessages];
+
+      final CountDownLatch latch = new CountDownLatch(numMessages);
+
+      producer.registerAcknowledgementHandler(new AcknowledgementHandler()
+      {
+         public void onAcknowledgement(final long id)
+         {
+            fail("Send " + id + " confirmed without write permission");
+         }
+
+         public void onFailure(final long id, final MessagingException exception)
+         {
+            failures[(int)id] = exception;
+
+            latch.countDown();
+         }
+      });
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createClientMessage(JBossTextMessage.TYPE, true, 0,
+                                                             System.currentTimeMillis(), (byte)1);
+         message.getBody().putString("message" + i);
+         message.getBody().flip();
+         producer.send(message);
+      }
+
+      assertTrue(latch.await(10000, TimeUnit.MILLISECONDS));
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         assertNotNull("Send " + i + " not failed", failures[i]);
+
+         assertEquals(MessagingException.SECURITY_EXCEPTION, failures[i].getCode());
+      }
+
+      ClientConsumer consumer = session.createConsumer(READ_ONLY_QUEUE);
+
+      session.start();
+
+      assertNull(consumer.receive(500));
+
+      session.close();
+   }
+
+   public void testBatchSendFailuresWithoutWritePermission() throws Exception
+   {
+      ClientSessionFactory sf = new ClientSessionFactoryImpl(new TransportConfiguration("org.jboss.messaging.core.remoting.impl.invm.InVMConnectorFactory"));
+
+      // The messages are sent in batches of the window size, each batch has to be released by its failures
+      sf.setProducerConfirmationWindowSize(10);
+
+      ClientSession session = sf.createSession(false, true, true, false);
+
+      session.createQueue(READ_ONLY_QUEUE, READ_ONLY_QUEUE, null, false, false);
+
+      ClientProducer producer = session.createProducer(READ_ONLY_QUEUE);
+
+      final int numMessages = 100;
+
+      final MessagingException[] failures = new MessagingException[numMessages];
+
+      final CountDownLatch latch = new CountDownLatch(numMessages);
+
+      producer.registerAcknowledgementHandler(new AcknowledgementHandler()
+      {
+         public void onAcknowledgement(final long id)
+         {
+            fail("Send " + id + " confirmed without write permission");
+         }
+
+         public void onFailure(final long id, final MessagingException exception)
+         {
+            failures[(int)id] = exception;
+
+            latch.countDown();
+         }
+      });
+
+      List<ClientMessage> messages = new ArrayList<ClientMessage>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createClientMessage(JBossTextMessage.TYPE, true, 0,
+                                                             System.currentTimeMillis(), (byte)1);
+         message.getBody().putString("message" + i);
+         message.getBody().flip();
+         messages.add(message);
+      }
+
+      producer.send(messages);
+
+      assertTrue(latch.await(10000, TimeUnit.MILLISECONDS));
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         assertNotNull("Send " + i + " not failed", failures[i]);
+
+         assertEquals(MessagingException.SECURITY_EXCEPTION, failures[i].getCode());
+      }
+
+      session.close();
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      Configuration conf = new ConfigurationImpl();
+
+      conf.setSecurityEnabled(true);
+
+      conf.getAcceptorConfigurations().add(new TransportConfiguration("org.jboss.messaging.core.remoting.impl.invm.InVMAcceptorFactory"));
+
+      messagingService = MessagingServiceImpl.newNullStorageMessagingServer(conf);
+
+      messagingService.start();
+
+      Set<Role> roles = new HashSet<Role>();
+      roles.add(new Role("guest", true, true, true));
+      messagingService.getServer().getSecurityRepository().addMatch(QUEUE.toString(), roles);
+
+      Set<Role> readOnlyRoles = new HashSet<Role>();
+      readOnlyRoles.add(new Role("guest", true, false, true));
+      messagingService.getServer().getSecurityRepository().addMatch(READ_ONLY_QUEUE.toString(), readOnlyRoles);
+   }
+
+   protected void tearDown() throws Exception
+   {
+      messagingService.stop();
+
+      super.tearDown();
+   }
+}
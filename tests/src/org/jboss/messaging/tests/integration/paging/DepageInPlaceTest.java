@@ -0,0 +1,220 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.integration.paging;
+
+import java.io.File;
+
+import org.jboss.messaging.core.client.ClientConsumer;
+import org.jboss.messaging.core.client.ClientMessage;
+import org.jboss.messaging.core.client.ClientProducer;
+import org.jboss.messaging.core.client.ClientSession;
+import org.jboss.messaging.core.client.ClientSessionFactory;
+import org.jboss.messaging.core.client.impl.ClientSessionFactoryImpl;
+import org.jboss.messaging.core.config.TransportConfiguration;
+import org.jboss.messaging.core.config.impl.ConfigurationImpl;
+import org.jboss.messaging.core.server.MessagingService;
+import org.jboss.messaging.core.server.impl.MessagingServiceImpl;
+import org.jboss.messaging.core.settings.impl.QueueSettings;
+import org.jboss.messaging.jms.client.JBossBytesMessage;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ * 
+ * A DepageInPlaceTest
+ * 
+ */
+public class DepageInPlaceTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final String ACCEPTOR_FACTORY = "org.jboss.messaging.core.remoting.impl.invm.InVMAcceptorFactory";
+
+   private static final String CONNECTOR_FACTORY = "org.jboss.messaging.core.remoting.impl.invm.InVMConnectorFactory";
+
+   private static final SimpleString ADDRESS = new SimpleString("DepageInPlaceTestQueue");
+
+   private static final SimpleString ID = new SimpleString("id");
+
+   private static final int NUMBER_OF_MESSAGES = 1000;
+
+   // Attributes ----------------------------------------------------
+
+   private final String journalDir = System.getProperty("java.io.tmpdir", "/tmp") + "/depage-in-place-test/journal";
+
+   private final String bindingsDir = System.getProperty("java.io.tmpdir", "/tmp") + "/depage-in-place-test/bindings";
+
+   private final String pageDir = System.getProperty("java.io.tmpdir", "/tmp") + "/depage-in-place-test/page";
+
+   private ConfigurationImpl configuration;
+
+   private MessagingService messagingService;
+
+   // Public --------------------------------------------------------
+
+   public void testDepagedMessagesKeptOnPage() throws Exception
+   {
+      startServer();
+
+      ClientSession session = createSession();
+
+      session.createQueue(ADDRESS, ADDRESS, null, true, false);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ClientMessage message = session.createClientMessage(JBossBytesMessage.TYPE,
+                                                             true,
+                                                             0,
+                                                             System.currentTimeMillis(),
+                                                             (byte)1);
+         message.putIntProperty(ID, i);
+         message.getBody().putBytes(new byte[512]);
+         message.getBody().flip();
+         producer.send(message);
+      }
+
+      session.start();
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES / 2; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(i, message.getProperty(ID));
+         message.acknowledge();
+      }
+
+      session.close();
+
+      assertTrue("Depaged messages should be kept on their pages", countFiles(".depaged") > 0);
+
+      messagingService.stop();
+
+      startServer();
+
+      session = createSession();
+
+      session.start();
+
+      consumer = session.createConsumer(ADDRESS);
+
+      for (int i = NUMBER_OF_MESSAGES / 2; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull("Didn't receive message " + i, message);
+         assertEquals(i, message.getProperty(ID));
+         message.acknowledge();
+      }
+
+      assertNull(consumer.receive(100));
+
+      session.close();
+
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (countFiles(".depaged") != 0 && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      assertEquals("Pages should be deleted once their messages are acknowledged", 0, countFiles(".depaged"));
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      deleteDirectory(new File(System.getProperty("java.io.tmpdir", "/tmp") + "/depage-in-place-test"));
+
+      new File(journalDir).mkdirs();
+
+      new File(bindingsDir).mkdirs();
+
+      new File(pageDir).mkdirs();
+
+      configuration = new ConfigurationImpl();
+      configuration.setSecurityEnabled(false);
+      configuration.setJournalMinFiles(2);
+      configuration.setPagingDirectory(pageDir);
+      configuration.getAcceptorConfigurations().add(new TransportConfiguration(ACCEPTOR_FACTORY));
+   }
+
+   protected void tearDown() throws Exception
+   {
+      if (messagingService != null && messagingService.isStarted())
+      {
+         messagingService.stop();
+      }
+
+      messagingService = null;
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private void startServer() throws Exception
+   {
+      messagingService = MessagingServiceImpl.newNioStorageMessagingServer(configuration, journalDir, bindingsDir);
+
+      QueueSettings settings = new QueueSettings();
+      settings.setMaxSizeBytes(100 * 1024);
+      settings.setPageSizeBytes(10 * 1024);
+      settings.setDepageInPlace(true);
+
+      messagingService.getServer().getQueueSettingsRepository().addMatch(ADDRESS.toString(), settings);
+
+      messagingService.start();
+   }
+
+   private ClientSession createSession() throws Exception
+   {
+      ClientSessionFactory sf = new ClientSessionFactoryImpl(new TransportConfiguration(CONNECTOR_FACTORY));
+
+      return sf.createSession(false, true, true, false);
+   }
+
+   private int countFiles(final String extension)
+   {
+      String[] files = new File(pageDir + "/" + ADDRESS).list();
+
+      int count = 0;
+
+      for (String file : files)
+      {
+         if (file.endsWith(extension))
+         {
+            count++;
+         }
+      }
+
+      return count;
+   }
+
+}
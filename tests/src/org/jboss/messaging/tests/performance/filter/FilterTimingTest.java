@@ -0,0 +1,255 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.performance.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.messaging.core.filter.Filter;
+import org.jboss.messaging.core.filter.impl.FilterImpl;
+import org.jboss.messaging.core.filter.impl.FilterParser;
+import org.jboss.messaging.core.filter.impl.Identifier;
+import org.jboss.messaging.core.filter.impl.Operator;
+import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.server.ServerMessage;
+import org.jboss.messaging.core.server.impl.ServerMessageImpl;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * Compares the compiled FilterImpl against the interpreted Operator tree it replaced.
+ *
+ * Each measurement is preceded by warm up iterations, and is repeated over a number of rounds,
+ * reporting the best round, in the same way a JMH benchmark would.
+ *
+ */
+public class FilterTimingTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(FilterTimingTest.class);
+
+   private static final String SELECTOR = "color = 'red' AND weight BETWEEN 10 AND 100 AND JBMPriority > 3";
+
+   private static final int WARMUP_ITERATIONS = 200000;
+
+   private static final int ITERATIONS = 1000000;
+
+   private static final int ROUNDS = 5;
+
+   // Attributes ----------------------------------------------------
+
+   private ServerMessage[] messages;
+
+   // Public --------------------------------------------------------
+
+   public void testInterpreted() throws Exception
+   {
+      final InterpretedFilter filter = new InterpretedFilter(SELECTOR);
+
+      printRate("Interpreted filter", measure(new Evaluator()
+      {
+         public boolean match(final ServerMessage message) throws Exception
+         {
+            return filter.match(message);
+         }
+      }, 1));
+   }
+
+   public void testCompiled() throws Exception
+   {
+      final Filter filter = new FilterImpl(new SimpleString(SELECTOR));
+
+      printRate("Compiled filter", measure(new Evaluator()
+      {
+         public boolean match(final ServerMessage message) throws Exception
+         {
+            return filter.match(message);
+         }
+      }, 1));
+   }
+
+   public void testCompiledMultiThread() throws Exception
+   {
+      final Filter filter = new FilterImpl(new SimpleString(SELECTOR));
+
+      printRate("Compiled filter, 4 threads sharing one filter", measure(new Evaluator()
+      {
+         public boolean match(final ServerMessage message) throws Exception
+         {
+            return filter.match(message);
+         }
+      }, 4));
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      messages = new ServerMessage[16];
+
+      for (int i = 0; i < messages.length; i++)
+      {
+         ServerMessage message = new ServerMessageImpl();
+
+         message.setPriority((byte)(i % 10));
+         message.putStringProperty(new SimpleString("color"), new SimpleString(i % 2 == 0 ? "red" : "blue"));
+         message.putIntProperty(new SimpleString("weight"), i * 10);
+
+         messages[i] = message;
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private void printRate(final String title, final double rate)
+   {
+      log.info(title + ": " + (long)rate + " evaluations per second");
+   }
+
+   /**
+    * @return the evaluations per second of the best round, summed over all threads
+    */
+   private double measure(final Evaluator evaluator, final int numberOfThreads) throws Exception
+   {
+      double best = 0;
+
+      run(evaluator, numberOfThreads, WARMUP_ITERATIONS);
+
+      for (int round = 0; round < ROUNDS; round++)
+      {
+         long start = System.nanoTime();
+
+         run(evaluator, numberOfThreads, ITERATIONS);
+
+         long time = System.nanoTime() - start;
+
+         double rate = (double)ITERATIONS * numberOfThreads * 1000000000l / time;
+
+         best = Math.max(best, rate);
+      }
+
+      return best;
+   }
+
+   private void run(final Evaluator evaluator, final int numberOfThreads, final int iterations) throws Exception
+   {
+      class LocalThread extends Thread
+      {
+         Exception e;
+
+         int matches;
+
+         public void run()
+         {
+            try
+            {
+               for (int i = 0; i < iterations; i++)
+               {
+                  if (evaluator.match(messages[i & 15]))
+                  {
+                     matches++;
+                  }
+               }
+            }
+            catch (Exception e)
+            {
+               this.e = e;
+            }
+         }
+      }
+
+      LocalThread[] threads = new LocalThread[numberOfThreads];
+
+      for (int i = 0; i < numberOfThreads; i++)
+      {
+         threads[i] = new LocalThread();
+         threads[i].start();
+      }
+
+      for (LocalThread thread : threads)
+      {
+         thread.join();
+
+         if (thread.e != null)
+         {
+            throw thread.e;
+         }
+
+         // color = 'red' on even messages, priority > 3 on 4,6,8, weight in range on 2 to 10
+         assertEquals(iterations / 16 * 3, thread.matches);
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private interface Evaluator
+   {
+      boolean match(ServerMessage message) throws Exception;
+   }
+
+   /**
+    * The interpreted evaluation FilterImpl used to do: set every Identifier, then apply the Operator tree.
+    * Not thread safe, which is why it's only measured from a single thread.
+    */
+   private static class InterpretedFilter
+   {
+      private final Map<String, Identifier> identifiers = new HashMap<String, Identifier>();
+
+      private final Operator operator;
+
+      InterpretedFilter(final String selector) throws Exception
+      {
+         operator = (Operator)new FilterParser().parse(selector, identifiers);
+      }
+
+      boolean match(final ServerMessage message) throws Exception
+      {
+         for (Identifier id : identifiers.values())
+         {
+            Object val = null;
+
+            if ("JBMPriority".equals(id.getName()))
+            {
+               val = new Integer(message.getPriority());
+            }
+            else
+            {
+               val = message.getProperty(new SimpleString(id.getName()));
+
+               if (val instanceof SimpleString)
+               {
+                  val = ((SimpleString)val).toString();
+               }
+            }
+
+            id.setValue(val);
+         }
+
+         return (Boolean)operator.apply();
+      }
+   }
+}
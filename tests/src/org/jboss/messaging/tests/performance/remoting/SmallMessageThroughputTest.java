@@ -0,0 +1,177 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.performance.remoting;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.messaging.core.client.ClientConsumer;
+import org.jboss.messaging.core.client.ClientMessage;
+import org.jboss.messaging.core.client.ClientProducer;
+import org.jboss.messaging.core.client.ClientSession;
+import org.jboss.messaging.core.client.ClientSessionFactory;
+import org.jboss.messaging.core.client.impl.ClientSessionFactoryImpl;
+import org.jboss.messaging.core.config.Configuration;
+import org.jboss.messaging.core.config.TransportConfiguration;
+import org.jboss.messaging.core.config.impl.ConfigurationImpl;
+import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.remoting.impl.netty.TransportConstants;
+import org.jboss.messaging.core.server.MessagingService;
+import org.jboss.messaging.core.server.impl.MessagingServiceImpl;
+import org.jboss.messaging.jms.client.JBossBytesMessage;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * Measures the throughput of small non persistent messages sent and consumed over Netty,
+ * with and without write batching on the connections.
+ *
+ */
+public class SmallMessageThroughputTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(SmallMessageThroughputTest.class);
+
+   private static final SimpleString QUEUE = new SimpleString("SmallMessageThroughputTestQueue");
+
+   private static final String ACCEPTOR_FACTORY = "org.jboss.messaging.core.remoting.impl.netty.NettyAcceptorFactory";
+
+   private static final String CONNECTOR_FACTORY = "org.jboss.messaging.core.remoting.impl.netty.NettyConnectorFactory";
+
+   private static final int MESSAGE_SIZE = 32;
+
+   private static final int WARMUP_MESSAGES = 20000;
+
+   private static final int MESSAGES = 100000;
+
+   private static final int ROUNDS = 3;
+
+   // Public --------------------------------------------------------
+
+   public void testUnbatched() throws Exception
+   {
+      printRate("Unbatched writes", measure(0));
+   }
+
+   public void testBatched() throws Exception
+   {
+      printRate("Writes batched for up to 1 ms", measure(1));
+   }
+
+   // Private -------------------------------------------------------
+
+   private void printRate(final String title, final double rate)
+   {
+      log.info(title + ": " + (long)rate + " messages per second");
+   }
+
+   /**
+    * @return the messages per second of the best round
+    */
+   private double measure(final long batchDelay) throws Exception
+   {
+      Map<String, Object> params = new HashMap<String, Object>();
+
+      params.put(TransportConstants.BATCH_DELAY_PROPNAME, batchDelay);
+
+      Configuration conf = new ConfigurationImpl();
+
+      conf.setSecurityEnabled(false);
+
+      conf.getAcceptorConfigurations().add(new TransportConfiguration(ACCEPTOR_FACTORY, params));
+
+      MessagingService messagingService = MessagingServiceImpl.newNullStorageMessagingServer(conf);
+
+      messagingService.start();
+
+      ClientSessionFactory sf = new ClientSessionFactoryImpl(new TransportConfiguration(CONNECTOR_FACTORY, params));
+
+      sf.setBlockOnNonPersistentSend(false);
+
+      sf.setBlockOnAcknowledge(false);
+
+      ClientSession session = sf.createSession(false, true, true, false);
+
+      try
+      {
+         session.createQueue(QUEUE, QUEUE, null, false, false);
+
+         ClientProducer producer = session.createProducer(QUEUE);
+
+         ClientConsumer consumer = session.createConsumer(QUEUE);
+
+         session.start();
+
+         run(session, producer, consumer, WARMUP_MESSAGES);
+
+         double best = 0;
+
+         for (int round = 0; round < ROUNDS; round++)
+         {
+            long start = System.nanoTime();
+
+            run(session, producer, consumer, MESSAGES);
+
+            long time = System.nanoTime() - start;
+
+            best = Math.max(best, (double)MESSAGES * 1000000000l / time);
+         }
+
+         return best;
+      }
+      finally
+      {
+         session.close();
+
+         messagingService.stop();
+      }
+   }
+
+   private void run(final ClientSession session,
+                    final ClientProducer producer,
+                    final ClientConsumer consumer,
+                    final int numMessages) throws Exception
+   {
+      byte[] body = new byte[MESSAGE_SIZE];
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createClientMessage(JBossBytesMessage.TYPE, false, 0,
+                                                             System.currentTimeMillis(), (byte)1);
+         message.getBody().putBytes(body);
+         message.getBody().flip();
+         producer.send(message);
+      }
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(10000);
+
+         assertNotNull("Only received " + i + " of " + numMessages, message);
+
+         message.acknowledge();
+      }
+   }
+}
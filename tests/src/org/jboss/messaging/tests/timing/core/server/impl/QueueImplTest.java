@@ -37,6 +37,7 @@ import org.jboss.messaging.core.server.HandleStatus;
 import org.jboss.messaging.core.server.MessageReference;
 import org.jboss.messaging.core.server.Queue;
 import org.jboss.messaging.core.server.impl.QueueImpl;
+import org.jboss.messaging.core.server.impl.ScheduledDeliveryWheel;
 import org.jboss.messaging.tests.unit.core.server.impl.fakes.FakeConsumer;
 import org.jboss.messaging.tests.util.UnitTestCase;
 import org.jboss.messaging.util.SimpleString;
@@ -54,11 +55,15 @@ public class QueueImplTest extends UnitTestCase
 
    private ScheduledExecutorService scheduledExecutor;
 
+   private ScheduledDeliveryWheel scheduledDeliveryWheel;
+
    public void setUp() throws Exception
    {
    	super.setUp();
 
    	scheduledExecutor = new ScheduledThreadPoolExecutor(1);
+
+   	scheduledDeliveryWheel = new ScheduledDeliveryWheel(scheduledExecutor);
    }
 
    public void tearDown() throws Exception
@@ -82,7 +87,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testScheduledNoConsumer() throws Exception
    {
-      Queue queue = new QueueImpl(1, new SimpleString("queue1"), null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, new SimpleString("queue1"), null, false, true, false, scheduledDeliveryWheel, null);
 
       //Send one scheduled
 
@@ -148,7 +153,7 @@ public class QueueImplTest extends UnitTestCase
 
    private void testScheduled(boolean direct)
    {
-      Queue queue = new QueueImpl(1, new SimpleString("queue1"), null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, new SimpleString("queue1"), null, false, true, false, scheduledDeliveryWheel, null);
 
       FakeConsumer consumer = null;
 
@@ -245,7 +250,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testDeleteAllReferences() throws Exception
    {
-      Queue queue = new QueueImpl(1, new SimpleString("queue1"), null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, new SimpleString("queue1"), null, false, true, false, scheduledDeliveryWheel, null);
 
       StorageManager storageManager = EasyMock.createStrictMock(StorageManager.class);
 
@@ -336,7 +341,7 @@ public class QueueImplTest extends UnitTestCase
    public void testDeliveryScheduled() throws Exception
    {
       Consumer consumer = EasyMock.createStrictMock(Consumer.class);
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, 1);
       final CountDownLatch countDownLatch = new CountDownLatch(1);
       EasyMock.expect(consumer.handle(messageReference)).andAnswer(new IAnswer<HandleStatus>()
@@ -361,7 +366,7 @@ public class QueueImplTest extends UnitTestCase
    public void testDeliveryScheduledBusyConsumer() throws Exception
    {
       Consumer consumer = EasyMock.createStrictMock(Consumer.class);
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, 1);
       final CountDownLatch countDownLatch = new CountDownLatch(1);
       EasyMock.expect(consumer.handle(messageReference)).andAnswer(new IAnswer<HandleStatus>()
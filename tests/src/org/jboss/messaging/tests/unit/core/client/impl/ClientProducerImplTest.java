@@ -22,8 +22,21 @@
 
 package org.jboss.messaging.tests.unit.core.client.impl;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.jboss.messaging.core.client.AcknowledgementHandler;
+import org.jboss.messaging.core.client.impl.ClientMessageImpl;
+import org.jboss.messaging.core.client.impl.ClientProducerImpl;
+import org.jboss.messaging.core.client.impl.ClientSessionInternal;
+import org.jboss.messaging.core.exception.MessagingException;
 import org.jboss.messaging.core.logging.Logger;
+import org.jboss.messaging.core.remoting.Channel;
+import org.jboss.messaging.core.remoting.impl.ByteBufferWrapper;
 import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
 
 /**
  * 
@@ -41,6 +54,73 @@ public class ClientProducerImplTest extends UnitTestCase
    public void testDummy()
    {      
    }
+
+   public void testFailedSendFreesItsPlaceInTheWindow() throws Exception
+   {
+      ClientSessionInternal session = EasyMock.createNiceMock(ClientSessionInternal.class);
+      Channel channel = EasyMock.createNiceMock(Channel.class);
+      EasyMock.replay(session, channel);
+
+      // A window of one send
+      final ClientProducerImpl producer = new ClientProducerImpl(session, 1, new SimpleString("address"), null,
+                                                                 false, false, null, -1, 1, channel);
+
+      final List<Long> acknowledged = new ArrayList<Long>();
+      final List<Long> failed = new ArrayList<Long>();
+
+      producer.registerAcknowledgementHandler(new AcknowledgementHandler()
+      {
+         public void onAcknowledgement(final long id)
+         {
+            acknowledged.add(id);
+         }
+
+         public void onFailure(final long id, final MessagingException exception)
+         {
+            assertEquals(MessagingException.INTERNAL_ERROR, exception.getCode());
+
+            failed.add(id);
+         }
+      });
+
+      producer.send(new ClientMessageImpl(true, new ByteBufferWrapper(ByteBuffer.allocate(10))));
+
+      producer.receiveFailure(0, new MessagingException(MessagingException.INTERNAL_ERROR, "disk full"));
+
+      assertEquals(1, failed.size());
+      assertEquals(0, failed.get(0).longValue());
+
+      // Failed twice, e.g. replayed on failover, the window isn't freed again
+      producer.receiveFailure(0, new MessagingException(MessagingException.INTERNAL_ERROR, "disk full"));
+
+      assertEquals(1, failed.size());
+
+      Thread sender = new Thread()
+      {
+         public void run()
+         {
+            try
+            {
+               producer.send(new ClientMessageImpl(true, new ByteBufferWrapper(ByteBuffer.allocate(10))));
+            }
+            catch (MessagingException e)
+            {
+               log.error("Failed to send", e);
+            }
+         }
+      };
+
+      sender.start();
+
+      sender.join(5000);
+
+      assertFalse(sender.isAlive());
+
+      producer.receiveConfirmations(new long[] { 1 });
+
+      assertEquals(1, acknowledged.size());
+      assertEquals(1, acknowledged.get(0).longValue());
+   }
    
 //   public void testConstructor() throws Exception
 //   {
@@ -56,6 +56,13 @@ public class ConfigurationImplTest extends TestCase
       assertEquals(ConfigurationImpl.DEFAULT_CALL_TIMEOUT, conf.getCallTimeout());
       assertEquals(ConfigurationImpl.DEFAULT_PACKET_CONFIRMATION_BATCH_SIZE, conf.getPacketConfirmationBatchSize());
       assertEquals(ConfigurationImpl.DEFAULT_CONNECTION_SCAN_PERIOD, conf.getConnectionScanPeriod());
+      assertEquals(ConfigurationImpl.DEFAULT_MESSAGE_EXPIRY_SCAN_PERIOD, conf.getMessageExpiryScanPeriod());
+      assertEquals(ConfigurationImpl.DEFAULT_MESSAGE_EXPIRY_BATCH_SIZE, conf.getMessageExpiryBatchSize());
+      assertEquals(ConfigurationImpl.DEFAULT_MESSAGE_EXPIRY_MAX_RATE, conf.getMessageExpiryMaxRate());
+      assertEquals(ConfigurationImpl.DEFAULT_SESSION_DISPATCH_MAX_POOL_SIZE, conf.getSessionDispatchMaxPoolSize());
+      assertEquals(ConfigurationImpl.DEFAULT_SESSION_DISPATCH_MAX_PENDING_PACKETS, conf.getSessionDispatchMaxPendingPackets());
+      assertEquals(ConfigurationImpl.DEFAULT_CONSUMER_DELIVERY_BATCH_SIZE, conf.getConsumerDeliveryBatchSize());
+      assertEquals(ConfigurationImpl.DEFAULT_CONSUMER_DELIVERY_BATCH_BYTES, conf.getConsumerDeliveryBatchBytes());
       assertEquals(ConfigurationImpl.DEFAULT_BINDINGS_DIRECTORY, conf.getBindingsDirectory());
       assertEquals(ConfigurationImpl.DEFAULT_CREATE_BINDINGS_DIR, conf.isCreateBindingsDir());
       assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_DIR, conf.getJournalDirectory());
@@ -66,6 +73,10 @@ public class ConfigurationImplTest extends TestCase
       assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_FILE_SIZE, conf.getJournalFileSize());
       assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_MIN_FILES, conf.getJournalMinFiles());      
       assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_MAX_AIO, conf.getJournalMaxAIO());
+      assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_GROUP_COMMIT_MAX_BATCH_BYTES, conf.getJournalGroupCommitMaxBatchBytes());
+      assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_GROUP_COMMIT_MAX_WAIT_MICROS, conf.getJournalGroupCommitMaxWaitMicros());
+      assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_COMPACT_MIN_FILES, conf.getJournalCompactMinFiles());
+      assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_COMPACT_PERCENTAGE, conf.getJournalCompactPercentage());
       assertEquals(ConfigurationImpl.DEFAULT_WILDCARD_ROUTING_ENABLED, conf.isWildcardRoutingEnabled());
    }
    
@@ -108,6 +119,34 @@ public class ConfigurationImplTest extends TestCase
          l = randomLong();
          conf.setConnectionScanPeriod(l);
          assertEquals(l, conf.getConnectionScanPeriod());
+         
+         l = randomLong();
+         conf.setMessageExpiryScanPeriod(l);
+         assertEquals(l, conf.getMessageExpiryScanPeriod());
+         
+         i = randomInt();
+         conf.setMessageExpiryBatchSize(i);
+         assertEquals(i, conf.getMessageExpiryBatchSize());
+         
+         i = randomInt();
+         conf.setMessageExpiryMaxRate(i);
+         assertEquals(i, conf.getMessageExpiryMaxRate());
+         
+         i = randomInt();
+         conf.setSessionDispatchMaxPoolSize(i);
+         assertEquals(i, conf.getSessionDispatchMaxPoolSize());
+         
+         i = randomInt();
+         conf.setSessionDispatchMaxPendingPackets(i);
+         assertEquals(i, conf.getSessionDispatchMaxPendingPackets());
+         
+         i = randomInt();
+         conf.setConsumerDeliveryBatchSize(i);
+         assertEquals(i, conf.getConsumerDeliveryBatchSize());
+         
+         i = randomInt();
+         conf.setConsumerDeliveryBatchBytes(i);
+         assertEquals(i, conf.getConsumerDeliveryBatchBytes());
                   
          String s = randomString();
          conf.setBindingsDirectory(s);
@@ -149,6 +188,22 @@ public class ConfigurationImplTest extends TestCase
          i = randomInt();
          conf.setJournalMaxAIO(i);
          assertEquals(i, conf.getJournalMaxAIO());        
+         
+         i = randomInt();
+         conf.setJournalGroupCommitMaxBatchBytes(i);
+         assertEquals(i, conf.getJournalGroupCommitMaxBatchBytes());
+         
+         l = randomLong();
+         conf.setJournalGroupCommitMaxWaitMicros(l);
+         assertEquals(l, conf.getJournalGroupCommitMaxWaitMicros());
+         
+         i = randomInt();
+         conf.setJournalCompactMinFiles(i);
+         assertEquals(i, conf.getJournalCompactMinFiles());
+         
+         i = randomInt();
+         conf.setJournalCompactPercentage(i);
+         assertEquals(i, conf.getJournalCompactPercentage());
       }
    }
    
@@ -46,6 +46,13 @@ public class FileConfigurationTest extends ConfigurationImplTest
       assertEquals(7654, conf.getCallTimeout());
       assertEquals(543, conf.getPacketConfirmationBatchSize());
       assertEquals(6543, conf.getConnectionScanPeriod());
+      assertEquals(10111213, conf.getMessageExpiryScanPeriod());
+      assertEquals(357, conf.getMessageExpiryBatchSize());
+      assertEquals(8642, conf.getMessageExpiryMaxRate());
+      assertEquals(13, conf.getSessionDispatchMaxPoolSize());
+      assertEquals(4321, conf.getSessionDispatchMaxPendingPackets());
+      assertEquals(77, conf.getConsumerDeliveryBatchSize());
+      assertEquals(98765, conf.getConsumerDeliveryBatchBytes());
       assertEquals("somedir", conf.getBindingsDirectory());
       assertEquals(false, conf.isCreateBindingsDir());
       assertEquals("somedir2", conf.getJournalDirectory());
@@ -56,6 +63,10 @@ public class FileConfigurationTest extends ConfigurationImplTest
       assertEquals(12345678, conf.getJournalFileSize());
       assertEquals(100, conf.getJournalMinFiles());      
       assertEquals(56546, conf.getJournalMaxAIO());
+      assertEquals(65536, conf.getJournalGroupCommitMaxBatchBytes());
+      assertEquals(250, conf.getJournalGroupCommitMaxWaitMicros());
+      assertEquals(123, conf.getJournalCompactMinFiles());
+      assertEquals(33, conf.getJournalCompactPercentage());
       assertEquals(true, conf.isWildcardRoutingEnabled());
       
       assertEquals(2, conf.getInterceptorClassNames().size());
@@ -22,6 +22,8 @@
 
 package org.jboss.messaging.tests.unit.core.filter.impl;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.TestCase;
 
 import org.jboss.messaging.core.exception.MessagingException;
@@ -590,6 +592,111 @@ public class FilterTest  extends TestCase
       assertTrue(filter.match(message));
    }
    
+   public void testNumericComparisons() throws Exception
+   {
+      filter = new FilterImpl(new SimpleString("MyInt BETWEEN 5 AND 10 AND MyDouble > 1.5 AND JBMTimestamp >= 100"));
+      
+      message.putIntProperty(new SimpleString("MyInt"), 7);
+      message.putDoubleProperty(new SimpleString("MyDouble"), 2.5);
+      message.setTimestamp(100);
+      
+      assertTrue(filter.match(message));
+      
+      message.putIntProperty(new SimpleString("MyInt"), 11);
+      
+      assertFalse(filter.match(message));
+      
+      message.putIntProperty(new SimpleString("MyInt"), 5);
+      message.setTimestamp(99);
+      
+      assertFalse(filter.match(message));
+      
+      filter = new FilterImpl(new SimpleString("MyInt * 2 + 1 = 11"));
+      
+      assertTrue(filter.match(message));
+   }
+   
+   public void testStringIn() throws Exception
+   {
+      filter = new FilterImpl(new SimpleString("MyString IN ('red', 'green')"));
+      
+      doPutStringProperty("MyString", "green");
+      
+      assertTrue(filter.match(message));
+      
+      doPutStringProperty("MyString", "blue");
+      
+      assertFalse(filter.match(message));
+      
+      filter = new FilterImpl(new SimpleString("MyString NOT IN ('red', 'green')"));
+      
+      assertTrue(filter.match(message));
+   }
+   
+   public void testUnknownValues() throws Exception
+   {
+      filter = new FilterImpl(new SimpleString("MyInt > 3"));
+      
+      message.putIntProperty(new SimpleString("MyInt"), 4);
+      
+      assertTrue(filter.match(message));
+      
+      // The value of a previous message must not be used for a message without the property
+      assertFalse(filter.match(new ServerMessageImpl()));
+      
+      // NOT UNKNOWN is still unknown
+      filter = new FilterImpl(new SimpleString("NOT (MyInt > 3)"));
+      
+      assertFalse(filter.match(new ServerMessageImpl()));
+      
+      filter = new FilterImpl(new SimpleString("MyInt > 3 OR MyString IS NULL"));
+      
+      assertTrue(filter.match(new ServerMessageImpl()));
+   }
+   
+   public void testConcurrentMatch() throws Exception
+   {
+      filter = new FilterImpl(new SimpleString("MyInt = 1 AND MyString LIKE 'a%'"));
+      
+      final ServerMessage matching = new ServerMessageImpl();
+      matching.putIntProperty(new SimpleString("MyInt"), 1);
+      matching.putStringProperty(new SimpleString("MyString"), new SimpleString("abc"));
+      
+      final ServerMessage notMatching = new ServerMessageImpl();
+      notMatching.putIntProperty(new SimpleString("MyInt"), 2);
+      notMatching.putStringProperty(new SimpleString("MyString"), new SimpleString("abc"));
+      
+      final AtomicInteger errors = new AtomicInteger(0);
+      
+      Thread[] threads = new Thread[4];
+      
+      for (int i = 0; i < threads.length; i++)
+      {
+         threads[i] = new Thread()
+         {
+            public void run()
+            {
+               for (int j = 0; j < 10000; j++)
+               {
+                  if (!filter.match(matching) || filter.match(notMatching))
+                  {
+                     errors.incrementAndGet();
+                  }
+               }
+            }
+         };
+         
+         threads[i].start();
+      }
+      
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+      
+      assertEquals(0, errors.get());
+   }
+   
    // Private -----------------------------------------------------------------------------------
    
    private void doPutStringProperty(String key, String value)
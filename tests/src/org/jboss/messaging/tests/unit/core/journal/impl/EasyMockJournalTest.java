@@ -422,6 +422,8 @@ public class EasyMockJournalTest extends UnitTestCase
       EasyMock.expect(mockFactory.isSupportsCallbacks()).andStubReturn(false);
 
       EasyMock.expect(mockFactory.listFiles("tt")).andStubReturn(new ArrayList<String>());
+      EasyMock.expect(mockFactory.listFiles("tt.ctl")).andStubReturn(new ArrayList<String>());
+      EasyMock.expect(mockFactory.listFiles("tt.cmp")).andStubReturn(new ArrayList<String>());
 
       EasyMock.expect(mockFactory.newBuffer(EasyMock.anyInt())).andStubAnswer(new IAnswer<ByteBuffer>()
       {
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.unit.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.jboss.messaging.core.journal.PreparedTransactionInfo;
+import org.jboss.messaging.core.journal.RecordInfo;
+import org.jboss.messaging.core.journal.impl.JournalImpl;
+import org.jboss.messaging.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+
+/**
+ *
+ * Runs every JournalImplTestUnit test with the group-commit stage enabled
+ *
+ */
+public class GroupCommitJournalImplTest extends FakeJournalImplTest
+{
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      journal = new JournalImpl(fileSize,
+                                minFiles,
+                                sync,
+                                sync,
+                                fileFactory,
+                                filePrefix,
+                                fileExtension,
+                                maxAIO,
+                                0,
+                                64 * 1024,
+                                1000,
+                                0,
+                                0);
+      journal.setAutoReclaim(false);
+   }
+
+   public void testConcurrentAppendsAreBatched() throws Exception
+   {
+      final int numberOfThreads = 10;
+
+      final int recordsPerThread = 100;
+
+      setup(10, 100 * 1024, true);
+
+      createJournal();
+
+      startJournal();
+
+      load();
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      final List<Throwable> errors = new ArrayList<Throwable>();
+
+      Thread[] threads = new Thread[numberOfThreads];
+
+      for (int i = 0; i < numberOfThreads; i++)
+      {
+         final int threadNumber = i;
+
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+
+                  for (int j = 0; j < recordsPerThread; j++)
+                  {
+                     journal.appendAddRecord(threadNumber * recordsPerThread + j, (byte)1, new SimpleEncoding(10, (byte)j));
+                  }
+               }
+               catch (Throwable e)
+               {
+                  synchronized (errors)
+                  {
+                     errors.add(e);
+                  }
+               }
+            }
+         };
+
+         threads[i].start();
+      }
+
+      start.countDown();
+
+      for (Thread t : threads)
+      {
+         t.join();
+      }
+
+      assertEquals(0, errors.size());
+
+      JournalImpl impl = (JournalImpl)journal;
+
+      assertTrue(impl.isGroupCommit());
+
+      assertTrue(impl.getGroupCommitBatchCount() > 0);
+
+      assertTrue("Records were not batched", impl.getGroupCommitBatchCount() < numberOfThreads * recordsPerThread);
+
+      assertTrue(impl.getGroupCommitAverageRecordsPerBatch() > 1);
+
+      stopJournal(false);
+
+      createJournal();
+
+      startJournal();
+
+      List<RecordInfo> committedRecords = new ArrayList<RecordInfo>();
+
+      List<PreparedTransactionInfo> preparedTransactions = new ArrayList<PreparedTransactionInfo>();
+
+      journal.load(committedRecords, preparedTransactions);
+
+      assertEquals(numberOfThreads * recordsPerThread, committedRecords.size());
+
+      assertEquals(0, preparedTransactions.size());
+   }
+
+}
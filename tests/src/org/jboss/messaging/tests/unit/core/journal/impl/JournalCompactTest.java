@@ -0,0 +1,286 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.unit.core.journal.impl;
+
+import org.jboss.messaging.core.journal.SequentialFile;
+import org.jboss.messaging.core.journal.SequentialFileFactory;
+import org.jboss.messaging.core.journal.impl.JournalImpl;
+import org.jboss.messaging.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+
+/**
+ *
+ * A JournalCompactTest
+ *
+ */
+public class JournalCompactTest extends JournalImplTestBase
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testCompactLongLivedRecord() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1);
+
+      for (int i = 2; i <= 90; i++)
+      {
+         add(i);
+      }
+
+      for (int i = 2; i <= 90; i++)
+      {
+         delete(i);
+      }
+
+      checkAndReclaimFiles();
+
+      // The first file is kept by record 1, and the deletes pin the files they were written to
+      assertTrue(journal.getDataFilesCount() > 1);
+
+      journal.compact();
+
+      assertEquals(1, ((JournalImpl)journal).getCompactCount());
+
+      assertEquals(1, journal.getDataFilesCount());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      delete(1);
+
+      journal.forceMoveNextFile();
+
+      checkAndReclaimFiles();
+
+      // Nothing is holding the compacted file any more
+      assertEquals(0, journal.getDataFilesCount());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testCompactWithUpdatesAndDeletes() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3);
+
+      for (int i = 4; i <= 90; i++)
+      {
+         add(i);
+      }
+
+      update(1, 2);
+
+      for (int i = 4; i <= 90; i++)
+      {
+         delete(i);
+      }
+
+      update(3);
+
+      checkAndReclaimFiles();
+
+      journal.compact();
+
+      assertEquals(1, ((JournalImpl)journal).getCompactCount());
+
+      delete(2);
+
+      update(1);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      delete(1, 3);
+
+      journal.forceMoveNextFile();
+
+      checkAndReclaimFiles();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testCompactCommittedTransaction() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      addTx(100, 1, 2);
+
+      commit(100);
+
+      for (int i = 3; i <= 90; i++)
+      {
+         add(i);
+      }
+
+      deleteTx(101, 2);
+
+      commit(101);
+
+      for (int i = 3; i <= 90; i++)
+      {
+         delete(i);
+      }
+
+      checkAndReclaimFiles();
+
+      journal.compact();
+
+      assertEquals(1, ((JournalImpl)journal).getCompactCount());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testOpenTransactionIsNotCompacted() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      addTx(100, 1);
+
+      for (int i = 2; i <= 90; i++)
+      {
+         add(i);
+      }
+
+      for (int i = 2; i <= 90; i++)
+      {
+         delete(i);
+      }
+
+      checkAndReclaimFiles();
+
+      journal.compact();
+
+      assertEquals(0, ((JournalImpl)journal).getCompactCount());
+
+      commit(100);
+
+      journal.forceMoveNextFile();
+
+      checkAndReclaimFiles();
+
+      journal.compact();
+
+      assertEquals(1, ((JournalImpl)journal).getCompactCount());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testIncompleteCompactionIsDiscarded() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3);
+
+      stopJournal();
+
+      // A compacted file written before a crash, without its control file
+      SequentialFile file = fileFactory.createSequentialFile(filePrefix + "-1000." + fileExtension + ".cmp", 1);
+
+      file.open();
+
+      file.fill(0, fileSize, JournalImpl.FILL_CHARACTER);
+
+      file.close();
+
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      assertEquals(0, fileFactory.listFiles(fileExtension + ".cmp").size());
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      journal = new JournalImpl(fileSize,
+                                minFiles,
+                                sync,
+                                sync,
+                                fileFactory,
+                                filePrefix,
+                                fileExtension,
+                                maxAIO,
+                                0,
+                                -1,
+                                0,
+                                0,
+                                50);
+      journal.setAutoReclaim(false);
+   }
+
+   @Override
+   protected SequentialFileFactory getFileFactory() throws Exception
+   {
+      return new FakeSequentialFileFactory();
+   }
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+}
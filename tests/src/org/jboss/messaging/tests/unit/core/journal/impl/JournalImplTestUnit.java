@@ -23,12 +23,15 @@
 package org.jboss.messaging.tests.unit.core.journal.impl;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.messaging.core.journal.EncodingSupport;
 import org.jboss.messaging.core.journal.RecordInfo;
 import org.jboss.messaging.core.journal.impl.JournalImpl;
 import org.jboss.messaging.core.logging.Logger;
 import org.jboss.messaging.tests.unit.core.journal.impl.fakes.ByteArrayEncoding;
+import org.jboss.messaging.tests.unit.core.journal.impl.fakes.FakeCallback;
 import org.jboss.messaging.tests.unit.core.journal.impl.fakes.SimpleEncoding;
 
 /**
@@ -2062,6 +2065,36 @@ public abstract class JournalImplTestUnit extends JournalImplTestBase
       loadAndCheck();
    }
 
+   public void testAddWithCallback() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      CountDownLatch latch = new CountDownLatch(10);
+
+      for (long id = 1; id <= 10; id++)
+      {
+         byte[] record = generateRecord(recordLength);
+
+         journal.appendAddRecord(id, (byte)0, new ByteArrayEncoding(record), new FakeCallback(latch));
+
+         records.add(new RecordInfo(id, (byte)0, record, false));
+      }
+
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+      // The records are usable before the callbacks are done
+      update(1);
+      delete(2);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
    public void testMultipleAdd() throws Exception
    {
       setup(10, 10 * 1024, true);
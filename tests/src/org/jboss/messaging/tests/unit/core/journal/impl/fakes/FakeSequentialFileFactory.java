@@ -294,7 +294,7 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
    {
       private volatile boolean open;
 
-      private final String fileName;
+      private String fileName;
 
       private ByteBuffer data;
 
@@ -338,6 +338,20 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
          fileMap.remove(fileName);
       }
 
+      public void renameTo(final String newFileName) throws Exception
+      {
+         if (open)
+         {
+            throw new IllegalStateException("Is open");
+         }
+
+         fileMap.remove(fileName);
+
+         fileName = newFileName;
+
+         fileMap.put(fileName, this);
+      }
+
       public String getFileName()
       {
          return fileName;
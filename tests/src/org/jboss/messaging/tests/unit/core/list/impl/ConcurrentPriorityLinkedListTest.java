@@ -0,0 +1,209 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */ 
+
+package org.jboss.messaging.tests.unit.core.list.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.jboss.messaging.core.list.PriorityLinkedList;
+import org.jboss.messaging.core.list.impl.ConcurrentPriorityLinkedListImpl;
+
+/**
+ * Runs the PriorityLinkedList tests against the concurrent implementation, and adds from several threads at once
+ * 
+ */
+public class ConcurrentPriorityLinkedListTest extends PriorityLinkedListTest
+{
+   private static final int PRODUCERS = 4;
+
+   private static final int ELEMENTS_PER_PRODUCER = 10000;
+
+   protected PriorityLinkedList<Wibble> createList(final int priorities)
+   {
+      return new ConcurrentPriorityLinkedListImpl<Wibble>(priorities);
+   }
+
+   public void testConcurrentAddLast() throws Exception
+   {
+      final PriorityLinkedList<Integer> integers = new ConcurrentPriorityLinkedListImpl<Integer>(10);
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      List<Thread> producers = new ArrayList<Thread>();
+
+      for (int i = 0; i < PRODUCERS; i++)
+      {
+         final int producer = i;
+
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  start.await();
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+
+               for (int j = 0; j < ELEMENTS_PER_PRODUCER; j++)
+               {
+                  integers.addLast(producer * ELEMENTS_PER_PRODUCER + j, j % 10);
+               }
+            }
+         };
+
+         thread.start();
+
+         producers.add(thread);
+      }
+
+      start.countDown();
+
+      // The consumer takes elements while they are being added
+      int[][] lastTaken = new int[PRODUCERS][10];
+
+      for (int i = 0; i < PRODUCERS; i++)
+      {
+         for (int j = 0; j < 10; j++)
+         {
+            lastTaken[i][j] = -1;
+         }
+      }
+
+      int taken = 0;
+
+      int total = PRODUCERS * ELEMENTS_PER_PRODUCER;
+
+      long timeout = System.currentTimeMillis() + 10000;
+
+      while (taken < total && System.currentTimeMillis() < timeout)
+      {
+         Integer element = integers.removeFirst();
+
+         if (element == null)
+         {
+            Thread.yield();
+
+            continue;
+         }
+
+         int producer = element / ELEMENTS_PER_PRODUCER;
+
+         int sequence = element % ELEMENTS_PER_PRODUCER;
+
+         // Elements of one producer and one priority are taken in the order they were added
+         assertTrue(sequence > lastTaken[producer][sequence % 10]);
+
+         lastTaken[producer][sequence % 10] = sequence;
+
+         taken++;
+      }
+
+      for (Thread thread : producers)
+      {
+         thread.join();
+      }
+
+      assertEquals(total, taken);
+      assertNull(integers.removeFirst());
+      assertTrue(integers.isEmpty());
+   }
+
+   /*
+    * Nobody consumes the list, so the nodes removed through their handle stay linked. They mustn't keep their
+    * elements alive, nor must the node of the last element taken.
+    */
+   public void testRemovedElementsCanBeCollected() throws Exception
+   {
+      PriorityLinkedList<Object> list = new ConcurrentPriorityLinkedListImpl<Object>(10);
+
+      List<PriorityLinkedList.Node<Object>> nodes = new ArrayList<PriorityLinkedList.Node<Object>>();
+
+      List<WeakReference<Object>> elements = new ArrayList<WeakReference<Object>>();
+
+      for (int i = 0; i < 20; i++)
+      {
+         Object element = new byte[1024];
+
+         elements.add(new WeakReference<Object>(element));
+
+         if (i % 5 == 0)
+         {
+            nodes.add(list.addFirst(element, i % 10));
+         }
+         else
+         {
+            nodes.add(list.addLast(element, i % 10));
+         }
+      }
+
+      Object taken = new byte[1024];
+
+      elements.add(new WeakReference<Object>(taken));
+
+      list.addLast(taken, 9);
+
+      // Behind the elements added with addFirst
+      assertTrue(list.peekFirst() != taken);
+
+      for (PriorityLinkedList.Node<Object> node : nodes)
+      {
+         assertTrue(list.remove(node));
+
+         assertNull(node.getValue());
+      }
+
+      assertSame(taken, list.removeFirst());
+
+      taken = null;
+
+      assertTrue(list.isEmpty());
+
+      for (int i = 0; i < 10 && !collected(elements); i++)
+      {
+         System.gc();
+
+         Thread.sleep(50);
+      }
+
+      assertTrue(collected(elements));
+   }
+
+   private boolean collected(final List<WeakReference<Object>> elements)
+   {
+      for (WeakReference<Object> element : elements)
+      {
+         if (element.get() != null)
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+}
@@ -68,7 +68,7 @@ public class PriorityLinkedListTest extends UnitTestCase
    {
       super.setUp();
       
-      list = new PriorityLinkedListImpl<Wibble>(10);
+      list = createList(10);
       
       a = new Wibble("a");
       b = new Wibble("b");
@@ -104,6 +104,11 @@ public class PriorityLinkedListTest extends UnitTestCase
       list = null; 
       super.tearDown();
    }
+
+   protected PriorityLinkedList<Wibble> createList(final int priorities)
+   {
+      return new PriorityLinkedListImpl<Wibble>(priorities);
+   }
   
    public void testEmpty() throws Exception
    {
@@ -176,6 +181,33 @@ public class PriorityLinkedListTest extends UnitTestCase
       list.clear();
    }
    
+   public void testPeekFirstNode()
+   {
+      assertNull(list.peekFirstNode());
+
+      list.addLast(a, 4);
+      list.addFirst(b, 2);
+
+      PriorityLinkedList.Node<Wibble> node = list.peekFirstNode();
+
+      assertEquals(a, node.getValue());
+
+      // Added in front of the peeked element, removing the peeked node leaves it
+      list.addLast(c, 9);
+
+      assertTrue(list.remove(node));
+
+      assertEquals(c, list.removeFirst());
+
+      node = list.peekFirstNode();
+
+      assertEquals(b, node.getValue());
+
+      assertTrue(list.remove(node));
+
+      assertTrue(list.isEmpty());
+   }
+
    public void testRemoveFirst() throws Exception
    {
       list.addLast(a, 0);
@@ -627,6 +659,52 @@ public class PriorityLinkedListTest extends UnitTestCase
       assertTrue(list.getAll().isEmpty());
    }
    
+   public void testRemoveNode()
+   {
+      PriorityLinkedList.Node<Wibble> nodeA = list.addLast(a, 0);
+      PriorityLinkedList.Node<Wibble> nodeB = list.addLast(b, 3);
+      list.addLast(c, 3);
+      PriorityLinkedList.Node<Wibble> nodeD = list.addLast(d, 3);
+      list.addFirst(e, 9);
+      
+      assertSame(b, nodeB.getValue());
+      
+      assertTrue(list.remove(nodeB));
+      assertTrue(list.remove(nodeD));
+      assertTrue(list.remove(nodeA));
+      assertFalse(list.remove(nodeB));
+      
+      assertEquals(2, list.size());
+      
+      assertEquals(e, list.removeFirst());
+      assertEquals(c, list.removeFirst());
+      assertNull(list.removeFirst());
+      assertTrue(list.isEmpty());
+   }
+   
+   public void testRemoveNodeWhileIterating()
+   {
+      list.addLast(a, 9);
+      PriorityLinkedList.Node<Wibble> nodeB = list.addLast(b, 9);
+      PriorityLinkedList.Node<Wibble> nodeC = list.addLast(c, 9);
+      list.addLast(d, 0);
+      
+      Iterator<Wibble> iter = list.iterator();
+      
+      assertEquals(a, iter.next());
+      
+      // The iterator skips elements removed through their nodes
+      list.remove(nodeB);
+      list.remove(nodeC);
+      
+      assertEquals(d, iter.next());
+      iter.remove();
+      assertFalse(iter.hasNext());
+      
+      assertEquals(1, list.size());
+      assertEquals(a, list.peekFirst());
+   }
+   
    class Wibble
    {
       String s;
@@ -45,6 +45,7 @@ import junit.framework.TestCase;
 import org.jboss.messaging.core.management.RoleInfo;
 import org.jboss.messaging.core.management.impl.AddressControl;
 import org.jboss.messaging.core.postoffice.Binding;
+import org.jboss.messaging.core.postoffice.FlowController;
 import org.jboss.messaging.core.postoffice.PostOffice;
 import org.jboss.messaging.core.security.CheckType;
 import org.jboss.messaging.core.security.Role;
@@ -134,6 +135,28 @@ public class AddressControlTest extends TestCase
       verify(postOffice, securityRepository);
    }
 
+   public void testGetFlowControlAttributes() throws Exception
+   {
+      SimpleString address = randomSimpleString();
+      PostOffice postOffice = createMock(PostOffice.class);
+      HierarchicalRepository<Set<Role>> securityRepository = createMock(HierarchicalRepository.class);
+      FlowController flowController = createMock(FlowController.class);
+      expect(postOffice.getFlowController(address)).andStubReturn(flowController);
+      expect(flowController.getWaitingProducerCount()).andReturn(3);
+      expect(flowController.getGrantedCredits()).andReturn(1024L * 1024L);
+      expect(flowController.getCreditGrantRate()).andReturn(2048L);
+
+      replay(postOffice, securityRepository, flowController);
+
+      AddressControl control = new AddressControl(address, postOffice,
+            securityRepository);
+      assertEquals(3, control.getWaitingProducerCount());
+      assertEquals(1024L * 1024L, control.getGrantedCredits());
+      assertEquals(2048L, control.getCreditGrantRate());
+
+      verify(postOffice, securityRepository, flowController);
+   }
+
    public void testGetRoleInfos() throws Exception
    {
       SimpleString address = randomSimpleString();
@@ -484,6 +484,33 @@ public class MessagingServerControlTest extends TestCase
       verifyMockedAttributes();
    }
 
+   public void testGetSessionDispatchMaxPoolSize() throws Exception
+   {
+      int size = randomInt();
+
+      expect(configuration.getSessionDispatchMaxPoolSize()).andReturn(size);
+      replayMockedAttributes();
+
+      MessagingServerControl control = createControl();
+      assertEquals(size, control.getSessionDispatchMaxPoolSize());
+
+      verifyMockedAttributes();
+   }
+
+   public void testGetSessionPacketStatisticsWithoutDispatcher() throws Exception
+   {
+      expect(server.getSessionPacketDispatcher()).andStubReturn(null);
+      replayMockedAttributes();
+
+      MessagingServerControl control = createControl();
+      assertEquals(0, control.getSessionPacketHandledCount());
+      assertEquals(0, control.getSessionPacketPendingCount());
+      assertEquals(0, control.getSessionReadSuspendedCount());
+      assertEquals(0.0, control.getSessionPacketAverageQueuedTime());
+
+      verifyMockedAttributes();
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
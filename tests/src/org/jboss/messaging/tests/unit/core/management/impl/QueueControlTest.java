@@ -203,6 +203,32 @@ public class QueueControlTest extends TestCase
       verifyMockedAttributes();
    }
 
+   public void testGetMessagesExpired() throws Exception
+   {
+      int count = randomInt();
+      expect(queue.getMessagesExpired()).andReturn(count);
+
+      replayMockedAttributes();
+
+      QueueControlMBean control = createControl();
+      assertEquals(count, control.getMessagesExpired());
+
+      verifyMockedAttributes();
+   }
+
+   public void testGetExpiringCount() throws Exception
+   {
+      int count = randomInt();
+      expect(queue.getExpiringCount()).andReturn(count);
+
+      replayMockedAttributes();
+
+      QueueControlMBean control = createControl();
+      assertEquals(count, control.getExpiringCount());
+
+      verifyMockedAttributes();
+   }
+
    public void testGetSizeBytes() throws Exception
    {
       int size = randomInt();
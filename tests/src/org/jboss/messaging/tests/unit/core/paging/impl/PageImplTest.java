@@ -22,6 +22,7 @@
 
 package org.jboss.messaging.tests.unit.core.paging.impl;
 
+import org.jboss.messaging.core.paging.impl.PageImpl;
 import org.jboss.messaging.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
 
 /**
@@ -52,6 +53,14 @@ public class PageImplTest extends PageImplTestBase
       testAdd(new FakeSequentialFileFactory(1, false), 10);
    }
 
+   public void testPageFakeReadAcrossChunks() throws Exception
+   {
+      // Records spanning the read chunks, one of them bigger than a chunk
+      testAdd(new FakeSequentialFileFactory(1, false), 5, PageImpl.READ_CHUNK_SIZE + 1000);
+
+      testAdd(new FakeSequentialFileFactory(1, false), 100, 3000);
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
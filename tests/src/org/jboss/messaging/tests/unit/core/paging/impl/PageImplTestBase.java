@@ -61,6 +61,12 @@ public abstract class PageImplTestBase extends UnitTestCase
 
    /** Validate if everything we add is recovered */
    protected void testAdd(final SequentialFileFactory factory, final int numberOfElements) throws Exception
+   {
+      testAdd(factory, numberOfElements, 10);
+   }
+
+   /** Validate if everything we add is recovered, with bodies of the given size */
+   protected void testAdd(final SequentialFileFactory factory, final int numberOfElements, final int bodySize) throws Exception
    {
 
       SequentialFile file = factory.createSequentialFile("00010.page", 1);
@@ -79,7 +85,7 @@ public abstract class PageImplTestBase extends UnitTestCase
 
       for (int i = 0; i < numberOfElements; i++)
       {
-         ByteBuffer buffer = ByteBuffer.allocate(10);
+         ByteBuffer buffer = ByteBuffer.allocate(bodySize);
 
          for (int j = 0; j < buffer.limit(); j++)
          {
@@ -26,6 +26,7 @@ import org.easymock.EasyMock;
 import org.jboss.messaging.core.journal.SequentialFileFactory;
 import org.jboss.messaging.core.paging.LastPageRecord;
 import org.jboss.messaging.core.paging.PageMessage;
+import org.jboss.messaging.core.paging.PageReader;
 import org.jboss.messaging.core.paging.PagingStore;
 import org.jboss.messaging.core.paging.PagingStoreFactory;
 import org.jboss.messaging.core.paging.impl.PageMessageImpl;
@@ -226,7 +227,7 @@ public class PageManagerImplTest extends UnitTestCase
       SimpleString queueName = new SimpleString("aq");
       PageMessageImpl pageMessage = new PageMessageImpl(message);
 
-      manager.onDepage(0, queueName, store, new PageMessage[] {pageMessage} );
+      manager.onDepage(0, queueName, store, createReader(pageMessage));
       EasyMock.verify(spi, store, message, storageManager, po, ref, queue);
    }
 
@@ -266,7 +267,7 @@ public class PageManagerImplTest extends UnitTestCase
       PageMessageImpl pageMessage = new PageMessageImpl(message);
 
       pageMessage.getProperties().putLongProperty(new SimpleString("JBM_SCHEDULED_DELIVERY_PROP"), time);
-      manager.onDepage(0, queueName, store, new PageMessage[] {pageMessage} );
+      manager.onDepage(0, queueName, store, createReader(pageMessage));
       EasyMock.verify(spi, store, message, storageManager, po, ref, queue);
    }
 
@@ -276,6 +277,19 @@ public class PageManagerImplTest extends UnitTestCase
 
    // Private -------------------------------------------------------
 
+   private PageReader createReader(final PageMessage... messages)
+   {
+      return new PageReader()
+      {
+         private int index;
+
+         public PageMessage next()
+         {
+            return index < messages.length ? messages[index++] : null;
+         }
+      };
+   }
+
    // Inner classes -------------------------------------------------
 
 }
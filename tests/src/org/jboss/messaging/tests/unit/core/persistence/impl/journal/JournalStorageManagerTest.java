@@ -38,6 +38,7 @@ import org.jboss.messaging.core.config.Configuration;
 import org.jboss.messaging.core.config.impl.ConfigurationImpl;
 import org.jboss.messaging.core.filter.Filter;
 import org.jboss.messaging.core.journal.EncodingSupport;
+import org.jboss.messaging.core.journal.IOCallback;
 import org.jboss.messaging.core.journal.Journal;
 import org.jboss.messaging.core.journal.PreparedTransactionInfo;
 import org.jboss.messaging.core.journal.RecordInfo;
@@ -87,6 +88,23 @@ public class JournalStorageManagerTest extends UnitTestCase
       EasyMock.verify(messageJournal, bindingsJournal, msg, msg);
    }
 
+   public void testStoreMessageWithCallback() throws Exception
+   {
+      Journal messageJournal = EasyMock.createStrictMock(Journal.class);
+      Journal bindingsJournal = EasyMock.createStrictMock(Journal.class);
+
+      JournalStorageManager jsm = new JournalStorageManager(messageJournal, bindingsJournal);
+
+      ServerMessage msg = EasyMock.createStrictMock(ServerMessage.class);
+      IOCallback callback = EasyMock.createStrictMock(IOCallback.class);
+      long msgID = 1021092;
+      EasyMock.expect(msg.getMessageID()).andReturn(msgID);
+      messageJournal.appendAddRecord(msgID, JournalStorageManager.ADD_MESSAGE, msg, callback);
+      EasyMock.replay(messageJournal, bindingsJournal, msg, callback);
+      jsm.storeMessage(msg, callback);
+      EasyMock.verify(messageJournal, bindingsJournal, msg, callback);
+   }
+
    public void testStoreAcknowledge() throws Exception
    {
       Journal messageJournal = EasyMock.createStrictMock(Journal.class);
@@ -264,6 +282,7 @@ public class JournalStorageManagerTest extends UnitTestCase
        * Two add messages
        * Three ack messages - two for msg1 and one for msg2
        * One update delivery count
+       * Acknowledged references are never added to their queues
        */
       final byte msg1Type = 12;
       final long msg1Expiration = 1209102912;
@@ -329,7 +348,7 @@ public class JournalStorageManagerTest extends UnitTestCase
       final int deliveryCount = 4757;
       byte[] updateBytes = new byte[12];
       ByteBuffer bb4 = ByteBuffer.wrap(updateBytes);
-      bb4.putLong(queue1ID);
+      bb4.putLong(queue3ID);
       bb4.putInt(deliveryCount);
       RecordInfo record6 = new RecordInfo(msg1ID, JournalStorageManager.UPDATE_DELIVERY_COUNT, updateBytes, true);
 
@@ -361,8 +380,6 @@ public class JournalStorageManagerTest extends UnitTestCase
       EasyMock.expect(ref1_2.getQueue()).andReturn(queue2);
       EasyMock.expect(ref1_3.getQueue()).andReturn(queue3);
 
-      EasyMock.expect(queue1.addLast(ref1_1)).andReturn(HandleStatus.HANDLED);
-      EasyMock.expect(queue2.addLast(ref1_2)).andReturn(HandleStatus.HANDLED);
       EasyMock.expect(queue3.addLast(ref1_3)).andReturn(HandleStatus.HANDLED);
 
       List<MessageReference> refs2 = new ArrayList<MessageReference>();
@@ -380,19 +397,14 @@ public class JournalStorageManagerTest extends UnitTestCase
 
       EasyMock.expect(queue1.addLast(ref2_1)).andReturn(HandleStatus.HANDLED);
       EasyMock.expect(queue2.addLast(ref2_2)).andReturn(HandleStatus.HANDLED);
-      EasyMock.expect(queue3.addLast(ref2_3)).andReturn(HandleStatus.HANDLED);
 
       Map<Long, Queue> queues = new HashMap<Long, Queue>();
       queues.put(queue1ID, queue1);
       queues.put(queue2ID, queue2);
       queues.put(queue3ID, queue3);
 
-      EasyMock.expect(queue1.removeReferenceWithID(msg1ID)).andReturn(ref1_1);
-      EasyMock.expect(queue2.removeReferenceWithID(msg1ID)).andReturn(ref1_2);
-      EasyMock.expect(queue3.removeReferenceWithID(msg2ID)).andReturn(ref2_3);
-
-      EasyMock.expect(queue1.getReference(msg1ID)).andReturn(ref1_1);
-      ref1_1.setDeliveryCount(deliveryCount);
+      EasyMock.expect(queue3.getReference(msg1ID)).andReturn(ref1_3);
+      ref1_3.setDeliveryCount(deliveryCount);
 
       EasyMock.replay(messageJournal, bindingsJournal, po);
       EasyMock.replay(refs1.toArray());
@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.unit.core.postoffice.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.messaging.core.filter.impl.FilterImpl;
+import org.jboss.messaging.core.postoffice.Binding;
+import org.jboss.messaging.core.postoffice.impl.BindingImpl;
+import org.jboss.messaging.core.postoffice.impl.BindingIndex;
+import org.jboss.messaging.core.server.ServerMessage;
+import org.jboss.messaging.core.server.impl.ServerMessageImpl;
+import org.jboss.messaging.tests.unit.core.server.impl.fakes.FakeQueueFactory;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * A BindingIndexTest
+ *
+ */
+public class BindingIndexTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString ADDRESS = new SimpleString("address");
+
+   private static final SimpleString COLOR = new SimpleString("color");
+
+   // Attributes ----------------------------------------------------
+
+   private final FakeQueueFactory queueFactory = new FakeQueueFactory();
+
+   private BindingIndex index;
+
+   // Public --------------------------------------------------------
+
+   public void testRouteIndexedAndUnindexed() throws Exception
+   {
+      Binding red = createBinding("red", "color = 'red'");
+      Binding redOrBlue = createBinding("redOrBlue", "color IN ('red', 'blue') AND weight > 10");
+      Binding green = createBinding("green", "'green' = color OR color = 'lime'");
+      Binding heavy = createBinding("heavy", "weight > 10");
+      Binding all = createBinding("all", null);
+
+      index.addBinding(red);
+      index.addBinding(redOrBlue);
+      index.addBinding(green);
+      index.addBinding(heavy);
+      index.addBinding(all);
+
+      assertRoute(createMessage("red", 5), red, all);
+      assertRoute(createMessage("blue", 20), redOrBlue, heavy, all);
+      assertRoute(createMessage("lime", 5), green, all);
+      assertRoute(createMessage(null, 20), heavy, all);
+   }
+
+   public void testRemoveBinding() throws Exception
+   {
+      Binding red = createBinding("red", "color = 'red'");
+      Binding red2 = createBinding("red2", "color = 'red'");
+      Binding all = createBinding("all", null);
+
+      index.addBinding(red);
+      index.addBinding(red2);
+      index.addBinding(all);
+
+      assertRoute(createMessage("red", 5), red, red2, all);
+
+      index.removeBinding(red);
+      index.removeBinding(all);
+
+      assertRoute(createMessage("red", 5), red2);
+
+      index.removeBinding(red2);
+
+      assertRoute(createMessage("red", 5));
+
+      // Removing a binding that was never routed to
+      Binding blue = createBinding("blue", "color = 'blue'");
+
+      index.addBinding(blue);
+      index.removeBinding(blue);
+
+      assertRoute(createMessage("blue", 5));
+   }
+
+   public void testRoutedInAddedOrder() throws Exception
+   {
+      Binding all = createBinding("all", null);
+      Binding red = createBinding("red", "color = 'red'");
+      Binding heavy = createBinding("heavy", "weight > 10");
+      Binding shape = createBinding("shape", "shape = 'round'");
+      Binding redOrBlue = createBinding("redOrBlue", "color IN ('red', 'blue')");
+      Binding all2 = createBinding("all2", null);
+
+      index.addBinding(all);
+      index.addBinding(red);
+      index.addBinding(heavy);
+      index.addBinding(shape);
+      index.addBinding(redOrBlue);
+      index.addBinding(all2);
+
+      ServerMessage message = createMessage("red", 20);
+
+      message.putStringProperty(new SimpleString("shape"), new SimpleString("round"));
+
+      assertRoute(message, all, red, heavy, shape, redOrBlue, all2);
+
+      // A binding added again goes last
+      index.removeBinding(red);
+      index.addBinding(red);
+
+      assertRoute(message, all, heavy, shape, redOrBlue, all2, red);
+   }
+
+   public void testNonStringPropertyIsNotIndexed() throws Exception
+   {
+      Binding red = createBinding("red", "color = 'red'");
+
+      index.addBinding(red);
+
+      ServerMessage message = new ServerMessageImpl();
+
+      message.putIntProperty(COLOR, 3);
+
+      assertRoute(message);
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      index = new BindingIndex();
+   }
+
+   // Private -------------------------------------------------------
+
+   private Binding createBinding(final String name, final String filter) throws Exception
+   {
+      FilterImpl filterImpl = filter == null ? null : new FilterImpl(new SimpleString(filter));
+
+      return new BindingImpl(ADDRESS, queueFactory.createQueue(-1, new SimpleString(name), filterImpl, false, false));
+   }
+
+   private ServerMessage createMessage(final String color, final int weight)
+   {
+      ServerMessage message = new ServerMessageImpl();
+
+      if (color != null)
+      {
+         message.putStringProperty(COLOR, new SimpleString(color));
+      }
+
+      message.putIntProperty(new SimpleString("weight"), weight);
+
+      return message;
+   }
+
+   private void assertRoute(final ServerMessage message, final Binding... expected)
+   {
+      List<Binding> matches = new ArrayList<Binding>();
+
+      index.route(message, matches);
+
+      assertEquals(expected.length, matches.size());
+
+      // In the order the bindings were added
+      for (int i = 0; i < expected.length; i++)
+      {
+         assertSame(expected[i].getQueue().getName() + " should match at " + i, expected[i], matches.get(i));
+      }
+   }
+}
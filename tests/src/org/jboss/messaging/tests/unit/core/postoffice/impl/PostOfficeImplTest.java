@@ -120,7 +120,7 @@ public class PostOfficeImplTest extends UnitTestCase
       EasyMock.expect(binding.getQueue()).andStubReturn(queue);
       SimpleString queueName = new SimpleString("testQueueName1");
       EasyMock.expect(queue.getName()).andStubReturn(queueName);
-      queue.setFlowController(null);
+      queue.setFlowController(EasyMock.isA(FlowController.class));
       EasyMock.expect(queue.getPersistenceID()).andStubReturn(1);
       ManagementService ms = EasyMock.createNiceMock(ManagementService.class);
       PagingManager pgm = EasyMock.createNiceMock(PagingManager.class);
@@ -164,7 +164,7 @@ public class PostOfficeImplTest extends UnitTestCase
          EasyMock.expect(bindings[i].getAddress()).andStubReturn(addresses[i]);
          EasyMock.expect(bindings[i].getQueue()).andStubReturn(queues[i]);
          EasyMock.expect(queues[i].getName()).andStubReturn(queueNames[i]);
-         queues[i].setFlowController(null);
+         queues[i].setFlowController(EasyMock.isA(FlowController.class));
          EasyMock.expect(queues[i].getPersistenceID()).andStubReturn(i + 1);
          EasyMock.replay(bindings[i], queues[i]);
       }
@@ -217,7 +217,7 @@ public class PostOfficeImplTest extends UnitTestCase
       EasyMock.expect(binding2.getQueue()).andStubReturn(queue);
       SimpleString queueName = new SimpleString("testQueueName1");
       EasyMock.expect(queue.getName()).andStubReturn(queueName);
-      queue.setFlowController(null);
+      queue.setFlowController(EasyMock.isA(FlowController.class));
       EasyMock.expect(queue.getPersistenceID()).andStubReturn(1);
 
       PagingManager pgm = EasyMock.createNiceMock(PagingManager.class);
@@ -262,7 +262,7 @@ public class PostOfficeImplTest extends UnitTestCase
          EasyMock.expect(bindings[i].getAddress()).andStubReturn(address);
          EasyMock.expect(bindings[i].getQueue()).andStubReturn(queues[i]);
          EasyMock.expect(queues[i].getName()).andStubReturn(queueNames[i]);
-         queues[i].setFlowController(null);
+         queues[i].setFlowController(EasyMock.isA(FlowController.class));
          EasyMock.expect(queues[i].getPersistenceID()).andStubReturn(i + 1);
          EasyMock.replay(bindings[i], queues[i]);
       }
@@ -26,6 +26,7 @@ import org.jboss.messaging.core.management.ManagementService;
 import org.jboss.messaging.core.paging.PagingManager;
 import org.jboss.messaging.core.persistence.StorageManager;
 import org.jboss.messaging.core.postoffice.Binding;
+import org.jboss.messaging.core.postoffice.FlowController;
 import org.jboss.messaging.core.postoffice.PostOffice;
 import org.jboss.messaging.core.postoffice.impl.PostOfficeImpl;
 import org.jboss.messaging.core.server.MessageReference;
@@ -81,7 +82,7 @@ public class PostOfficeImplWildcardManagerTest extends PostOfficeImplTest
       EasyMock.expect(message3.getDestination()).andStubReturn(address3);
       EasyMock.expect(qf.createQueue(-1, queueName, null, false, false)).andReturn(queue);
       EasyMock.expect(queue.getName()).andStubReturn(queueName);
-      queue.setFlowController(null);
+      queue.setFlowController(EasyMock.isA(FlowController.class));
       EasyMock.expect(queue.getFilter()).andStubReturn(null);
       EasyMock.expect(pgm.addSize(message)).andStubReturn(1000l);
       //this bit is the test itself, if the reference is created for each queue thenwe know that they have been routed via all 3 queues
@@ -147,8 +148,8 @@ public class PostOfficeImplWildcardManagerTest extends PostOfficeImplTest
       EasyMock.expect(qf.createQueue(-1, queueName2, null, false, false)).andReturn(queue2);
       EasyMock.expect(queue.getName()).andStubReturn(queueName);
       EasyMock.expect(queue2.getName()).andStubReturn(queueName2);
-      queue.setFlowController(null);
-      queue2.setFlowController(null);
+      queue.setFlowController(EasyMock.isA(FlowController.class));
+      queue2.setFlowController(EasyMock.isA(FlowController.class));
       EasyMock.expect(queue.getFilter()).andStubReturn(null);
       EasyMock.expect(queue2.getFilter()).andStubReturn(null);
       EasyMock.expect(pgm.addSize(message)).andStubReturn(1000l);
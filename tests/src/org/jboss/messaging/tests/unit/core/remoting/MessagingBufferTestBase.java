@@ -30,6 +30,9 @@ import static org.jboss.messaging.tests.util.RandomUtil.randomInt;
 import static org.jboss.messaging.tests.util.RandomUtil.randomLong;
 import static org.jboss.messaging.tests.util.RandomUtil.randomString;
 import static org.jboss.messaging.tests.util.UnitTestCase.assertEqualsByteArrays;
+
+import java.nio.ByteBuffer;
+
 import junit.framework.TestCase;
 
 import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
@@ -395,6 +398,63 @@ public abstract class MessagingBufferTestBase extends TestCase
       assertEqualsByteArrays(bytes, slicedBytes);
    }
 
+   public void testSliceArray() throws Exception
+   {
+      byte[] bytes = randomBytes(128);
+      wrapper.putBytes(bytes);
+
+      wrapper.position(64);
+      wrapper.limit(128);
+
+      MessagingBuffer slicedBuffer = wrapper.slice();
+
+      byte[] array = slicedBuffer.array();
+      assertEquals(64, array.length);
+      for (int i = 0; i < array.length; i++)
+      {
+         assertEquals(bytes[64 + i], array[i]);
+      }
+      assertEquals(0, slicedBuffer.position());
+   }
+
+   public void testPutByteBuffer() throws Exception
+   {
+      byte[] bytes = randomBytes(128);
+      ByteBuffer source = ByteBuffer.wrap(bytes);
+      source.position(32);
+
+      wrapper.putBytes(source);
+
+      assertEquals(96, wrapper.position());
+      assertEquals(0, source.remaining());
+
+      wrapper.flip();
+
+      byte[] b = new byte[96];
+      wrapper.getBytes(b);
+      for (int i = 0; i < b.length; i++)
+      {
+         assertEquals(bytes[32 + i], b[i]);
+      }
+   }
+
+   public void testToByteBuffer() throws Exception
+   {
+      byte[] bytes = randomBytes(128);
+      wrapper.putBytes(bytes);
+
+      ByteBuffer view = wrapper.toByteBuffer(16, 64);
+
+      // The wrapper is left as it was
+      assertEquals(128, wrapper.position());
+
+      assertEquals(64, view.remaining());
+      for (int i = 0; i < 64; i++)
+      {
+         assertEquals(bytes[16 + i], view.get());
+      }
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
@@ -47,6 +47,30 @@ public class ByteBufferWrapperTest extends MessagingBufferTestBase
 
    // Public --------------------------------------------------------
 
+   public void testReadOnlyBufferIsCopiedOnWrite() throws Exception
+   {
+      ByteBuffer shared = ByteBuffer.allocate(8);
+      shared.putInt(1);
+      shared.putInt(2);
+      shared.flip();
+
+      MessagingBuffer buffer = new ByteBufferWrapper(shared.asReadOnlyBuffer());
+
+      assertEquals(1, buffer.getInt());
+
+      buffer.putInt(3);
+
+      assertEquals(8, buffer.position());
+      assertEquals(8, buffer.limit());
+
+      buffer.rewind();
+
+      assertEquals(1, buffer.getInt());
+      assertEquals(3, buffer.getInt());
+
+      assertEquals(2, shared.getInt(4));
+   }
+
    // MessagingBufferTestBase overrides -----------------------------
    
    @Override
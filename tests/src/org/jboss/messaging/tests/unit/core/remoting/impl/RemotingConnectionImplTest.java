@@ -22,6 +22,29 @@
 
 package org.jboss.messaging.tests.unit.core.remoting.impl;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.messaging.core.remoting.Channel;
+import org.jboss.messaging.core.remoting.ChannelHandler;
+import org.jboss.messaging.core.client.impl.ClientMessageImpl;
+import org.jboss.messaging.core.remoting.Packet;
+import org.jboss.messaging.core.remoting.impl.ByteBufferWrapper;
+import org.jboss.messaging.core.remoting.impl.RemotingConnectionImpl;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionReceiveMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionSendMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionXAGetTimeoutResponseMessage;
+import org.jboss.messaging.core.remoting.impl.wireformat.SessionXASetTimeoutMessage;
+import org.jboss.messaging.core.remoting.spi.Connection;
+import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
+import org.jboss.messaging.core.remoting.spi.PacketConnection;
+import org.jboss.messaging.core.server.ServerMessage;
+import org.jboss.messaging.core.server.impl.ServerMessageImpl;
 import org.jboss.messaging.tests.util.UnitTestCase;
 
 /**
@@ -37,6 +60,194 @@ public class RemotingConnectionImplTest extends UnitTestCase
    {
       
    }
+
+   /*
+    * Several threads block on the same channel at once, and the server answers their requests in the reverse order
+    * they were sent. Each call must get the response to its own request.
+    */
+   public void testConcurrentBlockingCalls() throws Exception
+   {
+      final int numCalls = 10;
+
+      LoopbackConnection clientTransport = new LoopbackConnection();
+      LoopbackConnection serverTransport = new LoopbackConnection();
+
+      RemotingConnectionImpl client = new RemotingConnectionImpl(clientTransport, 5000, -1, null, null, null, true, null);
+      final RemotingConnectionImpl server = new RemotingConnectionImpl(serverTransport, 5000, -1, null, null, null, true, null);
+
+      clientTransport.peer = server;
+      serverTransport.peer = client;
+
+      final Channel serverChannel = server.getChannel(10, -1, false);
+
+      serverChannel.setHandler(new ChannelHandler()
+      {
+         private final List<Packet> requests = new ArrayList<Packet>();
+
+         public void handlePacket(final Packet packet)
+         {
+            requests.add(packet);
+
+            if (requests.size() == numCalls)
+            {
+               for (int i = numCalls - 1; i >= 0; i--)
+               {
+                  SessionXASetTimeoutMessage request = (SessionXASetTimeoutMessage)requests.get(i);
+
+                  Packet response = new SessionXAGetTimeoutResponseMessage(request.getTimeoutSeconds());
+
+                  response.setCorrelationID(request.getCorrelationID());
+
+                  serverChannel.send(response);
+               }
+            }
+         }
+      });
+
+      final Channel clientChannel = client.getChannel(10, -1, false);
+
+      class Caller extends Thread
+      {
+         private final int value;
+
+         private volatile Throwable failure;
+
+         Caller(final int value)
+         {
+            this.value = value;
+         }
+
+         public void run()
+         {
+            try
+            {
+               SessionXAGetTimeoutResponseMessage response =
+                  (SessionXAGetTimeoutResponseMessage)clientChannel.sendBlocking(new SessionXASetTimeoutMessage(value));
+
+               assertEquals(value, response.getTimeoutSeconds());
+            }
+            catch (Throwable t)
+            {
+               failure = t;
+            }
+         }
+      }
+
+      Caller[] callers = new Caller[numCalls];
+
+      for (int i = 0; i < numCalls; i++)
+      {
+         callers[i] = new Caller(i);
+         callers[i].start();
+      }
+
+      for (Caller caller : callers)
+      {
+         caller.join();
+
+         if (caller.failure != null)
+         {
+            fail(caller.failure.toString());
+         }
+      }
+
+      clientTransport.close();
+      serverTransport.close();
+   }
+
+   /*
+    * Over a transport that passes packets the receiver gets its own copy of the message, so the sender can change the
+    * body and send it again without affecting what was already received.
+    */
+   public void testReadsSuspendedUntilAllResumed() throws Exception
+   {
+      LoopbackConnection transport = new LoopbackConnection();
+
+      RemotingConnectionImpl connection = new RemotingConnectionImpl(transport, 5000, -1, null, null, null, true, null);
+
+      // Two sessions of the connection with full inboxes
+      connection.suspendRead();
+      connection.suspendRead();
+      connection.resumeRead();
+
+      assertEquals(1, transport.readableCalls.size());
+      assertFalse(transport.readableCalls.get(0));
+
+      connection.resumeRead();
+
+      assertEquals(2, transport.readableCalls.size());
+      assertTrue(transport.readableCalls.get(1));
+
+      connection.destroy();
+   }
+
+   public void testPassedPacketsAreCopiedForReceiver() throws Exception
+   {
+      LoopbackPacketConnection clientTransport = new LoopbackPacketConnection();
+      LoopbackPacketConnection serverTransport = new LoopbackPacketConnection();
+
+      RemotingConnectionImpl client = new RemotingConnectionImpl(clientTransport, 5000, -1, null, null, null, true, null);
+      RemotingConnectionImpl server = new RemotingConnectionImpl(serverTransport, 5000, -1, null, null, null, true, null);
+
+      clientTransport.peer = server;
+      serverTransport.peer = client;
+
+      final LinkedBlockingQueue<Packet> received = new LinkedBlockingQueue<Packet>();
+
+      server.getChannel(10, -1, false).setHandler(new ChannelHandler()
+      {
+         public void handlePacket(final Packet packet)
+         {
+            received.add(packet);
+         }
+      });
+
+      Channel clientChannel = client.getChannel(10, -1, false);
+
+      ClientMessageImpl message = new ClientMessageImpl(false, new ByteBufferWrapper(ByteBuffer.allocate(4)));
+      message.getBody().putInt(1);
+      message.getBody().flip();
+
+      SessionSendMessage sent = new SessionSendMessage(123, message, false);
+
+      clientChannel.send(sent);
+
+      SessionSendMessage copy = (SessionSendMessage)received.poll(5000, TimeUnit.MILLISECONDS);
+
+      assertNotNull(copy);
+      assertNotSame(sent, copy);
+      assertEquals(123, copy.getProducerID());
+      assertNotNull(copy.getServerMessage());
+
+      message.getBody().putInt(0, 2);
+
+      assertEquals(1, copy.getServerMessage().getBody().getInt());
+
+      clientTransport.close();
+      serverTransport.close();
+   }
+
+   public void testReceivedBodyIsCopiedWhenWritten() throws Exception
+   {
+      ServerMessage serverMessage = new ServerMessageImpl(1);
+      serverMessage.setBody(new ByteBufferWrapper(ByteBuffer.allocate(4)));
+      serverMessage.getBody().putInt(1);
+      serverMessage.getBody().flip();
+
+      SessionReceiveMessage copy = (SessionReceiveMessage)new SessionReceiveMessage(10, serverMessage, 1).copyForReceiver();
+
+      MessagingBuffer body = copy.getClientMessage().getBody();
+
+      assertEquals(1, body.getInt());
+
+      body.putInt(0, 2);
+
+      body.rewind();
+
+      assertEquals(2, body.getInt());
+      assertEquals(1, serverMessage.getBody().getInt());
+   }
+
 //   public void testGetID() throws Exception
 //   {
 //      Connection connection = EasyMock.createStrictMock(Connection.class);
@@ -480,6 +691,75 @@ public class RemotingConnectionImplTest extends UnitTestCase
 //      assertNull(listener.me);
 //      
 //   }
-   
-   
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * Hands each written buffer to the peer connection, in order, on its own thread
+    */
+   private static class LoopbackConnection implements Connection
+   {
+      private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+      volatile RemotingConnectionImpl peer;
+
+      final List<Boolean> readableCalls = new ArrayList<Boolean>();
+
+      public MessagingBuffer createBuffer(final int size)
+      {
+         return new ByteBufferWrapper(ByteBuffer.allocate(size));
+      }
+
+      public Object getID()
+      {
+         return this;
+      }
+
+      public void write(final MessagingBuffer buffer)
+      {
+         executor.execute(new Runnable()
+         {
+            public void run()
+            {
+               buffer.getInt(); // read and discard the length
+
+               peer.bufferReceived(getID(), buffer);
+            }
+         });
+      }
+
+      public void write(final MessagingBuffer buffer, final boolean batched)
+      {
+         write(buffer);
+      }
+
+      public synchronized void setReadable(final boolean readable)
+      {
+         readableCalls.add(readable);
+      }
+
+      public void close()
+      {
+         executor.shutdown();
+      }
+   }
+
+   private static class LoopbackPacketConnection extends LoopbackConnection implements PacketConnection
+   {
+      public boolean isPassPackets()
+      {
+         return true;
+      }
+
+      public void write(final Packet packet)
+      {
+         super.executor.execute(new Runnable()
+         {
+            public void run()
+            {
+               peer.packetReceived(getID(), packet);
+            }
+         });
+      }
+   }
 }
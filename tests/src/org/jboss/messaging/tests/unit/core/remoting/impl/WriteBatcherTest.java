@@ -0,0 +1,308 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.unit.core.remoting.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.messaging.core.remoting.impl.ByteBufferWrapper;
+import org.jboss.messaging.core.remoting.impl.WriteBatcher;
+import org.jboss.messaging.core.remoting.spi.MessagingBuffer;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.JBMThreadFactory;
+
+/**
+ *
+ * A WriteBatcherTest
+ *
+ */
+public class WriteBatcherTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private final List<List<MessagingBuffer>> writes = new ArrayList<List<MessagingBuffer>>();
+
+   private final List<Thread> writingThreads = new ArrayList<Thread>();
+
+   private CountDownLatch written;
+
+   private ScheduledExecutorService scheduler;
+
+   private ExecutorService executor;
+
+   private final WriteBatcher.BatchWriter writer = new WriteBatcher.BatchWriter()
+   {
+      public void write(final List<MessagingBuffer> buffers, final int size)
+      {
+         synchronized (writes)
+         {
+            writes.add(buffers);
+
+            writingThreads.add(Thread.currentThread());
+         }
+
+         written.countDown();
+      }
+   };
+
+   // Public --------------------------------------------------------
+
+   public void testBatchWrittenWhenSizeReached() throws Exception
+   {
+      WriteBatcher batcher = new WriteBatcher(writer, scheduler, executor, 60000, 30);
+
+      MessagingBuffer b1 = createBuffer(10);
+      MessagingBuffer b2 = createBuffer(10);
+      MessagingBuffer b3 = createBuffer(10);
+
+      batcher.write(b1, true);
+      batcher.write(b2, true);
+
+      assertEquals(0, writes.size());
+
+      batcher.write(b3, true);
+
+      assertWrites(new MessagingBuffer[] { b1, b2, b3 });
+   }
+
+   public void testBatchWrittenAfterDelay() throws Exception
+   {
+      WriteBatcher batcher = new WriteBatcher(writer, scheduler, executor, 50, 1024);
+
+      MessagingBuffer b1 = createBuffer(10);
+      MessagingBuffer b2 = createBuffer(10);
+
+      batcher.write(b1, true);
+      batcher.write(b2, true);
+
+      assertTrue(written.await(5000, TimeUnit.MILLISECONDS));
+
+      assertWrites(new MessagingBuffer[] { b1, b2 });
+
+      // The thread of the scheduler is shared by all the connections, it doesn't do the write itself
+      assertTrue(writingThreads.get(0).getThreadGroup().getName().startsWith("test-batch-writer"));
+   }
+
+   public void testUnbatchedWriteFlushesPending() throws Exception
+   {
+      WriteBatcher batcher = new WriteBatcher(writer, scheduler, executor, 60000, 1024);
+
+      MessagingBuffer b1 = createBuffer(10);
+      MessagingBuffer b2 = createBuffer(10);
+      MessagingBuffer b3 = createBuffer(10);
+
+      batcher.write(b1, true);
+      batcher.write(b2, true);
+      batcher.write(b3, false);
+
+      assertWrites(new MessagingBuffer[] { b1, b2, b3 });
+
+      // Nothing pending, the buffer is written on its own
+      MessagingBuffer b4 = createBuffer(10);
+
+      batcher.write(b4, false);
+
+      assertWrites(new MessagingBuffer[] { b1, b2, b3 }, new MessagingBuffer[] { b4 });
+   }
+
+   public void testFlush() throws Exception
+   {
+      WriteBatcher batcher = new WriteBatcher(writer, scheduler, executor, 60000, 1024);
+
+      batcher.flush();
+
+      assertEquals(0, writes.size());
+
+      MessagingBuffer b1 = createBuffer(10);
+
+      batcher.write(b1, true);
+
+      batcher.flush();
+
+      assertWrites(new MessagingBuffer[] { b1 });
+   }
+
+   public void testScheduledBatchWrittenAfterShutdown() throws Exception
+   {
+      WriteBatcher batcher = new WriteBatcher(writer, scheduler, executor, 50, 1024);
+
+      MessagingBuffer b1 = createBuffer(10);
+
+      batcher.write(b1, true);
+
+      // As the acceptors and connectors stop
+      scheduler.shutdown();
+
+      executor.shutdown();
+
+      assertTrue(written.await(5000, TimeUnit.MILLISECONDS));
+
+      assertWrites(new MessagingBuffer[] { b1 });
+   }
+
+   public void testBatchedWriteAfterShutdownWrittenStraightAway() throws Exception
+   {
+      WriteBatcher batcher = new WriteBatcher(writer, scheduler, executor, 60000, 1024);
+
+      scheduler.shutdown();
+
+      executor.shutdown();
+
+      MessagingBuffer b1 = createBuffer(10);
+
+      batcher.write(b1, true);
+
+      assertWrites(new MessagingBuffer[] { b1 });
+   }
+
+   /*
+    * While a write is blocked in the transport, the other threads can still queue buffers, and the buffers they
+    * don't batch are written by the blocked thread once its write is done, in order.
+    */
+   public void testWriteDoneOutsideTheLock() throws Exception
+   {
+      final CountDownLatch writeStarted = new CountDownLatch(1);
+
+      final CountDownLatch releaseWrite = new CountDownLatch(1);
+
+      final WriteBatcher batcher = new WriteBatcher(new WriteBatcher.BatchWriter()
+      {
+         public void write(final List<MessagingBuffer> buffers, final int size)
+         {
+            writer.write(buffers, size);
+
+            writeStarted.countDown();
+
+            try
+            {
+               releaseWrite.await(5000, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+            }
+         }
+      }, scheduler, executor, 60000, 1024);
+
+      written = new CountDownLatch(2);
+
+      final MessagingBuffer b1 = createBuffer(10);
+      MessagingBuffer b2 = createBuffer(10);
+      MessagingBuffer b3 = createBuffer(10);
+
+      Thread t = new Thread()
+      {
+         public void run()
+         {
+            batcher.write(b1, false);
+         }
+      };
+
+      t.start();
+
+      assertTrue(writeStarted.await(5000, TimeUnit.MILLISECONDS));
+
+      batcher.write(b2, true);
+      batcher.write(b3, false);
+
+      assertWrites(new MessagingBuffer[] { b1 });
+
+      releaseWrite.countDown();
+
+      t.join(5000);
+
+      assertFalse(t.isAlive());
+
+      assertTrue(written.await(5000, TimeUnit.MILLISECONDS));
+
+      assertWrites(new MessagingBuffer[] { b1 }, new MessagingBuffer[] { b2, b3 });
+
+      assertSame(t, writingThreads.get(1));
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      writes.clear();
+
+      writingThreads.clear();
+
+      written = new CountDownLatch(1);
+
+      scheduler = Executors.newSingleThreadScheduledExecutor(new JBMThreadFactory("test-batch-scheduler"));
+
+      executor = Executors.newCachedThreadPool(new JBMThreadFactory("test-batch-writer"));
+   }
+
+   protected void tearDown() throws Exception
+   {
+      scheduler.shutdownNow();
+
+      executor.shutdownNow();
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private MessagingBuffer createBuffer(final int size)
+   {
+      MessagingBuffer buffer = new ByteBufferWrapper(ByteBuffer.allocate(size));
+
+      buffer.putBytes(new byte[size]);
+
+      buffer.flip();
+
+      return buffer;
+   }
+
+   private void assertWrites(final MessagingBuffer[]... expected)
+   {
+      synchronized (writes)
+      {
+         assertEquals(expected.length, writes.size());
+
+         for (int i = 0; i < expected.length; i++)
+         {
+            List<MessagingBuffer> write = writes.get(i);
+
+            assertEquals(expected[i].length, write.size());
+
+            for (int j = 0; j < expected[i].length; j++)
+            {
+               assertSame(expected[i][j], write.get(j));
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,415 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.easymock.EasyMock;
+import org.jboss.messaging.core.persistence.StorageManager;
+import org.jboss.messaging.core.server.MessageReference;
+import org.jboss.messaging.core.server.Queue;
+import org.jboss.messaging.core.server.impl.ExpiryReaper;
+import org.jboss.messaging.core.server.impl.QueueImpl;
+import org.jboss.messaging.core.settings.HierarchicalRepository;
+import org.jboss.messaging.core.settings.impl.HierarchicalObjectRepository;
+import org.jboss.messaging.core.settings.impl.QueueSettings;
+import org.jboss.messaging.tests.unit.core.server.impl.fakes.FakeConsumer;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * An ExpiryReaperTest
+ *
+ * The reaper is scanned by hand, at times far enough in the future that its own scanner never expires anything.
+ *
+ */
+public class ExpiryReaperTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   // The scanner only looks at the present, long before the messages of the test expire
+   private static final long SCAN_PERIOD = 1000;
+
+   // Attributes ----------------------------------------------------
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   private StorageManager storageManager;
+
+   private HierarchicalRepository<QueueSettings> queueSettingsRepository;
+
+   private long base;
+
+   // Public --------------------------------------------------------
+
+   public void testExpiredInOrderAndNotEarly() throws Exception
+   {
+      ExpiryReaper reaper = createReaper(100, -1);
+
+      Queue queue = createQueue("queue1", reaper);
+
+      MessageReference ref1 = add(queue, 1, base + 30);
+      add(queue, 2, base + 10);
+      add(queue, 3, base + 20);
+      MessageReference ref4 = add(queue, 4, 0);
+
+      assertEquals(4, queue.getMessageCount());
+      assertEquals(3, queue.getExpiringCount());
+      assertEquals(3, reaper.size());
+
+      replayStorage(1);
+
+      reaper.scan(base + 5);
+
+      assertEquals(4, queue.getMessageCount());
+      assertEquals(0, queue.getMessagesExpired());
+
+      reaper.scan(base + 20);
+
+      assertEquals(2, queue.getMessageCount());
+      assertEquals(2, queue.getMessagesExpired());
+      assertEquals(1, queue.getExpiringCount());
+      assertEquals(1, reaper.size());
+      assertEquals(0, queue.getDeliveringCount());
+
+      EasyMock.verify(storageManager);
+
+      FakeConsumer consumer = new FakeConsumer();
+      queue.addConsumer(consumer);
+      queue.deliver();
+
+      assertRefs(consumer.getReferences(), ref1, ref4);
+   }
+
+   public void testBatchedInTransactions() throws Exception
+   {
+      ExpiryReaper reaper = createReaper(2, -1);
+
+      Queue queue = createQueue("queue1", reaper);
+
+      for (int i = 0; i < 5; i++)
+      {
+         add(queue, i, base + i);
+      }
+
+      // One transaction per batch
+      replayStorage(3);
+
+      reaper.scan(base + 10);
+
+      EasyMock.verify(storageManager);
+
+      assertEquals(0, queue.getMessageCount());
+      assertEquals(5, queue.getMessagesExpired());
+      assertEquals(0, reaper.size());
+   }
+
+   public void testRateLimited() throws Exception
+   {
+      // 3 per second, scanned every second
+      ExpiryReaper reaper = createReaper(100, 3);
+
+      Queue queue = createQueue("queue1", reaper);
+
+      for (int i = 0; i < 5; i++)
+      {
+         add(queue, i, base + i);
+      }
+
+      replayStorage(2);
+
+      reaper.scan(base + 10);
+
+      assertEquals(2, queue.getMessageCount());
+      assertEquals(3, queue.getMessagesExpired());
+      assertEquals(2, reaper.size());
+
+      reaper.scan(base + 10);
+
+      assertEquals(0, queue.getMessageCount());
+      assertEquals(5, queue.getMessagesExpired());
+      assertEquals(0, reaper.size());
+
+      EasyMock.verify(storageManager);
+   }
+
+   public void testDeliveredReferenceIsNotExpired() throws Exception
+   {
+      ExpiryReaper reaper = createReaper(100, -1);
+
+      Queue queue = createQueue("queue1", reaper);
+
+      MessageReference ref1 = add(queue, 1, base + 10);
+      MessageReference ref2 = add(queue, 2, base + 10);
+
+      assertSame(ref1, queue.removeReferenceWithID(1));
+
+      assertEquals(1, queue.getExpiringCount());
+      assertEquals(1, reaper.size());
+
+      FakeConsumer consumer = new FakeConsumer();
+      queue.addConsumer(consumer);
+      queue.deliver();
+
+      assertRefs(consumer.getReferences(), ref2);
+
+      assertEquals(0, queue.getExpiringCount());
+      assertEquals(0, reaper.size());
+
+      replayStorage(0);
+
+      reaper.scan(base + 10);
+
+      EasyMock.verify(storageManager);
+
+      assertEquals(0, queue.getMessagesExpired());
+   }
+
+   public void testExpiredFromEachQueue() throws Exception
+   {
+      ExpiryReaper reaper = createReaper(100, -1);
+
+      Queue queue1 = createQueue("queue1", reaper);
+      Queue queue2 = createQueue("queue2", reaper);
+
+      add(queue1, 1, base + 10);
+      add(queue2, 2, base + 10);
+      add(queue1, 3, base + 10);
+
+      // One transaction per queue
+      replayStorage(2);
+
+      reaper.scan(base + 10);
+
+      EasyMock.verify(storageManager);
+
+      assertEquals(2, queue1.getMessagesExpired());
+      assertEquals(1, queue2.getMessagesExpired());
+      assertEquals(0, queue1.getMessageCount());
+      assertEquals(0, queue2.getMessageCount());
+   }
+
+   public void testBackupExpiresOnceActivated() throws Exception
+   {
+      ExpiryReaper reaper = createReaper(100, -1);
+
+      Queue queue = createQueue("queue1", reaper);
+
+      queue.setBackup();
+
+      add(queue, 1, base + 10);
+
+      // Kept off the reaper, the live node expires it
+      assertEquals(1, queue.getExpiringCount());
+      assertEquals(0, reaper.size());
+
+      replayStorage(1);
+
+      queue.activate();
+
+      assertEquals(1, reaper.size());
+
+      reaper.scan(base + 10);
+
+      EasyMock.verify(storageManager);
+
+      assertEquals(0, queue.getMessageCount());
+      assertEquals(1, queue.getMessagesExpired());
+   }
+
+   public void testFailedExpiryPutsReferencesBack() throws Exception
+   {
+      ExpiryReaper reaper = createReaper(100, -1);
+
+      Queue queue = createQueue("queue1", reaper);
+
+      MessageReference ref1 = addDurable(queue, 1, base + 10);
+      MessageReference ref2 = addDurable(queue, 2, base + 10);
+      MessageReference ref3 = add(queue, 3, 0);
+
+      EasyMock.expect(storageManager.generateUniqueID()).andReturn(1L).times(2);
+      storageManager.commit(1L);
+      EasyMock.expectLastCall().andThrow(new Exception("commit failed"));
+      storageManager.rollback(1L);
+      storageManager.commit(1L);
+
+      replayStorage(0);
+
+      reaper.scan(base + 10);
+
+      assertEquals(3, queue.getMessageCount());
+      assertEquals(0, queue.getDeliveringCount());
+      assertEquals(0, queue.getMessagesExpired());
+      assertEquals(2, queue.getExpiringCount());
+      assertEquals(2, reaper.size());
+      assertEquals(1, ref1.getMessage().getDurableRefCount());
+      assertEquals(1, ref2.getMessage().getRefCount());
+
+      // Expired on the next scan
+      reaper.scan(base + 10);
+
+      EasyMock.verify(storageManager);
+
+      assertEquals(1, queue.getMessageCount());
+      assertEquals(2, queue.getMessagesExpired());
+      assertEquals(0, reaper.size());
+
+      FakeConsumer consumer = new FakeConsumer();
+      queue.addConsumer(consumer);
+      queue.deliver();
+
+      assertRefs(consumer.getReferences(), ref3);
+   }
+
+   public void testFailedExpiryKeepsOrder() throws Exception
+   {
+      ExpiryReaper reaper = createReaper(100, -1);
+
+      Queue queue = createQueue("queue1", reaper);
+
+      MessageReference ref1 = add(queue, 1, 0);
+      MessageReference ref2 = addDurable(queue, 2, base + 10);
+      MessageReference ref3 = add(queue, 3, 0);
+      MessageReference ref4 = addDurable(queue, 4, base + 10);
+
+      EasyMock.expect(storageManager.generateUniqueID()).andReturn(1L);
+      storageManager.commit(1L);
+      EasyMock.expectLastCall().andThrow(new Exception("commit failed"));
+
+      replayStorage(0);
+
+      reaper.scan(base + 10);
+
+      EasyMock.verify(storageManager);
+
+      // The expired references are back at the head of the queue, in their order
+      FakeConsumer consumer = new FakeConsumer();
+      queue.addConsumer(consumer);
+      queue.deliver();
+
+      assertRefs(consumer.getReferences(), ref2, ref4, ref1, ref3);
+   }
+
+   public void testInvalidBatchSize() throws Exception
+   {
+      try
+      {
+         createReaper(0, -1);
+
+         fail("Should throw exception");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // Ok
+      }
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+      storageManager = EasyMock.createNiceMock(StorageManager.class);
+
+      queueSettingsRepository = new HierarchicalObjectRepository<QueueSettings>();
+
+      queueSettingsRepository.setDefault(new QueueSettings());
+
+      base = System.currentTimeMillis() + 100000;
+   }
+
+   protected void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private ExpiryReaper createReaper(final int batchSize, final int maxRate)
+   {
+      return new ExpiryReaper(scheduledExecutor, storageManager, queueSettingsRepository, SCAN_PERIOD, batchSize, maxRate);
+   }
+
+   private Queue createQueue(final String name, final ExpiryReaper reaper)
+   {
+      return new QueueImpl(1, new SimpleString(name), null, false, true, false, null, reaper, null);
+   }
+
+   private MessageReference add(final Queue queue, final long id, final long expiration)
+   {
+      MessageReference ref = generateReference(queue, id);
+
+      ref.getMessage().setDurable(false);
+
+      ref.getMessage().setExpiration(expiration);
+
+      queue.addLast(ref);
+
+      return ref;
+   }
+
+   private MessageReference addDurable(final Queue queue, final long id, final long expiration)
+   {
+      MessageReference ref = generateReference(queue, id);
+
+      ref.getMessage().setExpiration(expiration);
+
+      queue.addLast(ref);
+
+      return ref;
+   }
+
+   /**
+    * Expects one unique ID, so one transaction, per expired batch
+    */
+   private void replayStorage(final int transactions)
+   {
+      if (transactions > 0)
+      {
+         EasyMock.expect(storageManager.generateUniqueID()).andReturn(1L).times(transactions);
+      }
+
+      EasyMock.replay(storageManager);
+   }
+
+   private void assertRefs(final List<MessageReference> actual, final MessageReference... expected)
+   {
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (MessageReference ref : expected)
+      {
+         refs.add(ref);
+      }
+
+      assertRefListsIdenticalRefs(refs, actual);
+   }
+}
@@ -302,6 +302,7 @@ public class MessageReferenceImplTest extends UnitTestCase
       EasyMock.expect(serverMessage.decrementRefCount()).andReturn(1);
       EasyMock.expect(queue.isDurable()).andStubReturn(true);
       EasyMock.expect(serverMessage.decrementDurableRefCount()).andReturn(0);
+      EasyMock.expect(serverMessage.getPageId()).andStubReturn(-1);
       EasyMock.expect(sm.generateUniqueID()).andReturn(1l);
 
       EasyMock.replay(sm, po, repos, serverMessage, queue, pm);
@@ -42,6 +42,7 @@ import org.jboss.messaging.core.server.MessageReference;
 import org.jboss.messaging.core.server.Queue;
 import org.jboss.messaging.core.server.ServerMessage;
 import org.jboss.messaging.core.server.impl.QueueImpl;
+import org.jboss.messaging.core.server.impl.ScheduledDeliveryWheel;
 import org.jboss.messaging.core.server.impl.RoundRobinDistributionPolicy;
 import org.jboss.messaging.core.settings.HierarchicalRepository;
 import org.jboss.messaging.core.settings.impl.QueueSettings;
@@ -70,13 +71,15 @@ public class QueueImplTest extends UnitTestCase
 
    private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
 
+   private final ScheduledDeliveryWheel scheduledDeliveryWheel = new ScheduledDeliveryWheel(scheduledExecutor);
+
    private static final SimpleString queue1 = new SimpleString("queue1");
 
    public void testID()
    {
       final long id = 123;
 
-      Queue queue = new QueueImpl(id, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(id, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       assertEquals(id, queue.getPersistenceID());
 
@@ -91,29 +94,29 @@ public class QueueImplTest extends UnitTestCase
    {
       final SimpleString name = new SimpleString("oobblle");
 
-      Queue queue = new QueueImpl(1, name, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, name, null, false, true, false, scheduledDeliveryWheel, null);
 
       assertEquals(name, queue.getName());
    }
 
    public void testClustered()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       assertFalse(queue.isClustered());
 
-      queue = new QueueImpl(1, queue1, null, true, true, false, scheduledExecutor, null);
+      queue = new QueueImpl(1, queue1, null, true, true, false, scheduledDeliveryWheel, null);
 
       assertTrue(queue.isClustered());
    }
 
    public void testDurable()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, false, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, false, false, scheduledDeliveryWheel, null);
 
       assertFalse(queue.isDurable());
 
-      queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       assertTrue(queue.isDurable());
    }
@@ -126,7 +129,7 @@ public class QueueImplTest extends UnitTestCase
 
       Consumer cons3 = new FakeConsumer();
 
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       assertEquals(0, queue.getConsumerCount());
 
@@ -167,7 +170,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testGetSetDistributionPolicy()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       assertNotNull(queue.getDistributionPolicy());
 
@@ -182,14 +185,14 @@ public class QueueImplTest extends UnitTestCase
 
    public void testGetFilter()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       assertNull(queue.getFilter());
 
       Filter filter = createMock(Filter.class);
       replay(filter);
 
-      queue = new QueueImpl(1, queue1, filter, false, true, false, scheduledExecutor, null);
+      queue = new QueueImpl(1, queue1, filter, false, true, false, scheduledDeliveryWheel, null);
 
       assertEquals(filter, queue.getFilter());
       
@@ -198,7 +201,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testSimpleAddLast()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       final int numMessages = 10;
 
@@ -217,7 +220,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testSimpleDirectDelivery()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       FakeConsumer consumer = new FakeConsumer();
 
@@ -245,7 +248,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testSimpleNonDirectDelivery()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       final int numMessages = 10;
 
@@ -283,7 +286,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testBusyConsumer()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       FakeConsumer consumer = new FakeConsumer();
 
@@ -327,7 +330,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testBusyConsumerThenAddMoreMessages()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       FakeConsumer consumer = new FakeConsumer();
 
@@ -394,7 +397,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testAddFirstAddLast()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       final int numMessages = 10;
 
@@ -449,7 +452,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testChangeConsumersAndDeliver() throws Exception
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       final int numMessages = 10;
 
@@ -603,7 +606,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testConsumerReturningNull()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       class NullConsumer implements Consumer
       {
@@ -631,7 +634,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testRoundRobinWithQueueing()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       assertTrue(queue.getDistributionPolicy() instanceof RoundRobinDistributionPolicy);
 
@@ -676,7 +679,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testRoundRobinDirect()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       assertTrue(queue.getDistributionPolicy() instanceof RoundRobinDistributionPolicy);
 
@@ -719,7 +722,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testDeleteAllReferences() throws Exception
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       StorageManager storageManager = EasyMock.createStrictMock(StorageManager.class);
 
@@ -803,7 +806,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testWithPriorities()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       final int numMessages = 10;
 
@@ -858,6 +861,68 @@ public class QueueImplTest extends UnitTestCase
       assertRefListsIdenticalRefs(refs, consumer.getReferences());
    }
 
+   public void testHigherPriorityAddedWhileDelivering() throws Exception
+   {
+      final Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
+
+      MessageReference ref1 = generateReference(queue, 1);
+
+      ref1.getMessage().setPriority((byte)4);
+
+      final MessageReference ref2 = generateReference(queue, 2);
+
+      ref2.getMessage().setPriority((byte)9);
+
+      queue.addLast(ref1);
+
+      final Thread[] adder = new Thread[1];
+
+      FakeConsumer consumer = new FakeConsumer()
+      {
+         public synchronized HandleStatus handle(final MessageReference reference)
+         {
+            if (adder[0] == null)
+            {
+               // A producer adds a higher priority reference in front of the one being delivered
+               adder[0] = new Thread()
+               {
+                  public void run()
+                  {
+                     queue.addLast(ref2);
+                  }
+               };
+
+               adder[0].start();
+
+               long timeout = System.currentTimeMillis() + 5000;
+
+               while (queue.getMessageCount() < 2 && System.currentTimeMillis() < timeout)
+               {
+                  Thread.yield();
+               }
+            }
+
+            return super.handle(reference);
+         }
+      };
+
+      queue.addConsumer(consumer);
+
+      synchronized (queue)
+      {
+         queue.deliver();
+      }
+
+      adder[0].join();
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      refs.add(ref1);
+      refs.add(ref2);
+
+      assertRefListsIdenticalRefs(refs, consumer.getReferences());
+   }
+
    public void testConsumerWithFiltersDirect() throws Exception
    {
       testConsumerWithFilters(true);
@@ -870,7 +935,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testConsumerWithFilterAddAndRemove()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       Filter filter = new FakeFilter("fruit", "orange");
 
@@ -879,7 +944,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testList()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       final int numMessages = 20;
 
@@ -903,7 +968,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testListWithFilter()
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       final int numMessages = 20;
 
@@ -939,7 +1004,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testConsumeWithFiltersAddAndRemoveConsumer() throws Exception
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       Filter filter = new FakeFilter("fruit", "orange");
 
@@ -1012,7 +1077,7 @@ public class QueueImplTest extends UnitTestCase
 
    private void testConsumerWithFilters(boolean direct) throws Exception
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
 
       Filter filter = new FakeFilter("fruit", "orange");
 
@@ -1101,7 +1166,7 @@ public class QueueImplTest extends UnitTestCase
    public void testMessageOrder() throws Exception
    {
       Consumer consumer = EasyMock.createStrictMock(Consumer.class);
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, 1);
       MessageReference messageReference2 = generateReference(queue, 2);
       MessageReference messageReference3 = generateReference(queue, 3);
@@ -1119,7 +1184,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testMessagesAdded() throws Exception
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, 1);
       MessageReference messageReference2 = generateReference(queue, 2);
       MessageReference messageReference3 = generateReference(queue, 3);
@@ -1132,7 +1197,7 @@ public class QueueImplTest extends UnitTestCase
    public void testAddListFirst() throws Exception
    {
       Consumer consumer = EasyMock.createStrictMock(Consumer.class);
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, 1);
       MessageReference messageReference2 = generateReference(queue, 2);
       MessageReference messageReference3 = generateReference(queue, 3);
@@ -1153,7 +1218,7 @@ public class QueueImplTest extends UnitTestCase
    public void testRemoveReferenceWithId() throws Exception
    {
       Consumer consumer = EasyMock.createStrictMock(Consumer.class);
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, 1);
       MessageReference messageReference2 = generateReference(queue, 2);
       MessageReference messageReference3 = generateReference(queue, 3);
@@ -1172,9 +1237,24 @@ public class QueueImplTest extends UnitTestCase
 
    }
 
+   public void testRemoveReferenceWithIdAfterDelivery() throws Exception
+   {
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
+      MessageReference messageReference = generateReference(queue, 1);
+      MessageReference messageReference2 = generateReference(queue, 2);
+      queue.addLast(messageReference);
+      queue.addLast(messageReference2);
+      assertSame(messageReference, queue.removeFirst());
+      assertNull(queue.removeReferenceWithID(1));
+      assertNull(queue.getReference(1));
+      assertSame(messageReference2, queue.removeReferenceWithID(2));
+      assertNull(queue.removeReferenceWithID(2));
+      assertEquals(0, queue.getMessageCount());
+   }
+
    public void testGetReference() throws Exception
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, 1);
       MessageReference messageReference2 = generateReference(queue, 2);
       MessageReference messageReference3 = generateReference(queue, 3);
@@ -1187,7 +1267,7 @@ public class QueueImplTest extends UnitTestCase
 
    public void testGetNonExistentReference() throws Exception
    {
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, 1);
       MessageReference messageReference2 = generateReference(queue, 2);
       MessageReference messageReference3 = generateReference(queue, 3);
@@ -1201,7 +1281,7 @@ public class QueueImplTest extends UnitTestCase
    public void testConsumerRemovedAfterException() throws Exception
    {
       Consumer consumer = EasyMock.createStrictMock(Consumer.class);
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, 1);
       MessageReference messageReference2 = generateReference(queue, 2);
       MessageReference messageReference3 = generateReference(queue, 3);
@@ -1221,7 +1301,7 @@ public class QueueImplTest extends UnitTestCase
    public void testDeliveryAsync() throws Exception
    {
       Consumer consumer = EasyMock.createStrictMock(Consumer.class);
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, 1);
       MessageReference messageReference2 = generateReference(queue, 2);
       MessageReference messageReference3 = generateReference(queue, 3);
@@ -1250,7 +1330,7 @@ public class QueueImplTest extends UnitTestCase
    {
       long messageID = randomLong();
       final SimpleString expiryQueue = new SimpleString("expiryQueue");
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, messageID);
       StorageManager storageManager = EasyMock.createMock(StorageManager.class);
       EasyMock.expect(storageManager.generateUniqueID()).andReturn(randomLong());
@@ -1308,7 +1388,7 @@ public class QueueImplTest extends UnitTestCase
    {
       long messageID = randomLong();
       final SimpleString dlqName = new SimpleString("dlq");
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       MessageReference messageReference = generateReference(queue, messageID);
       StorageManager storageManager = createMock(StorageManager.class);
       expect(storageManager.generateUniqueID()).andReturn(randomLong());
@@ -1367,7 +1447,7 @@ public class QueueImplTest extends UnitTestCase
       long newMessageID = randomLong();
       long tid = randomLong();
       final SimpleString toQueueName = new SimpleString("toQueueName");
-      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledExecutor, null);
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
       Queue toQueue = createMock(Queue.class);
     
       MessageReference messageReference = generateReference(queue, messageID);
@@ -1413,6 +1493,41 @@ public class QueueImplTest extends UnitTestCase
 
       EasyMock.verify(storageManager, postOffice, queueSettingsRepository, toBinding, pm);
    }
+
+   public void testMoveMessageFailedLeavesItInQueue() throws Exception
+   {
+      long messageID = randomLong();
+      Queue queue = new QueueImpl(1, queue1, null, false, true, false, scheduledDeliveryWheel, null);
+
+      MessageReference messageReference = generateReference(queue, messageID);
+      StorageManager storageManager = EasyMock.createMock(StorageManager.class);
+      EasyMock.expect(storageManager.generateUniqueID()).andThrow(new IllegalStateException());
+      PostOffice postOffice = EasyMock.createMock(PostOffice.class);
+      EasyMock.expect(postOffice.getPagingManager()).andStubReturn(EasyMock.createNiceMock(PagingManager.class));
+      Binding toBinding = EasyMock.createMock(Binding.class);
+
+      EasyMock.replay(storageManager, postOffice, toBinding);
+
+      queue.addLast(messageReference);
+
+      try
+      {
+         queue.moveMessage(messageID, toBinding, storageManager, postOffice);
+         fail("Should throw exception");
+      }
+      catch (IllegalStateException e)
+      {
+         // Ok
+      }
+
+      assertEquals(1, queue.getMessageCount());
+      assertEquals(0, queue.getDeliveringCount());
+      assertSame(messageReference, queue.getReference(messageID));
+
+      assertFalse(queue.moveMessage(randomLong(), toBinding, storageManager, postOffice));
+
+      EasyMock.verify(storageManager, postOffice, toBinding);
+   }
    
    // Inner classes ---------------------------------------------------------------
 
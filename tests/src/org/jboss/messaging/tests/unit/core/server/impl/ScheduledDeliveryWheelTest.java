@@ -0,0 +1,329 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */ 
+
+package org.jboss.messaging.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jboss.messaging.core.server.MessageReference;
+import org.jboss.messaging.core.server.Queue;
+import org.jboss.messaging.core.server.impl.QueueImpl;
+import org.jboss.messaging.core.server.impl.ScheduledDeliveryWheel;
+import org.jboss.messaging.tests.unit.core.server.impl.fakes.FakeConsumer;
+import org.jboss.messaging.tests.util.UnitTestCase;
+import org.jboss.messaging.util.SimpleString;
+
+/**
+ *
+ * A ScheduledDeliveryWheelTest
+ *
+ * The wheel is advanced by hand, to times far enough in the future that its own ticker never releases anything.
+ *
+ */
+public class ScheduledDeliveryWheelTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   private static final long TICK = 10;
+
+   private static final int WHEEL_SIZE = 8;
+
+   // Attributes ----------------------------------------------------
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   private ScheduledDeliveryWheel wheel;
+
+   private long base;
+
+   // Public --------------------------------------------------------
+
+   public void testReleasedInOrderAndNotEarly() throws Exception
+   {
+      Queue queue = createQueue("queue1");
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      MessageReference ref1 = schedule(queue, 1, base + 15);
+      MessageReference ref2 = schedule(queue, 2, base + 5);
+      MessageReference ref3 = schedule(queue, 3, base + 11);
+      MessageReference ref4 = schedule(queue, 4, base + 30);
+
+      assertEquals(4, queue.getScheduledCount());
+      assertEquals(4, wheel.size());
+
+      wheel.tick(base + 4);
+
+      assertTrue(consumer.getReferences().isEmpty());
+
+      wheel.tick(base + 10);
+
+      assertRefs(consumer.getReferences(), ref2);
+
+      wheel.tick(base + 29);
+
+      // Released in the order they were scheduled, they became due in the same tick
+
+      assertRefs(consumer.getReferences(), ref2, ref1, ref3);
+
+      wheel.tick(base + 30);
+
+      assertRefs(consumer.getReferences(), ref2, ref1, ref3, ref4);
+
+      assertEquals(0, queue.getScheduledCount());
+      assertEquals(0, wheel.size());
+
+      for (MessageReference ref : consumer.getReferences())
+      {
+         assertEquals(0, ref.getScheduledDeliveryTime());
+      }
+   }
+
+   public void testReleasedAtItsDeliveryTimeWithinTheTick() throws Exception
+   {
+      Queue queue = createQueue("queue1");
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      MessageReference ref1 = schedule(queue, 1, base + 13);
+      MessageReference ref2 = schedule(queue, 2, base + 17);
+
+      wheel.tick(base + 12);
+
+      assertTrue(consumer.getReferences().isEmpty());
+
+      wheel.tick(base + 13);
+
+      assertRefs(consumer.getReferences(), ref1);
+
+      wheel.tick(base + 16);
+
+      assertRefs(consumer.getReferences(), ref1);
+
+      wheel.tick(base + 17);
+
+      assertRefs(consumer.getReferences(), ref1, ref2);
+   }
+
+   public void testLaterRoundsStayOnTheWheel() throws Exception
+   {
+      Queue queue = createQueue("queue1");
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      // Both in the same bucket, one turn of the wheel apart
+      MessageReference ref1 = schedule(queue, 1, base + TICK);
+      MessageReference ref2 = schedule(queue, 2, base + TICK + TICK * WHEEL_SIZE);
+
+      wheel.tick(base + TICK * WHEEL_SIZE);
+
+      assertRefs(consumer.getReferences(), ref1);
+      assertEquals(1, queue.getScheduledCount());
+
+      wheel.tick(base + TICK + TICK * WHEEL_SIZE);
+
+      assertRefs(consumer.getReferences(), ref1, ref2);
+   }
+
+   public void testReleasedOnTimeFromEachLevel() throws Exception
+   {
+      Queue queue = createQueue("queue1");
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      // On the first level, the second level and the overflow, a span or a turn apart
+      long[] delays = new long[] { 3, WHEEL_SIZE - 1, WHEEL_SIZE, WHEEL_SIZE + 5, WHEEL_SIZE * 3,
+                                   WHEEL_SIZE * WHEEL_SIZE - 1, WHEEL_SIZE * WHEEL_SIZE + 7, WHEEL_SIZE * WHEEL_SIZE * 3 };
+
+      for (int i = 0; i < delays.length; i++)
+      {
+         schedule(queue, i, base + delays[i] * TICK - 1);
+      }
+
+      // The wheel catches up with real time on the first tick
+      wheel.tick(base);
+
+      assertTrue(consumer.getReferences().isEmpty());
+
+      int released = 0;
+
+      for (long tick = 1; tick <= WHEEL_SIZE * WHEEL_SIZE * 3; tick++)
+      {
+         wheel.tick(base + tick * TICK);
+
+         while (released < delays.length && delays[released] <= tick)
+         {
+            released++;
+         }
+
+         assertEquals("at tick " + tick, released, consumer.getReferences().size());
+      }
+
+      assertEquals(0, wheel.size());
+      assertEquals(0, queue.getScheduledCount());
+   }
+
+   public void testReleasedInOrderWhenCatchingUp() throws Exception
+   {
+      Queue queue = createQueue("queue1");
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      MessageReference ref1 = schedule(queue, 1, base + TICK * WHEEL_SIZE * WHEEL_SIZE * 2);
+      MessageReference ref2 = schedule(queue, 2, base + TICK * WHEEL_SIZE * 2);
+      MessageReference ref3 = schedule(queue, 3, base + TICK);
+
+      wheel.tick(base + TICK * WHEEL_SIZE * WHEEL_SIZE * 2);
+
+      // Delivered in the order they became due, though each was on a different level
+      assertRefs(consumer.getReferences(), ref3, ref2, ref1);
+   }
+
+   public void testRemovedReferenceIsNotReleased() throws Exception
+   {
+      Queue queue = createQueue("queue1");
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      MessageReference ref1 = schedule(queue, 1, base + 10);
+      MessageReference ref2 = schedule(queue, 2, base + 10);
+
+      assertSame(ref1, queue.removeReferenceWithID(1));
+      assertNull(queue.removeReferenceWithID(1));
+
+      assertEquals(1, queue.getScheduledCount());
+      assertEquals(1, wheel.size());
+
+      wheel.tick(base + 10);
+
+      assertRefs(consumer.getReferences(), ref2);
+   }
+
+   public void testReleasedToEachQueueAtTheFront() throws Exception
+   {
+      Queue queue1 = createQueue("queue1");
+      Queue queue2 = createQueue("queue2");
+
+      MessageReference ref1 = schedule(queue1, 1, base + 10);
+      MessageReference ref2 = generateReference(queue1, 2);
+      queue1.addLast(ref2);
+      MessageReference ref3 = schedule(queue2, 3, base + 10);
+      MessageReference ref4 = schedule(queue1, 4, base + 20);
+
+      wheel.tick(base + 20);
+
+      assertEquals(0, wheel.size());
+
+      // Each released reference goes in front of what was already in its queue
+      FakeConsumer consumer1 = new FakeConsumer();
+      queue1.addConsumer(consumer1);
+      queue1.deliver();
+
+      assertRefs(consumer1.getReferences(), ref4, ref1, ref2);
+
+      FakeConsumer consumer2 = new FakeConsumer();
+      queue2.addConsumer(consumer2);
+      queue2.deliver();
+
+      assertRefs(consumer2.getReferences(), ref3);
+   }
+
+   public void testInvalidSize() throws Exception
+   {
+      try
+      {
+         new ScheduledDeliveryWheel(scheduledExecutor, TICK, 10);
+
+         fail("Should throw exception");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // Ok
+      }
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+      wheel = new ScheduledDeliveryWheel(scheduledExecutor, TICK, WHEEL_SIZE);
+
+      // Aligned to a tick, far enough ahead for the wheel's own ticker not to get there during the test
+      base = (System.currentTimeMillis() / TICK + 100000) * TICK;
+   }
+
+   protected void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private Queue createQueue(final String name)
+   {
+      return new QueueImpl(1, new SimpleString(name), null, false, true, false, wheel, null);
+   }
+
+   private MessageReference schedule(final Queue queue, final long id, final long deliveryTime)
+   {
+      MessageReference ref = generateReference(queue, id);
+
+      ref.setScheduledDeliveryTime(deliveryTime);
+
+      queue.addLast(ref);
+
+      return ref;
+   }
+
+   private void assertRefs(final List<MessageReference> actual, final MessageReference... expected)
+   {
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (MessageReference ref : expected)
+      {
+         refs.add(ref);
+      }
+
+      assertRefListsIdenticalRefs(refs, actual);
+   }
+}
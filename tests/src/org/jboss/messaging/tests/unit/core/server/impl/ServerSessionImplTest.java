@@ -21,6 +21,21 @@
  */
 package org.jboss.messaging.tests.unit.core.server.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.jboss.messaging.core.journal.IOCallback;
+import org.jboss.messaging.core.paging.PagingManager;
+import org.jboss.messaging.core.persistence.StorageManager;
+import org.jboss.messaging.core.postoffice.PostOffice;
+import org.jboss.messaging.core.security.SecurityStore;
+import org.jboss.messaging.core.server.MessageReference;
+import org.jboss.messaging.core.server.Queue;
+import org.jboss.messaging.core.server.ServerMessage;
+import org.jboss.messaging.core.server.impl.ServerSessionImpl;
 import org.jboss.messaging.tests.util.UnitTestCase;
 
 /**
@@ -35,6 +50,137 @@ public class ServerSessionImplTest extends UnitTestCase
    public void testDummy()
    {      
    }
+
+   public void testDurableSendAddedToQueueOnceStored() throws Exception
+   {
+      createSession();
+
+      session.send(message, callback);
+
+      // Nothing is delivered before the message is on disk
+      EasyMock.verify(queue, callback);
+
+      EasyMock.reset(queue, callback);
+      EasyMock.expect(queue.addLast(ref)).andReturn(null);
+      callback.done();
+      EasyMock.replay(queue, callback);
+
+      storeCallbacks.get(0).done();
+
+      EasyMock.verify(queue, callback);
+   }
+
+   public void testDurableSendRolledBackWhenStoreFails() throws Exception
+   {
+      createSession();
+
+      session.send(message, callback);
+
+      EasyMock.reset(pager, callback);
+      pager.messageDone(message);
+      callback.onError(1, "failed");
+      EasyMock.replay(pager, callback);
+
+      storeCallbacks.get(0).onError(1, "failed");
+
+      EasyMock.verify(pager, queue, callback);
+   }
+
+   public void testSendWaitsForTheDurableSendBeforeIt() throws Exception
+   {
+      createSession();
+
+      ServerMessage nonDurable = EasyMock.createNiceMock(ServerMessage.class);
+      MessageReference nonDurableRef = EasyMock.createNiceMock(MessageReference.class);
+      EasyMock.expect(nonDurableRef.getQueue()).andStubReturn(queue);
+      List<MessageReference> nonDurableRefs = new ArrayList<MessageReference>();
+      nonDurableRefs.add(nonDurableRef);
+      EasyMock.reset(postOffice);
+      EasyMock.expect(postOffice.route(message)).andReturn(refs);
+      EasyMock.expect(postOffice.route(nonDurable)).andReturn(nonDurableRefs);
+      EasyMock.replay(postOffice, nonDurable, nonDurableRef);
+
+      session.send(message, callback);
+
+      session.send(nonDurable);
+
+      EasyMock.verify(queue);
+
+      EasyMock.reset(queue, callback);
+      EasyMock.expect(queue.addLast(ref)).andReturn(null);
+      callback.done();
+      EasyMock.expect(queue.addLast(nonDurableRef)).andReturn(null);
+      EasyMock.replay(queue, callback);
+
+      storeCallbacks.get(0).done();
+
+      EasyMock.verify(queue, callback);
+   }
+
+   // Private -------------------------------------------------------
+
+   private ServerSessionImpl session;
+
+   private PostOffice postOffice;
+
+   private PagingManager pager;
+
+   private Queue queue;
+
+   private ServerMessage message;
+
+   private MessageReference ref;
+
+   private List<MessageReference> refs;
+
+   private IOCallback callback;
+
+   private final List<IOCallback> storeCallbacks = new ArrayList<IOCallback>();
+
+   private void createSession() throws Exception
+   {
+      postOffice = EasyMock.createNiceMock(PostOffice.class);
+      pager = EasyMock.createNiceMock(PagingManager.class);
+      StorageManager storageManager = EasyMock.createNiceMock(StorageManager.class);
+      queue = EasyMock.createStrictMock(Queue.class);
+      message = EasyMock.createNiceMock(ServerMessage.class);
+      ref = EasyMock.createNiceMock(MessageReference.class);
+      callback = EasyMock.createStrictMock(IOCallback.class);
+
+      refs = new ArrayList<MessageReference>();
+      refs.add(ref);
+
+      EasyMock.expect(postOffice.getPagingManager()).andStubReturn(pager);
+      EasyMock.expect(postOffice.route(message)).andStubReturn(refs);
+      EasyMock.expect(message.getDurableRefCount()).andStubReturn(1);
+      EasyMock.expect(ref.getQueue()).andStubReturn(queue);
+
+      storeCallbacks.clear();
+      storageManager.storeMessage(EasyMock.eq(message), EasyMock.isA(IOCallback.class));
+      EasyMock.expectLastCall().andAnswer(new IAnswer<Object>()
+      {
+         public Object answer() throws Throwable
+         {
+            storeCallbacks.add((IOCallback)EasyMock.getCurrentArguments()[1]);
+
+            return null;
+         }
+      });
+
+      EasyMock.replay(postOffice, pager, storageManager, queue, message, ref, callback);
+
+      Executor executor = new Executor()
+      {
+         public void execute(final Runnable command)
+         {
+            command.run();
+         }
+      };
+
+      session = new ServerSessionImpl("session", 1, null, null, true, true, false, null, storageManager, postOffice,
+                                      null, null, EasyMock.createNiceMock(SecurityStore.class), executor, null, null,
+                                      null, null);
+   }
 //   private RemotingConnection rc;
 //   private StorageManager sm;
 //   private PostOffice po;
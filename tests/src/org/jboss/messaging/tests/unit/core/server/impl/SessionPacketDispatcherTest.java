@@ -0,0 +1,242 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.messaging.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.jboss.messaging.core.remoting.Channel;
+import org.jboss.messaging.core.remoting.ChannelHandler;
+import org.jboss.messaging.core.remoting.Packet;
+import org.jboss.messaging.core.remoting.RemotingConnection;
+import org.jboss.messaging.core.remoting.impl.wireformat.PacketImpl;
+import org.jboss.messaging.core.server.impl.SessionPacketDispatcher;
+import org.jboss.messaging.tests.util.UnitTestCase;
+
+/**
+ *
+ * A SessionPacketDispatcherTest
+ *
+ */
+public class SessionPacketDispatcherTest extends UnitTestCase
+{
+   // Attributes ----------------------------------------------------
+
+   private SessionPacketDispatcher dispatcher;
+
+   // Public --------------------------------------------------------
+
+   public void testHandledInOrderOffTheTransportThread() throws Exception
+   {
+      dispatcher = new SessionPacketDispatcher(2, -1);
+
+      final int numPackets = 100;
+
+      RecordingHandler handler = new RecordingHandler(numPackets);
+
+      ChannelHandler inbox = dispatcher.createInbox(handler, null);
+
+      for (int i = 0; i < numPackets; i++)
+      {
+         inbox.handlePacket(createPacket(i));
+      }
+
+      assertTrue(handler.handled.await(5000, TimeUnit.MILLISECONDS));
+
+      for (int i = 0; i < numPackets; i++)
+      {
+         assertEquals(i, handler.packets.get(i).getCorrelationID());
+      }
+
+      assertFalse(handler.threads.contains(Thread.currentThread()));
+
+      assertEquals(numPackets, dispatcher.getHandledCount());
+      assertEquals(0, dispatcher.getPendingCount());
+   }
+
+   public void testBlockedSessionDoesNotHoldUpOthers() throws Exception
+   {
+      dispatcher = new SessionPacketDispatcher(-1, -1);
+
+      CountDownLatch unblock = new CountDownLatch(1);
+
+      RecordingHandler blocked = new RecordingHandler(1);
+
+      blocked.unblock = unblock;
+
+      RecordingHandler other = new RecordingHandler(1);
+
+      dispatcher.createInbox(blocked, null).handlePacket(createPacket(1));
+
+      assertTrue(blocked.entered.await(5000, TimeUnit.MILLISECONDS));
+
+      dispatcher.createInbox(other, null).handlePacket(createPacket(2));
+
+      assertTrue(other.handled.await(5000, TimeUnit.MILLISECONDS));
+
+      unblock.countDown();
+
+      assertTrue(blocked.handled.await(5000, TimeUnit.MILLISECONDS));
+   }
+
+   public void testReadsSuspendedWhileInboxIsFull() throws Exception
+   {
+      dispatcher = new SessionPacketDispatcher(-1, 2);
+
+      RemotingConnection connection = EasyMock.createStrictMock(RemotingConnection.class);
+      connection.suspendRead();
+      connection.resumeRead();
+
+      Channel channel = EasyMock.createMock(Channel.class);
+      EasyMock.expect(channel.getConnection()).andReturn(connection);
+
+      EasyMock.replay(connection, channel);
+
+      CountDownLatch unblock = new CountDownLatch(1);
+
+      RecordingHandler handler = new RecordingHandler(4);
+
+      handler.unblock = unblock;
+
+      ChannelHandler inbox = dispatcher.createInbox(handler, channel);
+
+      inbox.handlePacket(createPacket(0));
+
+      assertTrue(handler.entered.await(5000, TimeUnit.MILLISECONDS));
+
+      // These two fill the inbox while the first one is being handled
+      inbox.handlePacket(createPacket(1));
+      inbox.handlePacket(createPacket(2));
+
+      assertEquals(1, dispatcher.getReadSuspendedCount());
+
+      // Read before the transport was suspended, handed over without waiting
+      inbox.handlePacket(createPacket(3));
+
+      assertEquals(3, dispatcher.getPendingCount());
+
+      unblock.countDown();
+
+      assertTrue(handler.handled.await(5000, TimeUnit.MILLISECONDS));
+
+      for (int i = 0; i < 4; i++)
+      {
+         assertEquals(i, handler.packets.get(i).getCorrelationID());
+      }
+
+      EasyMock.verify(connection, channel);
+
+      assertEquals(4, dispatcher.getHandledCount());
+      assertEquals(1, dispatcher.getReadSuspendedCount());
+      assertTrue(dispatcher.getAverageQueuedTime() > 0);
+   }
+
+   public void testInvalidPoolSize() throws Exception
+   {
+      try
+      {
+         new SessionPacketDispatcher(0, -1);
+
+         fail("Should throw exception");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // Ok
+      }
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected void tearDown() throws Exception
+   {
+      if (dispatcher != null)
+      {
+         dispatcher.stop();
+
+         dispatcher = null;
+      }
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private Packet createPacket(final long correlationID)
+   {
+      Packet packet = new PacketImpl(PacketImpl.NULL_RESPONSE);
+
+      packet.setCorrelationID(correlationID);
+
+      return packet;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static class RecordingHandler implements ChannelHandler
+   {
+      final List<Packet> packets = new ArrayList<Packet>();
+
+      final List<Thread> threads = new ArrayList<Thread>();
+
+      final CountDownLatch entered = new CountDownLatch(1);
+
+      final CountDownLatch handled;
+
+      // If set the first packet is only handled once it's counted down
+      volatile CountDownLatch unblock;
+
+      RecordingHandler(final int numPackets)
+      {
+         handled = new CountDownLatch(numPackets);
+      }
+
+      public void handlePacket(final Packet packet)
+      {
+         entered.countDown();
+
+         if (unblock != null)
+         {
+            try
+            {
+               unblock.await();
+            }
+            catch (InterruptedException e)
+            {
+               throw new IllegalStateException(e);
+            }
+         }
+
+         synchronized (this)
+         {
+            packets.add(packet);
+
+            threads.add(Thread.currentThread());
+         }
+
+         handled.countDown();
+      }
+   }
+}
@@ -30,6 +30,7 @@ import org.jboss.messaging.core.postoffice.PostOffice;
 import org.jboss.messaging.core.server.Queue;
 import org.jboss.messaging.core.server.QueueFactory;
 import org.jboss.messaging.core.server.impl.QueueImpl;
+import org.jboss.messaging.core.server.impl.ScheduledDeliveryWheel;
 import org.jboss.messaging.util.SimpleString;
 
 /**
@@ -42,13 +43,15 @@ import org.jboss.messaging.util.SimpleString;
 public class FakeQueueFactory implements QueueFactory
 {
 	private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+	private final ScheduledDeliveryWheel scheduledDeliveryWheel = new ScheduledDeliveryWheel(scheduledExecutor);
 	
 	private PostOffice postOffice;
 
 	public Queue createQueue(long persistenceID, SimpleString name, Filter filter,
 			                   boolean durable, boolean temporary)
 	{
-		return new QueueImpl(persistenceID, name, filter, false, durable, temporary, scheduledExecutor, postOffice);
+		return new QueueImpl(persistenceID, name, filter, false, durable, temporary, scheduledDeliveryWheel, postOffice);
 	}
 
    public void setPostOffice(PostOffice postOffice)
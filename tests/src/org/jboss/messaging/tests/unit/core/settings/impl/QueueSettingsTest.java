@@ -42,6 +42,8 @@ public class QueueSettingsTest extends TestCase
       assertEquals(queueSettings.getMaxDeliveryAttempts(), QueueSettings.DEFAULT_MAX_DELIVERY_ATTEMPTS);
       assertEquals(queueSettings.getMaxSizeBytes(), QueueSettings.DEFAULT_MAX_SIZE_BYTES);
       assertEquals(queueSettings.getPageSizeBytes(), QueueSettings.DEFAULT_PAGE_SIZE_BYTES);
+      assertEquals(queueSettings.isDepageInPlace(), QueueSettings.DEFAULT_DEPAGE_IN_PLACE);
+      assertEquals(queueSettings.isBlockProducersWhenFull(), QueueSettings.DEFAULT_BLOCK_PRODUCERS_WHEN_FULL);
       assertEquals(queueSettings.getMessageCounterHistoryDayLimit(), QueueSettings.DEFAULT_MESSAGE_COUNTER_HISTORY_DAY_LIMIT);
       assertEquals(queueSettings.getRedeliveryDelay(), QueueSettings.DEFAULT_REDELIVER_DELAY);
 
@@ -62,6 +64,8 @@ public class QueueSettingsTest extends TestCase
       queueSettingsToMerge.setMessageCounterHistoryDayLimit(1002);
       queueSettingsToMerge.setRedeliveryDelay((long)1003);
       queueSettingsToMerge.setPageSizeBytes(1004);
+      queueSettingsToMerge.setDepageInPlace(true);
+      queueSettingsToMerge.setBlockProducersWhenFull(true);
       queueSettings.merge(queueSettingsToMerge);
       assertEquals(queueSettings.getDistributionPolicy().getClass(), QueueSettings.DEFAULT_DISTRIBUTION_POLICY_CLASS);
       assertEquals(queueSettings.getDistributionPolicyClass(), null);
@@ -74,6 +78,8 @@ public class QueueSettingsTest extends TestCase
       assertEquals(queueSettings.getRedeliveryDelay(), Long.valueOf(1003));
       assertEquals(queueSettings.getPageSizeBytes(), (Integer)1004);
       assertTrue(queueSettings.isDropMessagesWhenFull());
+      assertTrue(queueSettings.isDepageInPlace());
+      assertTrue(queueSettings.isBlockProducersWhenFull());
    }
 
    public void testMultipleMerge()
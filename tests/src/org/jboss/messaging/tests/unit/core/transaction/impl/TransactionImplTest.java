@@ -29,6 +29,7 @@ import org.jboss.messaging.core.server.MessageReference;
 import org.jboss.messaging.core.server.Queue;
 import org.jboss.messaging.core.server.ServerMessage;
 import org.jboss.messaging.core.server.impl.QueueImpl;
+import org.jboss.messaging.core.server.impl.ScheduledDeliveryWheel;
 import org.jboss.messaging.core.settings.HierarchicalRepository;
 import org.jboss.messaging.core.settings.impl.HierarchicalObjectRepository;
 import org.jboss.messaging.core.settings.impl.QueueSettings;
@@ -53,6 +54,8 @@ public class TransactionImplTest extends UnitTestCase
 {
 	private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
 
+	private final ScheduledDeliveryWheel scheduledDeliveryWheel = new ScheduledDeliveryWheel(scheduledExecutor);
+
    private final HierarchicalRepository<QueueSettings> queueSettings = 
    	new HierarchicalObjectRepository<QueueSettings>();
 	
@@ -420,13 +423,13 @@ public class TransactionImplTest extends UnitTestCase
 //   public void testSendCommit() throws Exception
 //   {
 //      //Durable queue
-//      Queue queue1 = new QueueImpl(12, new SimpleString("queue1"), null, false, true, -1, scheduledExecutor);
+//      Queue queue1 = new QueueImpl(12, new SimpleString("queue1"), null, false, true, -1, scheduledDeliveryWheel);
 //      
 //      //Durable queue
-//      Queue queue2 = new QueueImpl(34, new SimpleString("queue2"), null, false, true, -1, scheduledExecutor);
+//      Queue queue2 = new QueueImpl(34, new SimpleString("queue2"), null, false, true, -1, scheduledDeliveryWheel);
 //      
 //      //Non durable queue
-//      Queue queue3 = new QueueImpl(65, new SimpleString("queue3"), null, false, false, -1, scheduledExecutor);
+//      Queue queue3 = new QueueImpl(65, new SimpleString("queue3"), null, false, false, -1, scheduledDeliveryWheel);
 //      
 //      //Durable message to send
 //      
@@ -533,13 +536,13 @@ public class TransactionImplTest extends UnitTestCase
    public void testAckCommit() throws Exception
    {
       //Durable queue
-      Queue queue1 = new QueueImpl(12, new SimpleString("queue1"), null, false, true, false, scheduledExecutor, null);
+      Queue queue1 = new QueueImpl(12, new SimpleString("queue1"), null, false, true, false, scheduledDeliveryWheel, null);
       
       //Durable queue
-      Queue queue2 = new QueueImpl(34, new SimpleString("queue2"), null, false, true, false, scheduledExecutor, null);
+      Queue queue2 = new QueueImpl(34, new SimpleString("queue2"), null, false, true, false, scheduledDeliveryWheel, null);
       
       //Non durable queue
-      Queue queue3 = new QueueImpl(65, new SimpleString("queue3"), null, false, false, false, scheduledExecutor, null);
+      Queue queue3 = new QueueImpl(65, new SimpleString("queue3"), null, false, false, false, scheduledDeliveryWheel, null);
       
       //Some refs to ack
       
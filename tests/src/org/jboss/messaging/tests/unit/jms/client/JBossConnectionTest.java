@@ -672,7 +672,7 @@ public class JBossConnectionTest extends TestCase
                JBossConnection.TYPE_QUEUE_CONNECTION, null, 100, sf);
       ClientSession clientSession = createStrictMock(ClientSession.class);
       
-      EasyMock.expect(sf.createSession(null, null, false, true, true, false)).andReturn(clientSession);
+      EasyMock.expect(sf.createSession(null, null, false, true, true, false, 100)).andReturn(clientSession);
       clientSession.addFailureListener(EasyMock.isA(FailureListener.class));
       
       replay(sf, clientSession);
@@ -770,7 +770,7 @@ public class JBossConnectionTest extends TestCase
                JBossConnection.TYPE_TOPIC_CONNECTION, null, 100, sf);
       ClientSession clientSession = createStrictMock(ClientSession.class);
       
-      EasyMock.expect(sf.createSession(null, null, false, true, true, false)).andReturn(clientSession);
+      EasyMock.expect(sf.createSession(null, null, false, true, true, false, 100)).andReturn(clientSession);
       clientSession.addFailureListener(EasyMock.isA(FailureListener.class));
       
       replay(sf, clientSession);
@@ -869,7 +869,7 @@ public class JBossConnectionTest extends TestCase
                JBossConnection.TYPE_GENERIC_CONNECTION, null, 100, sf);
       ClientSession clientSession = createStrictMock(ClientSession.class);
       
-      EasyMock.expect(sf.createSession(null, null, false, true, true, false)).andReturn(clientSession);
+      EasyMock.expect(sf.createSession(null, null, false, true, true, false, 100)).andReturn(clientSession);
       clientSession.addFailureListener(EasyMock.isA(FailureListener.class));
       
       replay(sf, clientSession);
@@ -1048,7 +1048,7 @@ public class JBossConnectionTest extends TestCase
                JBossConnection.TYPE_QUEUE_CONNECTION, null, 100, sf);
       ClientSession clientSession = createStrictMock(ClientSession.class);
       
-      EasyMock.expect(sf.createSession(null, null, false, true, true, true)).andReturn(clientSession);
+      EasyMock.expect(sf.createSession(null, null, false, true, true, true, 100)).andReturn(clientSession);
       clientSession.addFailureListener(EasyMock.isA(FailureListener.class));
       
       replay(sf, clientSession);
@@ -1146,7 +1146,7 @@ public class JBossConnectionTest extends TestCase
                JBossConnection.TYPE_TOPIC_CONNECTION, null, 100, sf);
       ClientSession clientSession = createStrictMock(ClientSession.class);
       
-      EasyMock.expect(sf.createSession(null, null, false, true, true, true)).andReturn(clientSession);
+      EasyMock.expect(sf.createSession(null, null, false, true, true, true, 100)).andReturn(clientSession);
       clientSession.addFailureListener(EasyMock.isA(FailureListener.class));
       
       replay(sf, clientSession);
@@ -1245,7 +1245,7 @@ public class JBossConnectionTest extends TestCase
                JBossConnection.TYPE_GENERIC_CONNECTION, null, 100, sf);
       ClientSession clientSession = createStrictMock(ClientSession.class);
       
-      EasyMock.expect(sf.createSession(null, null, false, true, true, true)).andReturn(clientSession);
+      EasyMock.expect(sf.createSession(null, null, false, true, true, true, 100)).andReturn(clientSession);
       clientSession.addFailureListener(EasyMock.isA(FailureListener.class));
       
       replay(sf, clientSession);
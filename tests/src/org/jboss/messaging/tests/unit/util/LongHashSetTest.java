@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2005-2008, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */ 
+
+package org.jboss.messaging.tests.unit.util;
+
+import static org.jboss.messaging.tests.util.RandomUtil.randomLong;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.jboss.messaging.util.LongHashSet;
+
+/**
+ * @version <tt>$Revision$</tt>
+ *
+ */
+public class LongHashSetTest extends TestCase
+{
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testAdd() throws Exception
+   {
+      LongHashSet set = new LongHashSet();
+
+      assertTrue(set.isEmpty());
+      assertTrue(set.add(10));
+      assertFalse(set.add(10));
+      assertTrue(set.contains(10));
+      assertFalse(set.contains(11));
+      assertEquals(1, set.size());
+   }
+
+   public void testZero() throws Exception
+   {
+      LongHashSet set = new LongHashSet();
+
+      assertFalse(set.contains(0));
+      assertTrue(set.add(0));
+      assertFalse(set.add(0));
+      assertTrue(set.contains(0));
+      assertEquals(1, set.size());
+   }
+
+   public void testSequentialIDs() throws Exception
+   {
+      LongHashSet set = new LongHashSet(10);
+
+      for (long id = 1; id <= 100000; id++)
+      {
+         assertTrue(set.add(id));
+      }
+
+      assertEquals(100000, set.size());
+
+      for (long id = 1; id <= 100000; id++)
+      {
+         assertTrue(set.contains(id));
+      }
+
+      assertFalse(set.contains(100001));
+      assertFalse(set.contains(-1));
+   }
+
+   public void testRandomValues() throws Exception
+   {
+      LongHashSet set = new LongHashSet();
+
+      Set<Long> expected = new HashSet<Long>();
+
+      for (int i = 0; i < 10000; i++)
+      {
+         long value = randomLong();
+
+         assertEquals(expected.add(value), set.add(value));
+      }
+
+      assertEquals(expected.size(), set.size());
+
+      for (Long value : expected)
+      {
+         assertTrue(set.contains(value));
+      }
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+}
@@ -299,6 +299,62 @@ public class TypedPropertiesTest extends TestCase
       assertEqualsTypeProperties(emptyProps, decodedProps);
    }
 
+   public void testEncodeUntouchedDecodedProperties() throws Exception
+   {
+      props.putIntProperty(randomSimpleString(), randomInt());
+      props.putBytesProperty(randomSimpleString(), randomBytes());
+      props.putStringProperty(randomSimpleString(), randomSimpleString());
+      props.putStringProperty(randomSimpleString(), null);
+      props.putCharProperty(randomSimpleString(), randomChar());
+
+      MessagingBuffer buffer = new IoBufferWrapper(1024);
+      props.encode(buffer);
+      buffer.putInt(12345);
+      buffer.flip();
+
+      TypedProperties decodedProps = new TypedProperties();
+      decodedProps.decode(buffer);
+
+      // The buffer is left after the properties
+      assertEquals(props.getEncodeSize(), buffer.position());
+      assertEquals(12345, buffer.getInt());
+
+      assertEquals(props.getEncodeSize(), decodedProps.getEncodeSize());
+
+      MessagingBuffer reencoded = new IoBufferWrapper(1024);
+      decodedProps.encode(reencoded);
+      reencoded.flip();
+
+      byte[] expected = new byte[props.getEncodeSize()];
+      buffer.rewind();
+      buffer.getBytes(expected);
+      byte[] actual = new byte[reencoded.limit()];
+      reencoded.getBytes(actual);
+      assertEqualsByteArrays(expected, actual);
+
+      assertEqualsTypeProperties(props, decodedProps);
+   }
+
+   public void testCopyConstructorOfDecodedProperties() throws Exception
+   {
+      props.putStringProperty(key, randomSimpleString());
+
+      MessagingBuffer buffer = new IoBufferWrapper(1024);
+      props.encode(buffer);
+      buffer.flip();
+
+      TypedProperties decodedProps = new TypedProperties();
+      decodedProps.decode(buffer);
+
+      TypedProperties copy = new TypedProperties(decodedProps);
+      copy.removeProperty(key);
+
+      assertFalse(copy.containsProperty(key));
+      assertTrue(decodedProps.containsProperty(key));
+      assertEquals(props.getProperty(key), decodedProps.getProperty(key));
+      assertEquals(props.getEncodeSize(), decodedProps.getEncodeSize());
+   }
+
    @Override
    protected void setUp() throws Exception
    {